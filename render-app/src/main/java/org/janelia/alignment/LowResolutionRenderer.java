@@ -0,0 +1,291 @@
+package org.janelia.alignment;
+
+import ij.process.ColorProcessor;
+import ij.process.ImageProcessor;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import mpicbg.models.CoordinateTransform;
+import mpicbg.models.CoordinateTransformList;
+
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.util.ImageProcessorCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Renders a coarse overview of tile content for requests that contain too many tiles to render precisely.
+ *
+ * Costs are bounded by:
+ * <ul>
+ *     <li>only rendering one representative (top-most) tile for each cell of a coarse target grid,</li>
+ *     <li>loading the coarsest mipmap level that still covers the target resolution,</li>
+ *     <li>approximating each tile's transform list with a single affine (no meshing or masks), and</li>
+ *     <li>capping the total number of loaded source pixels and the total render time.</li>
+ * </ul>
+ *
+ * Once either budget is exhausted, remaining representative tiles are drawn as bounding boxes
+ * (just like the {@link BoundingBoxRenderer}).
+ * Tiles that are skipped because they are not representative are also drawn as bounding boxes,
+ * so every tile in the request is either rendered or outlined.
+ *
+ * @author Eric Trautman
+ */
+public class LowResolutionRenderer {
+
+    /** Default maximum amount of time to spend loading and drawing tile content. */
+    public static final long DEFAULT_MAX_RENDER_MILLIS = 3000;
+
+    /** Default maximum number of loaded source pixels for each target pixel. */
+    public static final int DEFAULT_MAX_SOURCE_PIXELS_PER_TARGET_PIXEL = 16;
+
+    private final List<TileSpec> tileSpecs;
+    private final double xOffset;
+    private final double yOffset;
+    private final double scale;
+    private final boolean areaOffset;
+    private final Double renderMinIntensity;
+    private final Double renderMaxIntensity;
+    private final Color outlineColor;
+    private final Color backgroundColor;
+    private final ImageProcessorCache imageProcessorCache;
+    private final long maxRenderMillis;
+    private final int maxSourcePixelsPerTargetPixel;
+
+    public LowResolutionRenderer(final RenderParameters renderParameters,
+                                 final Color outlineColor,
+                                 final ImageProcessorCache imageProcessorCache) {
+        this(renderParameters,
+             outlineColor,
+             imageProcessorCache,
+             DEFAULT_MAX_RENDER_MILLIS,
+             DEFAULT_MAX_SOURCE_PIXELS_PER_TARGET_PIXEL);
+    }
+
+    public LowResolutionRenderer(final RenderParameters renderParameters,
+                                 final Color outlineColor,
+                                 final ImageProcessorCache imageProcessorCache,
+                                 final long maxRenderMillis,
+                                 final int maxSourcePixelsPerTargetPixel) {
+
+        this.tileSpecs = renderParameters.getTileSpecs();
+        this.xOffset = renderParameters.getX();
+        this.yOffset = renderParameters.getY();
+        this.scale = renderParameters.getScale();
+        this.areaOffset = renderParameters.isAreaOffset();
+        this.renderMinIntensity = renderParameters.getMinIntensity();
+        this.renderMaxIntensity = renderParameters.getMaxIntensity();
+
+        this.outlineColor = outlineColor;
+
+        if (renderParameters.getBackgroundRGBColor() == null) {
+            this.backgroundColor = null;
+        } else {
+            this.backgroundColor = new Color(renderParameters.getBackgroundRGBColor());
+        }
+
+        this.imageProcessorCache = imageProcessorCache;
+        this.maxRenderMillis = maxRenderMillis;
+        this.maxSourcePixelsPerTargetPixel = maxSourcePixelsPerTargetPixel;
+    }
+
+    public void render(final BufferedImage targetImage)
+            throws IllegalArgumentException {
+
+        final long startTime = System.currentTimeMillis();
+        final long stopTime = startTime + maxRenderMillis;
+
+        final long maxSourcePixels =
+                (long) targetImage.getWidth() * targetImage.getHeight() * maxSourcePixelsPerTargetPixel;
+
+        final Graphics2D targetGraphics = targetImage.createGraphics();
+        targetGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                                        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+
+        if (backgroundColor != null) {
+            targetGraphics.setBackground(backgroundColor);
+            targetGraphics.clearRect(0, 0, targetImage.getWidth(), targetImage.getHeight());
+        }
+
+        final List<TileSpec> outlineOnlyTileSpecs = new ArrayList<>();
+        final List<TileSpec> representativeTileSpecs = getRepresentativeTileSpecs(outlineOnlyTileSpecs);
+        final int skippedCount = outlineOnlyTileSpecs.size();
+
+        long loadedSourcePixels = 0;
+        int renderedCount = 0;
+
+        for (final TileSpec tileSpec : representativeTileSpecs) {
+
+            if (System.currentTimeMillis() > stopTime) {
+                outlineOnlyTileSpecs.add(tileSpec);
+                continue;
+            }
+
+            final long sourcePixelCount = renderTile(tileSpec, targetGraphics, maxSourcePixels - loadedSourcePixels);
+            if (sourcePixelCount < 0) {
+                outlineOnlyTileSpecs.add(tileSpec);
+            } else {
+                loadedSourcePixels += sourcePixelCount;
+                renderedCount++;
+            }
+        }
+
+        targetGraphics.setColor(outlineColor);
+        for (final TileSpec tileSpec : outlineOnlyTileSpecs) {
+            targetGraphics.draw(getScaledBox(tileSpec));
+        }
+
+        targetGraphics.dispose();
+
+        LOG.debug("render: exit, rendered {} of {} representative tiles and outlined {} tiles ({} skipped, {} total) " +
+                  "with {} source pixels in {} milliseconds",
+                  renderedCount, representativeTileSpecs.size(), outlineOnlyTileSpecs.size(), skippedCount,
+                  tileSpecs.size(), loadedSourcePixels, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * @param  skippedTileSpecs  list to which bounded tiles that are not representative are added.
+     *
+     * @return list of tiles to render, containing only the top-most (last) tile
+     *         whose center falls within each cell of a target grid.
+     *         The grid cell size is half the average scaled tile width,
+     *         so adjacent tiles are kept but stacked (e.g. multi-camera or re-imaged) tiles are reduced.
+     */
+    private List<TileSpec> getRepresentativeTileSpecs(final List<TileSpec> skippedTileSpecs) {
+
+        double totalScaledWidth = 0;
+        int boundedTileCount = 0;
+        for (final TileSpec tileSpec : tileSpecs) {
+            if (hasBounds(tileSpec)) {
+                totalScaledWidth += (tileSpec.getMaxX() - tileSpec.getMinX()) * scale;
+                boundedTileCount++;
+            }
+        }
+
+        final double cellSize;
+        if (boundedTileCount > 0) {
+            cellSize = Math.max(1.0, totalScaledWidth / boundedTileCount / 2.0);
+        } else {
+            cellSize = 1.0;
+        }
+
+        final Map<String, TileSpec> cellToTileSpecMap = new LinkedHashMap<>();
+        double centerX;
+        double centerY;
+        TileSpec replacedTileSpec;
+        for (final TileSpec tileSpec : tileSpecs) {
+            if (hasBounds(tileSpec)) {
+                centerX = ((tileSpec.getMinX() + tileSpec.getMaxX()) / 2.0 - xOffset) * scale;
+                centerY = ((tileSpec.getMinY() + tileSpec.getMaxY()) / 2.0 - yOffset) * scale;
+                replacedTileSpec = cellToTileSpecMap.put((int) Math.floor(centerX / cellSize) + "_" +
+                                                         (int) Math.floor(centerY / cellSize),
+                                                         tileSpec);
+                if (replacedTileSpec != null) {
+                    skippedTileSpecs.add(replacedTileSpec);
+                }
+            }
+        }
+
+        return new ArrayList<>(cellToTileSpecMap.values());
+    }
+
+    /**
+     * Draws the specified tile's content using an affine approximation of its transforms.
+     *
+     * @return (estimated) number of source pixels loaded for the tile or -1 if the tile was not rendered.
+     */
+    private long renderTile(final TileSpec tileSpec,
+                            final Graphics2D targetGraphics,
+                            final long remainingSourcePixels) {
+
+        final int width = tileSpec.getWidth();
+        final int height = tileSpec.getHeight();
+        if ((width <= 0) || (height <= 0)) {
+            return -1;
+        }
+
+        final CoordinateTransformList<CoordinateTransform> ctl =
+                Render.createRenderTransform(tileSpec, areaOffset, scale, xOffset, yOffset);
+
+        final double[] origin = ctl.apply(new double[] { 0, 0 });
+        final double[] right = ctl.apply(new double[] { width, 0 });
+        final double[] bottom = ctl.apply(new double[] { 0, height });
+
+        final double tileScale = Math.hypot(right[0] - origin[0], right[1] - origin[1]) / width;
+        final int mipmapLevel = Utils.bestMipmapLevel(tileScale);
+
+        final Map.Entry<Integer, ImageAndMask> mipmapEntry = tileSpec.getFloorMipmapEntry(mipmapLevel);
+        if (mipmapEntry == null) {
+            return -1;
+        }
+
+        int downSampleLevels = 0;
+        final int currentMipmapLevel = mipmapEntry.getKey();
+        if (currentMipmapLevel < mipmapLevel) {
+            downSampleLevels = mipmapLevel - currentMipmapLevel;
+        }
+
+        // the entry's level is what gets loaded (any down sampling happens after the load)
+        final long loadedSourcePixels =
+                ((long) width >> currentMipmapLevel) * ((long) height >> currentMipmapLevel);
+        if (loadedSourcePixels > remainingSourcePixels) {
+            return -1;
+        }
+
+        final ImageProcessor ipMipmap;
+        try {
+            ipMipmap = imageProcessorCache.get(mipmapEntry.getValue().getImageUrl(), downSampleLevels, false);
+        } catch (final Throwable t) {
+            LOG.warn("renderTile: failed to load mipmap for tile " + tileSpec.getTileId() + ", drawing outline", t);
+            return -1;
+        }
+
+        final int mipmapWidth = ipMipmap.getWidth();
+        final int mipmapHeight = ipMipmap.getHeight();
+        if ((mipmapWidth == 0) || (mipmapHeight == 0)) {
+            return -1;
+        }
+
+        // duplicate before setting intensity range since cached processors are shared across requests
+        final ImageProcessor ip = ipMipmap.duplicate();
+        final double minIntensity = (renderMinIntensity == null) ? tileSpec.getMinIntensity() : renderMinIntensity;
+        final double maxIntensity = (renderMaxIntensity == null) ? tileSpec.getMaxIntensity() : renderMaxIntensity;
+        ip.setMinAndMax(minIntensity, maxIntensity);
+        final ColorProcessor cp = ip.convertToColorProcessor();
+
+        final AffineTransform mipmapToTarget = new AffineTransform((right[0] - origin[0]) / mipmapWidth,
+                                                                   (right[1] - origin[1]) / mipmapWidth,
+                                                                   (bottom[0] - origin[0]) / mipmapHeight,
+                                                                   (bottom[1] - origin[1]) / mipmapHeight,
+                                                                   origin[0],
+                                                                   origin[1]);
+
+        targetGraphics.drawImage(cp.createImage(), mipmapToTarget, null);
+
+        return loadedSourcePixels;
+    }
+
+    private boolean hasBounds(final TileSpec tileSpec) {
+        return (tileSpec.getMinX() != null) && (tileSpec.getMinY() != null) &&
+               (tileSpec.getMaxX() != null) && (tileSpec.getMaxY() != null);
+    }
+
+    private Rectangle getScaledBox(final TileSpec tileSpec) {
+        final double x = (tileSpec.getMinX() - xOffset) * scale;
+        final double y = (tileSpec.getMinY() - yOffset) * scale;
+        final double w = ((tileSpec.getMaxX() - xOffset) * scale) - x;
+        final double h = ((tileSpec.getMaxY() - yOffset) * scale) - y;
+        return new Rectangle((int) x, (int) y, (int) w, (int) h);
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(LowResolutionRenderer.class);
+}
@@ -363,7 +363,7 @@ public class MipmapGeneratorParameters {
 
         final InputStream urlStream;
         try {
-            urlStream = urlObject.openStream();
+            urlStream = Utils.openStream(urlObject);
         } catch (final Throwable t) {
             throw new IllegalArgumentException("failed to load " + context + " specifications from " + urlObject,
                                                t);
@@ -328,7 +328,7 @@ public class RenderParameters implements Serializable {
             for (int attempt = 1; attempt <= maxNumberOfAttempts; attempt++) {
 
                 try {
-                    urlStream = urlObject.openStream();
+                    urlStream = Utils.openStream(urlObject);
                 } catch (final UnknownHostException uhe) {
 
                     urlStream = null;
@@ -747,7 +747,7 @@ public class RenderParameters implements Serializable {
             InputStream urlStream = null;
             try {
                 try {
-                    urlStream = urlObject.openStream();
+                    urlStream = Utils.openStream(urlObject);
                 } catch (final Throwable t) {
                     throw new IllegalArgumentException("failed to load tile specification from " + urlObject, t);
                 }
@@ -18,13 +18,21 @@ package org.janelia.alignment;
 
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
@@ -394,4 +402,66 @@ public class Utils {
         return uri;
     }
 
+    /**
+     * Opens a stream for reading the specified URL's content.
+     * HTTP requests advertise support for gzip and deflate content encodings
+     * and compressed responses are transparently decoded as they are read.
+     * Deflate responses may contain either zlib wrapped data (as specified by RFC 1950 and used by most servers)
+     * or raw deflate data (as sent by the render web service's Jetty GzipFilter),
+     * so the data's first bytes are checked to select the appropriate decoder.
+     *
+     * @param  url  URL to open.
+     *
+     * @return stream for the (uncompressed) content.
+     *
+     * @throws IOException
+     *   if the stream cannot be opened.
+     */
+    public static InputStream openStream(final URL url)
+            throws IOException {
+
+        final InputStream inputStream;
+
+        final URLConnection connection = url.openConnection();
+        if (connection instanceof HttpURLConnection) {
+
+            connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+            connection.connect();
+
+            final String contentEncoding = connection.getContentEncoding();
+            if ("gzip".equalsIgnoreCase(contentEncoding)) {
+                inputStream = new GZIPInputStream(connection.getInputStream());
+            } else if ("deflate".equalsIgnoreCase(contentEncoding)) {
+                inputStream = getDeflateInputStream(connection.getInputStream());
+            } else {
+                inputStream = connection.getInputStream();
+            }
+
+        } else {
+            inputStream = connection.getInputStream();
+        }
+
+        return inputStream;
+    }
+
+    /**
+     * @return stream that inflates the specified zlib wrapped or raw deflate data.
+     */
+    private static InputStream getDeflateInputStream(final InputStream deflatedStream)
+            throws IOException {
+
+        final BufferedInputStream bufferedStream = new BufferedInputStream(deflatedStream);
+
+        bufferedStream.mark(2);
+        final int cmf = bufferedStream.read();
+        final int flg = bufferedStream.read();
+        bufferedStream.reset();
+
+        // zlib headers specify the deflate compression method and are a multiple of 31 (see RFC 1950)
+        final boolean isZlibWrapped = (cmf != -1) && (flg != -1) &&
+                                      ((cmf & 0x0f) == 8) && ((((cmf << 8) | flg) % 31) == 0);
+
+        return new InflaterInputStream(bufferedStream, new Inflater(! isZlibWrapped));
+    }
+
 }
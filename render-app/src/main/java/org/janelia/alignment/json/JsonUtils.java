@@ -10,8 +10,10 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.text.SimpleDateFormat;
 import java.util.List;
@@ -39,7 +41,25 @@ public class JsonUtils {
         }
     }
 
-    public static final ObjectMapper FAST_MAPPER = new ObjectMapper().
+    /** Mime type for the binary Smile encoding of JSON data. */
+    public static final String SMILE_MIME_TYPE = "application/x-jackson-smile";
+
+    public static final ObjectMapper FAST_MAPPER = configureMapper(new ObjectMapper());
+
+    public static final ObjectMapper MAPPER = FAST_MAPPER.copy().
+//            setDefaultPrettyPrinter(new ArraysOnNewLinePrettyPrinter()).
+            enable(SerializationFeature.INDENT_OUTPUT);
+
+    public static final ObjectWriter WRITER = MAPPER.writer(new ArraysOnNewLinePrettyPrinter());
+
+    /**
+     * Mapper for the binary Smile encoding of JSON data.
+     * It has the same configuration as {@link #FAST_MAPPER} so that values map identically in both formats.
+     */
+    public static final ObjectMapper SMILE_MAPPER = configureMapper(new ObjectMapper(new SmileFactory()));
+
+    private static ObjectMapper configureMapper(final ObjectMapper mapper) {
+        return mapper.
             setSerializationInclusion(JsonInclude.Include.NON_NULL).
             setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY).
             setVisibility(PropertyAccessor.GETTER, JsonAutoDetect.Visibility.NONE).
@@ -48,12 +68,7 @@ public class JsonUtils {
             configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false).
 //            configure(DeserializationFeature.FAIL_ON_MISSING_CREATOR_PROPERTIES, false).
             setDateFormat(getDateFormat());
-
-    public static final ObjectMapper MAPPER = FAST_MAPPER.copy().
-//            setDefaultPrettyPrinter(new ArraysOnNewLinePrettyPrinter()).
-            enable(SerializationFeature.INDENT_OUTPUT);
-
-    public static final ObjectWriter WRITER = MAPPER.writer(new ArraysOnNewLinePrettyPrinter());
+    }
 
     public static class Helper<T> {
 
@@ -92,6 +107,15 @@ public class JsonUtils {
             }
         }
 
+        public T fromSmile(final InputStream smile)
+                throws IllegalArgumentException {
+            try {
+                return SMILE_MAPPER.readValue(smile, valueType);
+            } catch (final IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
         public List<T> fromJsonArray(final String json)
                 throws IllegalArgumentException {
             try {
@@ -147,6 +171,15 @@ public class JsonUtils {
             }
         }
 
+        public T fromSmile(final InputStream smile)
+                throws IllegalArgumentException {
+            try {
+                return SMILE_MAPPER.readValue(smile, typeReference);
+            } catch (final IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
     }
 
 }
@@ -2,9 +2,15 @@ package org.janelia.alignment.match;
 
 import com.google.common.base.Objects;
 
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -259,6 +265,82 @@ public class CanvasMatches implements Serializable, Comparable<CanvasMatches> {
         }
     }
 
+    /**
+     * Writes this object to the specified output in a compact binary form that can be
+     * restored with {@link #readPacked}.  Identifiers are written as modified UTF-8
+     * strings and are followed by the length and bytes of the {@link Matches#toPackedBytes packed matches}.
+     *
+     * @param  out  target output.
+     *
+     * @throws IOException
+     *   if the write fails.
+     */
+    public void writePacked(final DataOutput out)
+            throws IOException {
+        out.writeUTF(pGroupId);
+        out.writeUTF(pId);
+        out.writeUTF(qGroupId);
+        out.writeUTF(qId);
+        final byte[] packedMatches = matches.toPackedBytes();
+        out.writeInt(packedMatches.length);
+        out.write(packedMatches);
+    }
+
+    /**
+     * @param  in  source input positioned at the start of a {@link #writePacked packed} object.
+     *
+     * @return the object read from the specified input.
+     *
+     * @throws IOException
+     *   if the read fails.
+     */
+    public static CanvasMatches readPacked(final DataInput in)
+            throws IOException {
+        final String pGroupId = in.readUTF();
+        final String pId = in.readUTF();
+        final String qGroupId = in.readUTF();
+        final String qId = in.readUTF();
+        final byte[] packedMatches = new byte[in.readInt()];
+        in.readFully(packedMatches);
+        return new CanvasMatches(pGroupId, pId, qGroupId, qId, Matches.fromPackedBytes(packedMatches));
+    }
+
+    /**
+     * Reads a stream of packed objects where each object is preceded by a {@link #PACKED_RECORD_MARKER}
+     * and the stream is terminated by a {@link #PACKED_END_MARKER}.
+     *
+     * @param  inputStream  stream to read.
+     *
+     * @return list of objects read from the stream.
+     *
+     * @throws IOException
+     *   if the stream cannot be read or is not properly terminated.
+     */
+    public static List<CanvasMatches> fromPackedStream(final InputStream inputStream)
+            throws IOException {
+
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+        final List<CanvasMatches> list = new ArrayList<>();
+
+        int marker;
+        while ((marker = in.read()) == PACKED_RECORD_MARKER) {
+            list.add(readPacked(in));
+        }
+
+        if (marker != PACKED_END_MARKER) {
+            throw new IOException("packed canvas matches stream is not properly terminated (marker is " +
+                                  marker + ")");
+        }
+
+        return list;
+    }
+
+    /** Byte written before each object in a packed stream. */
+    public static final int PACKED_RECORD_MARKER = 1;
+
+    /** Byte written after the last object in a packed stream. */
+    public static final int PACKED_END_MARKER = 0;
+
     private static final JsonUtils.Helper<CanvasMatches> JSON_HELPER =
             new JsonUtils.Helper<>(CanvasMatches.class);
 
@@ -17,6 +17,8 @@
 package org.janelia.alignment.match;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 
 import javax.xml.bind.annotation.XmlAccessType;
@@ -133,4 +135,77 @@ public class Matches implements Serializable {
         }
         return matches;
     }
+
+    /**
+     * @return compact binary representation of these matches that can be restored with
+     *         {@link #fromPackedBytes}.  The little-endian layout is:
+     *         [number of dimensions (int), number of matches (int), p values, q values, w values (doubles)]
+     *         where p and q values are ordered by dimension.
+     */
+    public byte[] toPackedBytes() {
+        final int numberOfDimensions = p.length;
+        final int numberOfMatches = w.length;
+        final int numberOfDoubles = ((2 * numberOfDimensions) + 1) * numberOfMatches;
+        final ByteBuffer buffer = ByteBuffer.allocate(PACKED_HEADER_SIZE + (numberOfDoubles * 8));
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(numberOfDimensions);
+        buffer.putInt(numberOfMatches);
+        for (final double[] values : p) {
+            buffer.asDoubleBuffer().put(values, 0, numberOfMatches);
+            buffer.position(buffer.position() + (numberOfMatches * 8));
+        }
+        for (final double[] values : q) {
+            buffer.asDoubleBuffer().put(values, 0, numberOfMatches);
+            buffer.position(buffer.position() + (numberOfMatches * 8));
+        }
+        buffer.asDoubleBuffer().put(w, 0, numberOfMatches);
+        return buffer.array();
+    }
+
+    /**
+     * @param  bytes  binary representation created by {@link #toPackedBytes}.
+     *
+     * @return matches restored from the specified bytes.
+     *
+     * @throws IllegalArgumentException
+     *   if the bytes are not a valid packed representation.
+     */
+    public static Matches fromPackedBytes(final byte[] bytes)
+            throws IllegalArgumentException {
+
+        if ((bytes == null) || (bytes.length < PACKED_HEADER_SIZE)) {
+            throw new IllegalArgumentException("packed matches are missing header");
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        final int numberOfDimensions = buffer.getInt();
+        final int numberOfMatches = buffer.getInt();
+
+        final long expectedLength = PACKED_HEADER_SIZE +
+                                    (((2L * numberOfDimensions) + 1) * numberOfMatches * 8);
+        if ((numberOfDimensions < 0) || (numberOfMatches < 0) || (bytes.length != expectedLength)) {
+            throw new IllegalArgumentException("packed matches with " + numberOfDimensions + " dimensions and " +
+                                               numberOfMatches + " matches should contain " + expectedLength +
+                                               " bytes but contain " + bytes.length + " bytes");
+        }
+
+        final double[][] p = new double[numberOfDimensions][numberOfMatches];
+        final double[][] q = new double[numberOfDimensions][numberOfMatches];
+        final double[] w = new double[numberOfMatches];
+
+        for (final double[] values : p) {
+            buffer.asDoubleBuffer().get(values);
+            buffer.position(buffer.position() + (numberOfMatches * 8));
+        }
+        for (final double[] values : q) {
+            buffer.asDoubleBuffer().get(values);
+            buffer.position(buffer.position() + (numberOfMatches * 8));
+        }
+        buffer.asDoubleBuffer().get(w);
+
+        return new Matches(p, q, w);
+    }
+
+    private static final int PACKED_HEADER_SIZE = 8;
 }
\ No newline at end of file
@@ -0,0 +1,231 @@
+package org.janelia.alignment.mipmap;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.janelia.alignment.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Renders an arbitrary box by compositing previously materialized box pyramid images
+ * (see {@link BoxMipmapGenerator}) instead of rendering the box's source tiles.
+ *
+ * Materialized boxes are expected to be organized as
+ * <pre>
+ *     [materializedBoxRootPath]/[width]x[height]/[level]/[z]/[row]/[column].[format]
+ * </pre>
+ * where each box at a given level covers (width * 2^level) x (height * 2^level) world pixels
+ * and the first box (row 0, column 0) starts at world coordinate (0,0).
+ *
+ * The coarsest level that still has at least the requested resolution is preferred.
+ * If that level has not been materialized for the requested z, up to {@link #MAX_FINER_LEVELS}
+ * finer levels are checked before giving up.
+ * Box files that do not exist within a materialized level are treated as empty space
+ * since box generation skips boxes without any tiles.
+ * Materialized box directories are named with integral z values, so layers with fractional z values
+ * are never composited from materialized boxes.
+ *
+ * @author Eric Trautman
+ */
+public class MaterializedBoxRenderer {
+
+    /** Maximum number of levels finer than the ideal level to check for materialized boxes. */
+    public static final int MAX_FINER_LEVELS = 2;
+
+    private final File boxDirectory;
+    private final int boxWidth;
+    private final int boxHeight;
+    private final int level;
+    private final int z;
+    private final double x;
+    private final double y;
+    private final int width;
+    private final int height;
+    private final double scale;
+
+    /**
+     * @return a renderer that composites materialized boxes for the specified world box
+     *         or null if the box cannot be assembled from materialized data
+     *         (including boxes for layers with fractional z values).
+     */
+    public static MaterializedBoxRenderer find(final String materializedBoxRootPath,
+                                               final double x,
+                                               final double y,
+                                               final double z,
+                                               final int width,
+                                               final int height,
+                                               final double scale) {
+
+        MaterializedBoxRenderer renderer = null;
+
+        if ((materializedBoxRootPath != null) && (scale > 0) && (scale <= 1.0) && (z == Math.floor(z))) {
+
+            final File rootDirectory = new File(materializedBoxRootPath);
+            final File[] boxDirectories = rootDirectory.listFiles();
+
+            if (boxDirectories != null) {
+
+                // sort directories so that selection is deterministic
+                Arrays.sort(boxDirectories);
+
+                final int idealLevel = Utils.bestMipmapLevel(scale);
+                final int minLevel = Math.max(0, idealLevel - MAX_FINER_LEVELS);
+                final String zDirectoryName = String.valueOf((int) z);
+
+                Matcher m;
+                for (int level = idealLevel; (renderer == null) && (level >= minLevel); level--) {
+                    for (final File boxDirectory : boxDirectories) {
+                        m = BOX_DIRECTORY_NAME_PATTERN.matcher(boxDirectory.getName());
+                        if (m.matches()) {
+                            final File zDirectory = new File(new File(boxDirectory, String.valueOf(level)),
+                                                             zDirectoryName);
+                            if (zDirectory.isDirectory()) {
+                                renderer = new MaterializedBoxRenderer(boxDirectory,
+                                                                       Integer.parseInt(m.group(1)),
+                                                                       Integer.parseInt(m.group(2)),
+                                                                       level,
+                                                                       (int) z,
+                                                                       x,
+                                                                       y,
+                                                                       width,
+                                                                       height,
+                                                                       scale);
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        return renderer;
+    }
+
+    /**
+     * @param  z  integral z value of the materialized layer
+     *            (callers with a fractional z must render dynamically instead).
+     */
+    public MaterializedBoxRenderer(final File boxDirectory,
+                                   final int boxWidth,
+                                   final int boxHeight,
+                                   final int level,
+                                   final int z,
+                                   final double x,
+                                   final double y,
+                                   final int width,
+                                   final int height,
+                                   final double scale) {
+        this.boxDirectory = boxDirectory;
+        this.boxWidth = boxWidth;
+        this.boxHeight = boxHeight;
+        this.level = level;
+        this.z = z;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.scale = scale;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Draws all materialized boxes that intersect this renderer's world box into the specified target image.
+     *
+     * @param  targetImage      image to draw into (should be scaled width x scaled height).
+     * @param  backgroundColor  color for areas without materialized boxes (or null to leave transparent).
+     *
+     * @return number of materialized box files that were drawn.
+     */
+    public int render(final BufferedImage targetImage,
+                      final Color backgroundColor) {
+
+        final long startTime = System.currentTimeMillis();
+
+        final double levelFactor = 1 << level;
+        final double levelBoxWidth = boxWidth * levelFactor;
+        final double levelBoxHeight = boxHeight * levelFactor;
+
+        final int firstColumn = (int) Math.floor(x / levelBoxWidth);
+        final int lastColumn = (int) Math.floor((x + width - 1) / levelBoxWidth);
+        final int firstRow = (int) Math.floor(y / levelBoxHeight);
+        final int lastRow = (int) Math.floor((y + height - 1) / levelBoxHeight);
+
+        final Graphics2D targetGraphics = targetImage.createGraphics();
+        targetGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                                        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+
+        if (backgroundColor != null) {
+            targetGraphics.setBackground(backgroundColor);
+            targetGraphics.clearRect(0, 0, targetImage.getWidth(), targetImage.getHeight());
+        }
+
+        int drawnCount = 0;
+        File boxFile;
+        BufferedImage boxImage;
+        int targetX;
+        int targetY;
+        int targetWidth;
+        int targetHeight;
+        for (int row = Math.max(0, firstRow); row <= lastRow; row++) {
+            for (int column = Math.max(0, firstColumn); column <= lastColumn; column++) {
+
+                boxFile = getExistingBoxFile(row, column);
+
+                if (boxFile != null) {
+
+                    boxImage = Utils.openImage(boxFile.getAbsolutePath());
+
+                    if (boxImage != null) {
+
+                        // derive integral bounds from world edges so that adjacent boxes share pixel edges
+                        targetX = (int) Math.round(((column * levelBoxWidth) - x) * scale);
+                        targetY = (int) Math.round(((row * levelBoxHeight) - y) * scale);
+                        targetWidth = (int) Math.round((((column + 1) * levelBoxWidth) - x) * scale) - targetX;
+                        targetHeight = (int) Math.round((((row + 1) * levelBoxHeight) - y) * scale) - targetY;
+
+                        targetGraphics.drawImage(boxImage, targetX, targetY, targetWidth, targetHeight, null);
+                        drawnCount++;
+                    }
+                }
+            }
+        }
+
+        targetGraphics.dispose();
+
+        LOG.debug("render: exit, drew {} level {} boxes from {} in {} milliseconds",
+                  drawnCount, level, boxDirectory, System.currentTimeMillis() - startTime);
+
+        return drawnCount;
+    }
+
+    private File getExistingBoxFile(final int row,
+                                    final int column) {
+        File boxFile;
+        for (final String format : BOX_FORMATS) {
+            boxFile = BoxMipmapGenerator.getImageFile(format, boxDirectory, level, z, row, column);
+            if (boxFile.exists()) {
+                return boxFile;
+            }
+        }
+        return null;
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(MaterializedBoxRenderer.class);
+
+    /** Only plain box directories are considered (label directories have a '-label' suffix). */
+    private static final Pattern BOX_DIRECTORY_NAME_PATTERN = Pattern.compile("(\\d+)x(\\d+)");
+
+    private static final String[] BOX_FORMATS = {
+            Utils.PNG_FORMAT, Utils.JPEG_FORMAT, Utils.TIF_FORMAT, Utils.TIFF_FORMAT
+    };
+}
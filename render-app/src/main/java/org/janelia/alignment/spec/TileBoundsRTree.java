@@ -78,6 +78,25 @@ public class TileBoundsRTree {
         return convertResultsToList(searchResults);
     }
 
+    /**
+     * @return all tiles whose bounds contain (inclusively) the specified point.
+     *         Tree searches use float precision, so a slightly larger box is searched
+     *         and the results are then filtered using the tiles' (double precision) bounds.
+     */
+    public List<TileBounds> findTilesContainingPoint(final double x,
+                                                     final double y) {
+
+        final List<TileBounds> candidates = findTilesInBox(x - 1, y - 1, x + 1, y + 1);
+        final List<TileBounds> matchingTiles = new ArrayList<>(candidates.size());
+        for (final TileBounds tileBounds : candidates) {
+            if ((tileBounds.getMinX() <= x) && (tileBounds.getMaxX() >= x) &&
+                (tileBounds.getMinY() <= y) && (tileBounds.getMaxY() >= y)) {
+                matchingTiles.add(tileBounds);
+            }
+        }
+        return matchingTiles;
+    }
+
     /**
      * @return all tiles that intersect the specified circle.
      */
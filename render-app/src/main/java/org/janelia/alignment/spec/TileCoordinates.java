@@ -9,6 +9,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import mpicbg.models.CoordinateTransform;
+import mpicbg.models.CoordinateTransformList;
 import mpicbg.models.NoninvertibleModelException;
 
 import org.janelia.alignment.json.JsonUtils;
@@ -162,6 +164,40 @@ public class TileCoordinates implements Serializable {
         return buildWorldInstance(tileSpec.getTileId(), world);
     }
 
+    /**
+     * Transforms many local points for the same tile, building the tile's transform list only once.
+     *
+     * @param  tileSpec              tile containing the points.
+     * @param  localCoordinatesList  local coordinates to transform (each must include both x and y).
+     *
+     * @return list of world {@link TileCoordinates} in the same order as the specified local coordinates.
+     *         Points that cannot be transformed are returned as the original local coordinates
+     *         with an error message.
+     */
+    public static List<TileCoordinates> getWorldCoordinates(final TileSpec tileSpec,
+                                                            final List<TileCoordinates> localCoordinatesList) {
+
+        final List<TileCoordinates> worldCoordinatesList = new ArrayList<>(localCoordinatesList.size());
+
+        final CoordinateTransformList<CoordinateTransform> ctl =
+                tileSpec.hasTransforms() ? tileSpec.getTransformList() : null;
+
+        double[] local;
+        for (final TileCoordinates localCoordinates : localCoordinatesList) {
+            try {
+                local = localCoordinates.getLocal();
+                worldCoordinatesList.add(buildWorldInstance(tileSpec.getTileId(),
+                                                            tileSpec.getWorldCoordinates(ctl, local[0], local[1])));
+            } catch (final Throwable t) {
+                LOG.warn("getWorldCoordinates: failed to transform " + localCoordinates.toJson(), t);
+                localCoordinates.setError(t.getMessage());
+                worldCoordinatesList.add(localCoordinates);
+            }
+        }
+
+        return worldCoordinatesList;
+    }
+
     public String toJson() {
         return JSON_HELPER.toJson(this);
     }
@@ -0,0 +1,194 @@
+package org.janelia.alignment.spec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import mpicbg.models.AffineModel2D;
+import mpicbg.models.CoordinateTransformMesh;
+import mpicbg.models.NoninvertibleModelException;
+import mpicbg.models.PointMatch;
+
+import org.janelia.alignment.RenderTransformMesh;
+
+/**
+ * Reusable structure for inverting world coordinates into a tile's local coordinates.
+ *
+ * A {@link CoordinateTransformMesh} inverts each point by scanning all of its triangles.
+ * This structure is built once from a mesh and indexes the mesh's target (world) triangles
+ * with a uniform grid, so that each inversion only needs to check the few triangles
+ * that overlap the point's grid cell.
+ *
+ * Instances are immutable and thread safe once constructed.
+ *
+ * @author Eric Trautman
+ */
+public class TileInverseMesh {
+
+    private final AffineModel2D[] models;
+    private final double[][] targetTriangles;
+
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+    private final int numberOfColumns;
+    private final int numberOfRows;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int[][] cellTriangleIndexes;
+
+    /**
+     * Constructs an inverse lookup structure for the specified mesh.
+     *
+     * @param  mesh  fully built mesh for a tile.
+     */
+    public TileInverseMesh(final CoordinateTransformMesh mesh) {
+
+        final Map<AffineModel2D, ArrayList<PointMatch>> av = mesh.getAV();
+
+        final int numberOfTriangles = av.size();
+        this.models = new AffineModel2D[numberOfTriangles];
+        this.targetTriangles = new double[numberOfTriangles][];
+
+        double boundsMinX = Double.MAX_VALUE;
+        double boundsMinY = Double.MAX_VALUE;
+        double boundsMaxX = -Double.MAX_VALUE;
+        double boundsMaxY = -Double.MAX_VALUE;
+
+        int t = 0;
+        double[] triangle;
+        double[] w;
+        for (final Map.Entry<AffineModel2D, ArrayList<PointMatch>> entry : av.entrySet()) {
+            models[t] = entry.getKey();
+            triangle = new double[6];
+            for (int v = 0; v < 3; v++) {
+                w = entry.getValue().get(v).getP2().getW();
+                triangle[v * 2] = w[0];
+                triangle[v * 2 + 1] = w[1];
+                boundsMinX = Math.min(boundsMinX, w[0]);
+                boundsMinY = Math.min(boundsMinY, w[1]);
+                boundsMaxX = Math.max(boundsMaxX, w[0]);
+                boundsMaxY = Math.max(boundsMaxY, w[1]);
+            }
+            targetTriangles[t] = triangle;
+            t++;
+        }
+
+        this.minX = boundsMinX;
+        this.minY = boundsMinY;
+        this.maxX = boundsMaxX;
+        this.maxY = boundsMaxY;
+
+        // roughly one triangle per cell keeps cell lists short without wasting much memory
+        final int cellsPerSide = Math.max(1, (int) Math.ceil(Math.sqrt(numberOfTriangles)));
+        this.numberOfColumns = cellsPerSide;
+        this.numberOfRows = cellsPerSide;
+        this.cellWidth = Math.max(Double.MIN_VALUE, (maxX - minX) / numberOfColumns);
+        this.cellHeight = Math.max(Double.MIN_VALUE, (maxY - minY) / numberOfRows);
+
+        final List<List<Integer>> cellLists = new ArrayList<>(numberOfColumns * numberOfRows);
+        for (int i = 0; i < numberOfColumns * numberOfRows; i++) {
+            cellLists.add(new ArrayList<Integer>());
+        }
+
+        for (int i = 0; i < numberOfTriangles; i++) {
+            triangle = targetTriangles[i];
+            final int firstColumn = getColumn(Math.min(triangle[0], Math.min(triangle[2], triangle[4])));
+            final int lastColumn = getColumn(Math.max(triangle[0], Math.max(triangle[2], triangle[4])));
+            final int firstRow = getRow(Math.min(triangle[1], Math.min(triangle[3], triangle[5])));
+            final int lastRow = getRow(Math.max(triangle[1], Math.max(triangle[3], triangle[5])));
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    cellLists.get(row * numberOfColumns + column).add(i);
+                }
+            }
+        }
+
+        this.cellTriangleIndexes = new int[cellLists.size()][];
+        List<Integer> cellList;
+        for (int i = 0; i < cellLists.size(); i++) {
+            cellList = cellLists.get(i);
+            cellTriangleIndexes[i] = new int[cellList.size()];
+            for (int j = 0; j < cellList.size(); j++) {
+                cellTriangleIndexes[i][j] = cellList.get(j);
+            }
+        }
+    }
+
+    /**
+     * @return number of triangles in this mesh (useful for estimating memory usage).
+     */
+    public int getNumberOfTriangles() {
+        return models.length;
+    }
+
+    /**
+     * Inversely transforms the specified world location into local coordinates.
+     *
+     * @param  location  world [x, y] location to transform in place.
+     *
+     * @throws NoninvertibleModelException
+     *   if the location is not within any of this mesh's triangles.
+     */
+    public void applyInverseInPlace(final double[] location)
+            throws NoninvertibleModelException {
+
+        final double x = location[0];
+        final double y = location[1];
+
+        if ((x >= minX) && (x <= maxX) && (y >= minY) && (y <= maxY)) {
+
+            final int cell = getRow(y) * numberOfColumns + getColumn(x);
+
+            double[] triangle;
+            for (final int i : cellTriangleIndexes[cell]) {
+                triangle = targetTriangles[i];
+                if (RenderTransformMesh.isInTriangle(triangle[0], triangle[1],
+                                                     triangle[2], triangle[3],
+                                                     triangle[4], triangle[5],
+                                                     x, y)) {
+                    models[i].applyInverseInPlace(location);
+                    return;
+                }
+            }
+        }
+
+        throw new NoninvertibleModelException("Noninvertible location ( " + x + ", " + y + " )");
+    }
+
+    /**
+     * Inversely transforms many world locations with one call.
+     *
+     * @param  worldPoints  world [x, y] locations to transform.
+     *
+     * @return array of local [x, y] locations in the same order as the specified world locations.
+     *         Elements for locations that cannot be inverted are null.
+     */
+    public double[][] applyInverse(final double[][] worldPoints) {
+
+        final double[][] localPoints = new double[worldPoints.length][];
+
+        double[] local;
+        for (int i = 0; i < worldPoints.length; i++) {
+            local = new double[] { worldPoints[i][0], worldPoints[i][1] };
+            try {
+                applyInverseInPlace(local);
+                localPoints[i] = local;
+            } catch (final NoninvertibleModelException e) {
+                localPoints[i] = null;
+            }
+        }
+
+        return localPoints;
+    }
+
+    private int getColumn(final double x) {
+        return Math.max(0, Math.min(numberOfColumns - 1, (int) ((x - minX) / cellWidth)));
+    }
+
+    private int getRow(final double y) {
+        return Math.max(0, Math.min(numberOfRows - 1, (int) ((y - minY) / cellHeight)));
+    }
+
+}
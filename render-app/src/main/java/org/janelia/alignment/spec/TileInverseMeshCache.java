@@ -0,0 +1,173 @@
+package org.janelia.alignment.spec;
+
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.Hashing;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of {@link TileInverseMesh} instances so that world to local coordinate lookups
+ * do not need to rebuild a tile's transform mesh for every point.
+ *
+ * Meshes are keyed by a fingerprint of the tile's id, dimensions, mesh cell size, and
+ * fully resolved (flattened) transforms, so changed tiles never reuse stale meshes.
+ * Tiles with unresolved transform references are not cached.
+ *
+ * @author Eric Trautman
+ */
+public class TileInverseMeshCache {
+
+    /** Default maximum number of mesh triangles to cache (roughly 30 typical 2K x 2K tiles). */
+    public static final long DEFAULT_MAX_CACHED_TRIANGLES = 100000;
+
+    /**
+     * System property that overrides the maximum number of triangles cached by the shared instance
+     * (e.g. -DtileInverseMeshCache.maxTriangles=1000000 for servers with plenty of memory).
+     */
+    public static final String MAX_CACHED_TRIANGLES_PROPERTY = "tileInverseMeshCache.maxTriangles";
+
+    private static TileInverseMeshCache sharedInstance;
+
+    /**
+     * @return cache instance shared by all coordinate lookups in this process
+     *         (sized by {@link #MAX_CACHED_TRIANGLES_PROPERTY} when it is defined).
+     */
+    public static TileInverseMeshCache getSharedInstance() {
+        if (sharedInstance == null) {
+            setSharedInstance();
+        }
+        return sharedInstance;
+    }
+
+    private static synchronized void setSharedInstance() {
+        if (sharedInstance == null) {
+            final long maxCachedTriangles = Long.getLong(MAX_CACHED_TRIANGLES_PROPERTY, DEFAULT_MAX_CACHED_TRIANGLES);
+            sharedInstance = new TileInverseMeshCache(maxCachedTriangles);
+            LOG.info("setSharedInstance: exit, created {}", sharedInstance);
+        }
+    }
+
+    private final long maxCachedTriangles;
+    private final Cache<String, TileInverseMesh> cache;
+
+    public TileInverseMeshCache(final long maxCachedTriangles) {
+
+        this.maxCachedTriangles = maxCachedTriangles;
+
+        final Weigher<String, TileInverseMesh> weigher =
+                new Weigher<String, TileInverseMesh>() {
+                    @Override
+                    public int weigh(final String key,
+                                     final TileInverseMesh value) {
+                        return (value == null) ? 0 : Math.max(1, value.getNumberOfTriangles());
+                    }
+                };
+
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxCachedTriangles)
+                .weigher(weigher)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param  tileSpec      tile to invert.
+     * @param  meshCellSize  mesh cell size for the tile.
+     *
+     * @return the cached inverse mesh for the specified tile (built if necessary).
+     *
+     * @throws IllegalStateException
+     *   if width or height have not been defined for the tile or the mesh cannot be built.
+     */
+    public TileInverseMesh get(final TileSpec tileSpec,
+                               final double meshCellSize)
+            throws IllegalStateException {
+
+        final String key = getFingerprint(tileSpec, meshCellSize);
+
+        final TileInverseMesh inverseMesh;
+        if (key == null) {
+            inverseMesh = new TileInverseMesh(tileSpec.getCoordinateTransformMesh(meshCellSize));
+        } else {
+            try {
+                inverseMesh = cache.get(key, new Callable<TileInverseMesh>() {
+                    @Override
+                    public TileInverseMesh call()
+                            throws Exception {
+                        return new TileInverseMesh(tileSpec.getCoordinateTransformMesh(meshCellSize));
+                    }
+                });
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof IllegalStateException) {
+                    throw (IllegalStateException) cause;
+                }
+                throw new IllegalStateException("failed to build inverse mesh for tile " + tileSpec.getTileId(), cause);
+            }
+        }
+
+        return inverseMesh;
+    }
+
+    /**
+     * @return the number of meshes currently in this cache.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * @return a current snapshot of this cache's cumulative statistics.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Removes all cached meshes.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public String toString() {
+        return "{numberOfMeshes: " + size() +
+               ", maxCachedTriangles: " + maxCachedTriangles +
+               '}';
+    }
+
+    /**
+     * @return fingerprint for the specified tile's mesh or null if the tile's transforms are not fully resolved.
+     */
+    private static String getFingerprint(final TileSpec tileSpec,
+                                         final double meshCellSize) {
+
+        String fingerprint = null;
+
+        final ListTransformSpec transforms = tileSpec.getTransforms();
+        if ((transforms != null) && transforms.isFullyResolved()) {
+
+            final ListTransformSpec flattenedTransforms = new ListTransformSpec();
+            transforms.flatten(flattenedTransforms);
+
+            final String description = tileSpec.getTileId() + '|' + tileSpec.getWidth() + '|' +
+                                       tileSpec.getHeight() + '|' + meshCellSize + '|' +
+                                       flattenedTransforms.toJson();
+
+            fingerprint = Hashing.sha256().hashString(description, Charsets.UTF_8).toString();
+        }
+
+        return fingerprint;
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(TileInverseMeshCache.class);
+}
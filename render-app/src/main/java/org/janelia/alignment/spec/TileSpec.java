@@ -260,11 +260,28 @@ public class TileSpec implements Serializable {
      * @return world coordinates (x, y, z) for the specified local coordinates.
      */
     public double[] getWorldCoordinates(final double x, final double y) {
+        final CoordinateTransformList<CoordinateTransform> ctl = hasTransforms() ? getTransformList() : null;
+        return getWorldCoordinates(ctl, x, y);
+    }
+
+    /**
+     * Allows callers that transform many points for the same tile to build the tile's
+     * transform list only once.
+     *
+     * @param  ctl  transform list for this tile (from {@link #getTransformList()})
+     *              or null if this tile has no transforms.
+     * @param  x    local x coordinate to transform into world coordinate.
+     * @param  y    local y coordinate to transform into world coordinate.
+     *
+     * @return world coordinates (x, y, z) for the specified local coordinates.
+     */
+    public double[] getWorldCoordinates(final CoordinateTransformList<CoordinateTransform> ctl,
+                                        final double x,
+                                        final double y) {
         final double[] worldCoordinates;
         final double[] w = new double[] {x, y};
 
-        if (hasTransforms()) {
-            final CoordinateTransformList<CoordinateTransform> ctl = getTransformList();
+        if (ctl != null) {
             ctl.applyInPlace(w);
         }
 
@@ -295,8 +312,8 @@ public class TileSpec implements Serializable {
         final double[] localCoordinates;
         final double[] l = new double[] {x, y};
         if (hasTransforms()) {
-            final CoordinateTransformMesh mesh = getCoordinateTransformMesh(meshCellSize);
-            mesh.applyInverseInPlace(l);
+            final TileInverseMesh inverseMesh = TileInverseMeshCache.getSharedInstance().get(this, meshCellSize);
+            inverseMesh.applyInverseInPlace(l);
         }
 
         if (z == null) {
@@ -308,6 +325,44 @@ public class TileSpec implements Serializable {
         return localCoordinates;
     }
 
+    /**
+     * Inversely transforms many world points for this tile using one (cached) inverse mesh.
+     *
+     * @param  worldPoints   world [x, y] points to inversely transform into local coordinates.
+     * @param  meshCellSize  mesh cell size for this tile.
+     *
+     * @return local coordinates (x, y, z) for each specified world point in the same order as the world points.
+     *         Elements for points that cannot be inverted are null.
+     *
+     * @throws IllegalStateException
+     *   if width or height have not been defined for this tile.
+     */
+    public double[][] getLocalCoordinates(final double[][] worldPoints,
+                                          final double meshCellSize)
+            throws IllegalStateException {
+
+        final double[][] localPoints;
+        if (hasTransforms()) {
+            final TileInverseMesh inverseMesh = TileInverseMeshCache.getSharedInstance().get(this, meshCellSize);
+            localPoints = inverseMesh.applyInverse(worldPoints);
+        } else {
+            localPoints = new double[worldPoints.length][];
+            for (int i = 0; i < worldPoints.length; i++) {
+                localPoints[i] = new double[] { worldPoints[i][0], worldPoints[i][1] };
+            }
+        }
+
+        if (z != null) {
+            for (int i = 0; i < localPoints.length; i++) {
+                if (localPoints[i] != null) {
+                    localPoints[i] = new double[] { localPoints[i][0], localPoints[i][1], z };
+                }
+            }
+        }
+
+        return localPoints;
+    }
+
     public boolean hasWidthAndHeightDefined() {
         return ((width != null) && (height != null));
     }
@@ -0,0 +1,132 @@
+package org.janelia.alignment.spec;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.janelia.alignment.json.JsonUtils;
+
+/**
+ * Identifies a transform spec to be applied to the transform lists of many existing tiles
+ * (e.g. all tiles in a range of layers) along with how it should be applied.
+ *
+ * Specs with an id are shared: tiles receive a reference to the spec instead of a copy.
+ *
+ * @author Eric Trautman
+ */
+public class TileTransformChange
+        implements Serializable {
+
+    public enum ApplicationMethod {
+
+        /** Add the transform to the end of each tile's list (so that it is applied after all others). */
+        APPEND,
+
+        /** Add the transform to the start of each tile's list (so that it is applied before all others). */
+        PREPEND,
+
+        /** Replace the last transform in each tile's list. */
+        REPLACE_LAST
+    }
+
+    private final TransformSpec transformSpec;
+    private final ApplicationMethod method;
+    private final List<String> tileIds;
+
+    // empty constructor required for JSON processing
+    @SuppressWarnings("unused")
+    private TileTransformChange() {
+        this(null, null, null);
+    }
+
+    /**
+     * @param  transformSpec  transform to apply.
+     * @param  method         how to apply the transform (null defaults to {@link ApplicationMethod#APPEND}).
+     * @param  tileIds        optional list of tile ids that restricts which tiles are changed.
+     */
+    public TileTransformChange(final TransformSpec transformSpec,
+                               final ApplicationMethod method,
+                               final List<String> tileIds) {
+        this.transformSpec = transformSpec;
+        this.method = method;
+        this.tileIds = tileIds;
+    }
+
+    public TransformSpec getTransformSpec() {
+        return transformSpec;
+    }
+
+    public ApplicationMethod getMethod() {
+        return method == null ? ApplicationMethod.APPEND : method;
+    }
+
+    public List<String> getTileIds() {
+        return tileIds;
+    }
+
+    public boolean hasTileIds() {
+        return (tileIds != null) && (tileIds.size() > 0);
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *   if this change does not have a transform spec.
+     */
+    public void validate()
+            throws IllegalArgumentException {
+        if (transformSpec == null) {
+            throw new IllegalArgumentException("transformSpec must be specified");
+        }
+    }
+
+    /**
+     * Applies this change to the specified tile's (unresolved) transform list.
+     * The tile's references must be resolved again before its bounding box can be re-derived.
+     *
+     * @param  tileSpec  tile to change.
+     */
+    public void applyTo(final TileSpec tileSpec) {
+
+        final TransformSpec tileTransformSpec;
+        if (transformSpec.hasId()) {
+            tileTransformSpec = new ReferenceTransformSpec(transformSpec.getId());
+        } else {
+            tileTransformSpec = transformSpec;
+        }
+
+        ListTransformSpec transforms = tileSpec.getTransforms();
+        if (transforms == null) {
+            transforms = new ListTransformSpec();
+        }
+
+        final ListTransformSpec changedTransforms = new ListTransformSpec(transforms.getId(),
+                                                                          transforms.getMetaData());
+        final ApplicationMethod effectiveMethod = getMethod();
+
+        if (effectiveMethod == ApplicationMethod.PREPEND) {
+            changedTransforms.addSpec(tileTransformSpec);
+        }
+
+        final int keepCount = (effectiveMethod == ApplicationMethod.REPLACE_LAST) ?
+                              Math.max(0, transforms.size() - 1) : transforms.size();
+        for (int i = 0; i < keepCount; i++) {
+            changedTransforms.addSpec(transforms.getSpec(i));
+        }
+
+        if (effectiveMethod != ApplicationMethod.PREPEND) {
+            changedTransforms.addSpec(tileTransformSpec);
+        }
+
+        tileSpec.setTransforms(changedTransforms);
+    }
+
+    public String toJson() {
+        return JSON_HELPER.toJson(this);
+    }
+
+    public static TileTransformChange fromJson(final String json) {
+        return JSON_HELPER.fromJson(json);
+    }
+
+    private static final JsonUtils.Helper<TileTransformChange> JSON_HELPER =
+            new JsonUtils.Helper<>(TileTransformChange.class);
+}
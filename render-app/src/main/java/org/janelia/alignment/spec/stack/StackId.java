@@ -11,6 +11,7 @@ import org.janelia.alignment.util.CollectionNameUtil;
  */
 public class StackId implements Comparable<StackId>, Serializable {
 
+    public static final String LAYER_COLLECTION_SUFFIX = "layer";
     public static final String SECTION_COLLECTION_SUFFIX = "section";
     public static final String TILE_COLLECTION_SUFFIX = "tile";
     public static final String TRANSFORM_COLLECTION_SUFFIX = "transform";
@@ -78,6 +79,10 @@ public class StackId implements Comparable<StackId>, Serializable {
         return v;
     }
 
+    public String getLayerCollectionName() {
+        return getCollectionName(LAYER_COLLECTION_SUFFIX);
+    }
+
     public String getSectionCollectionName() {
         return getCollectionName(SECTION_COLLECTION_SUFFIX);
     }
@@ -0,0 +1,112 @@
+package org.janelia.alignment;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Collections;
+
+import javax.imageio.ImageIO;
+
+import org.janelia.alignment.spec.LeafTransformSpec;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TransformSpec;
+import org.janelia.alignment.util.ImageProcessorCache;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link LowResolutionRenderer} class.
+ *
+ * @author Eric Trautman
+ */
+public class LowResolutionRendererTest {
+
+    private File imageFile;
+
+    @Before
+    public void setup() throws Exception {
+        imageFile = File.createTempFile("low_resolution_test_", ".png");
+        final BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_BYTE_GRAY);
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setColor(new Color(GRAY, GRAY, GRAY));
+        graphics.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+        graphics.dispose();
+        ImageIO.write(image, Utils.PNG_FORMAT, imageFile);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if ((imageFile != null) && imageFile.exists()) {
+            if (! imageFile.delete()) {
+                throw new IllegalStateException("failed to delete " + imageFile);
+            }
+        }
+    }
+
+    @Test
+    public void testRender() throws Exception {
+
+        final BufferedImage targetImage = render(LowResolutionRenderer.DEFAULT_MAX_SOURCE_PIXELS_PER_TARGET_PIXEL);
+
+        Assert.assertEquals("tile content not drawn",
+                            GRAY, new Color(targetImage.getRGB(50, 50)).getRed(), 2);
+
+        // the stacked tile is not representative, so it should only be outlined
+        Assert.assertEquals("stacked tile not outlined",
+                            Color.GREEN.getRGB(), targetImage.getRGB(0, 50));
+    }
+
+    @Test
+    public void testRenderWithoutPixelBudget() throws Exception {
+
+        final BufferedImage targetImage = render(0);
+
+        Assert.assertEquals("tile content should not be drawn when budget is exhausted",
+                            0, targetImage.getRGB(50, 50));
+
+        Assert.assertEquals("representative tile not outlined",
+                            Color.GREEN.getRGB(), targetImage.getRGB(OFFSET, 50));
+    }
+
+    private BufferedImage render(final int maxSourcePixelsPerTargetPixel) {
+
+        final RenderParameters renderParameters = new RenderParameters(null, 0, 0, 200, 200, 1.0);
+        renderParameters.addTileSpec(buildTileSpec("stacked", 0));
+        renderParameters.addTileSpec(buildTileSpec("top", OFFSET));
+
+        final BufferedImage targetImage = new BufferedImage(200, 200, BufferedImage.TYPE_INT_ARGB);
+
+        final LowResolutionRenderer renderer =
+                new LowResolutionRenderer(renderParameters,
+                                          Color.GREEN,
+                                          new ImageProcessorCache(),
+                                          LowResolutionRenderer.DEFAULT_MAX_RENDER_MILLIS,
+                                          maxSourcePixelsPerTargetPixel);
+        renderer.render(targetImage);
+
+        return targetImage;
+    }
+
+    private TileSpec buildTileSpec(final String tileId,
+                                   final int offset) {
+        final TileSpec tileSpec = new TileSpec();
+        tileSpec.setTileId(tileId);
+        tileSpec.setZ(1.0);
+        tileSpec.setWidth((double) TILE_SIZE);
+        tileSpec.setHeight((double) TILE_SIZE);
+        tileSpec.putMipmap(0, new ImageAndMask(imageFile, null));
+        tileSpec.addTransformSpecs(Collections.<TransformSpec>singletonList(
+                new LeafTransformSpec("mpicbg.trakem2.transform.AffineModel2D",
+                                      "1 0 0 1 " + offset + " " + offset)));
+        tileSpec.setBoundingBox(new Rectangle(offset, offset, TILE_SIZE, TILE_SIZE), tileSpec.getMeshCellSize());
+        return tileSpec;
+    }
+
+    private static final int TILE_SIZE = 100;
+    private static final int OFFSET = 2;
+    private static final int GRAY = 200;
+}
@@ -16,7 +16,20 @@
  */
 package org.janelia.alignment;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
 import java.util.Collections;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 import mpicbg.models.CoordinateTransform;
 import mpicbg.models.CoordinateTransformList;
@@ -35,6 +48,32 @@ import org.junit.Test;
  */
 public class UtilsTest {
 
+    @Test
+    public void testOpenCompressedStream() throws Exception {
+
+        final String content = "{\"tileId\": \"test\"}";
+
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/gzip", new CompressingHandler(content, "gzip", false));
+        // Jetty's GzipFilter writes raw (nowrap) deflate data by default
+        server.createContext("/deflate", new CompressingHandler(content, "deflate", true));
+        // most other servers write zlib wrapped deflate data
+        server.createContext("/zlib", new CompressingHandler(content, "deflate", false));
+        server.start();
+
+        try {
+            final String baseUrl = "http://localhost:" + server.getAddress().getPort();
+            Assert.assertEquals("invalid decoded gzip content",
+                                content, readContent(new URL(baseUrl + "/gzip")));
+            Assert.assertEquals("invalid decoded raw deflate content",
+                                content, readContent(new URL(baseUrl + "/deflate")));
+            Assert.assertEquals("invalid decoded zlib deflate content",
+                                content, readContent(new URL(baseUrl + "/zlib")));
+        } finally {
+            server.stop(0);
+        }
+    }
+
     @Test
     public void testSampleAverageScaleAndBestMipmapLevel() throws Exception {
 
@@ -101,4 +140,54 @@ public class UtilsTest {
 
         return Utils.bestMipmapLevel(sampleAverageScale);
     }
+
+    private String readContent(final URL url)
+            throws IOException {
+        final ByteArrayOutputStream decodedContent = new ByteArrayOutputStream();
+        try (InputStream in = Utils.openStream(url)) {
+            final byte[] buffer = new byte[1024];
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                decodedContent.write(buffer, 0, n);
+            }
+        }
+        return decodedContent.toString();
+    }
+
+    private static class CompressingHandler implements HttpHandler {
+
+        private final String content;
+        private final String encoding;
+        private final boolean nowrap;
+
+        public CompressingHandler(final String content,
+                                  final String encoding,
+                                  final boolean nowrap) {
+            this.content = content;
+            this.encoding = encoding;
+            this.nowrap = nowrap;
+        }
+
+        @Override
+        public void handle(final HttpExchange exchange)
+                throws IOException {
+            final String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            final boolean compress = (acceptEncoding != null) && acceptEncoding.contains(encoding);
+            if (compress) {
+                exchange.getResponseHeaders().set("Content-Encoding", encoding);
+            }
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                final OutputStream out;
+                if (! compress) {
+                    out = responseBody;
+                } else if ("gzip".equals(encoding)) {
+                    out = new GZIPOutputStream(responseBody);
+                } else {
+                    out = new DeflaterOutputStream(responseBody, new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap));
+                }
+                out.write(content.getBytes());
+                out.close();
+            }
+        }
+    }
 }
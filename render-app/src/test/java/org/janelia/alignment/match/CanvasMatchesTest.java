@@ -0,0 +1,84 @@
+package org.janelia.alignment.match;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link CanvasMatches} and {@link Matches} packed binary conversions.
+ *
+ * @author Eric Trautman
+ */
+public class CanvasMatchesTest {
+
+    @Test
+    public void testPackedMatchesConversion() throws Exception {
+
+        final Matches matches = buildMatches();
+        final byte[] packedBytes = matches.toPackedBytes();
+
+        Assert.assertEquals("invalid packed length", 8 + (5 * 3 * 8), packedBytes.length);
+
+        final Matches unpackedMatches = Matches.fromPackedBytes(packedBytes);
+
+        for (int d = 0; d < 2; d++) {
+            Assert.assertArrayEquals("invalid p values for dimension " + d,
+                                     matches.getPs()[d], unpackedMatches.getPs()[d], 0.0);
+            Assert.assertArrayEquals("invalid q values for dimension " + d,
+                                     matches.getQs()[d], unpackedMatches.getQs()[d], 0.0);
+        }
+        Assert.assertArrayEquals("invalid w values", matches.getWs(), unpackedMatches.getWs(), 0.0);
+
+        try {
+            Matches.fromPackedBytes(Arrays.copyOf(packedBytes, packedBytes.length - 1));
+            Assert.fail("truncated bytes should not be unpacked");
+        } catch (final IllegalArgumentException e) {
+            Assert.assertTrue(true); // test passed
+        }
+    }
+
+    @Test
+    public void testPackedStream() throws Exception {
+
+        final List<CanvasMatches> list = Arrays.asList(
+                new CanvasMatches("section1", "tile1.1", "section2", "tile2.1", buildMatches()),
+                new CanvasMatches("section1", "tile1.2", "section2", "tile2.2", buildMatches()));
+
+        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(byteArrayOutputStream);
+        for (final CanvasMatches canvasMatches : list) {
+            out.write(CanvasMatches.PACKED_RECORD_MARKER);
+            canvasMatches.writePacked(out);
+        }
+        out.write(CanvasMatches.PACKED_END_MARKER);
+        out.flush();
+
+        final byte[] bytes = byteArrayOutputStream.toByteArray();
+        final List<CanvasMatches> readList = CanvasMatches.fromPackedStream(new ByteArrayInputStream(bytes));
+
+        Assert.assertEquals("invalid number of matches read", list.size(), readList.size());
+        for (int i = 0; i < list.size(); i++) {
+            Assert.assertEquals("invalid matches read for item " + i,
+                                list.get(i).toJson(), readList.get(i).toJson());
+        }
+
+        try {
+            CanvasMatches.fromPackedStream(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1)));
+            Assert.fail("unterminated stream should not be read");
+        } catch (final IOException e) {
+            Assert.assertTrue(true); // test passed
+        }
+    }
+
+    private Matches buildMatches() {
+        return new Matches(new double[][] { {1.1, 2.2, 3.3}, {4.4, 5.5, 6.6} },
+                           new double[][] { {11.1, 12.2, 13.3}, {14.4, 15.5, 16.6} },
+                           new double[] {1.0, 0.5, 0.25});
+    }
+}
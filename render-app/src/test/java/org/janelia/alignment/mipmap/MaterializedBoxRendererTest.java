@@ -0,0 +1,47 @@
+package org.janelia.alignment.mipmap;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link MaterializedBoxRenderer} class.
+ *
+ * @author Eric Trautman
+ */
+public class MaterializedBoxRendererTest {
+
+    private static final String ROOT_PATH = "src/test/resources/box-test/test-project/test-stack";
+
+    @Test
+    public void testFindAndRender() throws Exception {
+
+        // only level 0 boxes exist for z 11 (rows 1-2, columns 2-3), so level 1 requests should fall back to level 0
+        final MaterializedBoxRenderer renderer =
+                MaterializedBoxRenderer.find(ROOT_PATH, 296.0, 148.0, 11.0, 296, 296, 0.5);
+
+        Assert.assertNotNull("renderer should have been found", renderer);
+        Assert.assertEquals("invalid level", 0, renderer.getLevel());
+
+        final BufferedImage targetImage = new BufferedImage(148, 148, BufferedImage.TYPE_INT_ARGB);
+        final int drawnCount = renderer.render(targetImage, null);
+
+        Assert.assertEquals("invalid number of boxes drawn", 4, drawnCount);
+
+        Assert.assertNull("renderer should not be found for missing z",
+                          MaterializedBoxRenderer.find(ROOT_PATH, 296.0, 148.0, 99.0, 296, 296, 0.5));
+
+        Assert.assertNull("renderer should not be found for coarse scale without nearby levels",
+                          MaterializedBoxRenderer.find(ROOT_PATH, 296.0, 148.0, 11.0, 296, 296, 0.05));
+    }
+
+    @Test
+    public void testFindWithFractionalZ() throws Exception {
+
+        // boxes exist for z 11, but they must not be used for a different layer like z 11.5
+        Assert.assertNull("renderer should not be found for fractional z",
+                          MaterializedBoxRenderer.find(ROOT_PATH, 296.0, 148.0, 11.5, 296, 296, 0.5));
+    }
+
+}
@@ -2,6 +2,7 @@ package org.janelia.alignment.spec;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -55,6 +56,26 @@ public class TileBoundsRTreeTest {
 
     }
 
+    @Test
+    public void testFindTilesContainingPoint()
+            throws Exception {
+
+        // point in overlap of four tiles
+        List<TileBounds> tilesContainingPoint = tree.findTilesContainingPoint(9.5, 9.5);
+        validateSearchResults("overlap point search", tilesContainingPoint,
+                              new HashSet<>(Arrays.asList(getTileId(0, z), getTileId(1, z),
+                                                          getTileId(3, z), getTileId(4, z))));
+
+        // point on edge of tile-0 only (bounds are inclusive)
+        tilesContainingPoint = tree.findTilesContainingPoint(5.0, 0.0);
+        validateSearchResults("edge point search", tilesContainingPoint,
+                              new HashSet<>(Collections.singletonList(getTileId(0, z))));
+
+        // point just outside of tile-0 (would be found by float precision box search)
+        tilesContainingPoint = tree.findTilesContainingPoint(5.0, -0.0000001);
+        validateSearchResults("outside point search", tilesContainingPoint, new HashSet<String>());
+    }
+
     @Test
     public void testGetCircleNeighbors()
             throws Exception {
@@ -0,0 +1,84 @@
+package org.janelia.alignment.spec;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import mpicbg.models.CoordinateTransformMesh;
+import mpicbg.models.NoninvertibleModelException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link TileInverseMesh} and {@link TileInverseMeshCache} classes.
+ *
+ * @author Eric Trautman
+ */
+public class TileInverseMeshTest {
+
+    @Test
+    public void testInverseMatchesMesh() throws Exception {
+
+        final TileSpec tileSpec = loadTileSpec("src/test/resources/tile-test/tile_with_non_invertible_transforms.json");
+        final double meshCellSize = tileSpec.getMeshCellSize();
+
+        final CoordinateTransformMesh mesh = tileSpec.getCoordinateTransformMesh(meshCellSize);
+        final TileInverseMesh inverseMesh = new TileInverseMesh(mesh);
+
+        final int step = 97;
+        final List<double[]> worldPointList = new ArrayList<>();
+        for (int localX = 1; localX < tileSpec.getWidth() - step; localX += step) {
+            for (int localY = 1; localY < tileSpec.getHeight() - step; localY += step) {
+                worldPointList.add(tileSpec.getWorldCoordinates(localX, localY));
+            }
+        }
+
+        final double[][] worldPoints = worldPointList.toArray(new double[worldPointList.size()][]);
+        final double[][] localPoints = inverseMesh.applyInverse(worldPoints);
+
+        double[] expected;
+        for (int i = 0; i < worldPoints.length; i++) {
+            expected = new double[] { worldPoints[i][0], worldPoints[i][1] };
+            mesh.applyInverseInPlace(expected);
+            Assert.assertNotNull("point " + i + " should be invertible", localPoints[i]);
+            Assert.assertEquals("invalid x for point " + i, expected[0], localPoints[i][0], MAX_DOUBLE_DELTA);
+            Assert.assertEquals("invalid y for point " + i, expected[1], localPoints[i][1], MAX_DOUBLE_DELTA);
+        }
+
+        final double[] outsidePoint = { -99999.0, -99999.0 };
+        try {
+            inverseMesh.applyInverseInPlace(outsidePoint);
+            Assert.fail("point outside mesh should not be invertible");
+        } catch (final NoninvertibleModelException e) {
+            Assert.assertTrue(true); // test passed
+        }
+    }
+
+    @Test
+    public void testCache() throws Exception {
+
+        final TileSpec tileSpec = loadTileSpec("src/test/resources/tile-test/tile_with_only_affine_transforms.json");
+        final TileInverseMeshCache cache = new TileInverseMeshCache(TileInverseMeshCache.DEFAULT_MAX_CACHED_TRIANGLES);
+
+        final TileInverseMesh firstMesh = cache.get(tileSpec, tileSpec.getMeshCellSize());
+        final TileInverseMesh secondMesh = cache.get(tileSpec, tileSpec.getMeshCellSize());
+
+        Assert.assertSame("mesh should have been retrieved from cache", firstMesh, secondMesh);
+        Assert.assertEquals("invalid number of cached meshes", 1, cache.size());
+
+        final TileInverseMesh coarserMesh = cache.get(tileSpec, tileSpec.getMeshCellSize() * 2);
+
+        Assert.assertNotSame("mesh with different cell size should not be shared", firstMesh, coarserMesh);
+        Assert.assertEquals("invalid number of cached meshes after second cell size", 2, cache.size());
+    }
+
+    private TileSpec loadTileSpec(final String path)
+            throws Exception {
+        final byte[] jsonBytes = Files.readAllBytes(Paths.get(path));
+        return TileSpec.fromJson(new String(jsonBytes));
+    }
+
+    private static final double MAX_DOUBLE_DELTA = 0.0001;
+}
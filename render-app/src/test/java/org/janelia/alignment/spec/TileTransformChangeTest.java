@@ -0,0 +1,95 @@
+package org.janelia.alignment.spec;
+
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link TileTransformChange} class.
+ *
+ * @author Eric Trautman
+ */
+public class TileTransformChangeTest {
+
+    @Test
+    public void testApplyTo() throws Exception {
+
+        final LeafTransformSpec sharedSpec = new LeafTransformSpec("shared", null, AFFINE, "1 0 0 1 10 0");
+        final LeafTransformSpec inlineSpec = new LeafTransformSpec(AFFINE, "1 0 0 1 0 20");
+
+        TileSpec tileSpec = buildTileSpec();
+        new TileTransformChange(sharedSpec, null, null).applyTo(tileSpec);
+        validateTransforms("append", tileSpec, "first", "second", "ref:shared");
+
+        tileSpec = buildTileSpec();
+        new TileTransformChange(sharedSpec, TileTransformChange.ApplicationMethod.PREPEND, null).applyTo(tileSpec);
+        validateTransforms("prepend", tileSpec, "ref:shared", "first", "second");
+
+        tileSpec = buildTileSpec();
+        new TileTransformChange(inlineSpec, TileTransformChange.ApplicationMethod.REPLACE_LAST, null).applyTo(tileSpec);
+        validateTransforms("replace last", tileSpec, "first", "inline");
+    }
+
+    @Test
+    public void testJsonProcessing() throws Exception {
+
+        final LeafTransformSpec spec = new LeafTransformSpec("shared", null, AFFINE, "1 0 0 1 10 0");
+        final TileTransformChange change =
+                new TileTransformChange(spec,
+                                        TileTransformChange.ApplicationMethod.PREPEND,
+                                        Collections.singletonList("tile-a"));
+
+        final TileTransformChange parsedChange = TileTransformChange.fromJson(change.toJson());
+
+        Assert.assertNotNull("null change parsed", parsedChange);
+        Assert.assertEquals("invalid transform id parsed", "shared", parsedChange.getTransformSpec().getId());
+        Assert.assertEquals("invalid method parsed",
+                            TileTransformChange.ApplicationMethod.PREPEND, parsedChange.getMethod());
+        Assert.assertEquals("invalid tile ids parsed", change.getTileIds(), parsedChange.getTileIds());
+
+        final TileTransformChange defaultChange = TileTransformChange.fromJson("{\"transformSpec\": " +
+                                                                               spec.toJson() + "}");
+        Assert.assertEquals("invalid default method",
+                            TileTransformChange.ApplicationMethod.APPEND, defaultChange.getMethod());
+        Assert.assertFalse("default change should not have tile ids", defaultChange.hasTileIds());
+    }
+
+    private TileSpec buildTileSpec() {
+        final TileSpec tileSpec = new TileSpec();
+        tileSpec.setTileId("tile-a");
+        tileSpec.getTransforms().addSpec(new LeafTransformSpec(AFFINE, "1 0 0 1 1 0"));
+        tileSpec.getTransforms().addSpec(new LeafTransformSpec(AFFINE, "1 0 0 1 2 0"));
+        return tileSpec;
+    }
+
+    private void validateTransforms(final String context,
+                                    final TileSpec tileSpec,
+                                    final String... expectedNames) {
+
+        final ListTransformSpec transforms = tileSpec.getTransforms();
+        Assert.assertEquals("invalid number of transforms after " + context,
+                            expectedNames.length, transforms.size());
+
+        String actualName;
+        TransformSpec spec;
+        for (int i = 0; i < expectedNames.length; i++) {
+            spec = transforms.getSpec(i);
+            if (spec instanceof ReferenceTransformSpec) {
+                actualName = "ref:" + ((ReferenceTransformSpec) spec).getRefId();
+            } else {
+                final String dataString = ((LeafTransformSpec) spec).getDataString();
+                if (dataString.endsWith("1 0")) {
+                    actualName = "first";
+                } else if (dataString.endsWith("2 0")) {
+                    actualName = "second";
+                } else {
+                    actualName = "inline";
+                }
+            }
+            Assert.assertEquals("invalid transform " + i + " after " + context, expectedNames[i], actualName);
+        }
+    }
+
+    private static final String AFFINE = "mpicbg.trakem2.transform.AffineModel2D";
+}
@@ -7,6 +7,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
 
+import org.apache.http.HttpHeaders;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
@@ -24,9 +25,12 @@ import org.janelia.alignment.spec.SectionData;
 import org.janelia.alignment.spec.TileBounds;
 import org.janelia.alignment.spec.TileCoordinates;
 import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TileTransformChange;
 import org.janelia.alignment.spec.stack.StackMetaData;
 import org.janelia.alignment.spec.stack.StackVersion;
+import org.janelia.render.client.request.StreamedJsonEntity;
 import org.janelia.render.client.request.WaitingRetryHandler;
+import org.janelia.render.client.response.BaseResponseHandler;
 import org.janelia.render.client.response.JsonResponseHandler;
 import org.janelia.render.client.response.ResourceCreatedResponseHandler;
 import org.janelia.render.client.response.TextResponseHandler;
@@ -42,8 +46,16 @@ import static org.janelia.alignment.spec.stack.StackMetaData.StackState;
  */
 public class RenderDataClient {
 
+    /**
+     * Accept header value for data requests that prefers compact binary Smile encoded data
+     * but falls back to JSON for servers that do not support Smile.
+     */
+    public static final String DATA_ACCEPT_HEADER_VALUE =
+            BaseResponseHandler.SMILE_MIME_TYPE + ", " + BaseResponseHandler.JSON_MIME_TYPE + ";q=0.9";
+
     private final RenderWebServiceUrls urls;
     private final CloseableHttpClient httpClient;
+    private boolean acceptBinaryData;
 
     /**
      * Creates a new client for the specified owner and project.
@@ -56,7 +68,20 @@ public class RenderDataClient {
                             final String owner,
                             final String project) {
         this.urls = new RenderWebServiceUrls(baseDataUrl, owner, project);
+        // Note: content compression is enabled by default for built clients, so all requests advertise
+        //       gzip and deflate support and compressed responses are decoded as they are read.
+        //       Do not call disableContentCompression() here.
         this.httpClient = HttpClientBuilder.create().setRetryHandler(new WaitingRetryHandler()).build();
+        this.acceptBinaryData = true;
+    }
+
+    /**
+     * @param  acceptBinaryData  indicates whether binary Smile encoded data should be requested
+     *                           for tile, resolved tile, and match data (true by default).
+     *                           Set to false to always request JSON.
+     */
+    public void setAcceptBinaryData(final boolean acceptBinaryData) {
+        this.acceptBinaryData = acceptBinaryData;
     }
 
     @Override
@@ -401,7 +426,7 @@ public class RenderDataClient {
             throws IOException {
 
         final URI uri = getUri(urls.getTileUrlString(stack, tileId));
-        final HttpGet httpGet = new HttpGet(uri);
+        final HttpGet httpGet = getDataGet(uri);
         final String requestContext = "GET " + uri;
         final JsonUtils.Helper<TileSpec> helper = new JsonUtils.Helper<>(TileSpec.class);
         final JsonResponseHandler<TileSpec> responseHandler = new JsonResponseHandler<>(requestContext, helper);
@@ -449,7 +474,7 @@ public class RenderDataClient {
             throws IOException {
 
         final URI uri = getUri(urls.getTileBoundsUrlString(stack, z));
-        final HttpGet httpGet = new HttpGet(uri);
+        final HttpGet httpGet = getDataGet(uri);
         final String requestContext = "GET " + uri;
         final TypeReference<List<TileBounds>> typeReference = new TypeReference<List<TileBounds>>() {};
         final JsonUtils.GenericHelper<List<TileBounds>> helper = new JsonUtils.GenericHelper<>(typeReference);
@@ -475,19 +500,54 @@ public class RenderDataClient {
                                 final List<String> tileIds)
             throws IOException {
 
-        final String json = JsonUtils.FAST_MAPPER.writeValueAsString(tileIds);
-        final StringEntity stringEntity = new StringEntity(json, ContentType.APPLICATION_JSON);
-        final URI uri = getUri(urls.getTileIdsUrlString(stack, z));
-        final String requestContext = "PUT " + uri;
-        final ResourceCreatedResponseHandler responseHandler = new ResourceCreatedResponseHandler(requestContext);
+        putTileIds("updateZForTiles", getUri(urls.getTileIdsUrlString(stack, z)), tileIds);
+    }
 
-        final HttpPut httpPut = new HttpPut(uri);
-        httpPut.setEntity(stringEntity);
+    /**
+     * Updates the group id (label) for the specified tiles.
+     *
+     * @param  stack    name of stack.
+     * @param  groupId  new group id for specified tiles.
+     * @param  tileIds  list of tiles to update.
+     *
+     * @throws IOException
+     *   if the request fails for any reason.
+     */
+    public void updateGroupIdForTiles(final String stack,
+                                      final String groupId,
+                                      final List<String> tileIds)
+            throws IOException {
+        putTileIds("updateGroupIdForTiles", getUri(urls.getGroupTileIdsUrlString(stack, groupId)), tileIds);
+    }
 
-        LOG.info("updateZForTiles: submitting {} for {} tileIds",
-                 requestContext, tileIds.size());
+    /**
+     * Removes the group id (label) from the specified tiles.
+     *
+     * @param  stack    name of stack.
+     * @param  tileIds  list of tiles to update.
+     *
+     * @throws IOException
+     *   if the request fails for any reason.
+     */
+    public void removeGroupIdForTiles(final String stack,
+                                      final List<String> tileIds)
+            throws IOException {
+        putTileIds("removeGroupIdForTiles", getUri(urls.getUngroupedTileIdsUrlString(stack)), tileIds);
+    }
 
-        httpClient.execute(httpPut, responseHandler);
+    /**
+     * Deletes the specified tiles with one request.
+     *
+     * @param  stack    stack containing tiles to delete.
+     * @param  tileIds  ids of tiles to delete.
+     *
+     * @throws IOException
+     *   if the request fails for any reason.
+     */
+    public void deleteStackTiles(final String stack,
+                                 final List<String> tileIds)
+            throws IOException {
+        putTileIds("deleteStackTiles", getUri(urls.getRemovedTileIdsUrlString(stack)), tileIds);
     }
 
     /**
@@ -504,7 +564,7 @@ public class RenderDataClient {
             throws IOException {
 
         final URI uri = getResolvedTilesUri(stack, z);
-        final HttpGet httpGet = new HttpGet(uri);
+        final HttpGet httpGet = getDataGet(uri);
         final String requestContext = "GET " + uri;
         final JsonUtils.Helper<ResolvedTileSpecCollection> helper =
                 new JsonUtils.Helper<>(ResolvedTileSpecCollection.class);
@@ -551,7 +611,7 @@ public class RenderDataClient {
         addParameterIfDefined("maxY", maxY, uriBuilder);
 
         final URI uri = getUri(uriBuilder);
-        final HttpGet httpGet = new HttpGet(uri);
+        final HttpGet httpGet = getDataGet(uri);
         final String requestContext = "GET " + uri;
         final JsonUtils.Helper<ResolvedTileSpecCollection> helper =
                 new JsonUtils.Helper<>(ResolvedTileSpecCollection.class);
@@ -578,14 +638,12 @@ public class RenderDataClient {
                                   final Double z)
             throws IOException {
 
-        final String json = resolvedTiles.toJson();
-        final StringEntity stringEntity = new StringEntity(json, ContentType.APPLICATION_JSON);
         final URI uri = getResolvedTilesUri(stack, z);
         final String requestContext = "PUT " + uri;
         final ResourceCreatedResponseHandler responseHandler = new ResourceCreatedResponseHandler(requestContext);
 
         final HttpPut httpPut = new HttpPut(uri);
-        httpPut.setEntity(stringEntity);
+        httpPut.setEntity(new StreamedJsonEntity(resolvedTiles));
 
         LOG.info("saveResolvedTiles: submitting {} for {} transforms and {} tiles",
                  requestContext, resolvedTiles.getTransformCount(), resolvedTiles.getTileCount());
@@ -593,6 +651,43 @@ public class RenderDataClient {
         httpClient.execute(httpPut, responseHandler);
     }
 
+    /**
+     * Applies a transform to all tiles in the specified z range.
+     * Tiles are changed and their bounding boxes are re-derived by the server,
+     * so no tile data is transferred.
+     *
+     * @param  stack            name of stack.
+     * @param  minZ             minimum z value for changed tiles (or null for no minimum).
+     * @param  maxZ             maximum z value for changed tiles (or null for no maximum).
+     * @param  transformChange  transform to apply and how to apply it.
+     *
+     * @throws IOException
+     *   if the request fails for any reason.
+     */
+    public void applyTransformToTiles(final String stack,
+                                      final Double minZ,
+                                      final Double maxZ,
+                                      final TileTransformChange transformChange)
+            throws IOException {
+
+        final String json = transformChange.toJson();
+        final StringEntity stringEntity = new StringEntity(json, ContentType.APPLICATION_JSON);
+        final URIBuilder uriBuilder = new URIBuilder(getUri(urls.getStackUrlString(stack) + "/tileTransforms"));
+        addParameterIfDefined("minZ", minZ, uriBuilder);
+        addParameterIfDefined("maxZ", maxZ, uriBuilder);
+        final URI uri = getUri(uriBuilder);
+        final String requestContext = "PUT " + uri;
+        final ResourceCreatedResponseHandler responseHandler = new ResourceCreatedResponseHandler(requestContext);
+
+        final HttpPut httpPut = new HttpPut(uri);
+        httpPut.setEntity(stringEntity);
+
+        LOG.info("applyTransformToTiles: submitting {} to {} transform {}",
+                 requestContext, transformChange.getMethod(), transformChange.getTransformSpec().getId());
+
+        httpClient.execute(httpPut, responseHandler);
+    }
+
     /**
      * Updates the z value for the specified stack section.
      *
@@ -634,7 +729,7 @@ public class RenderDataClient {
             throws IOException {
 
         final URI uri = getUri(urls.getMatchesWithPGroupIdUrlString(pGroupId));
-        final HttpGet httpGet = new HttpGet(uri);
+        final HttpGet httpGet = getDataGet(uri);
         final String requestContext = "GET " + uri;
         final TypeReference<List<CanvasMatches>> typeReference = new TypeReference<List<CanvasMatches>>() {};
         final JsonUtils.GenericHelper<List<CanvasMatches>> helper = new JsonUtils.GenericHelper<>(typeReference);
@@ -658,14 +753,12 @@ public class RenderDataClient {
 
         if (canvasMatches.size() > 0) {
 
-            final String json = JsonUtils.MAPPER.writeValueAsString(canvasMatches);
-            final StringEntity stringEntity = new StringEntity(json, ContentType.APPLICATION_JSON);
             final URI uri = getUri(urls.getMatchesUrlString());
             final String requestContext = "PUT " + uri;
             final ResourceCreatedResponseHandler responseHandler = new ResourceCreatedResponseHandler(requestContext);
 
             final HttpPut httpPut = new HttpPut(uri);
-            httpPut.setEntity(stringEntity);
+            httpPut.setEntity(new StreamedJsonEntity(canvasMatches));
 
             LOG.info("saveMatches: submitting {} for {} pair(s)", requestContext, canvasMatches.size());
 
@@ -784,6 +877,30 @@ public class RenderDataClient {
         return getUri(baseUrlString + "/resolvedTiles");
     }
 
+    private void putTileIds(final String context,
+                            final URI uri,
+                            final List<String> tileIds)
+            throws IOException {
+
+        final String requestContext = "PUT " + uri;
+        final ResourceCreatedResponseHandler responseHandler = new ResourceCreatedResponseHandler(requestContext);
+
+        final HttpPut httpPut = new HttpPut(uri);
+        httpPut.setEntity(new StreamedJsonEntity(tileIds));
+
+        LOG.info("{}: submitting {} for {} tileIds", context, requestContext, tileIds.size());
+
+        httpClient.execute(httpPut, responseHandler);
+    }
+
+    private HttpGet getDataGet(final URI uri) {
+        final HttpGet httpGet = new HttpGet(uri);
+        if (acceptBinaryData) {
+            httpGet.setHeader(HttpHeaders.ACCEPT, DATA_ACCEPT_HEADER_VALUE);
+        }
+        return httpGet;
+    }
+
     private URI getUri(final String forString)
             throws IOException {
         final URI uri;
@@ -99,6 +99,19 @@ public class RenderWebServiceUrls {
         return getZUrlString(stack, z) + "/tileIds";
     }
 
+    public String getGroupTileIdsUrlString(final String stack,
+                                           final String groupId) {
+        return getStackUrlString(stack) + "/group/" + groupId + "/tileIds";
+    }
+
+    public String getUngroupedTileIdsUrlString(final String stack) {
+        return getStackUrlString(stack) + "/ungroupedTileIds";
+    }
+
+    public String getRemovedTileIdsUrlString(final String stack) {
+        return getStackUrlString(stack) + "/removedTileIds";
+    }
+
     public String getTileIdsForCoordinatesUrlString(final String stack,
                                                     final Double z) {
         final String baseUrlString;
@@ -199,8 +199,10 @@ public class TileRemovalClient {
 
     public void removeTiles(final RenderDataClient renderDataClient)
             throws Exception {
-        for (final String tileId : parameters.tileIdList) {
-            renderDataClient.deleteStackTile(parameters.stack, tileId);
+        if ((parameters.tileIdList == null) || (parameters.tileIdList.size() == 0)) {
+            LOG.info("removeTiles: no tiles to remove");
+        } else {
+            renderDataClient.deleteStackTiles(parameters.stack, parameters.tileIdList);
         }
     }
 
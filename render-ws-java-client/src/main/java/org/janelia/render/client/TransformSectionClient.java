@@ -6,6 +6,7 @@ import java.util.List;
 
 import org.janelia.alignment.spec.LeafTransformSpec;
 import org.janelia.alignment.spec.ResolvedTileSpecCollection;
+import org.janelia.alignment.spec.TileTransformChange;
 import org.janelia.alignment.spec.validator.TileSpecValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -120,6 +121,23 @@ public class TransformSectionClient {
 
         LOG.info("generateStackDataForZ: entry, z={}", z);
 
+        if (isServerSideChangePossible()) {
+
+            // tiles are changed in place and don't need to be validated,
+            // so let the server do the work instead of transferring all tile data both ways
+            final TileTransformChange.ApplicationMethod method = parameters.replaceLast ?
+                                                                 TileTransformChange.ApplicationMethod.REPLACE_LAST :
+                                                                 TileTransformChange.ApplicationMethod.APPEND;
+            sourceRenderDataClient.applyTransformToTiles(parameters.stack,
+                                                         z,
+                                                         z,
+                                                         new TileTransformChange(stackTransform, method, null));
+
+            LOG.info("generateStackDataForZ: exit, applied transform to tiles for {}", z);
+
+            return;
+        }
+
         final ResolvedTileSpecCollection tiles = sourceRenderDataClient.getResolvedTiles(parameters.stack, z);
 
         tiles.addTransformSpecToCollection(stackTransform);
@@ -140,5 +158,11 @@ public class TransformSectionClient {
         LOG.info("generateStackDataForZ: exit, saved tiles and transforms for {}", z);
     }
 
+    private boolean isServerSideChangePossible() {
+        return (tileSpecValidator == null) &&
+               (targetRenderDataClient == sourceRenderDataClient) &&
+               parameters.stack.equals(parameters.getTargetStack());
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(TransformSectionClient.class);
 }
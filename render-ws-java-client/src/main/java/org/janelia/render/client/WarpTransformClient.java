@@ -10,6 +10,7 @@ import mpicbg.trakem2.transform.CoordinateTransform;
 import org.janelia.alignment.spec.LeafTransformSpec;
 import org.janelia.alignment.spec.ResolvedTileSpecCollection;
 import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TileTransformChange;
 import org.janelia.alignment.spec.TransformSpec;
 import org.janelia.alignment.spec.validator.TileSpecValidator;
 import org.janelia.alignment.warp.AbstractWarpTransformBuilder;
@@ -99,6 +100,22 @@ public class WarpTransformClient {
 
         LOG.info("generateStackDataForZ: derived warp transform for {}", z);
 
+        if ((tileSpecValidator == null) && parameters.montageStack.equals(parameters.targetStack)) {
+
+            // montage tiles are being warped in place, so let the server apply the transform
+            // instead of sending all of the tile data back
+            renderDataClient.applyTransformToTiles(parameters.targetStack,
+                                                   z,
+                                                   z,
+                                                   new TileTransformChange(warpTransformSpec,
+                                                                           TileTransformChange.ApplicationMethod.APPEND,
+                                                                           null));
+
+            LOG.info("generateStackDataForZ: exit, applied warp transform to tiles for {}", z);
+
+            return;
+        }
+
         montageTiles.addTransformSpecToCollection(warpTransformSpec);
         montageTiles.addReferenceTransformToAllTiles(warpTransformSpec.getId(), false);
 
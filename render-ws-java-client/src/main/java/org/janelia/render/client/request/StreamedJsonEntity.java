@@ -0,0 +1,65 @@
+package org.janelia.render.client.request;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.janelia.alignment.json.JsonUtils;
+
+/**
+ * Request entity that streams compact JSON for a data object to the service
+ * (which processes it as it is parsed) instead of building one large string.
+ *
+ * The data object is re-serialized each time the entity is written, so the entity is repeatable
+ * and requests that fail with a recoverable I/O error can be retried (see {@link WaitingRetryHandler}).
+ * Callers must therefore not modify the data object until the request has completed.
+ *
+ * @author Eric Trautman
+ */
+public class StreamedJsonEntity extends AbstractHttpEntity {
+
+    private final Object data;
+
+    public StreamedJsonEntity(final Object data) {
+        this.data = data;
+        setContentType(ContentType.APPLICATION_JSON.toString());
+        setChunked(true);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public InputStream getContent()
+            throws IOException {
+        return new ByteArrayInputStream(JsonUtils.FAST_MAPPER.writeValueAsBytes(data));
+    }
+
+    @Override
+    public void writeTo(final OutputStream outputStream)
+            throws IOException {
+        // leave the target open so that the connection can finish the request (e.g. write the last chunk)
+        final JsonGenerator generator = JsonUtils.FAST_MAPPER.getFactory().createGenerator(outputStream);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        JsonUtils.FAST_MAPPER.writeValue(generator, data);
+        generator.close();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+}
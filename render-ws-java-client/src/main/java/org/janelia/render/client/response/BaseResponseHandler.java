@@ -8,6 +8,7 @@ import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.entity.ContentType;
+import org.janelia.alignment.json.JsonUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,6 +26,7 @@ public class BaseResponseHandler {
 
     public static final String TEXT_PLAIN_MIME_TYPE = ContentType.TEXT_PLAIN.getMimeType();
     public static final String JSON_MIME_TYPE = ContentType.APPLICATION_JSON.getMimeType();
+    public static final String SMILE_MIME_TYPE = JsonUtils.SMILE_MIME_TYPE;
 
     public static final Set<Integer> OK = new HashSet<Integer>(Arrays.asList(HttpStatus.SC_OK));
     public static final Set<Integer> CREATED = new HashSet<Integer>(Arrays.asList(HttpStatus.SC_CREATED));
@@ -0,0 +1,33 @@
+package org.janelia.render.client.request;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link StreamedJsonEntity} class.
+ *
+ * @author Eric Trautman
+ */
+public class StreamedJsonEntityTest {
+
+    @Test
+    public void testRepeatedWrites() throws Exception {
+
+        final List<String> tileIds = Arrays.asList("tile-1", "tile-2", "tile-3");
+        final StreamedJsonEntity entity = new StreamedJsonEntity(tileIds);
+
+        Assert.assertTrue("entity should be repeatable", entity.isRepeatable());
+
+        final String expectedJson = "[\"tile-1\",\"tile-2\",\"tile-3\"]";
+        for (int i = 0; i < 2; i++) {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            entity.writeTo(outputStream);
+            Assert.assertEquals("invalid json written for attempt " + i, expectedJson, outputStream.toString());
+        }
+    }
+
+}
@@ -1,11 +1,24 @@
 package org.janelia.render.service;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
@@ -201,14 +214,16 @@ public class CoordinateService {
                  owner, project, stack, localCoordinatesList.size());
 
         final long startTime = System.currentTimeMillis();
-        long lastStatusTime = startTime;
-        final List<TileCoordinates> worldCoordinatesList = new ArrayList<>(localCoordinatesList.size());
         final StackId stackId = new StackId(owner, project, stack);
-        TileSpec tileSpec;
+
+        final TileCoordinates[] worldCoordinatesArray = new TileCoordinates[localCoordinatesList.size()];
+
+        // group coordinates by tile so that each distinct tile spec is only loaded and transformed once
+        final Map<String, List<Integer>> tileIdToIndexes = new LinkedHashMap<>();
         TileCoordinates coordinates;
         String tileId;
         double[] local;
-        int errorCount = 0;
+        List<Integer> indexes;
         for (int i = 0; i < localCoordinatesList.size(); i++) {
 
             coordinates = localCoordinatesList.get(i);
@@ -230,33 +245,76 @@ public class CoordinateService {
                     throw new IllegalArgumentException("local values must include both x and y");
                 }
 
-                tileSpec = renderDao.getTileSpec(stackId, tileId, true);
-                worldCoordinatesList.add(TileCoordinates.getWorldCoordinates(tileSpec, local[0], local[1]));
+                indexes = tileIdToIndexes.get(tileId);
+                if (indexes == null) {
+                    indexes = new ArrayList<>();
+                    tileIdToIndexes.put(tileId, indexes);
+                }
+                indexes.add(i);
 
             } catch (final Throwable t) {
 
                 LOG.warn("getWorldCoordinates: caught exception for list item {}, adding original coordinates with error message to list", i, t);
 
-                errorCount++;
-
                 if (coordinates == null) {
                     coordinates = TileCoordinates.buildLocalInstance(null, null);
                 }
                 coordinates.setError(t.getMessage());
 
-                worldCoordinatesList.add(coordinates);
+                worldCoordinatesArray[i] = coordinates;
             }
+        }
 
-            if ((System.currentTimeMillis() - lastStatusTime) > COORDINATE_PROCESSING_LOG_INTERVAL) {
-                lastStatusTime = System.currentTimeMillis();
-                LOG.info("getWorldCoordinates: transformed {} out of {} points",
-                         worldCoordinatesList.size(), localCoordinatesList.size());
+        if (tileIdToIndexes.size() > 0) {
+
+            final Map<String, TileSpec> tileIdToSpec = new HashMap<>();
+            String loadErrorMessage = null;
+            try {
+                for (final TileSpec tileSpec : renderDao.getTileSpecs(stackId,
+                                                                      new ArrayList<>(tileIdToIndexes.keySet()))) {
+                    tileIdToSpec.put(tileSpec.getTileId(), tileSpec);
+                }
+            } catch (final Throwable t) {
+                LOG.warn("getWorldCoordinates: failed to retrieve tile specs", t);
+                loadErrorMessage = t.getMessage();
             }
 
+            final List<Callable<Void>> tasks = new ArrayList<>(tileIdToSpec.size());
+            TileSpec tileSpec;
+            for (final Map.Entry<String, List<Integer>> entry : tileIdToIndexes.entrySet()) {
+                tileSpec = tileIdToSpec.get(entry.getKey());
+                if (tileSpec == null) {
+                    final String errorMessage = loadErrorMessage != null ? loadErrorMessage :
+                                                "tile spec with id '" + entry.getKey() +
+                                                "' does not exist in stack " + stackId;
+                    for (final Integer index : entry.getValue()) {
+                        coordinates = localCoordinatesList.get(index);
+                        coordinates.setError(errorMessage);
+                        worldCoordinatesArray[index] = coordinates;
+                    }
+                } else {
+                    tasks.add(new TileTransformTask(tileSpec,
+                                                    entry.getValue(),
+                                                    localCoordinatesList,
+                                                    worldCoordinatesArray));
+                }
+            }
+
+            runTasks(tasks);
+        }
+
+        final List<TileCoordinates> worldCoordinatesList = Arrays.asList(worldCoordinatesArray);
+
+        int errorCount = 0;
+        for (final TileCoordinates worldCoordinates : worldCoordinatesList) {
+            if (worldCoordinates.hasError()) {
+                errorCount++;
+            }
         }
 
-        LOG.info("getWorldCoordinates: exit, transformed {} points with {} errors in {} ms",
-                 worldCoordinatesList.size(), errorCount, (System.currentTimeMillis() - startTime));
+        LOG.info("getWorldCoordinates: exit, transformed {} points for {} distinct tiles with {} errors in {} ms",
+                 worldCoordinatesList.size(), tileIdToIndexes.size(), errorCount,
+                 (System.currentTimeMillis() - startTime));
 
         return worldCoordinatesList;
     }
@@ -368,12 +426,16 @@ public class CoordinateService {
 
         final List<List<TileCoordinates>> localCoordinatesList = new ArrayList<>(worldCoordinatesList.size());
         final StackId stackId = new StackId(owner, project, stack);
-        List<TileSpec> tileSpecList;
+
+        // validate all coordinates first so that tile ids and specs can be retrieved in bulk
+        final List<double[]> validPoints = new ArrayList<>(worldCoordinatesList.size());
+        final List<Integer> validIndexes = new ArrayList<>(worldCoordinatesList.size());
         TileCoordinates coordinates;
         double[] world;
-        int errorCount = 0;
         for (int i = 0; i < worldCoordinatesList.size(); i++) {
 
+            localCoordinatesList.add(null); // placeholder for results derived below
+
             coordinates = worldCoordinatesList.get(i);
             try {
 
@@ -397,40 +459,188 @@ public class CoordinateService {
                     throw new IllegalArgumentException("world values must include both x and y");
                 }
 
-                tileSpecList = renderDao.getTileSpecs(stackId, world[0], world[1], currentZ);
-                localCoordinatesList.add(TileCoordinates.getLocalCoordinates(tileSpecList,
-                                                                             world[0],
-                                                                             world[1]));
+                validPoints.add(new double[] {world[0], world[1], currentZ});
+                validIndexes.add(i);
 
             } catch (final Throwable t) {
+                addLocalCoordinatesError(i, coordinates, t, localCoordinatesList);
+            }
+        }
 
-                LOG.warn("getLocalCoordinates: caught exception for list item {}, adding original coordinates with error message to list", i, t);
+        List<List<String>> tileIdsForPoints = null;
+        final Map<String, TileSpec> tileIdToSpec = new HashMap<>();
+        Throwable loadFailure = null;
+        if (validPoints.size() > 0) {
+            try {
+                tileIdsForPoints = renderDao.getTileIdsForPoints(stackId, validPoints);
 
-                errorCount++;
+                final Set<String> distinctTileIds = new LinkedHashSet<>();
+                for (final List<String> tileIds : tileIdsForPoints) {
+                    distinctTileIds.addAll(tileIds);
+                }
 
-                if (coordinates == null) {
-                    coordinates = TileCoordinates.buildWorldInstance(null, null);
+                if (distinctTileIds.size() > 0) {
+                    for (final TileSpec tileSpec : renderDao.getTileSpecs(stackId,
+                                                                          new ArrayList<>(distinctTileIds))) {
+                        tileIdToSpec.put(tileSpec.getTileId(), tileSpec);
+                    }
                 }
-                coordinates.setError(t.getMessage());
+            } catch (final Throwable t) {
+                LOG.warn("getLocalCoordinates: failed to retrieve tile specs", t);
+                loadFailure = t;
+            }
+        }
+
+        int errorCount = worldCoordinatesList.size() - validPoints.size();
+        int index;
+        double[] point;
+        List<TileSpec> tileSpecList;
+        TileSpec tileSpec;
+        for (int i = 0; i < validPoints.size(); i++) {
 
-                localCoordinatesList.add(Collections.singletonList(coordinates));
+            index = validIndexes.get(i);
+            coordinates = worldCoordinatesList.get(index);
+            point = validPoints.get(i);
+
+            try {
+
+                if (loadFailure != null) {
+                    throw loadFailure;
+                }
+
+                tileSpecList = new ArrayList<>();
+                //noinspection ConstantConditions
+                for (final String tileId : tileIdsForPoints.get(i)) {
+                    tileSpec = tileIdToSpec.get(tileId);
+                    if (tileSpec != null) {
+                        tileSpecList.add(tileSpec);
+                    }
+                }
+
+                if (tileSpecList.size() == 0) {
+                    throw new IllegalArgumentException("no tile specifications found in " + stackId +
+                                                       " for world coordinates x=" + point[0] + ", y=" + point[1] +
+                                                       ", z=" + point[2]);
+                }
+
+                localCoordinatesList.set(index,
+                                         TileCoordinates.getLocalCoordinates(tileSpecList, point[0], point[1]));
+
+            } catch (final Throwable t) {
+                errorCount++;
+                addLocalCoordinatesError(index, coordinates, t, localCoordinatesList);
             }
 
             if ((System.currentTimeMillis() - lastStatusTime) > COORDINATE_PROCESSING_LOG_INTERVAL) {
                 lastStatusTime = System.currentTimeMillis();
                 LOG.info("getLocalCoordinates: inversely transformed {} out of {} points",
-                         localCoordinatesList.size(), worldCoordinatesList.size());
+                         i + 1, validPoints.size());
             }
 
         }
 
-        LOG.info("getLocalCoordinates: inversely transformed {} points with {} errors in {} ms",
-                 localCoordinatesList.size(), errorCount, (System.currentTimeMillis() - startTime));
+        LOG.info("getLocalCoordinates: inversely transformed {} points for {} distinct tiles with {} errors in {} ms",
+                 localCoordinatesList.size(), tileIdToSpec.size(), errorCount,
+                 (System.currentTimeMillis() - startTime));
 
         return localCoordinatesList;
     }
 
+    private void addLocalCoordinatesError(final int index,
+                                          final TileCoordinates originalCoordinates,
+                                          final Throwable t,
+                                          final List<List<TileCoordinates>> localCoordinatesList) {
+
+        LOG.warn("getLocalCoordinates: caught exception for list item {}, adding original coordinates with error message to list", index, t);
+
+        TileCoordinates coordinates = originalCoordinates;
+        if (coordinates == null) {
+            coordinates = TileCoordinates.buildWorldInstance(null, null);
+        }
+        coordinates.setError(t.getMessage());
+
+        localCoordinatesList.set(index, Collections.singletonList(coordinates));
+    }
+
+    /**
+     * Runs the specified tasks, using the shared transform executor when there is more than one task.
+     */
+    private void runTasks(final List<Callable<Void>> tasks) {
+        if (tasks.size() == 1) {
+            try {
+                tasks.get(0).call();
+            } catch (final Exception e) {
+                throw new IllegalStateException("failed to transform coordinates", e);
+            }
+        } else if (tasks.size() > 1) {
+            try {
+                for (final Future<Void> future : TRANSFORM_EXECUTOR.invokeAll(tasks)) {
+                    future.get();
+                }
+            } catch (final InterruptedException | ExecutionException e) {
+                throw new IllegalStateException("failed to transform coordinates", e);
+            }
+        }
+    }
+
+    /**
+     * Transforms all local coordinates for one tile using a transform list that is only built once.
+     * Each task writes to distinct elements of the shared result array.
+     */
+    private static class TileTransformTask
+            implements Callable<Void> {
+
+        private final TileSpec tileSpec;
+        private final List<Integer> indexes;
+        private final List<TileCoordinates> localCoordinatesList;
+        private final TileCoordinates[] worldCoordinatesArray;
+
+        public TileTransformTask(final TileSpec tileSpec,
+                                 final List<Integer> indexes,
+                                 final List<TileCoordinates> localCoordinatesList,
+                                 final TileCoordinates[] worldCoordinatesArray) {
+            this.tileSpec = tileSpec;
+            this.indexes = indexes;
+            this.localCoordinatesList = localCoordinatesList;
+            this.worldCoordinatesArray = worldCoordinatesArray;
+        }
+
+        @Override
+        public Void call() {
+
+            final List<TileCoordinates> tileLocalCoordinatesList = new ArrayList<>(indexes.size());
+            for (final Integer index : indexes) {
+                tileLocalCoordinatesList.add(localCoordinatesList.get(index));
+            }
+
+            List<TileCoordinates> tileWorldCoordinatesList;
+            try {
+                tileWorldCoordinatesList = TileCoordinates.getWorldCoordinates(tileSpec, tileLocalCoordinatesList);
+            } catch (final Throwable t) {
+                LOG.warn("getWorldCoordinates: failed to transform coordinates for tile " + tileSpec.getTileId(), t);
+                for (final TileCoordinates coordinates : tileLocalCoordinatesList) {
+                    coordinates.setError(t.getMessage());
+                }
+                tileWorldCoordinatesList = tileLocalCoordinatesList;
+            }
+
+            for (int i = 0; i < indexes.size(); i++) {
+                worldCoordinatesArray[indexes.get(i)] = tileWorldCoordinatesList.get(i);
+            }
+
+            return null;
+        }
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(CoordinateService.class);
 
     private static final long COORDINATE_PROCESSING_LOG_INTERVAL = 5000;
+
+    /** Shared pool for applying tile transforms in parallel across tiles. */
+    private static final ExecutorService TRANSFORM_EXECUTOR =
+            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                                         new ThreadFactoryBuilder()
+                                                 .setNameFormat("coordinate-transform-%d")
+                                                 .setDaemon(true)
+                                                 .build());
 }
@@ -1,8 +1,10 @@
 package org.janelia.render.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mongodb.MongoClient;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
@@ -20,17 +22,21 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
+import org.janelia.alignment.json.JsonUtils;
 import org.janelia.alignment.match.CanvasMatches;
 import org.janelia.alignment.match.MatchCollectionId;
 import org.janelia.alignment.match.MatchCollectionMetaData;
+import org.janelia.render.service.dao.CanvasMatchesWriter;
 import org.janelia.render.service.dao.MatchDao;
 import org.janelia.render.service.dao.SharedMongoClient;
 import org.janelia.render.service.model.IllegalServiceArgumentException;
+import org.janelia.render.service.util.JsonArrayIterator;
 import org.janelia.render.service.util.RenderServiceUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -163,7 +169,7 @@ public class MatchService {
 
     @Path("owner/{owner}/matchCollection/{matchCollection}/pGroup/{pGroupId}/matches")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, JsonUtils.SMILE_MIME_TYPE, MediaType.APPLICATION_OCTET_STREAM})
     @ApiOperation(
             value = "Find matches with the specified pGroup",
             notes = "Find all matches where the first tile is in the specified layer.",
@@ -175,27 +181,29 @@ public class MatchService {
     public Response getMatchesWithPGroup(@PathParam("owner") final String owner,
                                          @PathParam("matchCollection") final String matchCollection,
                                          @PathParam("pGroupId") final String pGroupId,
-                                         @QueryParam("mergeCollection") final List<String> mergeCollectionList) {
+                                         @QueryParam("mergeCollection") final List<String> mergeCollectionList,
+                                         @Context final HttpHeaders httpHeaders) {
 
         LOG.info("getMatchesWithPGroup: entry, owner={}, matchCollection={}, pGroupId={}, mergeCollectionList={}",
                  owner, matchCollection, pGroupId, mergeCollectionList);
 
         final MatchCollectionId collectionId = getCollectionId(owner, matchCollection);
         final List<MatchCollectionId> mergeCollectionIdList = getCollectionIdList(owner, mergeCollectionList);
+        final MediaType dataMediaType = getMatchesMediaType(httpHeaders);
         final StreamingOutput responseOutput = new StreamingOutput() {
             @Override
             public void write(final OutputStream output)
                     throws IOException, WebApplicationException {
-                matchDao.writeMatchesWithPGroup(collectionId, mergeCollectionIdList, pGroupId, output);
+                matchDao.writeMatchesWithPGroup(collectionId, mergeCollectionIdList, pGroupId, getMatchesWriter(dataMediaType, output));
             }
         };
 
-        return streamResponse(responseOutput);
+        return streamResponse(responseOutput, dataMediaType);
     }
 
     @Path("owner/{owner}/matchCollection/{matchCollection}/group/{groupId}/matchesWithinGroup")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, JsonUtils.SMILE_MIME_TYPE, MediaType.APPLICATION_OCTET_STREAM})
     @ApiOperation(
             value = "Find matches within the specified group",
             notes = "Find all matches where both tiles are in the specified layer.",
@@ -207,27 +215,29 @@ public class MatchService {
     public Response getMatchesWithinGroup(@PathParam("owner") final String owner,
                                           @PathParam("matchCollection") final String matchCollection,
                                           @PathParam("groupId") final String groupId,
-                                          @QueryParam("mergeCollection") final List<String> mergeCollectionList) {
+                                          @QueryParam("mergeCollection") final List<String> mergeCollectionList,
+                                          @Context final HttpHeaders httpHeaders) {
 
         LOG.info("getMatchesWithinGroup: entry, owner={}, matchCollection={}, groupId={}, mergeCollectionList={}",
                  owner, matchCollection, groupId, mergeCollectionList);
 
         final MatchCollectionId collectionId = getCollectionId(owner, matchCollection);
         final List<MatchCollectionId> mergeCollectionIdList = getCollectionIdList(owner, mergeCollectionList);
+        final MediaType dataMediaType = getMatchesMediaType(httpHeaders);
         final StreamingOutput responseOutput = new StreamingOutput() {
             @Override
             public void write(final OutputStream output)
                     throws IOException, WebApplicationException {
-                matchDao.writeMatchesWithinGroup(collectionId, mergeCollectionIdList, groupId, output);
+                matchDao.writeMatchesWithinGroup(collectionId, mergeCollectionIdList, groupId, getMatchesWriter(dataMediaType, output));
             }
         };
 
-        return streamResponse(responseOutput);
+        return streamResponse(responseOutput, dataMediaType);
     }
 
     @Path("owner/{owner}/matchCollection/{matchCollection}/group/{groupId}/matchesOutsideGroup")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, JsonUtils.SMILE_MIME_TYPE, MediaType.APPLICATION_OCTET_STREAM})
     @ApiOperation(
             value = "Find matches outside the specified group",
             notes = "Find all matches with one tile in the specified layer and another tile outside that layer.",
@@ -239,27 +249,29 @@ public class MatchService {
     public Response getMatchesOutsideGroup(@PathParam("owner") final String owner,
                                            @PathParam("matchCollection") final String matchCollection,
                                            @PathParam("groupId") final String groupId,
-                                           @QueryParam("mergeCollection") final List<String> mergeCollectionList) {
+                                           @QueryParam("mergeCollection") final List<String> mergeCollectionList,
+                                           @Context final HttpHeaders httpHeaders) {
 
         LOG.info("getMatchesOutsideGroup: entry, owner={}, matchCollection={}, groupId={}, mergeCollectionList={}",
                  owner, matchCollection, groupId, mergeCollectionList);
 
         final MatchCollectionId collectionId = getCollectionId(owner, matchCollection);
         final List<MatchCollectionId> mergeCollectionIdList = getCollectionIdList(owner, mergeCollectionList);
+        final MediaType dataMediaType = getMatchesMediaType(httpHeaders);
         final StreamingOutput responseOutput = new StreamingOutput() {
             @Override
             public void write(final OutputStream output)
                     throws IOException, WebApplicationException {
-                matchDao.writeMatchesOutsideGroup(collectionId, mergeCollectionIdList, groupId, output);
+                matchDao.writeMatchesOutsideGroup(collectionId, mergeCollectionIdList, groupId, getMatchesWriter(dataMediaType, output));
             }
         };
 
-        return streamResponse(responseOutput);
+        return streamResponse(responseOutput, dataMediaType);
     }
 
     @Path("owner/{owner}/matchCollection/{matchCollection}/group/{pGroupId}/matchesWith/{qGroupId}")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, JsonUtils.SMILE_MIME_TYPE, MediaType.APPLICATION_OCTET_STREAM})
     @ApiOperation(
             value = "Find matches between the specified groups",
             notes = "Find all matches with one tile in the specified p layer and another tile in the specified q layer.",
@@ -272,27 +284,29 @@ public class MatchService {
                                             @PathParam("matchCollection") final String matchCollection,
                                             @PathParam("pGroupId") final String pGroupId,
                                             @PathParam("qGroupId") final String qGroupId,
-                                            @QueryParam("mergeCollection") final List<String> mergeCollectionList) {
+                                            @QueryParam("mergeCollection") final List<String> mergeCollectionList,
+                                            @Context final HttpHeaders httpHeaders) {
 
         LOG.info("getMatchesBetweenGroups: entry, owner={}, matchCollection={}, pGroupId={}, qGroupId={}, mergeCollectionList={}",
                  owner, matchCollection, pGroupId, qGroupId, mergeCollectionList);
 
         final MatchCollectionId collectionId = getCollectionId(owner, matchCollection);
         final List<MatchCollectionId> mergeCollectionIdList = getCollectionIdList(owner, mergeCollectionList);
+        final MediaType dataMediaType = getMatchesMediaType(httpHeaders);
         final StreamingOutput responseOutput = new StreamingOutput() {
             @Override
             public void write(final OutputStream output)
                     throws IOException, WebApplicationException {
-                matchDao.writeMatchesBetweenGroups(collectionId, mergeCollectionIdList, pGroupId, qGroupId, output);
+                matchDao.writeMatchesBetweenGroups(collectionId, mergeCollectionIdList, pGroupId, qGroupId, getMatchesWriter(dataMediaType, output));
             }
         };
 
-        return streamResponse(responseOutput);
+        return streamResponse(responseOutput, dataMediaType);
     }
 
     @Path("owner/{owner}/matchCollection/{matchCollection}/group/{pGroupId}/id/{pId}/matchesWith/{qGroupId}/id/{qId}")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, JsonUtils.SMILE_MIME_TYPE, MediaType.APPLICATION_OCTET_STREAM})
     @ApiOperation(
             value = "Find matches between the specified objects",
             notes = "Find all matches between two specific tiles.",
@@ -307,27 +321,29 @@ public class MatchService {
                                              @PathParam("pId") final String pId,
                                              @PathParam("qGroupId") final String qGroupId,
                                              @PathParam("qId") final String qId,
-                                             @QueryParam("mergeCollection") final List<String> mergeCollectionList) {
+                                             @QueryParam("mergeCollection") final List<String> mergeCollectionList,
+                                             @Context final HttpHeaders httpHeaders) {
 
         LOG.info("getMatchesBetweenObjects: entry, owner={}, matchCollection={}, pGroupId={}, pId={}, qGroupId={}, qId={}, mergeCollectionList={}",
                  owner, matchCollection, pGroupId, pId, qGroupId, qId, mergeCollectionList);
 
         final MatchCollectionId collectionId = getCollectionId(owner, matchCollection);
         final List<MatchCollectionId> mergeCollectionIdList = getCollectionIdList(owner, mergeCollectionList);
+        final MediaType dataMediaType = getMatchesMediaType(httpHeaders);
         final StreamingOutput responseOutput = new StreamingOutput() {
             @Override
             public void write(final OutputStream output)
                     throws IOException, WebApplicationException {
-                matchDao.writeMatchesBetweenObjects(collectionId, mergeCollectionIdList, pGroupId, pId, qGroupId, qId, output);
+                matchDao.writeMatchesBetweenObjects(collectionId, mergeCollectionIdList, pGroupId, pId, qGroupId, qId, getMatchesWriter(dataMediaType, output));
             }
         };
 
-        return streamResponse(responseOutput);
+        return streamResponse(responseOutput, dataMediaType);
     }
     
     @Path("owner/{owner}/matchCollection/{matchCollection}/group/{groupId}/id/{id}")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, JsonUtils.SMILE_MIME_TYPE, MediaType.APPLICATION_OCTET_STREAM})
     @ApiOperation(
             value = "Find matches from or to a specific object",
             notes = "Find all matches that either come from or to a specific tile.",
@@ -340,22 +356,24 @@ public class MatchService {
                                              @PathParam("matchCollection") final String matchCollection,
                                              @PathParam("groupId") final String groupId,
                                              @PathParam("id") final String id,
-                                             @QueryParam("mergeCollection") final List<String> mergeCollectionList) {
+                                             @QueryParam("mergeCollection") final List<String> mergeCollectionList,
+                                             @Context final HttpHeaders httpHeaders) {
 
         LOG.info("getMatchesInvolvingObject: entry, owner={}, matchCollection={}, groupId={}, id={}, mergeCollectionList={}",
                  owner, matchCollection, groupId, id, mergeCollectionList);
 
         final MatchCollectionId collectionId = getCollectionId(owner, matchCollection);
         final List<MatchCollectionId> mergeCollectionIdList = getCollectionIdList(owner, mergeCollectionList);
+        final MediaType dataMediaType = getMatchesMediaType(httpHeaders);
         final StreamingOutput responseOutput = new StreamingOutput() {
             @Override
             public void write(final OutputStream output)
                     throws IOException, WebApplicationException {
-                matchDao.writeMatchesInvolvingObject(collectionId, mergeCollectionIdList, groupId, id, output);
+                matchDao.writeMatchesInvolvingObject(collectionId, mergeCollectionIdList, groupId, id, getMatchesWriter(dataMediaType, output));
             }
         };
 
-        return streamResponse(responseOutput);
+        return streamResponse(responseOutput, dataMediaType);
     }
     
     @Path("owner/{owner}/matchCollection/{matchCollection}/group/{pGroupId}/id/{pId}/matchesWith/{qGroupId}/id/{qId}")
@@ -447,10 +465,12 @@ public class MatchService {
 
     @Path("owner/{owner}/matchCollection/{matchCollection}/matches")
     @PUT
-    @Consumes(MediaType.APPLICATION_JSON)
+    @Consumes({MediaType.APPLICATION_JSON, JsonUtils.SMILE_MIME_TYPE})
     @ApiOperation(
             value = "Save a set of matches",
-            notes = "Inserts or updates matches for the specified collection.")
+            notes = "Inserts or updates matches for the specified collection.  " +
+                    "The request body (an array of matches) is parsed and saved in concurrent batches " +
+                    "as it is streamed, so very large sets of matches can be saved with one request.")
     @ApiResponses(value = {
             @ApiResponse(code = 201, message = "matches successfully saved"),
             @ApiResponse(code = 400, message = "If no matches are provided")
@@ -458,26 +478,33 @@ public class MatchService {
     public Response saveMatches(@PathParam("owner") final String owner,
                                 @PathParam("matchCollection") final String matchCollection,
                                 @Context final UriInfo uriInfo,
-                                final List<CanvasMatches> canvasMatchesList) {
+                                @Context final HttpHeaders httpHeaders,
+                                final InputStream canvasMatchesStream) {
 
         LOG.info("saveMatches: entry, owner={}, matchCollection={}",
                  owner, matchCollection);
 
         final MatchCollectionId collectionId = getCollectionId(owner, matchCollection);
 
-        if (canvasMatchesList == null) {
+        if (canvasMatchesStream == null) {
             throw new IllegalServiceArgumentException("no matches provided");
         }
 
+        long savedCount = 0;
         try {
-            matchDao.saveMatches(collectionId, canvasMatchesList);
+            final MediaType requestMediaType = httpHeaders == null ? null : httpHeaders.getMediaType();
+            final ObjectMapper mapper = RenderServiceUtil.SMILE_MEDIA_TYPE.isCompatible(requestMediaType) ?
+                                        JsonUtils.SMILE_MAPPER : JsonUtils.FAST_MAPPER;
+            final JsonArrayIterator<CanvasMatches> matchesIterator =
+                    new JsonArrayIterator<>(mapper, canvasMatchesStream, CanvasMatches.class);
+            savedCount = matchDao.saveMatches(collectionId, matchesIterator);
         } catch (final Throwable t) {
             RenderServiceUtil.throwServiceException(t);
         }
 
         final Response.ResponseBuilder responseBuilder = Response.created(uriInfo.getRequestUri());
 
-        LOG.info("saveMatches: exit");
+        LOG.info("saveMatches: exit, saved {} matches", savedCount);
 
         return responseBuilder.build();
     }
@@ -532,11 +559,33 @@ public class MatchService {
         return collectionIdList;
     }
 
-    private Response streamResponse(final StreamingOutput responseOutput) {
+    /**
+     * @return media type for match data responses
+     *         (JSON, Smile, or packed binary {@link MediaType#APPLICATION_OCTET_STREAM_TYPE octet-stream}).
+     */
+    private MediaType getMatchesMediaType(final HttpHeaders httpHeaders) {
+        return RenderServiceUtil.getDataMediaType(httpHeaders,
+                                                  RenderServiceUtil.SMILE_MEDIA_TYPE,
+                                                  MediaType.APPLICATION_OCTET_STREAM_TYPE);
+    }
+
+    private CanvasMatchesWriter getMatchesWriter(final MediaType dataMediaType,
+                                                 final OutputStream output) {
+        final CanvasMatchesWriter matchesWriter;
+        if (MediaType.APPLICATION_OCTET_STREAM_TYPE.equals(dataMediaType)) {
+            matchesWriter = CanvasMatchesWriter.forPackedBinary(output);
+        } else {
+            matchesWriter = CanvasMatchesWriter.forMapper(RenderServiceUtil.getDataMapper(dataMediaType), output);
+        }
+        return matchesWriter;
+    }
+
+    private Response streamResponse(final StreamingOutput responseOutput,
+                                    final MediaType dataMediaType) {
 
         Response response = null;
         try {
-            response = Response.ok(responseOutput).build();
+            response = Response.ok(responseOutput, dataMediaType).build();
         } catch (final Throwable t) {
             RenderServiceUtil.throwServiceException(t);
         }
@@ -549,7 +598,7 @@ public class MatchService {
     private static MatchDao buildMatchDao()
             throws UnknownHostException {
         final MongoClient mongoClient = SharedMongoClient.getInstance();
-        return new MatchDao(mongoClient);
+        return new MatchDao(mongoClient, SharedMongoClient.getDbConfig().isStorePackedMatches());
     }
 
 }
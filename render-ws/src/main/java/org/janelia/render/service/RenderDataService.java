@@ -1,6 +1,9 @@
 package org.janelia.render.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
@@ -21,18 +24,21 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.json.JsonUtils;
 import org.janelia.alignment.spec.Bounds;
 import org.janelia.alignment.spec.LastTileTransform;
 import org.janelia.alignment.spec.ResolvedTileSpecCollection;
 import org.janelia.alignment.spec.SectionData;
 import org.janelia.alignment.spec.TileBounds;
 import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TileTransformChange;
 import org.janelia.alignment.spec.TransformSpec;
 import org.janelia.alignment.spec.stack.MipmapPathBuilder;
 import org.janelia.alignment.spec.stack.StackId;
@@ -40,7 +46,9 @@ import org.janelia.alignment.spec.stack.StackMetaData;
 import org.janelia.render.service.dao.RenderDao;
 import org.janelia.render.service.model.IllegalServiceArgumentException;
 import org.janelia.render.service.model.ObjectNotFoundException;
+import org.janelia.render.service.util.JsonArrayIterator;
 import org.janelia.render.service.util.RenderServiceUtil;
+import org.janelia.render.service.util.ResolvedTilesIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -379,7 +387,7 @@ public class RenderDataService {
 
     @Path("project/{project}/stack/{stack}/z/{z}/tileBounds")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, JsonUtils.SMILE_MIME_TYPE})
     @ApiOperation(
             tags = "Section Data APIs",
             value = "Get bounds for each tile with specified z")
@@ -403,10 +411,11 @@ public class RenderDataService {
 
     @Path("project/{project}/stack/{stack}/z/{z}/tileIds")
     @PUT
-    @Consumes(MediaType.APPLICATION_JSON)
+    @Consumes({MediaType.APPLICATION_JSON, JsonUtils.SMILE_MIME_TYPE})
     @ApiOperation(
             tags = "Section Data APIs",
-            value = "Set z value for specified tiles (e.g. to split a layer)")
+            value = "Set z value for specified tiles (e.g. to split a layer)",
+            notes = "The request body (an array of tile ids) is processed in batches as it is streamed.")
     @ApiResponses(value = {
             @ApiResponse(code = 400, message = "stack not in LOADING state"),
             @ApiResponse(code = 404, message = "stack not found"),
@@ -416,101 +425,205 @@ public class RenderDataService {
                                     @PathParam("stack") final String stack,
                                     @PathParam("z") final Double z,
                                     @Context final UriInfo uriInfo,
-                                    final List<String> tileIds) {
+                                    @Context final HttpHeaders httpHeaders,
+                                    final InputStream tileIdsStream) {
         LOG.info("updateZForTiles: entry, owner={}, project={}, stack={}, z={}",
                  owner, project, stack, z);
 
+        long updatedCount = 0;
         try {
-            final StackId stackId = new StackId(owner, project, stack);
-            final StackMetaData stackMetaData = getStackMetaData(stackId);
+            final StackId stackId = getLoadingStackId(owner, project, stack, "Z values can only be updated");
+            updatedCount = renderDao.updateZForTiles(stackId, z, getTileIdIterator(httpHeaders, tileIdsStream));
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
 
-            if (! stackMetaData.isLoading()) {
-                throw new IllegalStateException("Z values can only be updated for stacks in the " +
-                                                LOADING + " state, but this stack's state is " +
-                                                stackMetaData.getState() + ".");
-            }
+        final Response.ResponseBuilder responseBuilder = Response.created(uriInfo.getRequestUri());
 
-            renderDao.updateZForTiles(stackId, z, tileIds);
+        LOG.info("updateZForTiles: exit, updated {} tiles", updatedCount);
+
+        return responseBuilder.build();
+    }
 
+    @Path("project/{project}/stack/{stack}/group/{groupId}/tileIds")
+    @PUT
+    @Consumes({MediaType.APPLICATION_JSON, JsonUtils.SMILE_MIME_TYPE})
+    @ApiOperation(
+            tags = "Stack Data APIs",
+            value = "Set group id (label) for specified tiles",
+            notes = "The request body (an array of tile ids) is processed in batches as it is streamed.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "stack not in LOADING state"),
+            @ApiResponse(code = 404, message = "stack not found"),
+    })
+    public Response updateGroupIdForTiles(@PathParam("owner") final String owner,
+                                          @PathParam("project") final String project,
+                                          @PathParam("stack") final String stack,
+                                          @PathParam("groupId") final String groupId,
+                                          @Context final UriInfo uriInfo,
+                                          @Context final HttpHeaders httpHeaders,
+                                          final InputStream tileIdsStream) {
+        LOG.info("updateGroupIdForTiles: entry, owner={}, project={}, stack={}, groupId={}",
+                 owner, project, stack, groupId);
+
+        long updatedCount = 0;
+        try {
+            final StackId stackId = getLoadingStackId(owner, project, stack, "Group ids can only be updated");
+            updatedCount = renderDao.updateGroupIdForTiles(stackId,
+                                                           groupId,
+                                                           getTileIdIterator(httpHeaders, tileIdsStream));
         } catch (final Throwable t) {
             RenderServiceUtil.throwServiceException(t);
         }
 
         final Response.ResponseBuilder responseBuilder = Response.created(uriInfo.getRequestUri());
 
-        LOG.info("updateZForTiles: exit");
+        LOG.info("updateGroupIdForTiles: exit, updated {} tiles", updatedCount);
+
+        return responseBuilder.build();
+    }
+
+    @Path("project/{project}/stack/{stack}/ungroupedTileIds")
+    @PUT
+    @Consumes({MediaType.APPLICATION_JSON, JsonUtils.SMILE_MIME_TYPE})
+    @ApiOperation(
+            tags = "Stack Data APIs",
+            value = "Remove group id (label) from specified tiles",
+            notes = "The request body (an array of tile ids) is processed in batches as it is streamed.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "stack not in LOADING state"),
+            @ApiResponse(code = 404, message = "stack not found"),
+    })
+    public Response removeGroupIdForTiles(@PathParam("owner") final String owner,
+                                          @PathParam("project") final String project,
+                                          @PathParam("stack") final String stack,
+                                          @Context final UriInfo uriInfo,
+                                          @Context final HttpHeaders httpHeaders,
+                                          final InputStream tileIdsStream) {
+        LOG.info("removeGroupIdForTiles: entry, owner={}, project={}, stack={}",
+                 owner, project, stack);
+
+        long updatedCount = 0;
+        try {
+            final StackId stackId = getLoadingStackId(owner, project, stack, "Group ids can only be removed");
+            updatedCount = renderDao.updateGroupIdForTiles(stackId,
+                                                           null,
+                                                           getTileIdIterator(httpHeaders, tileIdsStream));
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        final Response.ResponseBuilder responseBuilder = Response.created(uriInfo.getRequestUri());
+
+        LOG.info("removeGroupIdForTiles: exit, updated {} tiles", updatedCount);
+
+        return responseBuilder.build();
+    }
+
+    @Path("project/{project}/stack/{stack}/removedTileIds")
+    @PUT
+    @Consumes({MediaType.APPLICATION_JSON, JsonUtils.SMILE_MIME_TYPE})
+    @ApiOperation(
+            tags = "Stack Data APIs",
+            value = "Deletes specified tiles",
+            notes = "The request body (an array of tile ids) is processed in batches as it is streamed, " +
+                    "so very large sets of tiles can be removed with one request.  " +
+                    "PUT is used instead of DELETE because request bodies for DELETE requests are not " +
+                    "reliably supported by HTTP clients and proxies (single tiles can be removed with " +
+                    "DELETE requests to the tile endpoint).  " +
+                    "This operation can only be performed against stacks in the LOADING state.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "stack not in LOADING state"),
+            @ApiResponse(code = 404, message = "stack not found"),
+    })
+    public Response deleteTiles(@PathParam("owner") final String owner,
+                                @PathParam("project") final String project,
+                                @PathParam("stack") final String stack,
+                                @Context final UriInfo uriInfo,
+                                @Context final HttpHeaders httpHeaders,
+                                final InputStream tileIdsStream) {
+        LOG.info("deleteTiles: entry, owner={}, project={}, stack={}",
+                 owner, project, stack);
+
+        long removedCount = 0;
+        try {
+            final StackId stackId = getLoadingStackId(owner, project, stack, "Tiles can only be deleted");
+            removedCount = renderDao.removeTilesWithIds(stackId, getTileIdIterator(httpHeaders, tileIdsStream));
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        final Response.ResponseBuilder responseBuilder = Response.created(uriInfo.getRequestUri());
+
+        LOG.info("deleteTiles: exit, removed {} tiles", removedCount);
 
         return responseBuilder.build();
     }
 
     @Path("project/{project}/stack/{stack}/z/{z}/resolvedTiles")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, JsonUtils.SMILE_MIME_TYPE})
     @ApiOperation(
             tags = "Section Data APIs",
-            value = "Get raw tile and transform specs for section with specified z")
+            value = "Get raw tile and transform specs for section with specified z",
+            notes = "Data is streamed directly from the database (transform specs first, then tile specs), " +
+                    "so (unlike earlier versions) requests matching more than 50,000 tiles are supported.",
+            response = ResolvedTileSpecCollection.class)
     @ApiResponses(value = {
-            @ApiResponse(code = 400, message = "too many (> 50,000) tiles in section"),
             @ApiResponse(code = 404, message = "no tile specs found"),
     })
-    public ResolvedTileSpecCollection getResolvedTiles(@PathParam("owner") final String owner,
-                                                       @PathParam("project") final String project,
-                                                       @PathParam("stack") final String stack,
-                                                       @PathParam("z") final Double z) {
+    public Response getResolvedTiles(@PathParam("owner") final String owner,
+                                     @PathParam("project") final String project,
+                                     @PathParam("stack") final String stack,
+                                     @PathParam("z") final Double z,
+                                     @Context final HttpHeaders httpHeaders) {
 
         LOG.info("getResolvedTiles: entry, owner={}, project={}, stack={}, z={}",
                  owner, project, stack, z);
 
-        ResolvedTileSpecCollection resolvedTiles = null;
-        try {
-            final StackId stackId = new StackId(owner, project, stack);
-            resolvedTiles = renderDao.getResolvedTiles(stackId, z);
-        } catch (final Throwable t) {
-            RenderServiceUtil.throwServiceException(t);
-        }
-        return resolvedTiles;
+        return getResolvedTilesResponse(owner, project, stack, z, z, null, null, null, null, null, httpHeaders);
     }
 
     @Path("project/{project}/stack/{stack}/resolvedTiles")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, JsonUtils.SMILE_MIME_TYPE})
     @ApiOperation(
             tags = "Stack Data APIs",
-            value = "Get raw tile and transform specs for specified group or bounding box")
+            value = "Get raw tile and transform specs for specified group or bounding box",
+            notes = "Data is streamed directly from the database (transform specs first, then tile specs), " +
+                    "so (unlike earlier versions) requests matching more than 50,000 tiles are supported.",
+            response = ResolvedTileSpecCollection.class)
     @ApiResponses(value = {
-            @ApiResponse(code = 400, message = "too many (> 50,000) matching tiles found"),
             @ApiResponse(code = 404, message = "no tile specs found"),
     })
-    public ResolvedTileSpecCollection getResolvedTiles(@PathParam("owner") final String owner,
-                                                       @PathParam("project") final String project,
-                                                       @PathParam("stack") final String stack,
-                                                       @QueryParam("minZ") final Double minZ,
-                                                       @QueryParam("maxZ") final Double maxZ,
-                                                       @QueryParam("groupId") final String groupId,
-                                                       @QueryParam("minX") final Double minX,
-                                                       @QueryParam("maxX") final Double maxX,
-                                                       @QueryParam("minY") final Double minY,
-                                                       @QueryParam("maxY") final Double maxY) {
+    public Response getResolvedTiles(@PathParam("owner") final String owner,
+                                     @PathParam("project") final String project,
+                                     @PathParam("stack") final String stack,
+                                     @QueryParam("minZ") final Double minZ,
+                                     @QueryParam("maxZ") final Double maxZ,
+                                     @QueryParam("groupId") final String groupId,
+                                     @QueryParam("minX") final Double minX,
+                                     @QueryParam("maxX") final Double maxX,
+                                     @QueryParam("minY") final Double minY,
+                                     @QueryParam("maxY") final Double maxY,
+                                     @Context final HttpHeaders httpHeaders) {
 
         LOG.info("getResolvedTiles: entry, owner={}, project={}, stack={}, minZ={}, maxZ={}, groupId={}, minX={}, maxX={}, minY={}, maxY={}",
                  owner, project, stack, minZ, maxZ, groupId, minX, maxX, minY, maxY);
 
-        ResolvedTileSpecCollection resolvedTiles = null;
-        try {
-            final StackId stackId = new StackId(owner, project, stack);
-            resolvedTiles = renderDao.getResolvedTiles(stackId, minZ, maxZ, groupId, minX, maxX, minY, maxY);
-        } catch (final Throwable t) {
-            RenderServiceUtil.throwServiceException(t);
-        }
-        return resolvedTiles;
+        return getResolvedTilesResponse(owner, project, stack, minZ, maxZ, groupId, minX, maxX, minY, maxY,
+                                        httpHeaders);
     }
 
     @Path("project/{project}/stack/{stack}/resolvedTiles")
     @PUT
-    @Consumes(MediaType.APPLICATION_JSON)
+    @Consumes({MediaType.APPLICATION_JSON, JsonUtils.SMILE_MIME_TYPE})
     @ApiOperation(
             tags = "Stack Data APIs",
-            value = "Save specified raw tile and transform specs")
+            value = "Save specified raw tile and transform specs",
+            notes = "The request body is parsed and saved in concurrent batches as it is streamed, " +
+                    "so very large collections can be saved with one request.  " +
+                    "Batches saved before an invalid tile spec is encountered are not rolled back.")
     @ApiResponses(value = {
             @ApiResponse(code = 400, message = "stack not in LOADING state, invalid data provided"),
             @ApiResponse(code = 404, message = "stack not found"),
@@ -519,16 +632,21 @@ public class RenderDataService {
                                       @PathParam("project") final String project,
                                       @PathParam("stack") final String stack,
                                       @Context final UriInfo uriInfo,
-                                      final ResolvedTileSpecCollection resolvedTiles) {
-        return saveResolvedTilesForZ(owner, project, stack, null, uriInfo, resolvedTiles);
+                                      @Context final HttpHeaders httpHeaders,
+                                      final InputStream resolvedTilesStream) {
+        return saveResolvedTilesForZ(owner, project, stack, null, uriInfo, httpHeaders, resolvedTilesStream);
     }
 
     @Path("project/{project}/stack/{stack}/z/{z}/resolvedTiles")
     @PUT
-    @Consumes(MediaType.APPLICATION_JSON)
+    @Consumes({MediaType.APPLICATION_JSON, JsonUtils.SMILE_MIME_TYPE})
     @ApiOperation(
             tags = "Section Data APIs",
-            value = "Save specified raw tile and transform specs for section")
+            value = "Save specified raw tile and transform specs for section",
+            notes = "The request body is parsed and saved in concurrent batches as it is streamed, " +
+                    "so very large layers can be saved with one request.  " +
+                    "Tiles may reference shared transforms that already exist in the stack.  " +
+                    "Batches saved before an invalid tile spec is encountered are not rolled back.")
     @ApiResponses(value = {
             @ApiResponse(code = 400, message = "stack not in LOADING state, invalid data provided"),
             @ApiResponse(code = 404, message = "stack not found"),
@@ -538,13 +656,15 @@ public class RenderDataService {
                                           @PathParam("stack") final String stack,
                                           @PathParam("z") final Double z,
                                           @Context final UriInfo uriInfo,
-                                          final ResolvedTileSpecCollection resolvedTiles) {
+                                          @Context final HttpHeaders httpHeaders,
+                                          final InputStream resolvedTilesStream) {
 
         LOG.info("saveResolvedTilesForZ: entry, owner={}, project={}, stack={}, z={}",
                  owner, project, stack, z);
 
+        long savedCount = 0;
         try {
-            if (resolvedTiles == null) {
+            if (resolvedTilesStream == null) {
                 throw new IllegalServiceArgumentException("no resolved tiles provided");
             }
 
@@ -557,9 +677,68 @@ public class RenderDataService {
                                                 stackMetaData.getState() + ".");
             }
 
-            resolvedTiles.validateCollection(z);
+            final MediaType requestMediaType = httpHeaders == null ? null : httpHeaders.getMediaType();
+            final ObjectMapper mapper = RenderServiceUtil.SMILE_MEDIA_TYPE.isCompatible(requestMediaType) ?
+                                        JsonUtils.SMILE_MAPPER : JsonUtils.FAST_MAPPER;
+            final ResolvedTilesIterator tileSpecIterator = new ResolvedTilesIterator(mapper,
+                                                                                     resolvedTilesStream,
+                                                                                     z);
+            if (! tileSpecIterator.hasNext()) {
+                throw new IllegalArgumentException("collection does not have any tiles");
+            }
+
+            savedCount = renderDao.saveResolvedTiles(stackId, tileSpecIterator.getTransformSpecs(), tileSpecIterator);
+
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        final Response.ResponseBuilder responseBuilder = Response.created(uriInfo.getRequestUri());
+
+        LOG.info("saveResolvedTilesForZ: exit, saved {} tiles", savedCount);
+
+        return responseBuilder.build();
+    }
+
+    @Path("project/{project}/stack/{stack}/tileTransforms")
+    @PUT
+    @Consumes(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            tags = "Stack Data APIs",
+            value = "Apply transform to all tiles in a z range",
+            notes = "Appends, prepends, or replaces the last transform for each tile with the specified z " +
+                    "(and optionally tile id) values.  Tile bounding boxes are re-derived by the server, " +
+                    "so no tile data needs to be retrieved or saved by the client.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "stack not in LOADING state, invalid data provided"),
+            @ApiResponse(code = 404, message = "stack not found"),
+    })
+    public Response applyTransformToTiles(@PathParam("owner") final String owner,
+                                          @PathParam("project") final String project,
+                                          @PathParam("stack") final String stack,
+                                          @QueryParam("minZ") final Double minZ,
+                                          @QueryParam("maxZ") final Double maxZ,
+                                          @Context final UriInfo uriInfo,
+                                          final TileTransformChange transformChange) {
+
+        LOG.info("applyTransformToTiles: entry, owner={}, project={}, stack={}, minZ={}, maxZ={}",
+                 owner, project, stack, minZ, maxZ);
+
+        try {
+            if (transformChange == null) {
+                throw new IllegalServiceArgumentException("no transform change provided");
+            }
+
+            final StackId stackId = new StackId(owner, project, stack);
+            final StackMetaData stackMetaData = getStackMetaData(stackId);
+
+            if (! stackMetaData.isLoading()) {
+                throw new IllegalStateException("Transforms can only be applied to tiles in stacks with the " +
+                                                LOADING + " state, but this stack's state is " +
+                                                stackMetaData.getState() + ".");
+            }
 
-            renderDao.saveResolvedTiles(stackId, resolvedTiles);
+            renderDao.applyTransformToTiles(stackId, minZ, maxZ, transformChange);
 
         } catch (final Throwable t) {
             RenderServiceUtil.throwServiceException(t);
@@ -567,11 +746,33 @@ public class RenderDataService {
 
         final Response.ResponseBuilder responseBuilder = Response.created(uriInfo.getRequestUri());
 
-        LOG.info("saveResolvedTilesForZ: exit");
+        LOG.info("applyTransformToTiles: exit");
 
         return responseBuilder.build();
     }
 
+    @Path("project/{project}/stack/{stack}/z/{z}/tileTransforms")
+    @PUT
+    @Consumes(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            tags = "Section Data APIs",
+            value = "Apply transform to all tiles in a section",
+            notes = "Appends, prepends, or replaces the last transform for each tile with the specified z " +
+                    "(and optionally tile id) values.  Tile bounding boxes are re-derived by the server, " +
+                    "so no tile data needs to be retrieved or saved by the client.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "stack not in LOADING state, invalid data provided"),
+            @ApiResponse(code = 404, message = "stack not found"),
+    })
+    public Response applyTransformToTilesForZ(@PathParam("owner") final String owner,
+                                              @PathParam("project") final String project,
+                                              @PathParam("stack") final String stack,
+                                              @PathParam("z") final Double z,
+                                              @Context final UriInfo uriInfo,
+                                              final TileTransformChange transformChange) {
+        return applyTransformToTiles(owner, project, stack, z, z, uriInfo, transformChange);
+    }
+
     @Path("project/{project}/stack/{stack}/section/{sectionId}/z")
     @GET
     @Produces(MediaType.APPLICATION_JSON)
@@ -644,7 +845,7 @@ public class RenderDataService {
 
     @Path("project/{project}/stack/{stack}/section/{sectionId}/tileBounds")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, JsonUtils.SMILE_MIME_TYPE})
     @ApiOperation(
             tags = "Section Data APIs",
             value = "Get bounds for each tile with specified sectionId")
@@ -1008,5 +1209,89 @@ public class RenderDataService {
         return stackMetaData;
     }
 
+    /**
+     * @return identifier for the specified stack.
+     *
+     * @throws ObjectNotFoundException
+     *   if the stack does not exist.
+     *
+     * @throws IllegalStateException
+     *   if the stack is not in the LOADING state.
+     */
+    private StackId getLoadingStackId(final String owner,
+                                      final String project,
+                                      final String stack,
+                                      final String operationContext)
+            throws ObjectNotFoundException, IllegalStateException {
+
+        final StackId stackId = new StackId(owner, project, stack);
+        final StackMetaData stackMetaData = getStackMetaData(stackId);
+
+        if (! stackMetaData.isLoading()) {
+            throw new IllegalStateException(operationContext + " for stacks in the " +
+                                            LOADING + " state, but this stack's state is " +
+                                            stackMetaData.getState() + ".");
+        }
+
+        return stackId;
+    }
+
+    private JsonArrayIterator<String> getTileIdIterator(final HttpHeaders httpHeaders,
+                                                        final InputStream tileIdsStream)
+            throws IllegalServiceArgumentException {
+
+        if (tileIdsStream == null) {
+            throw new IllegalServiceArgumentException("no tile ids provided");
+        }
+
+        final MediaType requestMediaType = httpHeaders == null ? null : httpHeaders.getMediaType();
+        final ObjectMapper mapper = RenderServiceUtil.SMILE_MEDIA_TYPE.isCompatible(requestMediaType) ?
+                                    JsonUtils.SMILE_MAPPER : JsonUtils.FAST_MAPPER;
+
+        return new JsonArrayIterator<>(mapper, tileIdsStream, String.class);
+    }
+
+    private Response getResolvedTilesResponse(final String owner,
+                                              final String project,
+                                              final String stack,
+                                              final Double minZ,
+                                              final Double maxZ,
+                                              final String groupId,
+                                              final Double minX,
+                                              final Double maxX,
+                                              final Double minY,
+                                              final Double maxY,
+                                              final HttpHeaders httpHeaders) {
+
+        Response response = null;
+        try {
+            final StackId stackId = new StackId(owner, project, stack);
+            final MediaType dataMediaType = RenderServiceUtil.getDataMediaType(httpHeaders);
+            final ObjectMapper mapper = RenderServiceUtil.getDataMapper(dataMediaType);
+
+            // The DAO identifies all referenced transforms (and throws not found exceptions)
+            // before writing anything, so errors can still be mapped to proper responses.
+            final StreamingOutput responseOutput = new StreamingOutput() {
+                @Override
+                public void write(final OutputStream output)
+                        throws IOException, WebApplicationException {
+                    try {
+                        renderDao.writeResolvedTiles(stackId, minZ, maxZ, groupId, minX, maxX, minY, maxY,
+                                                     mapper, output);
+                    } catch (final IOException e) {
+                        throw e;
+                    } catch (final Throwable t) {
+                        RenderServiceUtil.throwServiceException(t);
+                    }
+                }
+            };
+            response = Response.ok(responseOutput, dataMediaType).build();
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        return response;
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(RenderDataService.class);
 }
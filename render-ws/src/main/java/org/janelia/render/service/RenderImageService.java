@@ -18,6 +18,7 @@ import javax.ws.rs.core.Response;
 
 import org.janelia.alignment.RenderParameters;
 import org.janelia.alignment.Utils;
+import org.janelia.alignment.mipmap.MaterializedBoxRenderer;
 import org.janelia.alignment.spec.Bounds;
 import org.janelia.alignment.spec.stack.StackId;
 import org.janelia.alignment.spec.stack.StackMetaData;
@@ -217,16 +218,10 @@ public class RenderImageService {
 
         LOG.info("renderJpegImageForBox: entry");
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
-        if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    getRenderParametersForGroupBox(owner, project, stack, null,
-                                                   x, y, z, width, height, scale, filter, binaryMask,
-                                                   minIntensity, maxIntensity);
-            return RenderServiceUtil.renderJpegImage(renderParameters, maxTileSpecsToRender, responseHelper);
-        } else {
-            return responseHelper.getNotModifiedResponse();
-        }
+        return renderImageForBox(owner, project, stack, x, y, z, width, height, scale,
+                                 Utils.JPEG_FORMAT, RenderServiceUtil.IMAGE_JPEG_MIME_TYPE,
+                                 filter, binaryMask, maxTileSpecsToRender, minIntensity, maxIntensity,
+                                 request);
     }
 
     @Path("project/{project}/stack/{stack}/dvid/imagetile/raw/xy/{width}_{height}/{x}_{y}_{z}/jpg")
@@ -278,16 +273,10 @@ public class RenderImageService {
 
         LOG.info("renderPngImageForBox: entry");
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
-        if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    getRenderParametersForGroupBox(owner, project, stack, null,
-                                                   x, y, z, width, height, scale, filter, binaryMask,
-                                                   minIntensity, maxIntensity);
-            return RenderServiceUtil.renderPngImage(renderParameters, maxTileSpecsToRender, responseHelper);
-        } else {
-            return responseHelper.getNotModifiedResponse();
-        }
+        return renderImageForBox(owner, project, stack, x, y, z, width, height, scale,
+                                 Utils.PNG_FORMAT, RenderServiceUtil.IMAGE_PNG_MIME_TYPE,
+                                 filter, binaryMask, maxTileSpecsToRender, minIntensity, maxIntensity,
+                                 request);
     }
 
     @Path("project/{project}/stack/{stack}/dvid/imagetile/raw/xy/{width}_{height}/{x}_{y}_{z}/png")
@@ -339,16 +328,10 @@ public class RenderImageService {
 
         LOG.info("renderTiffImageForBox: entry");
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
-        if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    getRenderParametersForGroupBox(owner, project, stack, null,
-                                                   x, y, z, width, height, scale, filter, binaryMask,
-                                                   minIntensity, maxIntensity);
-            return RenderServiceUtil.renderTiffImage(renderParameters, maxTileSpecsToRender, responseHelper);
-        } else {
-            return responseHelper.getNotModifiedResponse();
-        }
+        return renderImageForBox(owner, project, stack, x, y, z, width, height, scale,
+                                 Utils.TIFF_FORMAT, RenderServiceUtil.IMAGE_TIFF_MIME_TYPE,
+                                 filter, binaryMask, maxTileSpecsToRender, minIntensity, maxIntensity,
+                                 request);
     }
 
     @Path("project/{project}/stack/{stack}/dvid/imagetile/raw/xy/{width}_{height}/{x}_{y}_{z}/tif")
@@ -677,6 +660,72 @@ public class RenderImageService {
                                        request);
     }
 
+    private Response renderImageForBox(final String owner,
+                                       final String project,
+                                       final String stack,
+                                       final Double x,
+                                       final Double y,
+                                       final Double z,
+                                       final Integer width,
+                                       final Integer height,
+                                       final Double scale,
+                                       final String format,
+                                       final String mimeType,
+                                       final Boolean filter,
+                                       final Boolean binaryMask,
+                                       final Integer maxTileSpecsToRender,
+                                       final Double minIntensity,
+                                       final Double maxIntensity,
+                                       final Request request) {
+
+        final StackMetaData stackMetaData = getStackMetaData(owner, project, stack);
+        final ResponseHelper responseHelper = new ResponseHelper(request, stackMetaData);
+        if (responseHelper.isModified()) {
+
+            // Materialized boxes are rendered with default options,
+            // so they can only be used for requests that don't ask for anything special.
+            final boolean hasDefaultRenderOptions = ((filter == null) || (! filter)) &&
+                                                    ((binaryMask == null) || (! binaryMask)) &&
+                                                    (minIntensity == null) &&
+                                                    (maxIntensity == null);
+
+            MaterializedBoxRenderer materializedBoxRenderer = null;
+            if (hasDefaultRenderOptions && (scale != null)) {
+                materializedBoxRenderer =
+                        MaterializedBoxRenderer.find(stackMetaData.getCurrentMaterializedBoxRootPath(),
+                                                     x, y, z, width, height, scale);
+            }
+
+            if (materializedBoxRenderer == null) {
+
+                final RenderParameters renderParameters =
+                        getRenderParametersForGroupBox(owner, project, stack, null,
+                                                       x, y, z, width, height, scale, filter, binaryMask,
+                                                       minIntensity, maxIntensity);
+                return RenderServiceUtil.renderImageStream(renderParameters,
+                                                           format,
+                                                           mimeType,
+                                                           maxTileSpecsToRender,
+                                                           responseHelper);
+
+            } else {
+
+                final RenderParameters renderParameters = new RenderParameters(null, x, y, width, height, scale);
+                return RenderServiceUtil.renderMaterializedBoxImageStream(renderParameters,
+                                                                          materializedBoxRenderer,
+                                                                          format,
+                                                                          mimeType,
+                                                                          responseHelper);
+
+            }
+
+        } else {
+
+            return responseHelper.getNotModifiedResponse();
+
+        }
+    }
+
     private Response renderLargeDataTileSource(final String owner,
                                                final String project,
                                                final String stack,
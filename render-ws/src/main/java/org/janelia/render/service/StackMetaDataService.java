@@ -2,9 +2,11 @@ package org.janelia.render.service;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.net.URI;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
@@ -32,7 +34,9 @@ import org.janelia.alignment.spec.stack.StackVersion;
 import org.janelia.render.service.dao.RenderDao;
 import org.janelia.render.service.model.IllegalServiceArgumentException;
 import org.janelia.render.service.model.ObjectNotFoundException;
+import org.janelia.render.service.model.StackJob;
 import org.janelia.render.service.util.RenderServiceUtil;
+import org.janelia.render.service.util.StackJobManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -77,6 +81,15 @@ public class StackMetaDataService {
         return objectId.toString();
     }
 
+    @Path("stackMetaDataCacheStats")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Hit rate and staleness statistics for this server's stack metadata cache")
+    public Map<String, Object> getStackMetaDataCacheStats() {
+        LOG.info("getStackMetaDataCacheStats: entry");
+        return renderDao.getStackMetaDataCacheStats();
+    }
+
     @Path("owners")
     @GET
     @Produces(MediaType.APPLICATION_JSON)
@@ -153,12 +166,17 @@ public class StackMetaDataService {
     @Path("owner/{owner}/project/{fromProject}/stack/{fromStack}/cloneTo/{toStack}")
     @PUT
     @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
     @ApiOperation(
             tags = {"Stack Data APIs", "Stack Management APIs"},
             value = "Clones one stack to another",
-            notes = "This operation copies all fromStack tiles and transformations to a new stack with the specified metadata.  This is a potentially long running operation (depending upon the size of the fromStack).")
+            notes = "This operation copies all fromStack tiles and transformations to a new stack with the specified metadata.  " +
+                    "This is a potentially long running operation (depending upon the size of the fromStack).  " +
+                    "Specify async=true to run the clone as a background job and immediately receive the job status " +
+                    "(poll the returned location to track progress).")
     @ApiResponses(value = {
             @ApiResponse(code = 201, message = "stack successfully cloned"),
+            @ApiResponse(code = 202, message = "clone job accepted for background processing", response = StackJob.class),
             @ApiResponse(code = 400, message = "toStack is not in LOADING state"),
             @ApiResponse(code = 404, message = "fromStack not found")
     })
@@ -169,12 +187,14 @@ public class StackMetaDataService {
                                       @QueryParam("z") final List<Double> zValues,
                                       @QueryParam("toProject") String toProject,
                                       @QueryParam("skipTransforms") final Boolean skipTransforms,
+                                      @QueryParam("async") final Boolean async,
                                       @Context final UriInfo uriInfo,
                                       final StackVersion stackVersion) {
 
-        LOG.info("cloneStackVersion: entry, owner={}, fromProject={}, fromStack={}, toProject={}, toStack={}, zValues={}, stackVersion={}",
-                 owner, fromProject, fromStack, toProject, toStack, zValues, stackVersion);
+        LOG.info("cloneStackVersion: entry, owner={}, fromProject={}, fromStack={}, toProject={}, toStack={}, zValues={}, async={}, stackVersion={}",
+                 owner, fromProject, fromStack, toProject, toStack, zValues, async, stackVersion);
 
+        Response response = null;
         try {
             if (stackVersion == null) {
                 throw new IllegalArgumentException("no stack version provided");
@@ -185,29 +205,96 @@ public class StackMetaDataService {
             }
 
             final StackMetaData fromStackMetaData = getStackMetaData(owner, fromProject, fromStack);
+            final StackId fromStackId = fromStackMetaData.getStackId();
             final StackId toStackId = new StackId(owner, toProject, toStack);
 
-            StackMetaData toStackMetaData = renderDao.getStackMetaData(toStackId);
+            final StackMetaData toStackMetaData = renderDao.getStackMetaData(toStackId);
 
             if ((toStackMetaData != null) && (! toStackMetaData.isLoading())) {
                 throw new IllegalStateException("Tiles cannot be cloned to stack " + toStack +
                                                 " because it is " + toStackMetaData.getState() + ".");
             }
 
-            renderDao.cloneStack(fromStackMetaData.getStackId(), toStackId, zValues, skipTransforms);
+            response = runStackTask("clone " + fromStackId + " to " + toStackId,
+                                    toStackId,
+                                    async,
+                                    uriInfo,
+                                    Response.created(uriInfo.getRequestUri()),
+                                    new StackJobManager.Task() {
+                                        @Override
+                                        public void run(final StackJob stackJob) {
+                                            cloneStack(fromStackId, toStackId, zValues, skipTransforms,
+                                                       stackVersion, stackJob);
+                                        }
+                                    });
+
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
 
-            toStackMetaData = new StackMetaData(toStackId, stackVersion);
-            renderDao.saveStackMetaData(toStackMetaData);
+        return response;
+    }
 
-            LOG.info("cloneStackVersion: created {} from {}", toStackId, fromStackMetaData.getStackId());
+    @Path("stackJobs")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            value = "List of background stack jobs",
+            notes = "Includes queued and running jobs as well as jobs that finished within the last day.")
+    public List<StackJob> getStackJobs() {
+        LOG.info("getStackJobs: entry");
+        return StackJobManager.getSharedInstance().getJobs();
+    }
 
+    @Path("stackJob/{jobId}")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Status of the specified background stack job")
+    @ApiResponses(value = {
+            @ApiResponse(code = 404, message = "Job not found")
+    })
+    public StackJob getStackJob(@PathParam("jobId") final String jobId) {
+
+        LOG.info("getStackJob: entry, jobId={}", jobId);
+
+        StackJob job = null;
+        try {
+            job = StackJobManager.getSharedInstance().getJob(jobId);
+            if (job == null) {
+                throw new ObjectNotFoundException("job " + jobId + " does not exist");
+            }
         } catch (final Throwable t) {
             RenderServiceUtil.throwServiceException(t);
         }
 
-        final Response.ResponseBuilder responseBuilder = Response.created(uriInfo.getRequestUri());
+        return job;
+    }
 
-        return responseBuilder.build();
+    @Path("stackJob/{jobId}")
+    @DELETE
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            value = "Cancels the specified background stack job",
+            notes = "Queued jobs are cancelled immediately.  Running jobs stop at their next progress checkpoint, " +
+                    "so poll the job status to confirm that it has been cancelled.  Finished jobs are not changed.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 404, message = "Job not found")
+    })
+    public StackJob cancelStackJob(@PathParam("jobId") final String jobId) {
+
+        LOG.info("cancelStackJob: entry, jobId={}", jobId);
+
+        StackJob job = null;
+        try {
+            job = StackJobManager.getSharedInstance().cancel(jobId);
+            if (job == null) {
+                throw new ObjectNotFoundException("job " + jobId + " does not exist");
+            }
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        return job;
     }
 
     @Path("owner/{owner}/project/{project}/stack/{stack}")
@@ -259,19 +346,25 @@ public class StackMetaDataService {
 
     @Path("owner/{owner}/project/{project}/stack/{stack}")
     @DELETE
+    @Produces(MediaType.APPLICATION_JSON)
     @ApiOperation(
             tags = {"Stack Data APIs", "Stack Management APIs"},
             value = "Deletes specified stack",
-            notes = "Deletes all tiles, transformations, meta data, and unsaved snapshot data for the stack.")
+            notes = "Deletes all tiles, transformations, meta data, and unsaved snapshot data for the stack.  " +
+                    "Specify async=true to run the deletion as a background job and immediately receive the job status.")
     @ApiResponses(value = {
-            @ApiResponse(code = 400, message = "stack is READ_ONLY")
+            @ApiResponse(code = 202, message = "delete job accepted for background processing", response = StackJob.class),
+            @ApiResponse(code = 400, message = "stack is READ_ONLY"),
+            @ApiResponse(code = 409, message = "another job for the stack has not finished")
     })
     public Response deleteStack(@PathParam("owner") final String owner,
                                 @PathParam("project") final String project,
-                                @PathParam("stack") final String stack) {
+                                @PathParam("stack") final String stack,
+                                @QueryParam("async") final Boolean async,
+                                @Context final UriInfo uriInfo) {
 
-        LOG.info("deleteStack: entry, owner={}, project={}, stack={}",
-                 owner, project, stack);
+        LOG.info("deleteStack: entry, owner={}, project={}, stack={}, async={}",
+                 owner, project, stack, async);
 
         Response response = null;
         try {
@@ -281,15 +374,25 @@ public class StackMetaDataService {
             if (stackMetaData == null) {
 
                 LOG.info("deleteStack: {} is already gone, nothing to do", stackId);
+                response = Response.ok().build();
 
             } else {
 
                 validateStackIsModifiable(stackMetaData);
-                renderDao.removeStack(stackId, true);
+                response = runStackTask("delete " + stackId,
+                                        stackId,
+                                        async,
+                                        uriInfo,
+                                        Response.ok(),
+                                        new StackJobManager.Task() {
+                                            @Override
+                                            public void run(final StackJob stackJob) {
+                                                renderDao.removeStack(stackId, true);
+                                            }
+                                        });
 
             }
 
-            response = Response.ok().build();
         } catch (final Throwable t) {
             RenderServiceUtil.throwServiceException(t);
         }
@@ -297,6 +400,87 @@ public class StackMetaDataService {
         return response;
     }
 
+    @Path("owner/{owner}/project/{project}/stack/{stack}/snapshot")
+    @PUT
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            tags = "Stack Management APIs",
+            value = "Saves a memory mapped snapshot of the stack",
+            notes = "Exports all tiles and shared transforms for a COMPLETE or READ_ONLY stack to an immutable " +
+                    "snapshot file that is used (instead of the database) to serve layer and box queries " +
+                    "until the stack is changed.  " +
+                    "Specify async=true to save the snapshot as a background job and immediately receive the job status.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 201, message = "snapshot successfully saved"),
+            @ApiResponse(code = 202, message = "snapshot job accepted for background processing", response = StackJob.class),
+            @ApiResponse(code = 400, message = "stack is not COMPLETE or READ_ONLY or snapshots are not configured"),
+            @ApiResponse(code = 404, message = "stack not found"),
+            @ApiResponse(code = 409, message = "another job for the stack has not finished")
+    })
+    public Response saveStackSnapshot(@PathParam("owner") final String owner,
+                                      @PathParam("project") final String project,
+                                      @PathParam("stack") final String stack,
+                                      @QueryParam("async") final Boolean async,
+                                      @Context final UriInfo uriInfo) {
+
+        LOG.info("saveStackSnapshot: entry, owner={}, project={}, stack={}, async={}",
+                 owner, project, stack, async);
+
+        Response response = null;
+        try {
+            final StackMetaData stackMetaData = getStackMetaData(owner, project, stack);
+            final StackId stackId = stackMetaData.getStackId();
+
+            final StackState state = stackMetaData.getState();
+            if (! (COMPLETE.equals(state) || READ_ONLY.equals(state))) {
+                throw new IllegalStateException("A snapshot cannot be saved for stack " + stack +
+                                                " because it is " + state + ".");
+            }
+
+            response = runStackTask("save snapshot of " + stackId,
+                                    stackId,
+                                    async,
+                                    uriInfo,
+                                    Response.created(uriInfo.getRequestUri()),
+                                    new StackJobManager.Task() {
+                                        @Override
+                                        public void run(final StackJob stackJob) {
+                                            renderDao.saveStackSnapshot(stackMetaData, stackJob);
+                                        }
+                                    });
+
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        return response;
+    }
+
+    @Path("owner/{owner}/project/{project}/stack/{stack}/snapshot")
+    @DELETE
+    @ApiOperation(
+            tags = "Stack Management APIs",
+            value = "Deletes the memory mapped snapshot of the stack",
+            notes = "Once the snapshot is removed, all queries for the stack are served from the database.")
+    public Response deleteStackSnapshot(@PathParam("owner") final String owner,
+                                        @PathParam("project") final String project,
+                                        @PathParam("stack") final String stack) {
+
+        LOG.info("deleteStackSnapshot: entry, owner={}, project={}, stack={}",
+                 owner, project, stack);
+
+        try {
+            final StackId stackId = new StackId(owner, project, stack);
+            if (! renderDao.removeStackSnapshot(stackId)) {
+                LOG.info("deleteStackSnapshot: {} does not have a snapshot, nothing to do", stackId);
+            }
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        return Response.ok().build();
+    }
+
     @Path("owner/{owner}/project/{project}/stack/{stack}/materializedBoxRootPath")
     @GET
     @Produces(MediaType.TEXT_PLAIN)
@@ -465,55 +649,129 @@ public class StackMetaDataService {
                     "since it creates indexes and aggregates meta data.  " +
                     "Transitioning to OFFLINE assumes that the stack data has been persisted elsewhere " +
                     "(e.g. a database dump file) and will remove the stack tile and transform collections, " +
-                    "so BE CAREFUL when transitioning to OFFLINE!")
+                    "so BE CAREFUL when transitioning to OFFLINE!  " +
+                    "Specify async=true to run COMPLETE or OFFLINE transitions as background jobs " +
+                    "and immediately receive the job status.")
     @ApiResponses(value = {
             @ApiResponse(code = 201, message = "state successfully changed"),
+            @ApiResponse(code = 202, message = "state change job accepted for background processing", response = StackJob.class),
             @ApiResponse(code = 400, message = "stack state cannot be changed because of current state"),
             @ApiResponse(code = 404, message = "stack not found"),
+            @ApiResponse(code = 409, message = "another job for the stack has not finished")
     })
     public Response setStackState(@PathParam("owner") final String owner,
                                   @PathParam("project") final String project,
                                   @PathParam("stack") final String stack,
                                   @PathParam("state") final StackState state,
+                                  @QueryParam("async") final Boolean async,
                                   @Context final UriInfo uriInfo) {
 
-        LOG.info("setStackState: entry, owner={}, project={}, stack={}, state={}",
-                 owner, project, stack, state);
+        LOG.info("setStackState: entry, owner={}, project={}, stack={}, state={}, async={}",
+                 owner, project, stack, state, async);
 
+        Response response = null;
         try {
             final StackMetaData stackMetaData = getStackMetaData(owner, project, stack);
+            final StackId stackId = stackMetaData.getStackId();
             final StackState currentState = stackMetaData.getState();
 
             stackMetaData.validateStateChange(state);
 
-            if (COMPLETE.equals(state)) {
+            final Response.ResponseBuilder createdResponseBuilder = Response.created(uriInfo.getRequestUri());
 
-                if (READ_ONLY.equals(currentState)) {
-                    stackMetaData.setState(state);
-                    renderDao.saveStackMetaData(stackMetaData);
-                } else {
-                    renderDao.ensureIndexesAndDeriveStats(stackMetaData); // also sets state to COMPLETE
-                }
+            if (COMPLETE.equals(state) && (! READ_ONLY.equals(currentState))) {
+
+                response = runStackTask("complete " + stackId,
+                                        stackId,
+                                        async,
+                                        uriInfo,
+                                        createdResponseBuilder,
+                                        new StackJobManager.Task() {
+                                            @Override
+                                            public void run(final StackJob stackJob) {
+                                                // also sets state to COMPLETE
+                                                renderDao.ensureIndexesAndDeriveStats(stackMetaData, stackJob);
+                                            }
+                                        });
 
             } else if (OFFLINE.equals(state)) {
 
                 stackMetaData.setState(state);
                 renderDao.saveStackMetaData(stackMetaData);
-                renderDao.removeStack(stackMetaData.getStackId(), false);
 
-            } else { // LOADING
+                response = runStackTask("remove collections for offline " + stackId,
+                                        stackId,
+                                        async,
+                                        uriInfo,
+                                        createdResponseBuilder,
+                                        new StackJobManager.Task() {
+                                            @Override
+                                            public void run(final StackJob stackJob) {
+                                                renderDao.removeStack(stackId, false);
+                                            }
+                                        });
+
+            } else { // LOADING or READ_ONLY to COMPLETE
 
                 stackMetaData.setState(state);
                 renderDao.saveStackMetaData(stackMetaData);
+                response = createdResponseBuilder.build();
             }
 
         } catch (final Throwable t) {
             RenderServiceUtil.throwServiceException(t);
         }
 
-        final Response.ResponseBuilder responseBuilder = Response.created(uriInfo.getRequestUri());
+        return response;
+    }
 
-        return responseBuilder.build();
+    @Path("owner/{owner}/project/{project}/stack/{stack}/sectionData/rederive")
+    @PUT
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            tags = {"Section Data APIs", "Stack Management APIs"},
+            value = "Rebuilds the section data for a stack",
+            notes = "Section and layer summary data are normally maintained as tiles are saved and removed.  " +
+                    "This operation rebuilds them from scratch, which is only needed if tile data was changed " +
+                    "outside of the render service.  Specify async=true to run the rebuild as a background job " +
+                    "and immediately receive the job status.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "section data successfully rebuilt"),
+            @ApiResponse(code = 202, message = "rebuild job accepted for background processing", response = StackJob.class),
+            @ApiResponse(code = 404, message = "stack not found"),
+            @ApiResponse(code = 409, message = "another job for the stack has not finished")
+    })
+    public Response rederiveSectionData(@PathParam("owner") final String owner,
+                                        @PathParam("project") final String project,
+                                        @PathParam("stack") final String stack,
+                                        @QueryParam("async") final Boolean async,
+                                        @Context final UriInfo uriInfo) {
+
+        LOG.info("rederiveSectionData: entry, owner={}, project={}, stack={}, async={}",
+                 owner, project, stack, async);
+
+        Response response = null;
+        try {
+            final StackMetaData stackMetaData = getStackMetaData(owner, project, stack);
+            final StackId stackId = stackMetaData.getStackId();
+
+            response = runStackTask("rederive section data for " + stackId,
+                                    stackId,
+                                    async,
+                                    uriInfo,
+                                    Response.ok(),
+                                    new StackJobManager.Task() {
+                                        @Override
+                                        public void run(final StackJob stackJob) {
+                                            renderDao.rederiveSectionData(stackId, stackJob);
+                                        }
+                                    });
+
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        return response;
     }
 
     @Path("owner/{owner}/project/{project}/stack/{stack}/bounds")
@@ -647,5 +905,56 @@ public class StackMetaDataService {
         }
     }
 
+    /**
+     * Runs the specified task as a background job when async processing is requested.
+     * Otherwise, runs the task in the current (request) thread as long as no other job
+     * for the same stack is still unfinished (the synchronous task is also tracked as a job so that
+     * other requests for the stack are rejected until it finishes).
+     *
+     * @return a 202 (accepted) response with the job's status and location for background tasks or
+     *         the specified synchronous response for tasks that have already been run.
+     */
+    private Response runStackTask(final String description,
+                                  final StackId stackId,
+                                  final Boolean async,
+                                  final UriInfo uriInfo,
+                                  final Response.ResponseBuilder synchronousResponseBuilder,
+                                  final StackJobManager.Task task)
+            throws Exception {
+
+        final StackJobManager jobManager = StackJobManager.getSharedInstance();
+        final Response response;
+
+        if ((async != null) && async) {
+
+            final StackJob job = jobManager.submit(description, stackId, task);
+            final URI jobUri = uriInfo.getBaseUriBuilder().path("v1/stackJob/{jobId}").build(job.getJobId());
+            response = Response.status(Response.Status.ACCEPTED).location(jobUri).entity(job).build();
+
+        } else {
+
+            jobManager.runInCurrentThread(description, stackId, task);
+            response = synchronousResponseBuilder.build();
+
+        }
+
+        return response;
+    }
+
+    private void cloneStack(final StackId fromStackId,
+                            final StackId toStackId,
+                            final List<Double> zValues,
+                            final Boolean skipTransforms,
+                            final StackVersion stackVersion,
+                            final StackJob job) {
+
+        renderDao.cloneStack(fromStackId, toStackId, zValues, skipTransforms, job);
+
+        final StackMetaData toStackMetaData = new StackMetaData(toStackId, stackVersion);
+        renderDao.saveStackMetaData(toStackMetaData);
+
+        LOG.info("cloneStack: created {} from {}", toStackId, fromStackId);
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(StackMetaDataService.class);
 }
@@ -14,6 +14,7 @@ import javax.ws.rs.core.Response;
 
 import org.janelia.alignment.ImageAndMask;
 import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.json.JsonUtils;
 import org.janelia.alignment.spec.TileSpec;
 import org.janelia.alignment.spec.stack.StackId;
 import org.janelia.alignment.spec.stack.StackMetaData;
@@ -54,7 +55,7 @@ public class TileDataService {
 
     @Path("project/{project}/stack/{stack}/tile/{tileId}")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, JsonUtils.SMILE_MIME_TYPE})
     @ApiOperation(
             value = "Get tile spec")
     @ApiResponses(value = {
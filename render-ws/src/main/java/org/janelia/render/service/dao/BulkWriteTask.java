@@ -0,0 +1,96 @@
+package org.janelia.render.service.dao;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.WriteModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bulk writes one (unordered) batch of models for a {@link ConcurrentBatchWriter}.
+ *
+ * When the same key is upserted concurrently (by another batch of the same request or by another request),
+ * both upserts can attempt an insert and one of them fails with a duplicate key error.
+ * Upserts that fail this way are retried once, at which point they update the now existing document.
+ *
+ * @author Eric Trautman
+ */
+class BulkWriteTask<T>
+        implements Callable<Integer> {
+
+    private final MongoCollection<T> collection;
+    private final List<WriteModel<T>> modelList;
+    private final String context;
+
+    public BulkWriteTask(final MongoCollection<T> collection,
+                         final List<WriteModel<T>> modelList,
+                         final String context) {
+        this.collection = collection;
+        this.modelList = modelList;
+        this.context = context;
+    }
+
+    @Override
+    public Integer call() {
+        try {
+            write(modelList);
+        } catch (final MongoBulkWriteException e) {
+            final List<WriteModel<T>> duplicateKeyUpserts = getDuplicateKeyUpserts(e);
+            if (duplicateKeyUpserts == null) {
+                throw e;
+            }
+            LOG.debug("call: retrying {} {} upserts that failed with duplicate key errors",
+                      duplicateKeyUpserts.size(), context);
+            write(duplicateKeyUpserts);
+        }
+        return modelList.size();
+    }
+
+    private void write(final List<WriteModel<T>> models) {
+        final BulkWriteResult result = collection.bulkWrite(models, MongoUtil.UNORDERED_OPTION);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("write: {} using {}.bulkWrite",
+                      MongoUtil.toMessage(context, result, models.size()),
+                      MongoUtil.fullName(collection));
+        }
+    }
+
+    /**
+     * @return the failed models if all failures were duplicate key errors for upserts; otherwise null.
+     */
+    private List<WriteModel<T>> getDuplicateKeyUpserts(final MongoBulkWriteException e) {
+
+        List<WriteModel<T>> failedModels = null;
+
+        if (e.getWriteConcernError() == null) {
+
+            failedModels = new ArrayList<>(e.getWriteErrors().size());
+
+            WriteModel<T> model;
+            for (final BulkWriteError error : e.getWriteErrors()) {
+                model = modelList.get(error.getIndex());
+                if ((ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY) &&
+                    (model instanceof ReplaceOneModel) &&
+                    ((ReplaceOneModel<T>) model).getOptions().isUpsert()) {
+                    failedModels.add(model);
+                } else {
+                    failedModels = null;
+                    break;
+                }
+            }
+        }
+
+        return failedModels;
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkWriteTask.class);
+}
@@ -0,0 +1,215 @@
+package org.janelia.render.service.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.BsonBinary;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.janelia.alignment.match.CanvasMatches;
+import org.janelia.alignment.match.Matches;
+
+/**
+ * Mongo codec that converts {@link CanvasMatches} directly to and from BSON.
+ *
+ * Point correspondences can be stored either as nested <code>matches</code> p, q, and w arrays
+ * (the original layout matching the JSON model) or as a single <code>packedMatches</code>
+ * binary value (see {@link Matches#toPackedBytes()}).  Packed values are much smaller and
+ * are copied without per-element BSON overhead.
+ * Both layouts are always decoded, so collections containing a mix of the two can be read transparently.
+ *
+ * @author Eric Trautman
+ */
+public class CanvasMatchesCodec
+        implements Codec<CanvasMatches> {
+
+    public static final String MATCHES_KEY = "matches";
+    public static final String PACKED_MATCHES_KEY = "packedMatches";
+
+    private final boolean packMatches;
+
+    /**
+     * @param  packMatches  indicates whether encoded matches should be stored in packed binary form.
+     */
+    public CanvasMatchesCodec(final boolean packMatches) {
+        this.packMatches = packMatches;
+    }
+
+    @Override
+    public Class<CanvasMatches> getEncoderClass() {
+        return CanvasMatches.class;
+    }
+
+    @Override
+    public CanvasMatches decode(final BsonReader reader,
+                                final DecoderContext decoderContext) {
+
+        String pGroupId = null;
+        String pId = null;
+        String qGroupId = null;
+        String qId = null;
+        Matches matches = null;
+
+        reader.readStartDocument();
+
+        String name;
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            name = reader.readName();
+            switch (name) {
+                case "pGroupId":
+                    pGroupId = reader.readString();
+                    break;
+                case "pId":
+                    pId = reader.readString();
+                    break;
+                case "qGroupId":
+                    qGroupId = reader.readString();
+                    break;
+                case "qId":
+                    qId = reader.readString();
+                    break;
+                case MATCHES_KEY:
+                    matches = readMatches(reader);
+                    break;
+                case PACKED_MATCHES_KEY:
+                    matches = Matches.fromPackedBytes(reader.readBinaryData().getData());
+                    break;
+                default:
+                    // skip database id and any other unmapped fields
+                    reader.skipValue();
+            }
+        }
+
+        reader.readEndDocument();
+
+        return new CanvasMatches(pGroupId, pId, qGroupId, qId, matches);
+    }
+
+    @Override
+    public void encode(final BsonWriter writer,
+                       final CanvasMatches value,
+                       final EncoderContext encoderContext) {
+
+        writer.writeStartDocument();
+
+        writer.writeString("pGroupId", value.getpGroupId());
+        writer.writeString("pId", value.getpId());
+        writer.writeString("qGroupId", value.getqGroupId());
+        writer.writeString("qId", value.getqId());
+
+        final Matches matches = value.getMatches();
+        if (matches != null) {
+            if (packMatches) {
+                writer.writeBinaryData(PACKED_MATCHES_KEY, new BsonBinary(matches.toPackedBytes()));
+            } else {
+                writer.writeStartDocument(MATCHES_KEY);
+                writePoints(writer, "p", matches.getPs());
+                writePoints(writer, "q", matches.getQs());
+                writer.writeName("w");
+                writeValues(writer, matches.getWs());
+                writer.writeEndDocument();
+            }
+        }
+
+        writer.writeEndDocument();
+    }
+
+    private static Matches readMatches(final BsonReader reader) {
+
+        double[][] p = null;
+        double[][] q = null;
+        double[] w = null;
+
+        reader.readStartDocument();
+
+        String name;
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            name = reader.readName();
+            switch (name) {
+                case "p":
+                    p = readPoints(reader);
+                    break;
+                case "q":
+                    q = readPoints(reader);
+                    break;
+                case "w":
+                    w = readValues(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+
+        reader.readEndDocument();
+
+        return new Matches(p, q, w);
+    }
+
+    private static double[][] readPoints(final BsonReader reader) {
+        final List<double[]> dimensionValues = new ArrayList<>();
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            dimensionValues.add(readValues(reader));
+        }
+        reader.readEndArray();
+        return dimensionValues.toArray(new double[dimensionValues.size()][]);
+    }
+
+    private static double[] readValues(final BsonReader reader) {
+
+        double[] values = new double[64];
+        int count = 0;
+
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count] = readNumber(reader);
+            count++;
+        }
+        reader.readEndArray();
+
+        return Arrays.copyOf(values, count);
+    }
+
+    private static double readNumber(final BsonReader reader) {
+        final double value;
+        switch (reader.getCurrentBsonType()) {
+            case INT32:
+                value = reader.readInt32();
+                break;
+            case INT64:
+                value = reader.readInt64();
+                break;
+            default:
+                value = reader.readDouble();
+        }
+        return value;
+    }
+
+    private static void writePoints(final BsonWriter writer,
+                                    final String name,
+                                    final double[][] points) {
+        writer.writeStartArray(name);
+        for (final double[] values : points) {
+            writeValues(writer, values);
+        }
+        writer.writeEndArray();
+    }
+
+    private static void writeValues(final BsonWriter writer,
+                                    final double[] values) {
+        writer.writeStartArray();
+        for (final double value : values) {
+            writer.writeDouble(value);
+        }
+        writer.writeEndArray();
+    }
+
+}
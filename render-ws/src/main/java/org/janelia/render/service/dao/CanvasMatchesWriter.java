@@ -0,0 +1,136 @@
+package org.janelia.render.service.dao;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.janelia.alignment.match.CanvasMatches;
+
+/**
+ * Writes a sequence of {@link CanvasMatches} to an output stream in a specific format.
+ *
+ * @author Eric Trautman
+ */
+public abstract class CanvasMatchesWriter {
+
+    /**
+     * @return writer that serializes matches as an array using the specified (JSON or Smile) mapper.
+     */
+    public static CanvasMatchesWriter forMapper(final ObjectMapper mapper,
+                                                final OutputStream outputStream) {
+        return new MapperWriter(mapper, outputStream);
+    }
+
+    /**
+     * @return writer that serializes matches as a packed binary stream
+     *         (see {@link CanvasMatches#fromPackedStream}).
+     */
+    public static CanvasMatchesWriter forPackedBinary(final OutputStream outputStream) {
+        return new PackedWriter(outputStream);
+    }
+
+    /**
+     * Writes any format specific header data.
+     */
+    public abstract void writeStart()
+            throws IOException;
+
+    /**
+     * Writes the specified matches.
+     */
+    public abstract void write(final CanvasMatches canvasMatches)
+            throws IOException;
+
+    /**
+     * Writes any format specific trailer data and flushes (but does not close) the underlying stream.
+     */
+    public abstract void writeEnd()
+            throws IOException;
+
+    /**
+     * @return name of this writer's format (for logging).
+     */
+    public abstract String getFormatName();
+
+    private static class MapperWriter
+            extends CanvasMatchesWriter {
+
+        private final ObjectMapper mapper;
+        private final OutputStream outputStream;
+        private ObjectWriter matchesWriter;
+        private JsonGenerator generator;
+
+        public MapperWriter(final ObjectMapper mapper,
+                            final OutputStream outputStream) {
+            this.mapper = mapper;
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        public void writeStart()
+                throws IOException {
+            // let the generator buffer output instead of flushing after each value
+            matchesWriter = mapper.writerWithType(CanvasMatches.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+            generator = mapper.getFactory().createGenerator(outputStream);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+        }
+
+        @Override
+        public void write(final CanvasMatches canvasMatches)
+                throws IOException {
+            matchesWriter.writeValue(generator, canvasMatches);
+        }
+
+        @Override
+        public void writeEnd()
+                throws IOException {
+            generator.writeEndArray();
+            generator.close();
+        }
+
+        @Override
+        public String getFormatName() {
+            return mapper.getFactory().getFormatName();
+        }
+    }
+
+    private static class PackedWriter
+            extends CanvasMatchesWriter {
+
+        private final DataOutputStream out;
+
+        public PackedWriter(final OutputStream outputStream) {
+            this.out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        }
+
+        @Override
+        public void writeStart() {
+        }
+
+        @Override
+        public void write(final CanvasMatches canvasMatches)
+                throws IOException {
+            out.write(CanvasMatches.PACKED_RECORD_MARKER);
+            canvasMatches.writePacked(out);
+        }
+
+        @Override
+        public void writeEnd()
+                throws IOException {
+            out.write(CanvasMatches.PACKED_END_MARKER);
+            out.flush();
+        }
+
+        @Override
+        public String getFormatName() {
+            return "packed";
+        }
+    }
+}
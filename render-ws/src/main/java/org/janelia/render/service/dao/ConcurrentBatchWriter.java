@@ -0,0 +1,121 @@
+package org.janelia.render.service.dao;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Submits batch write tasks to a pool shared by all data access objects while limiting the number
+ * of pending batches (per writer) to {@link #MAX_CONCURRENT_BATCHES}.
+ * Submission blocks (by waiting for an earlier batch) when the limit has been reached,
+ * so callers never hold more than a bounded number of batches in memory.
+ *
+ * Instances are not thread safe and should only be used by the thread that processes a request.
+ *
+ * @author Eric Trautman
+ */
+class ConcurrentBatchWriter {
+
+    /** Maximum number of batches (per request) that are processed concurrently or held in memory. */
+    static final int MAX_CONCURRENT_BATCHES = 4;
+
+    private final String context;
+    private final CompletionService<Integer> completionService;
+    private int pendingBatchCount;
+    private int completedBatchCount;
+    private long writtenCount;
+
+    /**
+     * @param  context  description of the written objects (for logging and error messages).
+     */
+    public ConcurrentBatchWriter(final String context) {
+        this.context = context;
+        this.completionService = new ExecutorCompletionService<>(BATCH_EXECUTOR);
+        this.pendingBatchCount = 0;
+        this.completedBatchCount = 0;
+        this.writtenCount = 0;
+    }
+
+    public long getWrittenCount() {
+        return writtenCount;
+    }
+
+    /**
+     * @param  task  batch task that returns the number of objects it wrote.
+     *
+     * @throws IllegalArgumentException
+     *   if a previously submitted batch failed with this exception.
+     *
+     * @throws IllegalStateException
+     *   if a previously submitted batch failed for any other reason.
+     */
+    public void submit(final Callable<Integer> task)
+            throws IllegalArgumentException, IllegalStateException {
+        if (pendingBatchCount == MAX_CONCURRENT_BATCHES) {
+            takeResult();
+        }
+        completionService.submit(task);
+        pendingBatchCount++;
+    }
+
+    public void waitForAllBatches()
+            throws IllegalArgumentException, IllegalStateException {
+        while (pendingBatchCount > 0) {
+            takeResult();
+        }
+    }
+
+    /**
+     * Waits for any batches submitted before a failure so that they do not outlive the request.
+     */
+    public void waitForAllBatchesIgnoringFailures() {
+        for (; pendingBatchCount > 0; pendingBatchCount--) {
+            try {
+                completionService.take().get();
+            } catch (final Throwable t) {
+                LOG.warn("ignoring failure of " + context + " batch submitted before prior error", t);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "wrote " + writtenCount + " " + context + " in " + completedBatchCount + " batches";
+    }
+
+    private void takeResult()
+            throws IllegalArgumentException, IllegalStateException {
+        pendingBatchCount--;
+        try {
+            writtenCount += completionService.take().get();
+            completedBatchCount++;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while writing " + context, e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("failed to write " + context, cause);
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrentBatchWriter.class);
+
+    /** Pool shared by all writers (render and match data) in this process. */
+    private static final ExecutorService BATCH_EXECUTOR =
+            Executors.newFixedThreadPool(2 * MAX_CONCURRENT_BATCHES,
+                                         new ThreadFactoryBuilder()
+                                                 .setNameFormat("dao-batch-%d")
+                                                 .setDaemon(true)
+                                                 .build());
+}
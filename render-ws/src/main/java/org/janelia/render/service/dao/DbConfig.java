@@ -1,6 +1,7 @@
 package org.janelia.render.service.dao;
 
 import com.mongodb.MongoClientOptions;
+import com.mongodb.ReadPreference;
 import com.mongodb.ServerAddress;
 
 import java.io.File;
@@ -26,6 +27,10 @@ public class DbConfig {
     private final String password;
     private int maxConnectionsPerHost;
     private int maxConnectionIdleTime;
+    private boolean storePackedMatches;
+    private ReadPreference readPreference;
+    private long maxStalenessSeconds;
+    private File stackSnapshotDirectory;
 
     public DbConfig(final List<ServerAddress> serverAddressList,
                     final String userName,
@@ -37,6 +42,10 @@ public class DbConfig {
         this.password = password;
         this.maxConnectionsPerHost = new MongoClientOptions.Builder().build().getConnectionsPerHost(); // 100
         this.maxConnectionIdleTime = 600000; // 10 minutes
+        this.storePackedMatches = false;
+        this.readPreference = ReadPreference.primary();
+        this.maxStalenessSeconds = 120;
+        this.stackSnapshotDirectory = null;
     }
 
     public List<ServerAddress> getServerAddressList() {
@@ -67,6 +76,27 @@ public class DbConfig {
         return maxConnectionIdleTime;
     }
 
+    /**
+     * @return true if point matches should be saved in compact binary form; false to save them as nested arrays.
+     */
+    public boolean isStorePackedMatches() {
+        return storePackedMatches;
+    }
+
+    /**
+     * @return policy for routing read-only queries to replica set members.
+     */
+    public ReadPreferencePolicy getReadPreferencePolicy() {
+        return new ReadPreferencePolicy(readPreference, maxStalenessSeconds);
+    }
+
+    /**
+     * @return directory for memory mapped stack snapshot files (or null if snapshots are not supported).
+     */
+    public File getStackSnapshotDirectory() {
+        return stackSnapshotDirectory;
+    }
+
     public static DbConfig fromFile(final File file)
             throws IllegalArgumentException {
 
@@ -133,6 +163,36 @@ public class DbConfig {
                 }
             }
 
+            final String storePackedMatchesStr = properties.getProperty("storePackedMatches");
+            if (storePackedMatchesStr != null) {
+                dbConfig.storePackedMatches = Boolean.parseBoolean(storePackedMatchesStr.trim());
+            }
+
+            final String readPreferenceStr = properties.getProperty("readPreference");
+            if (readPreferenceStr != null) {
+                try {
+                    dbConfig.readPreference = ReadPreference.valueOf(readPreferenceStr.trim());
+                } catch (final IllegalArgumentException e) {
+                    throw new IllegalArgumentException("invalid readPreference value (" +
+                                                       readPreferenceStr + ") specified in " + path, e);
+                }
+            }
+
+            final String maxStalenessSecondsStr = properties.getProperty("maxStalenessSeconds");
+            if (maxStalenessSecondsStr != null) {
+                try {
+                    dbConfig.maxStalenessSeconds = Long.parseLong(maxStalenessSecondsStr.trim());
+                } catch (final NumberFormatException e) {
+                    throw new IllegalArgumentException("invalid maxStalenessSeconds value (" +
+                                                       maxStalenessSecondsStr + ") specified in " + path, e);
+                }
+            }
+
+            final String stackSnapshotDirectoryStr = properties.getProperty("stackSnapshotDirectory");
+            if (stackSnapshotDirectoryStr != null) {
+                dbConfig.stackSnapshotDirectory = new File(stackSnapshotDirectoryStr.trim()).getAbsoluteFile();
+            }
+
         } catch (final IllegalArgumentException e) {
             throw e;
         } catch (final Exception e) {
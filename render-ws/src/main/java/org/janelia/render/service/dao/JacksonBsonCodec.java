@@ -0,0 +1,212 @@
+package org.janelia.render.service.dao;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.janelia.alignment.json.JsonUtils;
+
+/**
+ * Mongo codec that converts spec objects (e.g. {@link org.janelia.alignment.spec.TileSpec} and
+ * {@link org.janelia.alignment.spec.TransformSpec}) directly to and from BSON.
+ *
+ * Conversions are driven by the same Jackson mappings used for JSON, so stored documents and
+ * decoded objects are identical to those produced by the previous
+ * <code>Document.parse(spec.toJson())</code> and <code>fromJson(document.toJson())</code> round trips.
+ * The difference is that values are streamed between the BSON reader/writer and a Jackson token buffer
+ * without building and re-parsing intermediate JSON strings.
+ *
+ * @author Eric Trautman
+ */
+public class JacksonBsonCodec<T>
+        implements Codec<T> {
+
+    private static final ObjectMapper MAPPER = JsonUtils.FAST_MAPPER;
+
+    private final Class<T> valueClass;
+    private final ObjectWriter writer;
+
+    public JacksonBsonCodec(final Class<T> valueClass) {
+        this.valueClass = valueClass;
+        // use base type writer so that polymorphic type information is always included
+        this.writer = MAPPER.writerWithType(valueClass);
+    }
+
+    @Override
+    public Class<T> getEncoderClass() {
+        return valueClass;
+    }
+
+    @Override
+    public T decode(final BsonReader reader,
+                    final DecoderContext decoderContext) {
+
+        final TokenBuffer buffer = new TokenBuffer(MAPPER, false);
+        try {
+            copyDocument(reader, buffer, true);
+            return MAPPER.readValue(buffer.asParser(), valueClass);
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("failed to decode " + valueClass.getSimpleName(), e);
+        }
+    }
+
+    @Override
+    public void encode(final BsonWriter bsonWriter,
+                       final T value,
+                       final EncoderContext encoderContext) {
+
+        final TokenBuffer buffer = new TokenBuffer(MAPPER, false);
+        try {
+            writer.writeValue(buffer, value);
+            copyTokens(buffer.asParser(), bsonWriter);
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("failed to encode " + valueClass.getSimpleName(), e);
+        }
+    }
+
+    private static void copyDocument(final BsonReader reader,
+                                     final TokenBuffer buffer,
+                                     final boolean isTopLevel)
+            throws IOException {
+
+        reader.readStartDocument();
+        buffer.writeStartObject();
+
+        String name;
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            name = reader.readName();
+            if (isTopLevel && "_id".equals(name)) {
+                // database ids are not part of the spec models
+                reader.skipValue();
+            } else {
+                buffer.writeFieldName(name);
+                copyValue(reader, buffer);
+            }
+        }
+
+        reader.readEndDocument();
+        buffer.writeEndObject();
+    }
+
+    private static void copyArray(final BsonReader reader,
+                                  final TokenBuffer buffer)
+            throws IOException {
+
+        reader.readStartArray();
+        buffer.writeStartArray();
+
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            copyValue(reader, buffer);
+        }
+
+        reader.readEndArray();
+        buffer.writeEndArray();
+    }
+
+    private static void copyValue(final BsonReader reader,
+                                  final TokenBuffer buffer)
+            throws IOException {
+
+        switch (reader.getCurrentBsonType()) {
+            case DOCUMENT:
+                copyDocument(reader, buffer, false);
+                break;
+            case ARRAY:
+                copyArray(reader, buffer);
+                break;
+            case DOUBLE:
+                buffer.writeNumber(reader.readDouble());
+                break;
+            case INT32:
+                buffer.writeNumber(reader.readInt32());
+                break;
+            case INT64:
+                buffer.writeNumber(reader.readInt64());
+                break;
+            case STRING:
+                buffer.writeString(reader.readString());
+                break;
+            case BOOLEAN:
+                buffer.writeBoolean(reader.readBoolean());
+                break;
+            case NULL:
+                reader.readNull();
+                buffer.writeNull();
+                break;
+            case OBJECT_ID:
+                buffer.writeString(reader.readObjectId().toHexString());
+                break;
+            case DATE_TIME:
+                buffer.writeNumber(reader.readDateTime());
+                break;
+            default:
+                // spec models do not use any other BSON types
+                reader.skipValue();
+                buffer.writeNull();
+        }
+    }
+
+    private static void copyTokens(final JsonParser parser,
+                                   final BsonWriter bsonWriter)
+            throws IOException {
+
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            switch (token) {
+                case START_OBJECT:
+                    bsonWriter.writeStartDocument();
+                    break;
+                case END_OBJECT:
+                    bsonWriter.writeEndDocument();
+                    break;
+                case START_ARRAY:
+                    bsonWriter.writeStartArray();
+                    break;
+                case END_ARRAY:
+                    bsonWriter.writeEndArray();
+                    break;
+                case FIELD_NAME:
+                    bsonWriter.writeName(parser.getCurrentName());
+                    break;
+                case VALUE_STRING:
+                    bsonWriter.writeString(parser.getText());
+                    break;
+                case VALUE_NUMBER_INT:
+                    // match Document.parse which stores integers as int32 when they fit
+                    if (parser.getNumberType() == JsonParser.NumberType.INT) {
+                        bsonWriter.writeInt32(parser.getIntValue());
+                    } else if (parser.getNumberType() == JsonParser.NumberType.LONG) {
+                        bsonWriter.writeInt64(parser.getLongValue());
+                    } else {
+                        bsonWriter.writeDouble(parser.getDoubleValue());
+                    }
+                    break;
+                case VALUE_NUMBER_FLOAT:
+                    bsonWriter.writeDouble(parser.getDoubleValue());
+                    break;
+                case VALUE_TRUE:
+                    bsonWriter.writeBoolean(true);
+                    break;
+                case VALUE_FALSE:
+                    bsonWriter.writeBoolean(false);
+                    break;
+                case VALUE_NULL:
+                    bsonWriter.writeNull();
+                    break;
+                default:
+                    throw new IllegalStateException("unsupported token " + token + " for BSON conversion");
+            }
+        }
+    }
+
+}
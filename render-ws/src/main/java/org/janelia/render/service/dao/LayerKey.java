@@ -0,0 +1,50 @@
+package org.janelia.render.service.dao;
+
+import org.janelia.alignment.spec.stack.StackId;
+
+/**
+ * Cache key that combines a stack identifier with a layer z value.
+ *
+ * @author Eric Trautman
+ */
+class LayerKey {
+
+    private final String stackKey;
+    private final Double z;
+
+    public LayerKey(final StackId stackId,
+                    final Double z) {
+        this.stackKey = stackId.toString();
+        this.z = z;
+    }
+
+    public boolean isForStack(final String stackKey) {
+        return this.stackKey.equals(stackKey);
+    }
+
+    @Override
+    public String toString() {
+        return "{stack: " + stackKey + ", z: " + z + '}';
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        boolean result = true;
+        if (this != o) {
+            if (o instanceof LayerKey) {
+                final LayerKey that = (LayerKey) o;
+                result = this.stackKey.equals(that.stackKey) && this.z.equals(that.z);
+            } else {
+                result = false;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = stackKey.hashCode();
+        result = 31 * result + z.hashCode();
+        return result;
+    }
+}
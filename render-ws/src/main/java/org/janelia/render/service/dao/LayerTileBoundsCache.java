@@ -0,0 +1,178 @@
+package org.janelia.render.service.dao;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.janelia.alignment.spec.TileBounds;
+import org.janelia.alignment.spec.TileBoundsRTree;
+import org.janelia.alignment.spec.stack.StackId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of {@link TileBoundsRTree} instances for stack layers (z) so that coordinate to tile lookups
+ * can be served from memory.
+ *
+ * Only tile bounds are cached, so layers are much cheaper to load and retain than
+ * {@link LayerTileSpecCache} layers.  Staleness is handled the same way: callers provide the
+ * stack's current last modified timestamp and layers can be explicitly invalidated when stack data is written.
+ *
+ * @author Eric Trautman
+ */
+public class LayerTileBoundsCache {
+
+    /** Default maximum number of tile bounds to cache across all layers. */
+    public static final long DEFAULT_MAX_CACHED_TILES = 2000000;
+
+    /** Default number of minutes that unused layers are retained. */
+    public static final long DEFAULT_EXPIRE_AFTER_ACCESS_MINUTES = 30;
+
+    private static LayerTileBoundsCache sharedInstance;
+
+    /**
+     * @return cache instance shared by all service data access objects.
+     */
+    public static LayerTileBoundsCache getSharedInstance() {
+        if (sharedInstance == null) {
+            setSharedInstance();
+        }
+        return sharedInstance;
+    }
+
+    private static synchronized void setSharedInstance() {
+        if (sharedInstance == null) {
+            sharedInstance = new LayerTileBoundsCache(DEFAULT_MAX_CACHED_TILES, DEFAULT_EXPIRE_AFTER_ACCESS_MINUTES);
+            LOG.info("setSharedInstance: exit, created {}", sharedInstance);
+        }
+    }
+
+    private final long maxCachedTiles;
+    private final long expireAfterAccessMinutes;
+    private final Cache<LayerKey, Layer> cache;
+
+    public LayerTileBoundsCache(final long maxCachedTiles,
+                                final long expireAfterAccessMinutes) {
+
+        this.maxCachedTiles = maxCachedTiles;
+        this.expireAfterAccessMinutes = expireAfterAccessMinutes;
+
+        final Weigher<LayerKey, Layer> weigher =
+                new Weigher<LayerKey, Layer>() {
+                    @Override
+                    public int weigh(final LayerKey key,
+                                     final Layer value) {
+                        return (value == null) ? 0 : Math.max(1, value.size);
+                    }
+                };
+
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxCachedTiles)
+                .weigher(weigher)
+                .expireAfterAccess(expireAfterAccessMinutes, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param  stackId                stack identifier.
+     * @param  z                      layer z value.
+     * @param  lastModifiedTimestamp  current last modified time for the stack.
+     * @param  loader                 loads the layer's tile bounds if they are not cached or are stale.
+     *
+     * @return tree of tile bounds for the specified stack and z.
+     *
+     * @throws IllegalStateException
+     *   if the layer cannot be loaded.
+     */
+    public TileBoundsRTree get(final StackId stackId,
+                               final Double z,
+                               final Date lastModifiedTimestamp,
+                               final Callable<List<TileBounds>> loader)
+            throws IllegalStateException {
+
+        final LayerKey key = new LayerKey(stackId, z);
+        final long lastModifiedTime = (lastModifiedTimestamp == null) ? -1 : lastModifiedTimestamp.getTime();
+
+        final Layer cachedLayer = cache.getIfPresent(key);
+        if ((cachedLayer != null) && (cachedLayer.lastModifiedTime != lastModifiedTime)) {
+            LOG.debug("get: invalidating stale layer {}", key);
+            cache.invalidate(key);
+        }
+
+        final Layer layer;
+        try {
+            layer = cache.get(key, new Callable<Layer>() {
+                @Override
+                public Layer call()
+                        throws Exception {
+                    return new Layer(lastModifiedTime, z, loader.call());
+                }
+            });
+        } catch (final Throwable t) {
+            throw new IllegalStateException("failed to load layer " + key, t);
+        }
+
+        return layer.tree;
+    }
+
+    /**
+     * Removes all cached layers for the specified stack.
+     */
+    public void invalidateStack(final StackId stackId) {
+        final String stackKey = stackId.toString();
+        final List<LayerKey> keysToRemove = new ArrayList<>();
+        for (final LayerKey key : cache.asMap().keySet()) {
+            if (key.isForStack(stackKey)) {
+                keysToRemove.add(key);
+            }
+        }
+        cache.invalidateAll(keysToRemove);
+    }
+
+    /**
+     * @return the number of layers currently in this cache.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * @return a current snapshot of this cache's cumulative statistics.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    @Override
+    public String toString() {
+        return "{numberOfLayers: " + size() +
+               ", maxCachedTiles: " + maxCachedTiles +
+               ", expireAfterAccessMinutes: " + expireAfterAccessMinutes +
+               '}';
+    }
+
+    private static class Layer {
+
+        private final long lastModifiedTime;
+        private final int size;
+        private final TileBoundsRTree tree;
+
+        public Layer(final long lastModifiedTime,
+                     final Double z,
+                     final List<TileBounds> tileBoundsList) {
+            this.lastModifiedTime = lastModifiedTime;
+            this.size = tileBoundsList.size();
+            this.tree = new TileBoundsRTree(z, tileBoundsList);
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(LayerTileBoundsCache.class);
+}
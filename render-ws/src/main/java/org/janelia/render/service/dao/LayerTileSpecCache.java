@@ -0,0 +1,288 @@
+package org.janelia.render.service.dao;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.janelia.alignment.spec.ListTransformSpec;
+import org.janelia.alignment.spec.TileBounds;
+import org.janelia.alignment.spec.TileBoundsRTree;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TransformSpec;
+import org.janelia.alignment.spec.stack.StackId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of all tile specs for a stack layer (z) with an in-memory spatial index
+ * so that box queries can be served without hitting the database.
+ *
+ * Each cached layer remembers the last modified timestamp of its stack when it was loaded.
+ * Callers provide the current timestamp when retrieving a layer, and stale layers are reloaded.
+ * Layers can also be explicitly invalidated when stack data is written.
+ *
+ * Tile specs are cached in their (unresolved) JSON form along with the resolved transform specs
+ * they reference.  Each lookup parses new tile spec instances because rendering and flattening
+ * alter tile specs, so they cannot be safely shared across requests.
+ *
+ * @author Eric Trautman
+ */
+public class LayerTileSpecCache {
+
+    /** Default maximum number of tiles to cache across all layers. */
+    public static final long DEFAULT_MAX_CACHED_TILES = 250000;
+
+    /** Default maximum number of tiles in a single cached layer (larger layers are queried directly). */
+    public static final int DEFAULT_MAX_TILES_PER_LAYER = 50000;
+
+    /** Default number of minutes that unused layers are retained. */
+    public static final long DEFAULT_EXPIRE_AFTER_ACCESS_MINUTES = 30;
+
+    private static LayerTileSpecCache sharedInstance;
+
+    /**
+     * @return cache instance shared by all service data access objects.
+     */
+    public static LayerTileSpecCache getSharedInstance() {
+        if (sharedInstance == null) {
+            setSharedInstance();
+        }
+        return sharedInstance;
+    }
+
+    private static synchronized void setSharedInstance() {
+        if (sharedInstance == null) {
+            sharedInstance = new LayerTileSpecCache(DEFAULT_MAX_CACHED_TILES,
+                                                    DEFAULT_MAX_TILES_PER_LAYER,
+                                                    DEFAULT_EXPIRE_AFTER_ACCESS_MINUTES);
+            LOG.info("setSharedInstance: exit, created {}", sharedInstance);
+        }
+    }
+
+    private final long maxCachedTiles;
+    private final int maxTilesPerLayer;
+    private final long expireAfterAccessMinutes;
+    private final Cache<LayerKey, Layer> cache;
+
+    public LayerTileSpecCache(final long maxCachedTiles,
+                              final int maxTilesPerLayer,
+                              final long expireAfterAccessMinutes) {
+
+        this.maxCachedTiles = maxCachedTiles;
+        this.maxTilesPerLayer = maxTilesPerLayer;
+        this.expireAfterAccessMinutes = expireAfterAccessMinutes;
+
+        final Weigher<LayerKey, Layer> weigher =
+                new Weigher<LayerKey, Layer>() {
+                    @Override
+                    public int weigh(final LayerKey key,
+                                     final Layer value) {
+                        // count empty (or uncacheable) layers as one tile so that they still age out
+                        return (value == null) ? 0 : Math.max(1, value.size());
+                    }
+                };
+
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxCachedTiles)
+                .weigher(weigher)
+                .expireAfterAccess(expireAfterAccessMinutes, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+    }
+
+    public int getMaxTilesPerLayer() {
+        return maxTilesPerLayer;
+    }
+
+    /**
+     * @param  stackId                stack identifier.
+     * @param  z                      layer z value.
+     * @param  lastModifiedTimestamp  current last modified time for the stack.
+     * @param  loader                 loads the layer from the database if it is not cached or is stale.
+     *
+     * @return the cached layer for the specified stack and z.
+     *
+     * @throws IllegalStateException
+     *   if the layer cannot be loaded.
+     */
+    public Layer get(final StackId stackId,
+                     final Double z,
+                     final Date lastModifiedTimestamp,
+                     final Callable<Layer> loader)
+            throws IllegalStateException {
+
+        final LayerKey key = new LayerKey(stackId, z);
+        final long lastModifiedTime = getTime(lastModifiedTimestamp);
+
+        Layer layer = cache.getIfPresent(key);
+        if ((layer != null) && (layer.lastModifiedTime != lastModifiedTime)) {
+            LOG.debug("get: invalidating stale layer {}", key);
+            cache.invalidate(key);
+        }
+
+        try {
+            layer = cache.get(key, loader);
+        } catch (final Throwable t) {
+            throw new IllegalStateException("failed to load layer " + key, t);
+        }
+
+        return layer;
+    }
+
+    /**
+     * Removes all cached layers for the specified stack.
+     */
+    public void invalidateStack(final StackId stackId) {
+        final String stackKey = stackId.toString();
+        final List<LayerKey> keysToRemove = new ArrayList<>();
+        for (final LayerKey key : cache.asMap().keySet()) {
+            if (key.isForStack(stackKey)) {
+                keysToRemove.add(key);
+            }
+        }
+        cache.invalidateAll(keysToRemove);
+
+        if (keysToRemove.size() > 0) {
+            LOG.debug("invalidateStack: removed {} layers for {}", keysToRemove.size(), stackId);
+        }
+    }
+
+    /**
+     * Removes all cached layers.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return the number of layers currently in this cache.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * @return a current snapshot of this cache's cumulative statistics.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    @Override
+    public String toString() {
+        return "{numberOfLayers: " + size() +
+               ", maxCachedTiles: " + maxCachedTiles +
+               ", maxTilesPerLayer: " + maxTilesPerLayer +
+               ", expireAfterAccessMinutes: " + expireAfterAccessMinutes +
+               '}';
+    }
+
+    /**
+     * @return a layer instance that indicates the layer is too large to cache.
+     */
+    public static Layer buildUncacheableLayer(final Date lastModifiedTimestamp) {
+        return new Layer(lastModifiedTimestamp, null, null, null);
+    }
+
+    private static long getTime(final Date timestamp) {
+        return (timestamp == null) ? -1 : timestamp.getTime();
+    }
+
+    /**
+     * All tile specs for one stack layer.
+     */
+    public static class Layer {
+
+        private final long lastModifiedTime;
+        private final List<TileBounds> tileBoundsList;
+        private final TileBoundsRTree tree;
+        private final Map<String, String> tileIdToJson;
+        private final Map<String, TransformSpec> resolvedIdToSpecMap;
+
+        /**
+         * @param  lastModifiedTimestamp  stack last modified time when this layer was loaded.
+         * @param  tileBoundsList         bounds for every tile in the layer (or null if layer is uncacheable).
+         * @param  tileIdToJson           unresolved JSON for every tile in the layer.
+         * @param  resolvedIdToSpecMap    resolved shared transform specs referenced by tiles in the layer.
+         */
+        public Layer(final Date lastModifiedTimestamp,
+                     final List<TileBounds> tileBoundsList,
+                     final Map<String, String> tileIdToJson,
+                     final Map<String, TransformSpec> resolvedIdToSpecMap) {
+
+            this.lastModifiedTime = getTime(lastModifiedTimestamp);
+            this.tileBoundsList = tileBoundsList;
+            this.tileIdToJson = tileIdToJson;
+
+            if (resolvedIdToSpecMap == null) {
+                this.resolvedIdToSpecMap = new HashMap<>();
+            } else {
+                this.resolvedIdToSpecMap = resolvedIdToSpecMap;
+            }
+
+            if (tileBoundsList == null) {
+                this.tree = null;
+            } else {
+                this.tree = new TileBoundsRTree(null, tileBoundsList);
+            }
+        }
+
+        public boolean isCached() {
+            return tree != null;
+        }
+
+        public int size() {
+            return (tileBoundsList == null) ? 0 : tileBoundsList.size();
+        }
+
+        /**
+         * @return newly parsed and resolved specs (sorted by tileId) for all tiles that intersect the specified box.
+         *         Intersection logic matches {@link RenderDao} box queries (bounds are inclusive).
+         */
+        public List<TileSpec> getTileSpecsInBox(final double x,
+                                                final double y,
+                                                final double lowerRightX,
+                                                final double lowerRightY) {
+
+            // tree search uses float precision, so search a slightly larger box and then filter exactly
+            final List<TileBounds> candidates = tree.findTilesInBox(x - 1, y - 1, lowerRightX + 1, lowerRightY + 1);
+
+            final List<String> tileIds = new ArrayList<>(candidates.size());
+            for (final TileBounds tileBounds : candidates) {
+                if ((tileBounds.getMinX() <= lowerRightX) && (tileBounds.getMinY() <= lowerRightY) &&
+                    (tileBounds.getMaxX() >= x) && (tileBounds.getMaxY() >= y)) {
+                    tileIds.add(tileBounds.getTileId());
+                }
+            }
+
+            // order tile specs by tileId to ensure consistent coordinate mapping
+            Collections.sort(tileIds);
+
+            final List<TileSpec> tileSpecs = new ArrayList<>(tileIds.size());
+            TileSpec tileSpec;
+            ListTransformSpec transforms;
+            for (final String tileId : tileIds) {
+                tileSpec = TileSpec.fromJson(tileIdToJson.get(tileId));
+                transforms = tileSpec.getTransforms();
+                if ((transforms != null) && (resolvedIdToSpecMap.size() > 0)) {
+                    transforms.resolveReferences(resolvedIdToSpecMap);
+                }
+                tileSpecs.add(tileSpec);
+            }
+
+            return tileSpecs;
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(LayerTileSpecCache.class);
+}
@@ -2,25 +2,27 @@ package org.janelia.render.service.dao;
 
 import com.mongodb.MongoClient;
 import com.mongodb.QueryOperators;
-import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.ReplaceOneModel;
-import com.mongodb.client.model.UpdateOptions;
 import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.DeleteResult;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeSet;
 
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
 import org.janelia.alignment.match.CanvasMatches;
 import org.janelia.alignment.match.MatchCollectionId;
 import org.janelia.alignment.match.MatchCollectionMetaData;
@@ -39,9 +41,27 @@ public class MatchDao {
     public static final String MATCH_DB_NAME = "match";
 
     private final MongoDatabase matchDatabase;
+    private final boolean storePackedMatches;
+    private final CanvasMatchesCodec matchesCodec;
 
     public MatchDao(final MongoClient client) {
-        matchDatabase = client.getDatabase(MATCH_DB_NAME);
+        this(client, false);
+    }
+
+    /**
+     * @param  client              database client.
+     * @param  storePackedMatches  indicates whether saved point correspondences should be stored in
+     *                             compact binary form (see {@link CanvasMatchesCodec}).
+     *                             Matches are always read in either form.
+     */
+    public MatchDao(final MongoClient client,
+                    final boolean storePackedMatches) {
+        this.matchesCodec = new CanvasMatchesCodec(storePackedMatches);
+        final CodecRegistry codecRegistry =
+                CodecRegistries.fromRegistries(CodecRegistries.fromCodecs(matchesCodec),
+                                               MongoClient.getDefaultCodecRegistry());
+        this.matchDatabase = client.getDatabase(MATCH_DB_NAME).withCodecRegistry(codecRegistry);
+        this.storePackedMatches = storePackedMatches;
     }
 
     /**
@@ -93,7 +113,7 @@ public class MatchDao {
     public void writeMatchesWithPGroup(final MatchCollectionId collectionId,
                                        final List<MatchCollectionId> mergeCollectionIdList,
                                        final String pGroupId,
-                                       final OutputStream outputStream)
+                                       final CanvasMatchesWriter matchesWriter)
             throws IllegalArgumentException, IOException, ObjectNotFoundException {
 
         LOG.debug("writeMatchesWithPGroup: entry, collectionId={}, mergeCollectionIdList={}, pGroupId={}",
@@ -105,13 +125,13 @@ public class MatchDao {
 
         final Document query = new Document("pGroupId", pGroupId);
 
-        writeMatches(collectionList, query, outputStream);
+        writeMatches(collectionList, query, matchesWriter);
     }
 
     public void writeMatchesWithinGroup(final MatchCollectionId collectionId,
                                         final List<MatchCollectionId> mergeCollectionIdList,
                                         final String groupId,
-                                        final OutputStream outputStream)
+                                        final CanvasMatchesWriter matchesWriter)
             throws IllegalArgumentException, IOException, ObjectNotFoundException {
 
         LOG.debug("writeMatchesWithinGroup: entry, collectionId={}, mergeCollectionIdList={}, groupId={}",
@@ -123,13 +143,13 @@ public class MatchDao {
 
         final Document query = new Document("pGroupId", groupId).append("qGroupId", groupId);
 
-        writeMatches(collectionList, query, outputStream);
+        writeMatches(collectionList, query, matchesWriter);
     }
 
     public void writeMatchesOutsideGroup(final MatchCollectionId collectionId,
                                          final List<MatchCollectionId> mergeCollectionIdList,
                                          final String groupId,
-                                         final OutputStream outputStream)
+                                         final CanvasMatchesWriter matchesWriter)
             throws IllegalArgumentException, IOException, ObjectNotFoundException {
 
         LOG.debug("writeMatchesOutsideGroup: entry, collectionId={}, mergeCollectionIdList={}, groupId={}",
@@ -141,14 +161,14 @@ public class MatchDao {
 
         final Document query = getOutsideGroupQuery(groupId);
 
-        writeMatches(collectionList, query, outputStream);
+        writeMatches(collectionList, query, matchesWriter);
     }
 
     public void writeMatchesBetweenGroups(final MatchCollectionId collectionId,
                                           final List<MatchCollectionId> mergeCollectionIdList,
                                           final String pGroupId,
                                           final String qGroupId,
-                                          final OutputStream outputStream)
+                                          final CanvasMatchesWriter matchesWriter)
             throws IllegalArgumentException, IOException, ObjectNotFoundException {
 
         LOG.debug("writeMatchesBetweenGroups: entry, collectionId={}, mergeCollectionIdList={}, pGroupId={}, pGroupId={}",
@@ -165,7 +185,7 @@ public class MatchDao {
                 "pGroupId", normalizedCriteria.getpGroupId()).append(
                 "qGroupId", normalizedCriteria.getqGroupId());
 
-        writeMatches(collectionList, query, outputStream);
+        writeMatches(collectionList, query, matchesWriter);
     }
 
     public void writeMatchesBetweenObjects(final MatchCollectionId collectionId,
@@ -174,7 +194,7 @@ public class MatchDao {
                                            final String pId,
                                            final String qGroupId,
                                            final String qId,
-                                           final OutputStream outputStream)
+                                           final CanvasMatchesWriter matchesWriter)
             throws IllegalArgumentException, IOException, ObjectNotFoundException {
 
         LOG.debug("writeMatchesBetweenObjects: entry, collectionId={}, mergeCollectionIdList={}, pGroupId={}, pId={}, qGroupId={}, qId={}",
@@ -194,13 +214,13 @@ public class MatchDao {
                 "qGroupId", normalizedCriteria.getqGroupId()).append(
                 "qId", normalizedCriteria.getqId());
 
-        writeMatches(collectionList, query, outputStream);
+        writeMatches(collectionList, query, matchesWriter);
     }
     public void writeMatchesInvolvingObject(final MatchCollectionId collectionId,
 								           final List<MatchCollectionId> mergeCollectionIdList,
 								           final String groupId,
 								           final String id,
-								           final OutputStream outputStream)
+								           final CanvasMatchesWriter matchesWriter)
 			throws IllegalArgumentException, IOException, ObjectNotFoundException {
 			
 			LOG.debug("writeMatchesInvolvingObject: entry, collectionId={}, mergeCollectionIdList={}, groupId={}, id={}",
@@ -213,7 +233,7 @@ public class MatchDao {
 					
 			final Document query = getInvolvingObjectQuery(groupId,id);	
 			
-			writeMatches(collectionList, query, outputStream);
+			writeMatches(collectionList, query, matchesWriter);
 	}
     public void removeMatchesBetweenTiles(final MatchCollectionId collectionId,
                                           final String pGroupId,
@@ -297,36 +317,78 @@ public class MatchDao {
                   collectionId, matchesList.size());
 
         if (matchesList.size() > 0) {
+            saveMatches(collectionId, matchesList.iterator());
+        }
+    }
 
-            final MongoCollection<Document> collection =
-                    matchDatabase.getCollection(collectionId.getDbCollectionName());
+    /**
+     * Saves (upserts) matches in bounded unordered bulk batches that are written concurrently.
+     * No more than {@link ConcurrentBatchWriter#MAX_CONCURRENT_BATCHES} batches are held in memory at once,
+     * so iterators backed by a streamed request body never need to be fully buffered.
+     *
+     * @param  collectionId      identifies the match collection.
+     * @param  matchesIterator   iterator for the matches to save.
+     *
+     * @return the number of saved matches.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing, the iterator provides invalid data, or a batch fails.
+     */
+    public long saveMatches(final MatchCollectionId collectionId,
+                            final Iterator<CanvasMatches> matchesIterator)
+            throws IllegalArgumentException {
 
+        MongoUtil.validateRequiredParameter("collectionId", collectionId);
+        MongoUtil.validateRequiredParameter("matchesIterator", matchesIterator);
+
+        final MongoCollection<Document> collection =
+                matchDatabase.getCollection(collectionId.getDbCollectionName());
+        final MongoCollection<CanvasMatches> matchesCollection = collection.withDocumentClass(CanvasMatches.class);
+
+        final ProcessTimer timer = new ProcessTimer();
+        final ConcurrentBatchWriter batchWriter = new ConcurrentBatchWriter("matches");
+
+        if (matchesIterator.hasNext()) {
             ensureMatchIndexes(collection);
+        }
 
-            final List<WriteModel<Document>> modelList = new ArrayList<>(matchesList.size());
+        try {
 
-            final UpdateOptions upsertOption = new UpdateOptions().upsert(true);
+            List<WriteModel<CanvasMatches>> modelList = new ArrayList<>(SAVE_BATCH_SIZE);
             Document filter;
-            Document matchesObject;
-            for (final CanvasMatches canvasMatches : matchesList) {
+            CanvasMatches canvasMatches;
+            while (matchesIterator.hasNext()) {
+
+                canvasMatches = matchesIterator.next();
                 canvasMatches.normalize();
                 filter = new Document(
                         "pGroupId", canvasMatches.getpGroupId()).append(
                         "pId", canvasMatches.getpId()).append(
                         "qGroupId", canvasMatches.getqGroupId()).append(
                         "qId", canvasMatches.getqId());
-                matchesObject = Document.parse(canvasMatches.toJson());
-                modelList.add(new ReplaceOneModel<>(filter, matchesObject, upsertOption));
-            }
+                modelList.add(new ReplaceOneModel<>(filter, canvasMatches, MongoUtil.UPSERT_OPTION));
 
-            final BulkWriteResult result = collection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION);
+                if ((modelList.size() == SAVE_BATCH_SIZE) || (! matchesIterator.hasNext())) {
+                    // pairs saved by concurrent batches are retried as updates (see BulkWriteTask)
+                    batchWriter.submit(new BulkWriteTask<>(matchesCollection, modelList, "matches"));
+                    modelList = new ArrayList<>(SAVE_BATCH_SIZE);
+                }
 
-            if (LOG.isDebugEnabled()) {
-                final String bulkResultMessage = MongoUtil.toMessage("matches", result, matchesList.size());
-                LOG.debug("saveMatches: {} using {}.initializeUnorderedBulkOp()",
-                          bulkResultMessage, MongoUtil.fullName(collection));
+                if (timer.hasIntervalPassed()) {
+                    LOG.debug("saveMatches: {}", batchWriter);
+                }
             }
+
+            batchWriter.waitForAllBatches();
+
+        } finally {
+            batchWriter.waitForAllBatchesIgnoringFailures();
         }
+
+        LOG.debug("saveMatches: {} for {}, storePackedMatches={}, elapsedSeconds={}",
+                  batchWriter, MongoUtil.fullName(collection), storePackedMatches, timer.getElapsedSeconds());
+
+        return batchWriter.getWrittenCount();
     }
 
     public void removeAllMatches(final MatchCollectionId collectionId)
@@ -389,33 +451,27 @@ public class MatchDao {
 
     private void writeMatches(final List<MongoCollection<Document>> collectionList,
                               final Document query,
-                              final OutputStream outputStream)
+                              final CanvasMatchesWriter matchesWriter)
             throws IOException {
 
         if (collectionList.size() > 1) {
 
-            writeMergedMatches(collectionList, query, outputStream);
+            writeMergedMatches(collectionList, query, matchesWriter);
 
         } else {
 
-            final MongoCollection<Document> collection = collectionList.get(0);
+            final MongoCollection<CanvasMatches> collection =
+                    collectionList.get(0).withDocumentClass(CanvasMatches.class);
 
             final ProcessTimer timer = new ProcessTimer();
 
-            outputStream.write(OPEN_BRACKET);
+            matchesWriter.writeStart();
 
             int count = 0;
-            try (MongoCursor<Document> cursor = collection.find(query).projection(EXCLUDE_MONGO_ID_KEY).sort(MATCH_ORDER_BY).iterator()) {
-
-                Document document;
+            try (MongoCursor<CanvasMatches> cursor =
+                         collection.find(query).projection(EXCLUDE_MONGO_ID_KEY).sort(MATCH_ORDER_BY).iterator()) {
                 while (cursor.hasNext()) {
-
-                    if (count > 0) {
-                        outputStream.write(COMMA_WITH_NEW_LINE);
-                    }
-
-                    document = cursor.next();
-                    outputStream.write(document.toJson().getBytes());
+                    matchesWriter.write(cursor.next());
                     count++;
 
                     if (timer.hasIntervalPassed()) {
@@ -424,55 +480,71 @@ public class MatchDao {
                 }
             }
 
-            outputStream.write(CLOSE_BRACKET);
+            matchesWriter.writeEnd();
 
             if (LOG.isDebugEnabled()) {
-                LOG.debug("writeMatches: wrote data for {} matches returned by {}.find({},{}), elapsedSeconds={}",
-                          count, MongoUtil.fullName(collection), query.toJson(), EXCLUDE_MONGO_ID_KEY_JSON, timer.getElapsedSeconds());
+                LOG.debug("writeMatches: wrote {} data for {} matches returned by {}.find({},{}), elapsedSeconds={}",
+                          matchesWriter.getFormatName(), count, MongoUtil.fullName(collection), query.toJson(),
+                          EXCLUDE_MONGO_ID_KEY_JSON, timer.getElapsedSeconds());
             }
         }
     }
 
+    /**
+     * Merges matches from multiple (pre-sorted) collections with a heap-based k-way merge.
+     * Cursors return raw BSON so that ordering only requires reading the four id keys of each document.
+     * Documents are fully decoded once when they are written (or appended to a colliding pair).
+     */
     private void writeMergedMatches(final List<MongoCollection<Document>> collectionList,
                                     final Document query,
-                                    final OutputStream outputStream)
+                                    final CanvasMatchesWriter matchesWriter)
             throws IOException {
 
         // exclude mongo id from results
         final ProcessTimer timer = new ProcessTimer();
 
-        outputStream.write(OPEN_BRACKET);
+        matchesWriter.writeStart();
 
         int count = 0;
+        int mergedCount = 0;
 
         final int numberOfCollections = collectionList.size();
-        final List<MongoCursor<Document>> cursorList = new ArrayList<>(numberOfCollections);
-        final List<CanvasMatches> matchesList = new ArrayList<>(numberOfCollections);
+        final List<MergeCursor> cursorList = new ArrayList<>(numberOfCollections);
+        final PriorityQueue<MergeCursor> queue = new PriorityQueue<>(numberOfCollections);
 
         try {
 
-            int numberOfCompletedCursors = 0;
-            MongoCollection<Document> collection;
-            for (int i = 0; i < numberOfCollections; i++) {
-                collection = collectionList.get(i);
-                cursorList.add(collection.find(query).projection(EXCLUDE_MONGO_ID_KEY).sort(MATCH_ORDER_BY).iterator());
-                matchesList.add(null);
-                numberOfCompletedCursors += updateMatches(cursorList, matchesList, i);
-            }
-
-            if (numberOfCompletedCursors > 0) {
-                removeCompletedCursors(cursorList, matchesList);
+            MongoCollection<RawBsonDocument> collection;
+            MergeCursor mergeCursor;
+            for (final MongoCollection<Document> documentCollection : collectionList) {
+                collection = documentCollection.withDocumentClass(RawBsonDocument.class);
+                mergeCursor = new MergeCursor(
+                        collection.find(query).projection(EXCLUDE_MONGO_ID_KEY).sort(MATCH_ORDER_BY).iterator());
+                cursorList.add(mergeCursor);
+                if (mergeCursor.advance()) {
+                    queue.add(mergeCursor);
+                }
             }
 
             CanvasMatches mergedMatches;
-            while (matchesList.size() > 0) {
-                if (count > 0) {
-                    outputStream.write(COMMA_WITH_NEW_LINE);
+            while (queue.size() > 0) {
+
+                mergeCursor = queue.poll();
+                mergedMatches = mergeCursor.decodeCurrent(matchesCodec);
+                if (mergeCursor.advance()) {
+                    queue.add(mergeCursor);
                 }
 
-                mergedMatches = getNextMergedMatches(cursorList, matchesList);
+                while ((queue.size() > 0) && queue.peek().hasSameKey(mergedMatches)) {
+                    mergeCursor = queue.poll();
+                    mergedMatches.append(mergeCursor.decodeCurrent(matchesCodec).getMatches());
+                    mergedCount++;
+                    if (mergeCursor.advance()) {
+                        queue.add(mergeCursor);
+                    }
+                }
 
-                outputStream.write(mergedMatches.toJson().getBytes());
+                matchesWriter.write(mergedMatches);
                 count++;
 
                 if (timer.hasIntervalPassed()) {
@@ -482,19 +554,17 @@ public class MatchDao {
 
         } finally {
 
-            for (final MongoCursor<Document> cursor : cursorList) {
-                if (cursor != null) {
-                    try {
-                        cursor.close();
-                    } catch (final Throwable t) {
-                        LOG.error("failed to close cursor, ignoring exception", t);
-                    }
+            for (final MergeCursor mergeCursor : cursorList) {
+                try {
+                    mergeCursor.close();
+                } catch (final Throwable t) {
+                    LOG.error("failed to close cursor, ignoring exception", t);
                 }
             }
 
         }
 
-        outputStream.write(CLOSE_BRACKET);
+        matchesWriter.writeEnd();
 
         if (LOG.isDebugEnabled()) {
             final StringBuilder collectionNames = new StringBuilder(512);
@@ -504,62 +574,10 @@ public class MatchDao {
                 }
                 collectionNames.append(MongoUtil.fullName(collectionList.get(i)));
             }
-            LOG.debug("writeMergedMatches: wrote data for {} matches returned by {}.find({},{}).sort({}), elapsedSeconds={}",
-                      count, collectionNames, query.toJson(), EXCLUDE_MONGO_ID_KEY_JSON, MATCH_ORDER_BY_JSON, timer.getElapsedSeconds());
-        }
-    }
-
-    private CanvasMatches getNextMergedMatches(final List<MongoCursor<Document>> cursorList,
-                                               final List<CanvasMatches> matchesList) {
-
-        int numberOfCompletedCursors = 0;
-        int nextMatchesIndex = 0;
-        CanvasMatches nextMatches = matchesList.get(nextMatchesIndex);
-        CanvasMatches matches;
-        int comparisonResult;
-        for (int i = 1; i < matchesList.size(); i++) {
-            matches = matchesList.get(i);
-            comparisonResult = matches.compareTo(nextMatches);
-            if (comparisonResult == 0) {
-                nextMatches.append(matches.getMatches());
-                numberOfCompletedCursors += updateMatches(cursorList, matchesList, i);
-            } else if (comparisonResult < 0) {
-                nextMatchesIndex = i;
-                nextMatches = matches;
-            }
+            LOG.debug("writeMergedMatches: wrote {} data for {} matches ({} merged pairs) returned by {}.find({},{}).sort({}), elapsedSeconds={}",
+                      matchesWriter.getFormatName(), count, mergedCount, collectionNames, query.toJson(),
+                      EXCLUDE_MONGO_ID_KEY_JSON, MATCH_ORDER_BY_JSON, timer.getElapsedSeconds());
         }
-
-        numberOfCompletedCursors += updateMatches(cursorList, matchesList, nextMatchesIndex);
-
-        if (numberOfCompletedCursors > 0) {
-            removeCompletedCursors(cursorList, matchesList);
-        }
-
-        return nextMatches;
-    }
-
-    private void removeCompletedCursors(final List<MongoCursor<Document>> cursorList,
-                                        final List<CanvasMatches> matchesList) {
-        MongoCursor<Document> cursor;
-        for (int i = matchesList.size() - 1; i >=0; i--) {
-            if (matchesList.get(i) == null) {
-                matchesList.remove(i);
-                cursor = cursorList.remove(i);
-                cursor.close();
-            }
-        }
-    }
-
-    private int updateMatches(final List<MongoCursor<Document>> cursorList,
-                              final List<CanvasMatches> matchesList,
-                              final int index) {
-        CanvasMatches canvasMatches = null;
-        final MongoCursor<Document> cursor = cursorList.get(index);
-        if (cursor.hasNext()) {
-            canvasMatches = CanvasMatches.fromJson(cursor.next().toJson());
-        }
-        matchesList.set(index, canvasMatches);
-        return (canvasMatches == null ? 1 : 0);
     }
 
     private Document getOutsideGroupQuery(final String groupId) {
@@ -592,16 +610,85 @@ public class MatchDao {
                               MATCH_B_OPTIONS);
     }
 
+    /**
+     * Wraps a sorted raw document cursor and tracks the id keys of its current document
+     * so that cursors can be ordered without decoding full match data.
+     */
+    private static class MergeCursor
+            implements Comparable<MergeCursor> {
+
+        private final MongoCursor<RawBsonDocument> cursor;
+        private RawBsonDocument current;
+        private String pGroupId;
+        private String qGroupId;
+        private String pId;
+        private String qId;
+
+        public MergeCursor(final MongoCursor<RawBsonDocument> cursor) {
+            this.cursor = cursor;
+        }
+
+        /**
+         * Moves to the next document.
+         *
+         * @return true if a next document exists; otherwise false (cursor is exhausted).
+         */
+        public boolean advance() {
+            final boolean hasNext = cursor.hasNext();
+            if (hasNext) {
+                current = cursor.next();
+                pGroupId = current.getString("pGroupId").getValue();
+                qGroupId = current.getString("qGroupId").getValue();
+                pId = current.getString("pId").getValue();
+                qId = current.getString("qId").getValue();
+            } else {
+                current = null;
+            }
+            return hasNext;
+        }
+
+        public CanvasMatches decodeCurrent(final CanvasMatchesCodec codec) {
+            return current.decode(codec);
+        }
+
+        public boolean hasSameKey(final CanvasMatches canvasMatches) {
+            return pGroupId.equals(canvasMatches.getpGroupId()) &&
+                   qGroupId.equals(canvasMatches.getqGroupId()) &&
+                   pId.equals(canvasMatches.getpId()) &&
+                   qId.equals(canvasMatches.getqId());
+        }
+
+        public void close() {
+            cursor.close();
+        }
+
+        // same ordering as CanvasMatches.compareTo (and MATCH_ORDER_BY)
+        @Override
+        public int compareTo(@SuppressWarnings("NullableProblems") final MergeCursor that) {
+            int result = this.pGroupId.compareTo(that.pGroupId);
+            if (result == 0) {
+                result = this.qGroupId.compareTo(that.qGroupId);
+                if (result == 0) {
+                    result = this.pId.compareTo(that.pId);
+                    if (result == 0) {
+                        result = this.qId.compareTo(that.qId);
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(MatchDao.class);
 
+    /** Maximum number of matches written by each bulk save batch. */
+    private static final int SAVE_BATCH_SIZE = 1000;
+
     private static final Document MATCH_ORDER_BY =
             new Document("pGroupId", 1).append("qGroupId", 1).append("pId", 1).append("qId", 1);
     private static final String MATCH_ORDER_BY_JSON = MATCH_ORDER_BY.toJson();
     private static final Document EXCLUDE_MONGO_ID_KEY = new Document("_id", 0);
     private static final String EXCLUDE_MONGO_ID_KEY_JSON = EXCLUDE_MONGO_ID_KEY.toJson();
-    private static final byte[] OPEN_BRACKET = "[".getBytes();
-    private static final byte[] COMMA_WITH_NEW_LINE = ",\n".getBytes();
-    private static final byte[] CLOSE_BRACKET = "]".getBytes();
 
     private static final IndexOptions MATCH_A_OPTIONS = new IndexOptions().unique(true).background(true).name("A");
     private static final IndexOptions MATCH_B_OPTIONS = new IndexOptions().background(true).name("B");
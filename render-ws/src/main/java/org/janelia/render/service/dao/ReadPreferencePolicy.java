@@ -0,0 +1,93 @@
+package org.janelia.render.service.dao;
+
+import com.mongodb.ReadPreference;
+
+import java.util.Date;
+
+/**
+ * Identifies the replica set members that should serve read-only DAO queries.
+ * The policy is only applied to stack data since match collections do not persist modification times
+ * (match queries always read from the primary).
+ *
+ * The 3.2 java driver does not support a max staleness read preference option,
+ * so the DAOs approximate one instead: data that was last changed more than
+ * {@link #getMaxStalenessMillis()} ago may be read with the configured (secondary) read preference
+ * while more recently changed data is always read from the primary.
+ * Writes always go to the primary.
+ *
+ * This is only a heuristic based upon the age of each change.  Secondary replication lag is not checked,
+ * so a secondary that has fallen further behind than the max staleness can still return out-of-date data.
+ * The max staleness should therefore be set well above the replica set's normal replication lag
+ * and non-primary reads should not be enabled for replica sets with members that regularly fall behind.
+ *
+ * @author Eric Trautman
+ */
+public class ReadPreferencePolicy {
+
+    /** Policy that sends all reads to the primary. */
+    public static final ReadPreferencePolicy PRIMARY_ONLY = new ReadPreferencePolicy(ReadPreference.primary(), 0);
+
+    private final ReadPreference readPreference;
+    private final long maxStalenessMillis;
+
+    /**
+     * @param  readPreference       preference for reads of data that has not been changed recently.
+     * @param  maxStalenessSeconds  minimum amount of time that must pass after a change
+     *                              before the data can be read with the specified preference
+     *                              (this is not checked against actual replication lag).
+     */
+    public ReadPreferencePolicy(final ReadPreference readPreference,
+                                final long maxStalenessSeconds) {
+        this.readPreference = readPreference;
+        this.maxStalenessMillis = maxStalenessSeconds * 1000;
+    }
+
+    public ReadPreference getReadPreference() {
+        return readPreference;
+    }
+
+    public long getMaxStalenessMillis() {
+        return maxStalenessMillis;
+    }
+
+    /**
+     * @return true if this policy allows any reads from members other than the primary.
+     */
+    public boolean allowsNonPrimaryReads() {
+        return ! ReadPreference.primary().equals(readPreference);
+    }
+
+    /**
+     * @param  lastModifiedTimestamp  time the data was last changed (or null if unknown).
+     *
+     * @return the read preference for data last changed at the specified time.
+     */
+    public ReadPreference getReadPreference(final Date lastModifiedTimestamp) {
+        final long lastModifiedTime = (lastModifiedTimestamp == null) ? Long.MAX_VALUE :
+                                      lastModifiedTimestamp.getTime();
+        return getReadPreference(lastModifiedTime);
+    }
+
+    /**
+     * @param  lastModifiedTime  time (in milliseconds) the data was last changed.
+     *
+     * @return the read preference for data last changed at the specified time.
+     */
+    public ReadPreference getReadPreference(final long lastModifiedTime) {
+        final ReadPreference preference;
+        if (allowsNonPrimaryReads() &&
+            ((System.currentTimeMillis() - lastModifiedTime) > maxStalenessMillis)) {
+            preference = readPreference;
+        } else {
+            preference = ReadPreference.primary();
+        }
+        return preference;
+    }
+
+    @Override
+    public String toString() {
+        return "{readPreference: " + readPreference.getName() +
+               ", maxStalenessSeconds: " + (maxStalenessMillis / 1000) +
+               '}';
+    }
+}
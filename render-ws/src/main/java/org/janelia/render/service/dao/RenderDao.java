@@ -1,15 +1,22 @@
 package org.janelia.render.service.dao;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.mongodb.BasicDBList;
 import com.mongodb.MongoClient;
 import com.mongodb.QueryOperators;
+import com.mongodb.ReadPreference;
 import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.DeleteOneModel;
 import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.InsertOneModel;
 import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
@@ -21,28 +28,40 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 
 import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
 import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.json.JsonUtils;
 import org.janelia.alignment.spec.Bounds;
+import org.janelia.alignment.spec.InterpolatedTransformSpec;
 import org.janelia.alignment.spec.ListTransformSpec;
+import org.janelia.alignment.spec.ReferenceTransformSpec;
 import org.janelia.alignment.spec.ResolvedTileSpecCollection;
 import org.janelia.alignment.spec.SectionData;
 import org.janelia.alignment.spec.TileBounds;
+import org.janelia.alignment.spec.TileBoundsRTree;
 import org.janelia.alignment.spec.TileCoordinates;
 import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TileTransformChange;
 import org.janelia.alignment.spec.TransformSpec;
 import org.janelia.alignment.spec.stack.StackId;
 import org.janelia.alignment.spec.stack.StackMetaData;
 import org.janelia.alignment.spec.stack.StackStats;
 import org.janelia.alignment.util.ProcessTimer;
 import org.janelia.render.service.model.ObjectNotFoundException;
+import org.janelia.render.service.model.StackJob;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,16 +75,92 @@ public class RenderDao {
     public static final String RENDER_DB_NAME = "render";
     public static final String STACK_META_DATA_COLLECTION_NAME = "admin__stack_meta_data";
 
+    /** Registry that allows tile and transform specs to be converted directly to and from BSON. */
+    private static final CodecRegistry SPEC_CODEC_REGISTRY =
+            CodecRegistries.fromRegistries(CodecRegistries.fromCodecs(new JacksonBsonCodec<>(TileSpec.class),
+                                                                      new JacksonBsonCodec<>(TransformSpec.class)),
+                                           MongoClient.getDefaultCodecRegistry());
+
     public static RenderDao build()
             throws UnknownHostException {
         final MongoClient mongoClient = SharedMongoClient.getInstance();
-        return new RenderDao(mongoClient);
+        final DbConfig dbConfig = SharedMongoClient.getDbConfig();
+        return new RenderDao(mongoClient,
+                             LayerTileSpecCache.getSharedInstance(),
+                             StackMetaDataCache.getSharedInstance(),
+                             TransformSpecCache.getSharedInstance(),
+                             LayerTileBoundsCache.getSharedInstance(),
+                             dbConfig.getReadPreferencePolicy(),
+                             StackSnapshotStore.getSharedInstance(dbConfig.getStackSnapshotDirectory()));
     }
 
     private final MongoDatabase renderDatabase;
+    private final LayerTileSpecCache layerTileSpecCache;
+    private final StackMetaDataCache stackMetaDataCache;
+    private final TransformSpecCache transformSpecCache;
+    private final LayerTileBoundsCache layerTileBoundsCache;
+    private final ReadPreferencePolicy readPreferencePolicy;
+    private final StackSnapshotStore stackSnapshotStore;
 
     public RenderDao(final MongoClient client) {
-        renderDatabase = client.getDatabase(RENDER_DB_NAME);
+        this(client, null, null, null, null);
+    }
+
+    public RenderDao(final MongoClient client,
+                     final LayerTileSpecCache layerTileSpecCache,
+                     final StackMetaDataCache stackMetaDataCache,
+                     final TransformSpecCache transformSpecCache,
+                     final LayerTileBoundsCache layerTileBoundsCache) {
+        this(client, layerTileSpecCache, stackMetaDataCache, transformSpecCache, layerTileBoundsCache,
+             ReadPreferencePolicy.PRIMARY_ONLY);
+    }
+
+    /**
+     * @param  client              database client.
+     * @param  layerTileSpecCache  cache for serving box queries from memory (or null to always query the database).
+     * @param  stackMetaDataCache  cache for stack meta data (or null to always query the database).
+     * @param  transformSpecCache  cache for shared transform specs (or null to always query the database).
+     * @param  layerTileBoundsCache  cache for coordinate to tile lookups (or null to only reuse bounds within a request).
+     * @param  readPreferencePolicy  identifies where read-only queries for stacks that are not being loaded
+     *                               (and have not been changed recently) should be sent
+     *                               (only applied when a stackMetaDataCache is provided).
+     */
+    public RenderDao(final MongoClient client,
+                     final LayerTileSpecCache layerTileSpecCache,
+                     final StackMetaDataCache stackMetaDataCache,
+                     final TransformSpecCache transformSpecCache,
+                     final LayerTileBoundsCache layerTileBoundsCache,
+                     final ReadPreferencePolicy readPreferencePolicy) {
+        this(client, layerTileSpecCache, stackMetaDataCache, transformSpecCache, layerTileBoundsCache,
+             readPreferencePolicy, null);
+    }
+
+    /**
+     * @param  client              database client.
+     * @param  layerTileSpecCache  cache for serving box queries from memory (or null to always query the database).
+     * @param  stackMetaDataCache  cache for stack meta data (or null to always query the database).
+     * @param  transformSpecCache  cache for shared transform specs (or null to always query the database).
+     * @param  layerTileBoundsCache  cache for coordinate to tile lookups (or null to only reuse bounds within a request).
+     * @param  readPreferencePolicy  identifies where read-only queries for stacks that are not being loaded
+     *                               (and have not been changed recently) should be sent
+     *                               (only applied when a stackMetaDataCache is provided).
+     * @param  stackSnapshotStore  memory mapped snapshots for serving layer queries of completed stacks
+     *                             (or null to always query the database).
+     */
+    public RenderDao(final MongoClient client,
+                     final LayerTileSpecCache layerTileSpecCache,
+                     final StackMetaDataCache stackMetaDataCache,
+                     final TransformSpecCache transformSpecCache,
+                     final LayerTileBoundsCache layerTileBoundsCache,
+                     final ReadPreferencePolicy readPreferencePolicy,
+                     final StackSnapshotStore stackSnapshotStore) {
+        this.renderDatabase = client.getDatabase(RENDER_DB_NAME).withCodecRegistry(SPEC_CODEC_REGISTRY);
+        this.layerTileSpecCache = layerTileSpecCache;
+        this.stackMetaDataCache = stackMetaDataCache;
+        this.transformSpecCache = transformSpecCache;
+        this.layerTileBoundsCache = layerTileBoundsCache;
+        this.readPreferencePolicy = readPreferencePolicy;
+        this.stackSnapshotStore = stackSnapshotStore;
     }
 
     /**
@@ -93,12 +188,40 @@ public class RenderDao {
 
         final double lowerRightX = x + width;
         final double lowerRightY = y + height;
+
+        final RenderParameters renderParameters = new RenderParameters(null, x, y, width, height, scale);
+
+        final StackSnapshot snapshot = getSnapshot(stackId);
+        if (snapshot != null) {
+            final List<TileSpec> tileSpecs = snapshot.getTileSpecsInBox(z, x, y, lowerRightX, lowerRightY);
+            for (final TileSpec tileSpec : tileSpecs) {
+                if ((groupId == null) || groupId.equals(tileSpec.getGroupId())) {
+                    renderParameters.addTileSpec(tileSpec);
+                }
+            }
+            LOG.debug("getParameters: found {} snapshot tile spec(s) for {} z {} box ({}, {}, {}, {})",
+                      renderParameters.numberOfTileSpecs(), stackId, z, x, y, lowerRightX, lowerRightY);
+            return renderParameters;
+        }
+
+        if ((groupId == null) && (layerTileSpecCache != null)) {
+            final LayerTileSpecCache.Layer layer = getCachedLayer(stackId, z);
+            if ((layer != null) && layer.isCached()) {
+                final List<TileSpec> tileSpecs = layer.getTileSpecsInBox(x, y, lowerRightX, lowerRightY);
+                for (final TileSpec tileSpec : tileSpecs) {
+                    renderParameters.addTileSpec(tileSpec);
+                }
+                LOG.debug("getParameters: found {} cached tile spec(s) for {} z {} box ({}, {}, {}, {})",
+                          tileSpecs.size(), stackId, z, x, y, lowerRightX, lowerRightY);
+                return renderParameters;
+            }
+        }
+
         final Document tileQuery = getIntersectsBoxQuery(z, x, y, lowerRightX, lowerRightY);
         if (groupId != null) {
             tileQuery.append("groupId", groupId);
         }
 
-        final RenderParameters renderParameters = new RenderParameters(null, x, y, width, height, scale);
         addResolvedTileSpecs(stackId, tileQuery, renderParameters);
 
         return renderParameters;
@@ -124,11 +247,18 @@ public class RenderDao {
         final Double width = bounds.getMaxX() - x;
         final Double height = bounds.getMaxY() - y;
 
-        final Document tileQuery = new Document("z", z);
-
         final RenderParameters renderParameters =
                 new RenderParameters(null, x, y, width.intValue(), height.intValue(), scale);
-        addResolvedTileSpecs(stackId, tileQuery, renderParameters);
+
+        final StackSnapshot snapshot = getSnapshot(stackId);
+        if (snapshot == null) {
+            final Document tileQuery = new Document("z", z);
+            addResolvedTileSpecs(stackId, tileQuery, renderParameters);
+        } else {
+            for (final TileSpec tileSpec : snapshot.getTileSpecs(z)) {
+                renderParameters.addTileSpec(tileSpec);
+            }
+        }
 
         return renderParameters;
     }
@@ -154,7 +284,7 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("width", width);
         MongoUtil.validateRequiredParameter("height", height);
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final MongoCollection<Document> tileCollection = getTileCollectionForRead(stackId);
 
         final double lowerRightX = x + width;
         final double lowerRightY = y + height;
@@ -186,7 +316,7 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("stackId", stackId);
         MongoUtil.validateRequiredParameter("tileId", tileId);
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final MongoCollection<Document> tileCollection = getTileCollectionForRead(stackId);
 
         final Document query = new Document();
         query.put("tileId", tileId);
@@ -195,15 +325,13 @@ public class RenderDao {
 
         // EXAMPLE:   find({ "tileId" : "140723171842050101.3299.0"})
         // INDEX:     tileId_1
-        final Document document = tileCollection.find(query).first();
+        final TileSpec tileSpec = tileCollection.find(query, TileSpec.class).first();
 
-        if (document == null) {
+        if (tileSpec == null) {
             throw new ObjectNotFoundException("tile spec with id '" + tileId + "' does not exist in the " +
                                               MongoUtil.fullName(tileCollection) + " collection");
         }
 
-        final TileSpec tileSpec = TileSpec.fromJson(document.toJson());
-
         if (resolveTransformReferences) {
             resolveTransformReferencesForTiles(stackId, Collections.singletonList(tileSpec));
         }
@@ -229,12 +357,47 @@ public class RenderDao {
         final int unresolvedCount = unresolvedIds.size();
         if (unresolvedCount > 0) {
 
-            final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
-            getDataForTransformSpecReferences(transformCollection, unresolvedIds, resolvedIdToSpecMap, 1);
+            final TransformSpecCache.StackTransforms cachedTransforms = getCachedTransforms(stackId);
+
+            Set<String> idsToLoad = unresolvedIds;
+            if (cachedTransforms != null) {
+                idsToLoad = addCachedTransformSpecs(cachedTransforms, unresolvedIds, resolvedIdToSpecMap);
+            }
+
+            final Map<String, TransformSpec> loadedIdToSpecMap = new HashMap<>();
+            final Map<String, Set<String>> loadedIdToReferencedIds = new HashMap<>();
+
+            if (idsToLoad.size() > 0) {
+
+                final MongoCollection<Document> transformCollection = getTransformCollectionForRead(stackId);
+
+                // include previously cached specs so that they are not reloaded
+                loadedIdToSpecMap.putAll(resolvedIdToSpecMap);
+                getDataForTransformSpecReferences(transformCollection,
+                                                  idsToLoad,
+                                                  loadedIdToSpecMap,
+                                                  loadedIdToReferencedIds,
+                                                  1);
+                for (final String cachedId : resolvedIdToSpecMap.keySet()) {
+                    loadedIdToSpecMap.remove(cachedId);
+                }
+
+                resolvedIdToSpecMap.putAll(loadedIdToSpecMap);
+
+                // resolve any references within the newly retrieved transform specs
+                // (cached specs are already resolved and are shared, so they must not be modified)
+                for (final TransformSpec transformSpec : loadedIdToSpecMap.values()) {
+                    transformSpec.resolveReferences(resolvedIdToSpecMap);
+                }
 
-            // resolve any references within the retrieved transform specs
-            for (final TransformSpec transformSpec : resolvedIdToSpecMap.values()) {
-                transformSpec.resolveReferences(resolvedIdToSpecMap);
+                if (cachedTransforms != null) {
+                    for (final TransformSpec transformSpec : loadedIdToSpecMap.values()) {
+                        if (transformSpec.isFullyResolved()) {
+                            cachedTransforms.addSpec(transformSpec,
+                                                     loadedIdToReferencedIds.get(transformSpec.getId()));
+                        }
+                    }
+                }
             }
 
             // apply fully resolved transform specs to tiles
@@ -323,11 +486,9 @@ public class RenderDao {
 
         MongoUtil.validateRequiredParameter("stackId", stackId);
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
-        final Document tileKeys = new Document("tileId", 1).append("_id", 0);
-
-        // order tile specs by tileId to ensure consistent coordinate mapping
-        final Document orderBy = new Document("tileId", 1);
+        // Tile bounds for each layer are loaded once (or retrieved from the cache) and
+        // then searched in memory instead of querying the database for each coordinate.
+        final Map<Double, TileBoundsRTree> zToTreeMap = new HashMap<>();
 
         final ProcessTimer timer = new ProcessTimer();
         final byte[] openBracket = "[".getBytes();
@@ -338,96 +499,129 @@ public class RenderDao {
 
         double[] world;
         double coordinateZ = z == null ? -1 : z;
-        Document tileQuery = new Document();
-        MongoCursor<Document> cursor = null;
-        Document document;
-        Object tileId;
+        TileBoundsRTree tree;
+        List<TileBounds> tilesContainingPoint;
         String coordinatesJson;
-        try {
 
-            outputStream.write(openBracket);
+        outputStream.write(openBracket);
 
-            TileCoordinates worldCoordinates;
-            for (int i = 0; i < worldCoordinatesList.size(); i++) {
+        TileCoordinates worldCoordinates;
+        for (int i = 0; i < worldCoordinatesList.size(); i++) {
 
-                worldCoordinates = worldCoordinatesList.get(i);
-                world = worldCoordinates.getWorld();
+            worldCoordinates = worldCoordinatesList.get(i);
+            world = worldCoordinates.getWorld();
 
-                if (world == null) {
-                    throw new IllegalArgumentException("world values are missing for element " + i);
-                } else if (z == null) {
-                    if (world.length < 3) {
-                        throw new IllegalArgumentException("world values must include x, y, and z for element " + i);
-                    }
-                    coordinateZ = world[2];
-                } else {
-                    if (world.length < 2) {
-                        throw new IllegalArgumentException("world values must include both x and y for element " + i);
-                    }
+            if (world == null) {
+                throw new IllegalArgumentException("world values are missing for element " + i);
+            } else if (z == null) {
+                if (world.length < 3) {
+                    throw new IllegalArgumentException("world values must include x, y, and z for element " + i);
                 }
+                coordinateZ = world[2];
+            } else {
+                if (world.length < 2) {
+                    throw new IllegalArgumentException("world values must include both x and y for element " + i);
+                }
+            }
+
+            tree = zToTreeMap.get(coordinateZ);
+            if (tree == null) {
+                tree = getTileBoundsRTree(stackId, coordinateZ);
+                zToTreeMap.put(coordinateZ, tree);
+            }
 
-                tileQuery = getIntersectsBoxQuery(coordinateZ, world[0], world[1], world[0], world[1]);
+            tilesContainingPoint = tree.findTilesContainingPoint(world[0], world[1]);
 
-                // EXAMPLE:   find({"z": 3299.0 , "minX": {"$lte": 95000.0}, "minY": {"$lte": 200000.0}, "maxX": {"$gte": 95000.0}, "maxY": {"$gte": 200000.0}}, {"tileId":1, "_id": 0}).sort({"tileId" : 1})
-                // INDEXES:   z_1_minY_1_minX_1_maxY_1_maxX_1_tileId_1 (z1_minX_1, z1_maxX_1, ... used for edge cases)
-                cursor = tileCollection.find(tileQuery).projection(tileKeys).sort(orderBy).iterator();
+            if (i > 0) {
+                outputStream.write(comma);
+            }
+            outputStream.write(openBracket);
 
-                if (i > 0) {
-                    outputStream.write(comma);
-                }
-                outputStream.write(openBracket);
+            if (tilesContainingPoint.size() > 0) {
 
-                if (cursor.hasNext()) {
+                // order tiles by tileId to ensure consistent coordinate mapping
+                if (tilesContainingPoint.size() > 1) {
+                    Collections.sort(tilesContainingPoint, TILE_ID_COMPARATOR);
+                }
 
-                    document = cursor.next();
-                    tileId = document.get("tileId");
-                    if (tileId != null) {
-                        worldCoordinates.setTileId(tileId.toString());
-                    }
+                for (int j = 0; j < tilesContainingPoint.size(); j++) {
+                    worldCoordinates.setTileId(tilesContainingPoint.get(j).getTileId());
                     coordinatesJson = worldCoordinates.toJson();
+                    if (j > 0) {
+                        outputStream.write(comma);
+                    }
                     outputStream.write(coordinatesJson.getBytes());
+                }
 
-                    while (cursor.hasNext()) {
-                        document = cursor.next();
-                        tileId = document.get("tileId");
-                        if (tileId != null) {
-                            worldCoordinates.setTileId(tileId.toString());
-                        }
-                        coordinatesJson = worldCoordinates.toJson();
+            } else {
 
-                        outputStream.write(comma);
-                        outputStream.write(coordinatesJson.getBytes());
-                    }
+                coordinatesJson = worldCoordinates.toJson();
+                outputStream.write(coordinatesJson.getBytes());
 
-                } else {
+            }
 
-                    coordinatesJson = worldCoordinates.toJson();
-                    outputStream.write(coordinatesJson.getBytes());
+            outputStream.write(closeBracket);
 
-                }
+            coordinateCount++;
 
-                cursor.close();
+            if (timer.hasIntervalPassed()) {
+                LOG.debug("writeCoordinatesWithTileIds: data written for {} coordinates", coordinateCount);
+            }
+        }
 
-                outputStream.write(closeBracket);
+        outputStream.write(closeBracket);
 
-                coordinateCount++;
+        LOG.debug("writeCoordinatesWithTileIds: wrote data for {} coordinates in {} layers, elapsedSeconds={}",
+                  coordinateCount, zToTreeMap.size(), timer.getElapsedSeconds());
+    }
 
-                if (timer.hasIntervalPassed()) {
-                    LOG.debug("writeCoordinatesWithTileIds: data written for {} coordinates", coordinateCount);
-                }
-            }
+    /**
+     * @param  stackId      stack identifier.
+     * @param  worldPoints  list of world points that each include x, y, and z values.
+     *
+     * @return ids (sorted) of the tiles that contain each point in the same order as the specified points.
+     *         Each layer's tile bounds are loaded only once, so this scales with the number of
+     *         distinct layers rather than the number of points.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing or the stack cannot be found.
+     */
+    public List<List<String>> getTileIdsForPoints(final StackId stackId,
+                                                  final List<double[]> worldPoints)
+            throws IllegalArgumentException {
 
-            outputStream.write(closeBracket);
+        MongoUtil.validateRequiredParameter("stackId", stackId);
 
-        } finally {
-            if (cursor != null) {
-                cursor.close();
+        final Map<Double, TileBoundsRTree> zToTreeMap = new HashMap<>();
+        final List<List<String>> tileIdsForPoints = new ArrayList<>(worldPoints.size());
+
+        TileBoundsRTree tree;
+        List<TileBounds> tilesContainingPoint;
+        List<String> tileIds;
+        for (final double[] world : worldPoints) {
+
+            tree = zToTreeMap.get(world[2]);
+            if (tree == null) {
+                tree = getTileBoundsRTree(stackId, world[2]);
+                zToTreeMap.put(world[2], tree);
+            }
+
+            tilesContainingPoint = tree.findTilesContainingPoint(world[0], world[1]);
+            tileIds = new ArrayList<>(tilesContainingPoint.size());
+            for (final TileBounds tileBounds : tilesContainingPoint) {
+                tileIds.add(tileBounds.getTileId());
             }
+
+            // order tiles by tileId to ensure consistent coordinate mapping
+            Collections.sort(tileIds);
+
+            tileIdsForPoints.add(tileIds);
         }
 
-        LOG.debug("writeCoordinatesWithTileIds: wrote data for {} coordinates returned by queries like {}.find({},{}).sort({}), elapsedSeconds={}",
-                  coordinateCount, MongoUtil.fullName(tileCollection),
-                  tileQuery.toJson(), tileKeys.toJson(), orderBy.toJson(), timer.getElapsedSeconds());
+        LOG.debug("getTileIdsForPoints: found tiles for {} points in {} layers of {}",
+                  worldPoints.size(), zToTreeMap.size(), stackId);
+
+        return tileIdsForPoints;
     }
 
     /**
@@ -520,6 +714,125 @@ public class RenderDao {
                                               renderParameters.getTileSpecs());
     }
 
+    /**
+     * Writes JSON for a resolved tile spec collection containing all tiles that match the specified criteria.
+     * The written data has the same form as {@link ResolvedTileSpecCollection#toJson()}, but it is streamed
+     * directly from database cursors so memory usage does not depend upon the number of tiles.
+     *
+     * The tile collection is scanned twice: first to identify referenced transforms (which are written first)
+     * and then to write each tile as it is decoded.  The first scan only retrieves and decodes tile transforms
+     * so that references nested within list or interpolated specs are also found.
+     *
+     * @param  mapper  mapper for the output format (e.g. {@link JsonUtils#FAST_MAPPER} or
+     *                 {@link JsonUtils#SMILE_MAPPER}).
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     *
+     * @throws ObjectNotFoundException
+     *   if the stack cannot be found or if no tile can be found for the specified criteria
+     *   (nothing is written in either case).
+     *
+     * @throws IOException
+     *   if the data cannot be written.
+     */
+    public void writeResolvedTiles(final StackId stackId,
+                                   final Double minZ,
+                                   final Double maxZ,
+                                   final String groupId,
+                                   final Double minX,
+                                   final Double maxX,
+                                   final Double minY,
+                                   final Double maxY,
+                                   final ObjectMapper mapper,
+                                   final OutputStream outputStream)
+            throws IllegalArgumentException, ObjectNotFoundException, IOException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("mapper", mapper);
+
+        if (getStackMetaData(stackId) == null) {
+            throw new ObjectNotFoundException(stackId + " does not exist");
+        }
+
+        final Document tileQuery = getGroupQuery(minZ, maxZ, groupId, minX, maxX, minY, maxY);
+
+        final MongoCollection<Document> tileCollection = getTileCollectionForRead(stackId);
+        final MongoCollection<Document> transformCollection = getTransformCollectionForRead(stackId);
+
+        final ProcessTimer timer = new ProcessTimer();
+
+        // first pass: only retrieve transforms to find (possibly nested) referenced ids
+        final Document transformKeys = new Document("transforms", 1).append("_id", 0);
+        final Set<String> referencedIds = new HashSet<>();
+        long tileCount = 0;
+        try (MongoCursor<TileSpec> cursor =
+                     tileCollection.find(tileQuery, TileSpec.class).projection(transformKeys).iterator()) {
+            ListTransformSpec transforms;
+            while (cursor.hasNext()) {
+                transforms = cursor.next().getTransforms();
+                if (transforms != null) {
+                    transforms.addUnresolvedIds(referencedIds);
+                }
+                tileCount++;
+            }
+        }
+
+        if (tileCount == 0) {
+            throw new ObjectNotFoundException("no tile specifications found in " + stackId + " for " + tileQuery);
+        }
+
+        final Map<String, TransformSpec> resolvedIdToSpecMap = new HashMap<>();
+        getDataForTransformSpecReferences(transformCollection,
+                                          referencedIds,
+                                          resolvedIdToSpecMap,
+                                          new HashMap<String, Set<String>>(),
+                                          0);
+
+        // let the generator buffer output instead of flushing after each spec
+        final ObjectWriter transformWriter = mapper.writerWithType(TransformSpec.class).without(
+                SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        final ObjectWriter tileWriter = mapper.writerWithType(TileSpec.class).without(
+                SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        final JsonGenerator generator = mapper.getFactory().createGenerator(outputStream);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        generator.writeStartObject();
+
+        generator.writeObjectFieldStart("transformIdToSpecMap");
+        for (final TransformSpec transformSpec : resolvedIdToSpecMap.values()) {
+            generator.writeFieldName(transformSpec.getId());
+            transformWriter.writeValue(generator, transformSpec);
+        }
+        generator.writeEndObject();
+
+        // second pass: write each tile as it is decoded
+        generator.writeObjectFieldStart("tileIdToSpecMap");
+        int writtenTileCount = 0;
+        try (MongoCursor<TileSpec> cursor = tileCollection.find(tileQuery, TileSpec.class).iterator()) {
+            TileSpec tileSpec;
+            while (cursor.hasNext()) {
+                tileSpec = cursor.next();
+                generator.writeFieldName(tileSpec.getTileId());
+                tileWriter.writeValue(generator, tileSpec);
+                writtenTileCount++;
+
+                if (timer.hasIntervalPassed()) {
+                    LOG.debug("writeResolvedTiles: data written for {} tiles", writtenTileCount);
+                }
+            }
+        }
+        generator.writeEndObject();
+
+        generator.writeEndObject();
+        generator.close(); // flushes buffered content (target stream is left open)
+
+        LOG.debug("writeResolvedTiles: wrote {} transform spec(s) and {} tile spec(s) returned by {}.find({}), elapsedSeconds={}",
+                  resolvedIdToSpecMap.size(), writtenTileCount, MongoUtil.fullName(tileCollection),
+                  tileQuery.toJson(), timer.getElapsedSeconds());
+    }
+
     /**
      * Saves the specified tile spec to the database.
      *
@@ -533,58 +846,87 @@ public class RenderDao {
                                   final ResolvedTileSpecCollection resolvedTileSpecs)
             throws IllegalArgumentException {
 
-        MongoUtil.validateRequiredParameter("stackId", stackId);
         MongoUtil.validateRequiredParameter("resolvedTileSpecs", resolvedTileSpecs);
 
-        final Collection<TransformSpec> transformSpecs = resolvedTileSpecs.getTransformSpecs();
-        final Collection<TileSpec> tileSpecs = resolvedTileSpecs.getTileSpecs();
-
-        if (transformSpecs.size() > 0) {
+        saveResolvedTiles(stackId,
+                          resolvedTileSpecs.getTransformSpecs(),
+                          resolvedTileSpecs.getTileSpecs().iterator());
+    }
 
-            final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
+    /**
+     * Saves (upserts) the specified shared transform specs and then the specified tile specs.
+     *
+     * Specs are encoded directly to BSON and written in bounded unordered bulk batches
+     * (up to {@link ConcurrentBatchWriter#MAX_CONCURRENT_BATCHES} of them concurrently).
+     * Tile specs are pulled from the iterator as batches are submitted, so iterators backed by
+     * a streamed request body never need to be fully buffered.
+     * Batches written before a failure (e.g. an invalid tile later in the stream) are not rolled back.
+     * Tile references that are not resolved by the iterator must identify transforms that
+     * already exist in the stack.
+     *
+     * @param  stackId           stack identifier.
+     * @param  transformSpecs    shared transform specs referenced by the tile specs.
+     * @param  tileSpecIterator  iterator for resolved tile specs.
+     *
+     * @return number of saved tile specs.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters or transform spec references are missing or
+     *   if the iterator provides invalid data.
+     */
+    public long saveResolvedTiles(final StackId stackId,
+                                  final Collection<TransformSpec> transformSpecs,
+                                  final Iterator<TileSpec> tileSpecIterator)
+            throws IllegalArgumentException {
 
-            final List<WriteModel<Document>> modelList = new ArrayList<>(transformSpecs.size());
-            Document query = new Document();
-            Document transformSpecObject;
-            for (final TransformSpec transformSpec : transformSpecs) {
-                query = new Document("id", transformSpec.getId());
-                transformSpecObject = Document.parse(transformSpec.toJson());
-                modelList.add(new ReplaceOneModel<>(query, transformSpecObject, MongoUtil.UPSERT_OPTION));
-            }
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("transformSpecs", transformSpecs);
+        MongoUtil.validateRequiredParameter("tileSpecIterator", tileSpecIterator);
 
-            final BulkWriteResult result = transformCollection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION);
+        invalidateCachedLayers(stackId);
+        invalidateCachedTransforms(stackId);
 
-            if (LOG.isDebugEnabled()) {
-                final String bulkResultMessage = MongoUtil.toMessage("transform specs", result, transformSpecs.size());
-                LOG.debug("saveResolvedTiles: {} using {}.initializeUnorderedBulkOp()",
-                          bulkResultMessage, MongoUtil.fullName(transformCollection), query.toJson());
-            }
+        final ProcessTimer timer = new ProcessTimer();
 
-            // TODO: re-derive bounding boxes for all tiles (outside this collection) that reference modified transforms
+        final Set<String> modifiedTransformIds = new HashSet<>();
+        if (transformSpecs.size() > 0) {
+            saveTransformSpecs(stackId, transformSpecs, modifiedTransformIds);
         }
 
-        if (tileSpecs.size() > 0) {
-
-            final MongoCollection<Document> tileCollection = getTileCollection(stackId);
-
-            final List<WriteModel<Document>> modelList = new ArrayList<>(tileSpecs.size());
-            Document query = new Document();
-            Document tileSpecObject;
-            for (final TileSpec tileSpec : tileSpecs) {
-                query = new Document("tileId", tileSpec.getTileId());
-                tileSpecObject = Document.parse(tileSpec.toJson());
-                modelList.add(new ReplaceOneModel<>(query, tileSpecObject, MongoUtil.UPSERT_OPTION));
-            }
+        // tiles in this request are derived with the new transforms, so their ids only need to be tracked
+        // when previously stored tiles that reference modified transforms must be re-derived
+        final Set<String> savedTileIds = modifiedTransformIds.size() > 0 ? new HashSet<String>() : null;
 
-            final BulkWriteResult result = tileCollection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION);
+        long tileCount = 0;
+        if (tileSpecIterator.hasNext()) {
+            tileCount = saveTileSpecs(stackId, tileSpecIterator, savedTileIds);
+        }
 
-            if (LOG.isDebugEnabled()) {
-                final String bulkResultMessage = MongoUtil.toMessage("tile specs", result, tileSpecs.size());
-                LOG.debug("saveResolvedTiles: {} using {}.initializeUnorderedBulkOp()",
-                          bulkResultMessage, MongoUtil.fullName(tileCollection), query.toJson());
-            }
+        if (modifiedTransformIds.size() > 0) {
+
+            final Set<String> affectedTransformIds =
+                    getReferencingTransformIds(getTransformCollection(stackId), modifiedTransformIds);
+
+            // Top-level references are found with the refId index.  References nested within tile-level
+            // list or interpolated specs cannot be queried directly, so tiles with those specs are also
+            // retrieved (this part of the query scans the collection) and filtered by their decoded references.
+            final List<Document> referenceQueries = Arrays.asList(
+                    new Document("transforms.specList.refId", new Document(QueryOperators.IN, affectedTransformIds)),
+                    new Document("transforms.specList.type",
+                                 new Document(QueryOperators.IN, Arrays.asList(ListTransformSpec.TYPE,
+                                                                               InterpolatedTransformSpec.TYPE))));
+
+            rederiveBoundingBoxes(stackId,
+                                  new Document(QueryOperators.OR, referenceQueries),
+                                  savedTileIds,
+                                  affectedTransformIds,
+                                  null);
         }
 
+        LOG.debug("saveResolvedTiles: saved {} transform specs and {} tile specs for {}, elapsedSeconds={}",
+                  transformSpecs.size(), tileCount, stackId, timer.getElapsedSeconds());
+
+        return tileCount;
     }
 
     /**
@@ -606,6 +948,8 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("tileSpec", tileSpec);
         MongoUtil.validateRequiredParameter("tileSpec.tileId", tileSpec.getTileId());
 
+        invalidateCachedLayers(stackId);
+
         final MongoCollection<Document> tileCollection = getTileCollection(stackId);
 
         final String context = "tile spec with id '" + tileSpec.getTileId();
@@ -614,9 +958,15 @@ public class RenderDao {
         final Document query = new Document();
         query.put("tileId", tileSpec.getTileId());
 
-        final Document tileSpecObject = Document.parse(tileSpec.toJson());
+        final Set<Double> changedZValues = getZValuesForTiles(tileCollection, query);
+        if (tileSpec.getZ() != null) {
+            changedZValues.add(tileSpec.getZ());
+        }
+        markLayersChanged(stackId, changedZValues);
 
-        final UpdateResult result = tileCollection.replaceOne(query, tileSpecObject, MongoUtil.UPSERT_OPTION);
+        final UpdateResult result = tileCollection.withDocumentClass(TileSpec.class).replaceOne(query,
+                                                                                                tileSpec,
+                                                                                                MongoUtil.UPSERT_OPTION);
 
         LOG.debug("saveTileSpec: {}.{},({}), upsertedId is {}",
                   MongoUtil.fullName(tileCollection),
@@ -644,21 +994,21 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("stackId", stackId);
         MongoUtil.validateRequiredParameter("transformId", transformId);
 
-        final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
+        final MongoCollection<Document> transformCollection = getTransformCollectionForRead(stackId);
 
         final Document query = new Document();
         query.put("id", transformId);
 
         LOG.debug("getTransformSpec: {}.find({})", MongoUtil.fullName(transformCollection), query.toJson());
 
-        final Document document = transformCollection.find(query).first();
+        final TransformSpec transformSpec = transformCollection.find(query, TransformSpec.class).first();
 
-        if (document == null) {
+        if (transformSpec == null) {
             throw new ObjectNotFoundException("transform spec with id '" + transformId + "' does not exist in the " +
                                               MongoUtil.fullName(transformCollection) + " collection");
         }
 
-        return TransformSpec.fromJson(document.toJson());
+        return transformSpec;
     }
 
     /**
@@ -680,6 +1030,9 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("transformSpec", transformSpec);
         MongoUtil.validateRequiredParameter("transformSpec.id", transformSpec.getId());
 
+        invalidateCachedLayers(stackId);
+        invalidateCachedTransforms(stackId);
+
         final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
 
         final String context = "transform spec with id '" + transformSpec.getId() + "'";
@@ -688,11 +1041,10 @@ public class RenderDao {
         final Document query = new Document();
         query.put("id", transformSpec.getId());
 
-        final Document transformSpecObject = Document.parse(transformSpec.toJson());
-
-        final UpdateResult result = transformCollection.replaceOne(query,
-                                                                   transformSpecObject,
-                                                                   MongoUtil.UPSERT_OPTION);
+        final UpdateResult result =
+                transformCollection.withDocumentClass(TransformSpec.class).replaceOne(query,
+                                                                                     transformSpec,
+                                                                                     MongoUtil.UPSERT_OPTION);
 
         LOG.debug("saveTransformSpec: {}.{},({}), upsertedId is {}",
                   MongoUtil.fullName(transformCollection),
@@ -703,6 +1055,99 @@ public class RenderDao {
         return transformSpec;
     }
 
+    /**
+     * Applies the specified transform change to all tiles in the specified z range and
+     * then re-derives (and saves) the bounding boxes for those tiles.
+     * Tiles are processed in parallel batches so large layer ranges can be changed
+     * without transferring any tile data to or from the client.
+     *
+     * Transform specs with an id are saved to the stack's transform collection
+     * and tiles are given a reference to the saved spec.
+     *
+     * @param  stackId          stack identifier.
+     * @param  minZ             minimum z value for changed tiles (or null for no minimum).
+     * @param  maxZ             maximum z value for changed tiles (or null for no maximum).
+     * @param  transformChange  change to apply to each tile.
+     *
+     * @return number of changed tiles.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters or transform spec references are missing or
+     *   if a different transform spec with the same id already exists.
+     */
+    public long applyTransformToTiles(final StackId stackId,
+                                      final Double minZ,
+                                      final Double maxZ,
+                                      final TileTransformChange transformChange)
+            throws IllegalArgumentException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("transformChange", transformChange);
+
+        transformChange.validate();
+
+        final TransformSpec transformSpec = transformChange.getTransformSpec();
+        final String context = "transform spec with id '" + transformSpec.getId() + "'";
+        validateTransformReferences(context, stackId, transformSpec);
+
+        invalidateCachedLayers(stackId);
+
+        if (transformSpec.hasId()) {
+
+            final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
+
+            // changing an existing shared spec would also change tiles outside of the requested range
+            final Set<String> modifiedIds = getModifiedTransformIds(transformCollection,
+                                                                    Collections.singletonList(transformSpec));
+            if (modifiedIds.size() > 0) {
+                throw new IllegalArgumentException("a different " + context + " already exists in the " +
+                                                   MongoUtil.fullName(transformCollection) + " collection");
+            }
+
+            invalidateCachedTransforms(stackId);
+
+            final Document query = new Document("id", transformSpec.getId());
+            final UpdateResult result =
+                    transformCollection.withDocumentClass(TransformSpec.class).replaceOne(query,
+                                                                                         transformSpec,
+                                                                                         MongoUtil.UPSERT_OPTION);
+
+            LOG.debug("applyTransformToTiles: {}.{},({}), upsertedId is {}",
+                      MongoUtil.fullName(transformCollection),
+                      MongoUtil.action(result),
+                      query.toJson(),
+                      result.getUpsertedId());
+        }
+
+        final Document tileQuery = new Document();
+        if ((minZ != null) && minZ.equals(maxZ)) {
+            tileQuery.append("z", minZ);
+        } else if ((minZ != null) || (maxZ != null)) {
+            final Document zRange = new Document();
+            if (minZ != null) {
+                zRange.append(QueryOperators.GTE, minZ);
+            }
+            if (maxZ != null) {
+                zRange.append(QueryOperators.LTE, maxZ);
+            }
+            tileQuery.append("z", zRange);
+        }
+
+        if (transformChange.hasTileIds()) {
+            tileQuery.append("tileId", new Document(QueryOperators.IN, transformChange.getTileIds()));
+        }
+
+        final long tileCount = rederiveBoundingBoxes(stackId,
+                                                     tileQuery,
+                                                     Collections.<String>emptySet(),
+                                                     null,
+                                                     transformChange);
+
+        LOG.debug("applyTransformToTiles: applied {} to {} tiles", transformChange.getMethod(), tileCount);
+
+        return tileCount;
+    }
+
     /**
      * @return list of distinct z values (layers) for the specified stackId.
      *
@@ -729,7 +1174,12 @@ public class RenderDao {
 
         MongoUtil.validateRequiredParameter("stackId", stackId);
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final StackSnapshot snapshot = getSnapshot(stackId);
+        if (snapshot != null) {
+            return snapshot.getZValues(minZ, maxZ);
+        }
+
+        final MongoCollection<Document> tileCollection = getTileCollectionForRead(stackId);
 
         final List<Double> list = new ArrayList<>();
         for (final Double zValue : tileCollection.distinct("z", Double.class)) {
@@ -763,19 +1213,22 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("stackId", stackId);
         MongoUtil.validateRequiredParameter("sectionId", sectionId);
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final MongoCollection<Document> tileCollection = getTileCollectionForRead(stackId);
         final Document query = new Document("layout.sectionId", sectionId);
 
-        final Document document = tileCollection.find(query).first();
+        // EXAMPLE:   find({"layout.sectionId": "3466.0"},{"z": 1, "_id": 0}).limit(1)
+        // INDEX:     layout.sectionId_1
+        // only the z value is fetched and decoded (instead of the entire tile spec)
+        final Document tileKeys = new Document("z", 1).append("_id", 0);
+
+        final Document document = tileCollection.find(query).projection(tileKeys).first();
 
         if (document == null) {
             throw new ObjectNotFoundException("sectionId '" + sectionId + "' does not exist in the " +
                                               MongoUtil.fullName(tileCollection) + " collection");
         }
 
-        final TileSpec tileSpec = TileSpec.fromJson(document.toJson());
-
-        return tileSpec.getZ();
+        return document.getDouble("z");
     }
 
     public void updateZForSection(final StackId stackId,
@@ -787,10 +1240,16 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("sectionId", sectionId);
         MongoUtil.validateRequiredParameter("z", z);
 
+        invalidateCachedLayers(stackId);
+
         final MongoCollection<Document> tileCollection = getTileCollection(stackId);
         final Document query = new Document("layout.sectionId", sectionId);
         final Document update = new Document("$set", new Document("z", z));
 
+        final Set<Double> changedZValues = getZValuesForTiles(tileCollection, query);
+        changedZValues.add(z);
+        markLayersChanged(stackId, changedZValues);
+
         final UpdateResult result = tileCollection.updateMany(query, update);
 
         LOG.debug("updateZForSection: updated {} tile specs with {}.update({},{})",
@@ -802,33 +1261,74 @@ public class RenderDao {
                                 final List<String> tileIds)
             throws IllegalArgumentException, IllegalStateException {
 
-        MongoUtil.validateRequiredParameter("stackId", stackId);
-        MongoUtil.validateRequiredParameter("z", z);
         MongoUtil.validateRequiredParameter("tileIds", tileIds);
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
-        final Document query = new Document("tileId", new Document("$in", tileIds));
-        final Document update = new Document("$set", new Document("z", z));
-
-        final UpdateResult result = tileCollection.updateMany(query, update);
-
-        final String shortQueryForLog = "{ 'tileId': { '$in': [ " + tileIds.size() + " tile ids ... ] } }";
-        LOG.debug("updateZForTiles: updated {} tile specs with {}.update({},{})",
-                  result.getModifiedCount(), MongoUtil.fullName(tileCollection), shortQueryForLog, update.toJson());
+        updateZForTiles(stackId, z, tileIds.iterator());
     }
 
     /**
-     * @return list of section data objects for the specified stackId.
+     * Sets the z value for all tiles with the specified ids.
+     *
+     * @param  stackId         stack identifier.
+     * @param  z               new z value.
+     * @param  tileIdIterator  iterator for ids of tiles to update.
+     *
+     * @return number of matched tiles.
      *
      * @throws IllegalArgumentException
-     *   if any required parameters are missing or the stack cannot be found.
+     *   if any required parameters are missing.
      */
-    public List<SectionData> getSectionData(final StackId stackId,
-                                            final Double minZ,
-                                            final Double maxZ)
-            throws IllegalArgumentException {
+    public long updateZForTiles(final StackId stackId,
+                                final Double z,
+                                final Iterator<String> tileIdIterator)
+            throws IllegalArgumentException, IllegalStateException {
 
-        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("z", z);
+
+        final Document update = new Document("$set", new Document("z", z));
+
+        return updateTilesWithIds("updateZForTiles", stackId, tileIdIterator, update, z);
+    }
+
+    /**
+     * Sets the group id for all tiles with the specified ids.
+     *
+     * @param  stackId         stack identifier.
+     * @param  groupId         new group id (or null to remove existing group ids).
+     * @param  tileIdIterator  iterator for ids of tiles to update.
+     *
+     * @return number of matched tiles.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     */
+    public long updateGroupIdForTiles(final StackId stackId,
+                                      final String groupId,
+                                      final Iterator<String> tileIdIterator)
+            throws IllegalArgumentException, IllegalStateException {
+
+        final Document update;
+        if (groupId == null) {
+            update = new Document("$unset", new Document("groupId", ""));
+        } else {
+            update = new Document("$set", new Document("groupId", groupId));
+        }
+
+        return updateTilesWithIds("updateGroupIdForTiles", stackId, tileIdIterator, update, null);
+    }
+
+    /**
+     * @return list of section data objects for the specified stackId.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing or the stack cannot be found.
+     */
+    public List<SectionData> getSectionData(final StackId stackId,
+                                            final Double minZ,
+                                            final Double maxZ)
+            throws IllegalArgumentException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
 
         final List<SectionData> list = new ArrayList<>();
 
@@ -837,7 +1337,7 @@ public class RenderDao {
                                                ", set stack state to COMPLETE to generate the aggregate collection");
         }
 
-        final MongoCollection<Document> sectionCollection = getSectionCollection(stackId);
+        final MongoCollection<Document> sectionCollection = getSectionCollectionForRead(stackId);
 
         final Document query = new Document();
         if (minZ != null) {
@@ -850,7 +1350,10 @@ public class RenderDao {
             query.append("_id.z", new Document(QueryOperators.LTE, maxZ));
         }
 
-        try (MongoCursor<Document> cursor = sectionCollection.find(query).iterator()) {
+        // sort explicitly since incrementally derived sections are not stored in order
+        final Document orderBy = new Document("_id.sectionId", 1);
+
+        try (MongoCursor<Document> cursor = sectionCollection.find(query).sort(orderBy).iterator()) {
             Document document;
             Document resultId;
             String sectionId;
@@ -958,6 +1461,13 @@ public class RenderDao {
 
         MongoUtil.validateRequiredParameter("stackId", stackId);
 
+        if (stackMetaDataCache != null) {
+            final StackMetaData cachedStackMetaData = stackMetaDataCache.get(stackId);
+            if (cachedStackMetaData != null) {
+                return cachedStackMetaData;
+            }
+        }
+
         StackMetaData stackMetaData = null;
 
         final MongoCollection<Document> stackMetaDataCollection = getStackMetaDataCollection();
@@ -965,12 +1475,30 @@ public class RenderDao {
 
         final Document document = stackMetaDataCollection.find(query).first();
         if (document != null) {
-            stackMetaData = StackMetaData.fromJson(document.toJson());
+            final String json = document.toJson();
+            stackMetaData = StackMetaData.fromJson(json);
+            if (stackMetaDataCache != null) {
+                stackMetaDataCache.put(stackId, json);
+            }
         }
 
         return stackMetaData;
     }
 
+    /**
+     * @return hit rate and staleness statistics for this DAO's stack meta data cache
+     *         (or an empty map if meta data is not cached).
+     */
+    public Map<String, Object> getStackMetaDataCacheStats() {
+        final Map<String, Object> stats;
+        if (stackMetaDataCache == null) {
+            stats = new HashMap<>();
+        } else {
+            stats = stackMetaDataCache.getStatsSummary();
+        }
+        return stats;
+    }
+
     public void saveStackMetaData(final StackMetaData stackMetaData) {
 
         LOG.debug("saveStackMetaData: entry, stackMetaData={}", stackMetaData);
@@ -986,6 +1514,8 @@ public class RenderDao {
                                                                        stackMetaDataObject,
                                                                        MongoUtil.UPSERT_OPTION);
 
+        invalidateCachedStackMetaData(stackId);
+
         final String action;
         if (result.getMatchedCount() > 0) {
             action = "update";
@@ -999,7 +1529,41 @@ public class RenderDao {
                   stackMetaDataCollection.getNamespace().getFullName(), action, query.toJson());
     }
 
-    public StackMetaData ensureIndexesAndDeriveStats(final StackMetaData stackMetaData) {
+    /**
+     * Ensures all indexes exist for the specified stack, derives its stats, and marks it as COMPLETE.
+     *
+     * Stack stats are derived from per-layer (z) summaries that are only re-aggregated for layers
+     * changed since the last derivation (see {@link #updateLayerSummaries}), so completing a stack
+     * after a few layers have been re-imported does not require scanning all of the stack's tiles.
+     *
+     * @param  stackMetaData  meta data for the stack.
+     *
+     * @return the meta data updated with derived stats.
+     *
+     * @throws IllegalStateException
+     *   if the stack has no tiles.
+     */
+    public StackMetaData ensureIndexesAndDeriveStats(final StackMetaData stackMetaData)
+            throws IllegalArgumentException, IllegalStateException {
+        return ensureIndexesAndDeriveStats(stackMetaData, null);
+    }
+
+    /**
+     * Same as {@link #ensureIndexesAndDeriveStats(StackMetaData)} but also updates the specified job's
+     * progress after each step.  If the job is cancelled before the stats are saved,
+     * the stack's persisted meta data is not changed.
+     *
+     * @param  stackMetaData  meta data for the stack.
+     * @param  job            if specified, job to update with progress information.
+     *
+     * @return the meta data updated with derived stats.
+     *
+     * @throws IllegalStateException
+     *   if the stack has no tiles.
+     */
+    public StackMetaData ensureIndexesAndDeriveStats(final StackMetaData stackMetaData,
+                                                     final StackJob job)
+            throws IllegalArgumentException, IllegalStateException {
 
         MongoUtil.validateRequiredParameter("stackMetaData", stackMetaData);
 
@@ -1010,141 +1574,87 @@ public class RenderDao {
         final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
         final MongoCollection<Document> tileCollection = getTileCollection(stackId);
 
+        updateJobProgress(job, "building indexes for " + stackId);
+
         // should not be necessary, but okay to ensure core indexes just in case
         ensureCoreTransformIndex(transformCollection);
         ensureCoreTileIndexes(tileCollection);
 
         ensureSupplementaryTileIndexes(tileCollection);
 
-        deriveSectionData(stackId);
+        updateJobProgress(job, "deriving layer summaries for " + stackId);
+
+        final List<Document> layerSummaries = updateLayerSummaries(stackId);
+
+        updateJobProgress(job, "deriving stats from " + layerSummaries.size() + " layer summaries for " + stackId);
 
-        final List<Double> zValues = getZValues(stackId);
-        final long sectionCount = zValues.size();
+        if (layerSummaries.size() == 0) {
+            throw new IllegalStateException("Stack data aggregation returned no results because the stack " +
+                                            stackId + " has no tiles.");
+        }
 
+        long sectionCount = 0;
         long nonIntegralSectionCount = 0;
-        double truncatedZ;
-        for (final Double z : zValues) {
-            truncatedZ = (double) z.intValue();
-            if (z > truncatedZ) {
-                nonIntegralSectionCount++;
+        long tileCount = 0;
+        Double minX = null;
+        Double minY = null;
+        Double minZ = null;
+        Double maxX = null;
+        Double maxY = null;
+        Double maxZ = null;
+        Double minTileWidth = null;
+        Double maxTileWidth = null;
+        Double minTileHeight = null;
+        Double maxTileHeight = null;
+
+        Double z;
+        for (final Document layerSummary : layerSummaries) {
+
+            // tiles without a z value are counted but otherwise ignored
+            z = layerSummary.getDouble("_id");
+            if (z != null) {
+                sectionCount++;
+                if (z > (double) z.intValue()) {
+                    nonIntegralSectionCount++;
+                }
+                minZ = min(minZ, z);
+                maxZ = max(maxZ, z);
             }
+
+            tileCount += getTileCount(layerSummary);
+
+            minX = min(minX, layerSummary.getDouble("minX"));
+            minY = min(minY, layerSummary.getDouble("minY"));
+            maxX = max(maxX, layerSummary.getDouble("maxX"));
+            maxY = max(maxY, layerSummary.getDouble("maxY"));
+            minTileWidth = min(minTileWidth, layerSummary.getDouble("minTileWidth"));
+            maxTileWidth = max(maxTileWidth, layerSummary.getDouble("maxTileWidth"));
+            minTileHeight = min(minTileHeight, layerSummary.getDouble("minTileHeight"));
+            maxTileHeight = max(maxTileHeight, layerSummary.getDouble("maxTileHeight"));
         }
 
-        final long tileCount = tileCollection.count();
         LOG.debug("ensureIndexesAndDeriveStats: tileCount for {} is {}", stackId, tileCount);
 
         final long transformCount = transformCollection.count();
-        LOG.debug("ensureIndexesAndDeriveStats: transformCount for {} is {}, deriving aggregate stats ...",
-                  stackId, transformCount);
-
-        // db.<stack_prefix>__tile.aggregate(
-        //     [
-        //         {
-        //             "$project":  {
-        //                 "z": "$z",
-        //                 "minX": "$minX",
-        //                 "minY": "$minY",
-        //                 "maxX": "$maxX",
-        //                 "maxY": "$maxY",
-        //                 "width":  { "$subtract": [ "$maxX", "$minX" ] },
-        //                 "height": { "$subtract": [ "$maxY", "$minY" ] }
-        //             }
-        //         },
-        //         {
-        //             "$group": {
-        //                 "_id": "minAndMaxValues",
-        //                 "stackMinX": { "$min": "$minX" },
-        //                 "stackMinY": { "$min": "$minY" },
-        //                 "stackMinZ": { "$min": "$z" },
-        //                 "stackMaxX": { "$max": "$maxX" },
-        //                 "stackMaxY": { "$max": "$maxY" },
-        //                 "stackMaxZ": { "$max": "$z" } } } )
-        //                 "stackMinTileWidth":  { "$min": "$width" },
-        //                 "stackMaxTileWidth":  { "$max": "$width" },
-        //                 "stackMinTileHeight": { "$min": "$height" },
-        //                 "stackMaxTileHeight": { "$max": "$height" }
-        //             }
-        //         }
-        //     ]
-        // )
-
-        final Document tileWidth = new Document("$subtract", buildBasicDBList(new String[] {"$maxX","$minX" }));
-        final Document tileHeight = new Document("$subtract", buildBasicDBList(new String[] {"$maxY","$minY" }));
-        final Document tileValues = new Document("z", "$z").append(
-                "minX", "$minX").append("minY", "$minY").append("maxX", "$maxX").append("maxY", "$maxY").append(
-                "width", tileWidth).append("height", tileHeight);
-
-        final Document projectStage = new Document("$project", tileValues);
-
-        final String minXKey = "stackMinX";
-        final String minYKey = "stackMinY";
-        final String minZKey = "stackMinZ";
-        final String maxXKey = "stackMaxX";
-        final String maxYKey = "stackMaxY";
-        final String maxZKey = "stackMaxZ";
-        final String minWidthKey = "stackMinTileWidth";
-        final String maxWidthKey = "stackMaxTileWidth";
-        final String minHeightKey = "stackMinTileHeight";
-        final String maxHeightKey = "stackMaxTileHeight";
-
-        final Document minAndMaxValues = new Document("_id", "minAndMaxValues");
-        minAndMaxValues.append(minXKey, new Document(QueryOperators.MIN, "$minX"));
-        minAndMaxValues.append(minYKey, new Document(QueryOperators.MIN, "$minY"));
-        minAndMaxValues.append(minZKey, new Document(QueryOperators.MIN, "$z"));
-        minAndMaxValues.append(maxXKey, new Document(QueryOperators.MAX, "$maxX"));
-        minAndMaxValues.append(maxYKey, new Document(QueryOperators.MAX, "$maxY"));
-        minAndMaxValues.append(maxZKey, new Document(QueryOperators.MAX, "$z"));
-        minAndMaxValues.append(minWidthKey, new Document(QueryOperators.MIN, "$width"));
-        minAndMaxValues.append(maxWidthKey, new Document(QueryOperators.MAX, "$width"));
-        minAndMaxValues.append(minHeightKey, new Document(QueryOperators.MIN, "$height"));
-        minAndMaxValues.append(maxHeightKey, new Document(QueryOperators.MAX, "$height"));
-
-        final Document groupStage = new Document("$group", minAndMaxValues);
-
-        final List<Document> pipeline = new ArrayList<>();
-        pipeline.add(projectStage);
-        pipeline.add(groupStage);
-
+        LOG.debug("ensureIndexesAndDeriveStats: transformCount for {} is {}", stackId, transformCount);
 
-        // mongodb java 3.0 driver notes:
-        // -- need to set cursor batchSize to prevent NPE from cursor creation
-        final Document aggregateResult = tileCollection.aggregate(pipeline).batchSize(1).first();
-
-        if (aggregateResult == null) {
-            String cause = "";
-            if (tileCollection.count() == 0) {
-                cause = " because the stack has no tiles";
-            }
-            throw new IllegalStateException("Stack data aggregation returned no results" + cause + ".  " +
-                                            "The aggregation query was " + MongoUtil.fullName(tileCollection) +
-                                            ".aggregate(" + pipeline + ") .");
-        }
-
-        final Bounds stackBounds = new Bounds(aggregateResult.get(minXKey, Double.class),
-                                              aggregateResult.get(minYKey, Double.class),
-                                              aggregateResult.get(minZKey, Double.class),
-                                              aggregateResult.get(maxXKey, Double.class),
-                                              aggregateResult.get(maxYKey, Double.class),
-                                              aggregateResult.get(maxZKey, Double.class));
-
-        final Integer minTileWidth = MongoUtil.toInteger(aggregateResult.get(minWidthKey, Double.class));
-        final Integer maxTileWidth = MongoUtil.toInteger(aggregateResult.get(maxWidthKey, Double.class));
-        final Integer minTileHeight = MongoUtil.toInteger(aggregateResult.get(minHeightKey, Double.class));
-        final Integer maxTileHeight = MongoUtil.toInteger(aggregateResult.get(maxHeightKey, Double.class));
+        final Bounds stackBounds = new Bounds(minX, minY, minZ, maxX, maxY, maxZ);
 
         final StackStats stats = new StackStats(stackBounds,
                                                 sectionCount,
                                                 nonIntegralSectionCount,
                                                 tileCount,
                                                 transformCount,
-                                                minTileWidth,
-                                                maxTileWidth,
-                                                minTileHeight,
-                                                maxTileHeight);
+                                                MongoUtil.toInteger(minTileWidth),
+                                                MongoUtil.toInteger(maxTileWidth),
+                                                MongoUtil.toInteger(minTileHeight),
+                                                MongoUtil.toInteger(maxTileHeight));
         stackMetaData.setStats(stats);
 
         LOG.debug("ensureIndexesAndDeriveStats: completed stat derivation for {}, stats={}", stackId, stats);
 
+        updateJobProgress(job, "saving stats for " + stackId);
+
         stackMetaData.setState(StackMetaData.StackState.COMPLETE);
 
         final MongoCollection<Document> stackMetaDataCollection = getStackMetaDataCollection();
@@ -1154,45 +1664,170 @@ public class RenderDao {
                                                                        stackMetaDataObject,
                                                                        MongoUtil.UPSERT_OPTION);
 
+        invalidateCachedStackMetaData(stackId);
+
         LOG.debug("ensureIndexesAndDeriveStats: {}.{}({})",
                   MongoUtil.fullName(stackMetaDataCollection), MongoUtil.action(result), query.toJson());
 
         return stackMetaData;
     }
 
-    private void deriveSectionData(final StackId stackId)
+    /**
+     * Rebuilds all section and layer summary data for the specified stack from its tiles.
+     * This is only needed when tiles have been changed outside of this DAO
+     * since summaries for changed layers are otherwise re-derived when a stack is completed.
+     *
+     * @param  stackId  stack identifier.
+     * @param  job      if specified, job to update with progress information.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     */
+    public void rederiveSectionData(final StackId stackId,
+                                    final StackJob job)
             throws IllegalArgumentException {
 
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+
+        updateJobProgress(job, "deriving section data for " + stackId);
+        deriveSectionData(stackId);
+
+        updateJobProgress(job, "deriving layer summaries for " + stackId);
+        deriveAllLayerData(stackId);
+    }
+
+    /**
+     * Brings the section and layer summary collections for the specified stack up to date.
+     *
+     * Tile write operations flag the layers (z values) they change in the layer collection
+     * (see {@link #markLayersChanged}).  Only flagged layers are re-aggregated here.
+     * All summaries are rebuilt from scratch when either summary collection is missing
+     * (e.g. for stacks loaded before summaries were maintained or for cloned stacks)
+     * or when the summarized tile count no longer matches the tile collection
+     * (e.g. because tiles were changed outside of this DAO).
+     *
+     * @return summaries for all layers in the stack sorted by z.
+     */
+    private List<Document> updateLayerSummaries(final StackId stackId) {
+
+        final ProcessTimer timer = new ProcessTimer();
+
         final MongoCollection<Document> tileCollection = getTileCollection(stackId);
-        final String sectionCollectionName = stackId.getSectionCollectionName();
+        final MongoCollection<Document> layerCollection = getLayerCollection(stackId);
 
-        // db.<stack_prefix>__tile.aggregate(
-        //     [
-        //         { "$group": { "_id": { "sectionId": "$layout.sectionId", "z": "$z" } },
-        //                       "tileCount": { "$sum": 1 },
-        //                       "minX": { "$min": "$minX" }, "maxX": { "$max": "$maxX" },
-        //                       "minY": { "$min": "$minY" }, "maxY": { "$max": "$maxY" }},
-        //         { "$sort": { "_id.sectionId": 1 } }
-        //     ]
-        // )
+        List<Document> layerSummaries = null;
 
-        final Document idComponents = new Document("sectionId", "$layout.sectionId").append("z", "$z");
-        final Document tileCountComponents = new Document("$sum", 1);
-        final Document minXComponents = new Document("$min", "$minX");
-        final Document maxXComponents = new Document("$max", "$maxX");
-        final Document minYComponents = new Document("$min", "$minY");
-        final Document maxYComponents = new Document("$max", "$maxY");
-        final Document group = new Document(
-                "_id", idComponents).append(
-                "tileCount", tileCountComponents).append(
-                "minX", minXComponents).append(
-                "maxX", maxXComponents).append(
-                "minY", minYComponents).append(
-                "maxY", maxYComponents);
+        if (MongoUtil.exists(renderDatabase, stackId.getSectionCollectionName()) &&
+            MongoUtil.exists(renderDatabase, stackId.getLayerCollectionName())) {
 
-        final List<Document> pipeline = new ArrayList<>();
-        pipeline.add(new Document("$group", group));
-        pipeline.add(new Document("$sort", new Document("_id.sectionId", 1)));
+            deriveChangedLayerData(stackId);
+
+            layerSummaries = getLayerSummaries(layerCollection);
+
+            long summarizedTileCount = 0;
+            for (final Document layerSummary : layerSummaries) {
+                summarizedTileCount += getTileCount(layerSummary);
+            }
+
+            final long tileCount = tileCollection.count();
+            if (summarizedTileCount != tileCount) {
+                LOG.warn("updateLayerSummaries: layer summaries for {} include {} tiles but stack has {} tiles, " +
+                         "rebuilding all summaries", stackId, summarizedTileCount, tileCount);
+                layerSummaries = null;
+            }
+
+        }
+
+        if (layerSummaries == null) {
+            deriveSectionData(stackId);
+            deriveAllLayerData(stackId);
+            layerSummaries = getLayerSummaries(layerCollection);
+        }
+
+        LOG.debug("updateLayerSummaries: retrieved {} layer summaries for {}, elapsedSeconds={}",
+                  layerSummaries.size(), stackId, timer.getElapsedSeconds());
+
+        return layerSummaries;
+    }
+
+    /**
+     * Re-aggregates section and layer data for all layers that have been flagged as changed.
+     */
+    private void deriveChangedLayerData(final StackId stackId) {
+
+        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final MongoCollection<Document> sectionCollection = getSectionCollection(stackId);
+        final MongoCollection<Document> layerCollection = getLayerCollection(stackId);
+
+        // capture change counts so that layers changed while we work remain flagged
+        final Map<Double, Object> changedZToChangeCount = new HashMap<>();
+        final Document changedQuery = new Document(LAYER_CHANGED_KEY, true);
+        try (MongoCursor<Document> cursor = layerCollection.find(changedQuery).iterator()) {
+            Document document;
+            while (cursor.hasNext()) {
+                document = cursor.next();
+                changedZToChangeCount.put(document.getDouble("_id"), document.get(LAYER_CHANGE_COUNT_KEY));
+            }
+        }
+
+        LOG.debug("deriveChangedLayerData: found {} changed layers with {}.find({})",
+                  changedZToChangeCount.size(), MongoUtil.fullName(layerCollection), changedQuery.toJson());
+
+        if (changedZToChangeCount.size() == 0) {
+            return;
+        }
+
+        final BasicDBList changedZValues = new BasicDBList();
+        changedZValues.addAll(changedZToChangeCount.keySet());
+
+        final Document tileQuery = new Document("z", new Document(QueryOperators.IN, changedZValues));
+        final List<Document> tilePipeline = getSectionDataPipeline(tileQuery);
+        final List<Document> sectionDataList = tileCollection.aggregate(tilePipeline).into(new ArrayList<Document>());
+
+        final Document sectionQuery = new Document("_id.z", new Document(QueryOperators.IN, changedZValues));
+        final DeleteResult sectionDeleteResult = sectionCollection.deleteMany(sectionQuery);
+        if (sectionDataList.size() > 0) {
+            sectionCollection.insertMany(sectionDataList);
+        }
+
+        LOG.debug("deriveChangedLayerData: replaced {} sections with {} sections in {}",
+                  sectionDeleteResult.getDeletedCount(), sectionDataList.size(), MongoUtil.fullName(sectionCollection));
+
+        final List<Document> sectionPipeline = getLayerDataPipeline(sectionQuery);
+        final Map<Double, Document> zToLayerData = new HashMap<>();
+        for (final Document layerData : sectionCollection.aggregate(sectionPipeline)) {
+            zToLayerData.put(layerData.getDouble("_id"), layerData);
+        }
+
+        final List<WriteModel<Document>> modelList = new ArrayList<>(changedZToChangeCount.size());
+        Document query;
+        Document layerData;
+        for (final Double z : changedZToChangeCount.keySet()) {
+            query = new Document("_id", z).append(LAYER_CHANGE_COUNT_KEY, changedZToChangeCount.get(z));
+            layerData = zToLayerData.get(z);
+            if (layerData == null) {
+                // all tiles for the layer have been removed
+                modelList.add(new DeleteOneModel<Document>(query));
+            } else {
+                modelList.add(new ReplaceOneModel<>(query, layerData));
+            }
+        }
+
+        final BulkWriteResult result = layerCollection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION);
+
+        if (LOG.isDebugEnabled()) {
+            final String bulkResultMessage = MongoUtil.toMessage("layer summaries", result, modelList.size());
+            LOG.debug("deriveChangedLayerData: {} for {}", bulkResultMessage, MongoUtil.fullName(layerCollection));
+        }
+    }
+
+    private void deriveSectionData(final StackId stackId)
+            throws IllegalArgumentException {
+
+        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final String sectionCollectionName = stackId.getSectionCollectionName();
+
+        final List<Document> pipeline = getSectionDataPipeline(null);
         pipeline.add(new Document("$out", sectionCollectionName));
 
         if (LOG.isDebugEnabled()) {
@@ -1205,7 +1840,7 @@ public class RenderDao {
         // -- need to retrieve first batch from cursor - via first() call - to force aggregate operation to run
         //    (even though we don't need to work with the batch result here)
         // -- need to set cursor batchSize to prevent NPE from cursor creation
-        tileCollection.aggregate(pipeline).batchSize(0).first();
+        tileCollection.aggregate(pipeline).allowDiskUse(true).batchSize(0).first();
 
         if (! MongoUtil.exists(renderDatabase, sectionCollectionName)) {
             throw new IllegalStateException("Section data aggregation results were not saved to " +
@@ -1219,68 +1854,270 @@ public class RenderDao {
                   sectionCount, MongoUtil.fullName(sectionCollection));
     }
 
-    public void removeStack(final StackId stackId,
-                            final boolean includeMetaData)
-            throws IllegalArgumentException {
+    /**
+     * Replaces all layer summaries with ones aggregated from the (already derived) section collection.
+     * Since the section collection contains at most a few documents per layer, this is relatively cheap.
+     */
+    private void deriveAllLayerData(final StackId stackId) {
 
-        MongoUtil.validateRequiredParameter("stackId", stackId);
+        final MongoCollection<Document> sectionCollection = getSectionCollection(stackId);
+        final String layerCollectionName = stackId.getLayerCollectionName();
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
-        final long tileCount = tileCollection.count();
-        tileCollection.drop();
+        final List<Document> pipeline = getLayerDataPipeline(null);
+        pipeline.add(new Document("$out", layerCollectionName));
 
-        LOG.debug("removeStack: {}.drop() deleted {} document(s)", MongoUtil.fullName(tileCollection), tileCount);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("deriveAllLayerData: running {}.aggregate({})",
+                      MongoUtil.fullName(sectionCollection),
+                      MongoUtil.toJson(pipeline));
+        }
 
-        final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
-        final long transformCount = transformCollection.count();
-        transformCollection.drop();
+        sectionCollection.aggregate(pipeline).batchSize(0).first();
 
-        LOG.debug("removeStack: {}.drop() deleted {} document(s)",
-                  MongoUtil.fullName(transformCollection), transformCount);
+        final MongoCollection<Document> layerCollection = getLayerCollection(stackId);
+        final long layerCount = layerCollection.count();
 
-        final MongoCollection<Document> sectionCollection = getSectionCollection(stackId);
-        final long sectionCount = sectionCollection.count();
-        sectionCollection.drop();
+        LOG.debug("deriveAllLayerData: saved data for {} layers in {}",
+                  layerCount, MongoUtil.fullName(layerCollection));
+    }
 
-        LOG.debug("removeStack: {}.drop() deleted {} document(s)",
-                  MongoUtil.fullName(sectionCollection), sectionCount);
+    /**
+     * @param  tileQuery  if specified, only aggregate tiles that match this query.
+     *
+     * @return pipeline for aggregating section data from a tile collection.
+     */
+    private List<Document> getSectionDataPipeline(final Document tileQuery) {
 
-        if (includeMetaData) {
-            final MongoCollection<Document> stackMetaDataCollection = getStackMetaDataCollection();
-            final Document stackIdQuery = getStackIdQuery(stackId);
-            final DeleteResult stackMetaDataRemoveResult = stackMetaDataCollection.deleteOne(stackIdQuery);
+        // db.<stack_prefix>__tile.aggregate(
+        //     [
+        //         { "$match": { "z": { "$in": [ ... ] } } },   (optional)
+        //         { "$group": { "_id": { "sectionId": "$layout.sectionId", "z": "$z" } },
+        //                       "tileCount": { "$sum": 1 },
+        //                       "minX": { "$min": "$minX" }, "maxX": { "$max": "$maxX" },
+        //                       "minY": { "$min": "$minY" }, "maxY": { "$max": "$maxY" },
+        //                       "minTileWidth": { "$min": { "$subtract": [ "$maxX", "$minX" ] } }, ... },
+        //         { "$sort": { "_id.sectionId": 1 } }
+        //     ]
+        // )
 
-            LOG.debug("removeStack: {}.remove({}) deleted {} document(s)",
-                      MongoUtil.fullName(stackMetaDataCollection),
-                      stackIdQuery.toJson(),
-                      stackMetaDataRemoveResult.getDeletedCount());
+        final Document tileWidth = new Document("$subtract", buildBasicDBList(new String[] {"$maxX","$minX" }));
+        final Document tileHeight = new Document("$subtract", buildBasicDBList(new String[] {"$maxY","$minY" }));
+
+        final Document idComponents = new Document("sectionId", "$layout.sectionId").append("z", "$z");
+        final Document group = new Document(
+                "_id", idComponents).append(
+                "tileCount", new Document("$sum", 1)).append(
+                "minX", new Document(QueryOperators.MIN, "$minX")).append(
+                "maxX", new Document(QueryOperators.MAX, "$maxX")).append(
+                "minY", new Document(QueryOperators.MIN, "$minY")).append(
+                "maxY", new Document(QueryOperators.MAX, "$maxY")).append(
+                "minTileWidth", new Document(QueryOperators.MIN, tileWidth)).append(
+                "maxTileWidth", new Document(QueryOperators.MAX, tileWidth)).append(
+                "minTileHeight", new Document(QueryOperators.MIN, tileHeight)).append(
+                "maxTileHeight", new Document(QueryOperators.MAX, tileHeight));
+
+        final List<Document> pipeline = new ArrayList<>();
+        if (tileQuery != null) {
+            pipeline.add(new Document("$match", tileQuery));
         }
+        pipeline.add(new Document("$group", group));
+        pipeline.add(new Document("$sort", new Document("_id.sectionId", 1)));
+
+        return pipeline;
     }
 
-    public void removeTilesWithSectionId(final StackId stackId,
-                                         final String sectionId)
-            throws IllegalArgumentException {
+    /**
+     * @param  sectionQuery  if specified, only aggregate sections that match this query.
+     *
+     * @return pipeline for aggregating layer summaries from a section collection.
+     */
+    private List<Document> getLayerDataPipeline(final Document sectionQuery) {
 
-        MongoUtil.validateRequiredParameter("stackId", stackId);
-        MongoUtil.validateRequiredParameter("sectionId", sectionId);
+        // db.<stack_prefix>__section.aggregate(
+        //     [
+        //         { "$match": { "_id.z": { "$in": [ ... ] } } },   (optional)
+        //         { "$group": { "_id": "$_id.z",
+        //                       "tileCount": { "$sum": "$tileCount" },
+        //                       "minX": { "$min": "$minX" }, "maxX": { "$max": "$maxX" }, ... } }
+        //     ]
+        // )
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
-        final Document tileQuery = new Document("layout.sectionId", sectionId);
-        final DeleteResult removeResult = tileCollection.deleteMany(tileQuery);
+        final Document group = new Document(
+                "_id", "$_id.z").append(
+                "tileCount", new Document("$sum", "$tileCount")).append(
+                "minX", new Document(QueryOperators.MIN, "$minX")).append(
+                "maxX", new Document(QueryOperators.MAX, "$maxX")).append(
+                "minY", new Document(QueryOperators.MIN, "$minY")).append(
+                "maxY", new Document(QueryOperators.MAX, "$maxY")).append(
+                "minTileWidth", new Document(QueryOperators.MIN, "$minTileWidth")).append(
+                "maxTileWidth", new Document(QueryOperators.MAX, "$maxTileWidth")).append(
+                "minTileHeight", new Document(QueryOperators.MIN, "$minTileHeight")).append(
+                "maxTileHeight", new Document(QueryOperators.MAX, "$maxTileHeight"));
 
-        LOG.debug("removeTilesWithSectionId: {}.remove({}) deleted {} document(s)",
-                  MongoUtil.fullName(tileCollection), tileQuery.toJson(), removeResult.getDeletedCount());
+        final List<Document> pipeline = new ArrayList<>();
+        if (sectionQuery != null) {
+            pipeline.add(new Document("$match", sectionQuery));
+        }
+        pipeline.add(new Document("$group", group));
+
+        return pipeline;
     }
 
-    public void removeTilesWithZ(final StackId stackId,
-                                 final Double z)
-            throws IllegalArgumentException {
+    private List<Document> getLayerSummaries(final MongoCollection<Document> layerCollection) {
+        return layerCollection.find().sort(new Document("_id", 1)).into(new ArrayList<Document>());
+    }
 
-        MongoUtil.validateRequiredParameter("stackId", stackId);
-        MongoUtil.validateRequiredParameter("z", z);
+    /**
+     * @return tile count for the specified layer summary or 0 if the summary has not been derived.
+     */
+    private static long getTileCount(final Document layerSummary) {
+        final Number tileCount = layerSummary.get("tileCount", Number.class);
+        return tileCount == null ? 0 : tileCount.longValue();
+    }
+
+    /**
+     * Flags the summaries for the specified layers as changed so that they get re-aggregated
+     * the next time stats are derived for the stack.
+     *
+     * @param  stackId  stack identifier.
+     * @param  zValues  z values of all layers that have (or will) change.
+     */
+    private void markLayersChanged(final StackId stackId,
+                                   final Collection<Double> zValues) {
+
+        if (zValues.size() > 0) {
+
+            final MongoCollection<Document> layerCollection = getLayerCollection(stackId);
+
+            final Document update = new Document("$set", new Document(LAYER_CHANGED_KEY, true)).append(
+                    "$inc", new Document(LAYER_CHANGE_COUNT_KEY, 1));
+
+            final List<WriteModel<Document>> modelList = new ArrayList<>(zValues.size());
+            for (final Double z : zValues) {
+                modelList.add(new UpdateOneModel<Document>(new Document("_id", z), update, MongoUtil.UPSERT_OPTION));
+            }
+
+            final BulkWriteResult result = layerCollection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION);
+
+            if (LOG.isDebugEnabled()) {
+                final String bulkResultMessage = MongoUtil.toMessage("layer change flags", result, zValues.size());
+                LOG.debug("markLayersChanged: {} for {}", bulkResultMessage, MongoUtil.fullName(layerCollection));
+            }
+        }
+    }
+
+    /**
+     * @return distinct z values for all tiles that match the specified query.
+     */
+    private Set<Double> getZValuesForTiles(final MongoCollection<Document> tileCollection,
+                                           final Document tileQuery) {
+        final Set<Double> zValues = new HashSet<>();
+        for (final Double z : tileCollection.distinct("z", Double.class).filter(tileQuery)) {
+            if (z != null) {
+                zValues.add(z);
+            }
+        }
+        return zValues;
+    }
+
+    private static Double min(final Double currentMin,
+                              final Double value) {
+        return (currentMin == null) || ((value != null) && (value < currentMin)) ? value : currentMin;
+    }
+
+    private static Double max(final Double currentMax,
+                              final Double value) {
+        return (currentMax == null) || ((value != null) && (value > currentMax)) ? value : currentMax;
+    }
+
+    public void removeStack(final StackId stackId,
+                            final boolean includeMetaData)
+            throws IllegalArgumentException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+
+        invalidateCachedLayers(stackId);
+        invalidateCachedTransforms(stackId);
+
+        if (stackSnapshotStore != null) {
+            stackSnapshotStore.removeSnapshot(stackId);
+        }
+
+        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final long tileCount = tileCollection.count();
+        tileCollection.drop();
+
+        LOG.debug("removeStack: {}.drop() deleted {} document(s)", MongoUtil.fullName(tileCollection), tileCount);
+
+        final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
+        final long transformCount = transformCollection.count();
+        transformCollection.drop();
+
+        LOG.debug("removeStack: {}.drop() deleted {} document(s)",
+                  MongoUtil.fullName(transformCollection), transformCount);
+
+        final MongoCollection<Document> sectionCollection = getSectionCollection(stackId);
+        final long sectionCount = sectionCollection.count();
+        sectionCollection.drop();
+
+        LOG.debug("removeStack: {}.drop() deleted {} document(s)",
+                  MongoUtil.fullName(sectionCollection), sectionCount);
+
+        final MongoCollection<Document> layerCollection = getLayerCollection(stackId);
+        final long layerCount = layerCollection.count();
+        layerCollection.drop();
+
+        LOG.debug("removeStack: {}.drop() deleted {} document(s)",
+                  MongoUtil.fullName(layerCollection), layerCount);
+
+        if (includeMetaData) {
+            final MongoCollection<Document> stackMetaDataCollection = getStackMetaDataCollection();
+            final Document stackIdQuery = getStackIdQuery(stackId);
+            final DeleteResult stackMetaDataRemoveResult = stackMetaDataCollection.deleteOne(stackIdQuery);
+
+            invalidateCachedStackMetaData(stackId);
+
+            LOG.debug("removeStack: {}.remove({}) deleted {} document(s)",
+                      MongoUtil.fullName(stackMetaDataCollection),
+                      stackIdQuery.toJson(),
+                      stackMetaDataRemoveResult.getDeletedCount());
+        }
+    }
+
+    public void removeTilesWithSectionId(final StackId stackId,
+                                         final String sectionId)
+            throws IllegalArgumentException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("sectionId", sectionId);
+
+        invalidateCachedLayers(stackId);
+
+        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final Document tileQuery = new Document("layout.sectionId", sectionId);
+
+        markLayersChanged(stackId, getZValuesForTiles(tileCollection, tileQuery));
+
+        final DeleteResult removeResult = tileCollection.deleteMany(tileQuery);
+
+        LOG.debug("removeTilesWithSectionId: {}.remove({}) deleted {} document(s)",
+                  MongoUtil.fullName(tileCollection), tileQuery.toJson(), removeResult.getDeletedCount());
+    }
+
+    public void removeTilesWithZ(final StackId stackId,
+                                 final Double z)
+            throws IllegalArgumentException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("z", z);
+
+        invalidateCachedLayers(stackId);
 
         final MongoCollection<Document> tileCollection = getTileCollection(stackId);
         final Document tileQuery = new Document("z", z);
+
+        markLayersChanged(stackId, Collections.singletonList(z));
+
         final DeleteResult removeResult = tileCollection.deleteMany(tileQuery);
 
         LOG.debug("removeTilesWithZ: {}.remove({}) deleted {} document(s)",
@@ -1291,21 +2128,26 @@ public class RenderDao {
                                    final List<String> tileIds)
             throws IllegalArgumentException {
 
-        MongoUtil.validateRequiredParameter("stackId", stackId);
         MongoUtil.validateRequiredParameter("tileIds", tileIds);
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
-        final Document tileQuery = new Document("tileId",
-                                                new Document(QueryOperators.IN,
-                                                             tileIds));
-        final Document tileQueryForLog = new Document("tileId",
-                                                      new Document(QueryOperators.IN,
-                                                                   Arrays.asList("list of",
-                                                                                 tileIds.size() + " tileIds")));
-        final DeleteResult removeResult = tileCollection.deleteMany(tileQuery);
+        removeTilesWithIds(stackId, tileIds.iterator());
+    }
 
-        LOG.debug("removeTilesWithIds: {}.remove({}) deleted {} document(s)",
-                  MongoUtil.fullName(tileCollection), tileQueryForLog.toJson(), removeResult.getDeletedCount());
+    /**
+     * Removes all tiles with the specified ids.
+     *
+     * @param  stackId         stack identifier.
+     * @param  tileIdIterator  iterator for ids of tiles to remove.
+     *
+     * @return number of removed tiles.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     */
+    public long removeTilesWithIds(final StackId stackId,
+                                   final Iterator<String> tileIdIterator)
+            throws IllegalArgumentException {
+        return updateTilesWithIds("removeTilesWithIds", stackId, tileIdIterator, null, null);
     }
 
     public void removeTile(final StackId stackId,
@@ -1315,8 +2157,13 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("stackId", stackId);
         MongoUtil.validateRequiredParameter("tileId", tileId);
 
+        invalidateCachedLayers(stackId);
+
         final MongoCollection<Document> tileCollection = getTileCollection(stackId);
         final Document tileQuery = new Document("tileId", tileId);
+
+        markLayersChanged(stackId, getZValuesForTiles(tileCollection, tileQuery));
+
         final DeleteResult removeResult = tileCollection.deleteOne(tileQuery);
 
         LOG.debug("removeTile: {}.remove({}) deleted {} document(s)",
@@ -1336,7 +2183,17 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("stackId", stackId);
         MongoUtil.validateRequiredParameter("z", z);
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final StackSnapshot snapshot = getSnapshot(stackId);
+        if (snapshot != null) {
+            final Bounds snapshotBounds = snapshot.getLayerBounds(z);
+            if (snapshotBounds == null) {
+                throw new IllegalArgumentException("stack " + stackId.getStack() +
+                                                   " does not contain any tiles with a z value of " + z);
+            }
+            return snapshotBounds;
+        }
+
+        final MongoCollection<Document> tileCollection = getTileCollectionForRead(stackId);
         final Document tileQuery = new Document("z", z);
 
         final Double minX = getBound(tileCollection, tileQuery, "minX", true);
@@ -1387,19 +2244,173 @@ public class RenderDao {
         return getTileBounds(stackId, tileQuery);
     }
 
+    /**
+     * Exports all tiles and shared transforms for the specified stack to a memory mapped snapshot
+     * that serves layer queries for the stack (without any database access) until the stack is changed.
+     *
+     * @param  stackMetaData  meta data for the stack to export.
+     * @param  job            if specified, job to update with progress information.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     *
+     * @throws IllegalStateException
+     *   if snapshots are not supported, the stack is not COMPLETE or READ_ONLY,
+     *   any tile references a missing transform, or the snapshot cannot be written.
+     */
+    public void saveStackSnapshot(final StackMetaData stackMetaData,
+                                  final StackJob job)
+            throws IllegalArgumentException, IllegalStateException {
+
+        MongoUtil.validateRequiredParameter("stackMetaData", stackMetaData);
+
+        if (stackSnapshotStore == null) {
+            throw new IllegalStateException("stack snapshots are not supported because " +
+                                            "no stackSnapshotDirectory has been configured");
+        }
+
+        final StackId stackId = stackMetaData.getStackId();
+        final StackMetaData.StackState state = stackMetaData.getState();
+        if (! (StackMetaData.StackState.COMPLETE.equals(state) || StackMetaData.StackState.READ_ONLY.equals(state))) {
+            throw new IllegalStateException("snapshots can only be saved for COMPLETE or READ_ONLY stacks but " +
+                                            stackId + " is " + state);
+        }
+
+        final MongoCollection<Document> transformCollection = getTransformCollectionForRead(stackId);
+        final MongoCollection<Document> tileCollection = getTileCollectionForRead(stackId);
+
+        updateJobProgress(job, "loading shared transforms for " + stackId);
+
+        // include all shared transforms so that references between them never need to be loaded
+        final Map<String, TransformSpec> transformIdToSpecMap = new HashMap<>();
+        try (MongoCursor<TransformSpec> cursor =
+                     transformCollection.find(new Document(), TransformSpec.class).iterator()) {
+            TransformSpec transformSpec;
+            while (cursor.hasNext()) {
+                transformSpec = cursor.next();
+                transformIdToSpecMap.put(transformSpec.getId(), transformSpec);
+            }
+        }
+
+        final List<Double> zValues = new ArrayList<>();
+        for (final Double zValue : tileCollection.distinct("z", Double.class)) {
+            if (zValue != null) {
+                zValues.add(zValue);
+            }
+        }
+        Collections.sort(zValues);
+
+        final ProcessTimer timer = new ProcessTimer();
+        long tileCount = 0;
+
+        try (StackSnapshot.Writer writer = stackSnapshotStore.getWriter(stackMetaData)) {
+
+            final Set<String> referencedIds = new HashSet<>();
+            for (final Double z : zValues) {
+
+                final List<TileSpec> tileSpecs = new ArrayList<>();
+                try (MongoCursor<TileSpec> cursor =
+                             tileCollection.find(new Document("z", z), TileSpec.class).iterator()) {
+                    while (cursor.hasNext()) {
+                        tileSpecs.add(cursor.next());
+                    }
+                }
+
+                for (final TileSpec tileSpec : tileSpecs) {
+                    if (tileSpec.getTransforms() != null) {
+                        tileSpec.getTransforms().addUnresolvedIds(referencedIds);
+                    }
+                }
+                referencedIds.removeAll(transformIdToSpecMap.keySet());
+                if (referencedIds.size() > 0) {
+                    throw new IllegalStateException("tiles in " + stackId + " with z " + z +
+                                                    " reference missing transform ids " + referencedIds);
+                }
+
+                writer.addLayer(z, tileSpecs);
+                tileCount += tileSpecs.size();
+
+                if (timer.hasIntervalPassed()) {
+                    updateJobProgress(job, "saved " + tileCount + " tiles to snapshot for " + stackId);
+                }
+            }
+
+            writer.finish(transformIdToSpecMap.values());
+
+        } catch (final IOException e) {
+            throw new IllegalStateException("failed to save snapshot for " + stackId, e);
+        }
+
+        updateJobProgress(job, "saved snapshot of " + tileCount + " tiles in " + zValues.size() +
+                               " layers for " + stackId);
+
+        LOG.info("saveStackSnapshot: saved {} tiles in {} layers for {}, elapsedSeconds={}",
+                 tileCount, zValues.size(), stackId, timer.getElapsedSeconds());
+    }
+
+    /**
+     * Removes the memory mapped snapshot for the specified stack (if it exists).
+     *
+     * @return true if a snapshot was removed; otherwise false.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     */
+    public boolean removeStackSnapshot(final StackId stackId)
+            throws IllegalArgumentException {
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        return (stackSnapshotStore != null) && stackSnapshotStore.removeSnapshot(stackId);
+    }
+
     public void cloneStack(final StackId fromStackId,
                            final StackId toStackId,
                            final List<Double> zValues,
                            final Boolean skipTransforms)
             throws IllegalArgumentException, IllegalStateException {
+        cloneStack(fromStackId, toStackId, zValues, skipTransforms, null);
+    }
+
+    /**
+     * Copies transforms and tiles from one stack to another.
+     *
+     * When the target collections are empty, documents are copied by the database server
+     * (with an aggregation $out stage) so they never pass through this JVM.
+     * Otherwise, documents are appended to the existing target collections in bulk batches.
+     * Core indexes for the target collections are (re)built once after all documents have been copied.
+     *
+     * @param  fromStackId     source stack.
+     * @param  toStackId       target stack.
+     * @param  zValues         if specified, only copy tiles with these z values.
+     * @param  skipTransforms  if true, do not copy shared transforms.
+     * @param  job             if specified, job to update with progress information.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing or the source and target stacks are the same.
+     *
+     * @throws IllegalStateException
+     *   if any documents fail to be copied.
+     */
+    public void cloneStack(final StackId fromStackId,
+                           final StackId toStackId,
+                           final List<Double> zValues,
+                           final Boolean skipTransforms,
+                           final StackJob job)
+            throws IllegalArgumentException, IllegalStateException {
 
         MongoUtil.validateRequiredParameter("fromStackId", fromStackId);
         MongoUtil.validateRequiredParameter("toStackId", toStackId);
 
+        if (fromStackId.getTileCollectionName().equals(toStackId.getTileCollectionName())) {
+            throw new IllegalArgumentException("stack " + fromStackId + " cannot be cloned to itself");
+        }
+
+        invalidateCachedLayers(toStackId);
+        invalidateCachedTransforms(toStackId);
+
+        final MongoCollection<Document> toTransformCollection = getTransformCollection(toStackId);
         if ((skipTransforms == null) || (! skipTransforms)) {
             final MongoCollection<Document> fromTransformCollection = getTransformCollection(fromStackId);
-            final MongoCollection<Document> toTransformCollection = getTransformCollection(toStackId);
-            cloneCollection(fromTransformCollection, toTransformCollection, new Document());
+            cloneCollection(fromTransformCollection, toTransformCollection, new Document(), job);
         }
 
         final Document filterQuery = new Document();
@@ -1412,7 +2423,19 @@ public class RenderDao {
 
         final MongoCollection<Document> fromTileCollection = getTileCollection(fromStackId);
         final MongoCollection<Document> toTileCollection = getTileCollection(toStackId);
-        cloneCollection(fromTileCollection, toTileCollection, filterQuery);
+        cloneCollection(fromTileCollection, toTileCollection, filterQuery, job);
+
+        // force all layer summaries for the target to be rebuilt when it is completed
+        getLayerCollection(toStackId).drop();
+
+        updateJobProgress(job, "building indexes for " + toStackId);
+
+        // deferred until after the copy so that indexes are built once instead of maintained per insert
+        ensureCoreTransformIndex(toTransformCollection);
+        ensureCoreTileIndexes(toTileCollection);
+
+        updateJobProgress(job, "cloned " + toTileCollection.count() + " tiles from " + fromStackId +
+                               " to " + toStackId);
     }
 
     /**
@@ -1442,7 +2465,7 @@ public class RenderDao {
 
         MongoUtil.validateRequiredParameter("stackId", stackId);
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final MongoCollection<Document> tileCollection = getTileCollectionForRead(stackId);
 
         Document zFilter = null;
         if (minZ != null) {
@@ -1454,7 +2477,7 @@ public class RenderDao {
             zFilter = new Document(QueryOperators.LTE, maxZ);
         }
 
-        // EXAMPLE:   find({"z": {"$gte": 4370.0, "$lte": 4370.0}}, {"tileId": 1, "z": 1, "minX": 1, "minY": 1, "layout": 1, "mipmapLevels": 1}).sort({"z": 1, "minY": 1, "minX": 1})
+        // EXAMPLE:   find({"z": {"$gte": 4370.0, "$lte": 4370.0}}, {"tileId": 1, "z": 1, "layout": 1, "mipmapLevels": 1, "transforms": 1, "_id": 0}).sort({"z": 1, "minY": 1, "minX": 1})
         // INDEX:     z_1_minY_1_minX_1_maxY_1_maxX_1_tileId_1
 
         final Document tileQuery;
@@ -1464,23 +2487,24 @@ public class RenderDao {
             tileQuery = new Document("z", zFilter);
         }
 
-        final Document tileKeys = new Document();
+        // only fetch the fields used by TileSpec.toLayoutFileFormat
+        // (transforms are needed for the affine data, so this query cannot be index only)
+        final Document tileKeys = new Document("tileId", 1).append("z", 1).append("layout", 1).append(
+                "mipmapLevels", 1).append("transforms", 1).append("_id", 0);
 
         final ProcessTimer timer = new ProcessTimer();
         int tileSpecCount = 0;
         final Document orderBy = new Document("z", 1).append("minY", 1).append("minX", 1);
-        try (MongoCursor<Document> cursor =
-                     tileCollection.find(tileQuery).projection(tileKeys).sort(orderBy).iterator()) {
+        try (MongoCursor<TileSpec> cursor =
+                     tileCollection.find(tileQuery, TileSpec.class).projection(tileKeys).sort(orderBy).iterator()) {
 
             final String baseUriString = '\t' + stackRequestUri + "/tile/";
 
-            Document document;
             TileSpec tileSpec;
             String layoutData;
             String uriString;
             while (cursor.hasNext()) {
-                document = cursor.next();
-                tileSpec = TileSpec.fromJson(document.toJson());
+                tileSpec = cursor.next();
                 layoutData = tileSpec.toLayoutFileFormat();
                 outputStream.write(layoutData.getBytes());
 
@@ -1525,7 +2549,7 @@ public class RenderDao {
         final byte[] commaBytes = ",".getBytes();
         final byte[] singleQuoteBytes = "'".getBytes();
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final MongoCollection<Document> tileCollection = getTileCollectionForRead(stackId);
 
         // EXAMPLE:   find( { "tileId": { $gt: "" } }, {"_id": 0, "tileId": 1} ).sort( { "tileId": 1} )
 
@@ -1582,12 +2606,14 @@ public class RenderDao {
                                            final Document tileQuery)
             throws IllegalArgumentException {
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final MongoCollection<Document> tileCollection = getTileCollectionForRead(stackId);
 
-        // EXAMPLE:   find({"z" : 3466.0},{"tileId": 1, "minX": 1, "minY": 1, "maxX": 1, "maxY": 1, "_id": 0})
-        // INDEX:     z_1_minY_1_minX_1_maxY_1_maxX_1_tileId_1
+        // EXAMPLE:   find({"z" : 3466.0},{"tileId": 1, "layout.sectionId": 1, "z": 1, "minX": 1, "minY": 1, "maxX": 1, "maxY": 1, "_id": 0})
+        // INDEXES:   z_1_minY_1_minX_1_maxY_1_maxX_1_tileId_1, layout.sectionId_1
+        // only project the sectionId (instead of the whole layout) to reduce the amount of data returned
+        // (queries projecting embedded fields like layout.sectionId are not index only before MongoDB 3.6)
         final Document tileKeys =
-                new Document("tileId", 1).append("layout", 1).append("z", 1).append(
+                new Document("tileId", 1).append("layout.sectionId", 1).append("z", 1).append(
                         "minX", 1).append("minY", 1).append("maxX", 1).append("maxY", 1).append("_id", 0);
 
         final List<TileBounds> list = new ArrayList<>();
@@ -1598,102 +2624,506 @@ public class RenderDao {
             String sectionId;
             while (cursor.hasNext()) {
 
-                document = cursor.next();
+                document = cursor.next();
+
+                layoutDocument = (Document) document.get("layout");
+                if (layoutDocument == null) {
+                    sectionId = null;
+                } else {
+                    sectionId = layoutDocument.getString("sectionId");
+                }
+
+                list.add(new TileBounds(document.getString("tileId"),
+                                        sectionId,
+                                        document.getDouble("z"),
+                                        document.getDouble("minX"),
+                                        document.getDouble("minY"),
+                                        document.getDouble("maxX"),
+                                        document.getDouble("maxY")));
+            }
+        }
+
+        LOG.debug("getTileBounds: found {} tile spec(s) for {}.find({},{})",
+                  list.size(), MongoUtil.fullName(tileCollection), tileQuery.toJson(), tileKeys.toJson());
+
+        return list;
+    }
+
+    private List<TransformSpec> getTransformSpecs(final MongoCollection<Document> transformCollection,
+                                                  final Set<String> specIds) {
+        final int specCount = specIds.size();
+        final List<TransformSpec> transformSpecList = new ArrayList<>(specCount);
+        if (specCount > 0) {
+
+            final Document transformQuery = new Document();
+            transformQuery.put("id", new Document(QueryOperators.IN, specIds));
+
+            LOG.debug("getTransformSpecs: {}.find({})",
+                      MongoUtil.fullName(transformCollection), transformQuery.toJson());
+
+            try (MongoCursor<TransformSpec> cursor =
+                         transformCollection.find(transformQuery, TransformSpec.class).iterator()) {
+                while (cursor.hasNext()) {
+                    transformSpecList.add(cursor.next());
+                }
+            }
+
+        }
+
+        return transformSpecList;
+    }
+
+    private void getDataForTransformSpecReferences(final MongoCollection<Document> transformCollection,
+                                                   final Set<String> unresolvedSpecIds,
+                                                   final Map<String, TransformSpec> resolvedIdToSpecMap,
+                                                   final Map<String, Set<String>> idToReferencedIds,
+                                                   final int callCount) {
+
+        if (callCount > 10) {
+            throw new IllegalStateException(callCount + " passes have been made to resolve transform references, " +
+                                            "exiting in case the data is overly nested or there is a recursion error");
+        }
+
+        final int specCount = unresolvedSpecIds.size();
+        if (specCount > 0) {
+
+            final List<TransformSpec> transformSpecList = getTransformSpecs(transformCollection,
+                                                                            unresolvedSpecIds);
+
+            LOG.debug("resolveTransformSpecReferences: on pass {} retrieved {} transform specs",
+                      callCount, transformSpecList.size());
+
+            final Set<String> newlyUnresolvedSpecIds = new HashSet<>();
+
+            Set<String> referencedIds;
+            for (final TransformSpec spec : transformSpecList) {
+                resolvedIdToSpecMap.put(spec.getId(), spec);
+                referencedIds = spec.getUnresolvedIds();
+                idToReferencedIds.put(spec.getId(), referencedIds);
+                for (final String id : referencedIds) {
+                    if ((! resolvedIdToSpecMap.containsKey(id)) && (! unresolvedSpecIds.contains(id))) {
+                        newlyUnresolvedSpecIds.add(id);
+                    }
+                }
+            }
+
+            if (newlyUnresolvedSpecIds.size() > 0) {
+                getDataForTransformSpecReferences(transformCollection,
+                                                  newlyUnresolvedSpecIds,
+                                                  resolvedIdToSpecMap,
+                                                  idToReferencedIds,
+                                                  (callCount + 1));
+            }
+        }
+    }
+
+    /**
+     * @return ids of the specified transform specs that already exist in the collection with different data.
+     *         Specs that are new or are being re-saved without change are not included.
+     */
+    private Set<String> getModifiedTransformIds(final MongoCollection<Document> transformCollection,
+                                                final Collection<TransformSpec> transformSpecs) {
+
+        final Map<String, String> idToJson = new HashMap<>(transformSpecs.size() * 2);
+        for (final TransformSpec transformSpec : transformSpecs) {
+            idToJson.put(transformSpec.getId(), transformSpec.toJson());
+        }
+
+        final Set<String> modifiedIds = new HashSet<>();
+        for (final TransformSpec existingSpec : getTransformSpecs(transformCollection, idToJson.keySet())) {
+            if (! existingSpec.toJson().equals(idToJson.get(existingSpec.getId()))) {
+                modifiedIds.add(existingSpec.getId());
+            }
+        }
+
+        LOG.debug("getModifiedTransformIds: {} of {} transform specs modify existing specs",
+                  modifiedIds.size(), transformSpecs.size());
+
+        return modifiedIds;
+    }
+
+    /**
+     * @return the specified transform ids along with the ids of all specs that
+     *         (directly or indirectly) reference them.
+     */
+    private Set<String> getReferencingTransformIds(final MongoCollection<Document> transformCollection,
+                                                   final Set<String> transformIds) {
+
+        // only list and interpolated specs can contain references, so leaf specs are never retrieved
+        final Document transformQuery = new Document(
+                "type", new Document(QueryOperators.IN, Arrays.asList(ListTransformSpec.TYPE,
+                                                                      InterpolatedTransformSpec.TYPE,
+                                                                      ReferenceTransformSpec.TYPE)));
+
+        final Map<String, Set<String>> referencedIdToReferencingIds = new HashMap<>();
+        try (MongoCursor<TransformSpec> cursor =
+                     transformCollection.find(transformQuery, TransformSpec.class).iterator()) {
+            TransformSpec transformSpec;
+            Set<String> referencingIds;
+            while (cursor.hasNext()) {
+                transformSpec = cursor.next();
+                for (final String referencedId : transformSpec.getUnresolvedIds()) {
+                    referencingIds = referencedIdToReferencingIds.get(referencedId);
+                    if (referencingIds == null) {
+                        referencingIds = new HashSet<>();
+                        referencedIdToReferencingIds.put(referencedId, referencingIds);
+                    }
+                    referencingIds.add(transformSpec.getId());
+                }
+            }
+        }
+
+        final Set<String> allIds = new HashSet<>(transformIds);
+        final List<String> pendingIds = new ArrayList<>(transformIds);
+        Set<String> referencingIds;
+        while (pendingIds.size() > 0) {
+            referencingIds = referencedIdToReferencingIds.get(pendingIds.remove(pendingIds.size() - 1));
+            if (referencingIds != null) {
+                for (final String id : referencingIds) {
+                    if (allIds.add(id)) {
+                        pendingIds.add(id);
+                    }
+                }
+            }
+        }
+
+        LOG.debug("getReferencingTransformIds: found {} transform specs affected by changes to {} in {}.find({})",
+                  allIds.size(), transformIds, MongoUtil.fullName(transformCollection), transformQuery.toJson());
+
+        return allIds;
+    }
+
+    /**
+     * Saves the specified transform specs in concurrent bulk batches.
+     *
+     * @param  stackId               stack identifier.
+     * @param  transformSpecs        specs to save.
+     * @param  modifiedTransformIds  set to which the ids of existing specs changed by this save are added.
+     */
+    private void saveTransformSpecs(final StackId stackId,
+                                    final Collection<TransformSpec> transformSpecs,
+                                    final Set<String> modifiedTransformIds) {
+
+        final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
+        final ConcurrentBatchWriter batchWriter = new ConcurrentBatchWriter("transform specs");
+
+        try {
+            List<TransformSpec> batch = new ArrayList<>(BATCH_SIZE);
+            for (final Iterator<TransformSpec> i = transformSpecs.iterator(); i.hasNext();) {
+                batch.add(i.next());
+                if ((batch.size() == BATCH_SIZE) || (! i.hasNext())) {
+
+                    modifiedTransformIds.addAll(getModifiedTransformIds(transformCollection, batch));
+
+                    final List<WriteModel<TransformSpec>> modelList = new ArrayList<>(batch.size());
+                    for (final TransformSpec transformSpec : batch) {
+                        modelList.add(new ReplaceOneModel<>(new Document("id", transformSpec.getId()),
+                                                            transformSpec,
+                                                            MongoUtil.UPSERT_OPTION));
+                    }
+
+                    batchWriter.submit(new BulkWriteTask<>(transformCollection.withDocumentClass(TransformSpec.class),
+                                                           modelList,
+                                                           "transform specs"));
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+
+            batchWriter.waitForAllBatches();
+
+        } finally {
+            batchWriter.waitForAllBatchesIgnoringFailures();
+        }
+
+        LOG.debug("saveTransformSpecs: {} for {}", batchWriter, MongoUtil.fullName(transformCollection));
+    }
+
+    /**
+     * Saves tile specs from the specified iterator in concurrent bulk batches.
+     *
+     * @param  stackId           stack identifier.
+     * @param  tileSpecIterator  iterator for resolved tile specs.
+     * @param  savedTileIds      optional set to which the ids of all saved tiles are added.
+     *
+     * @return number of saved tile specs.
+     */
+    private long saveTileSpecs(final StackId stackId,
+                               final Iterator<TileSpec> tileSpecIterator,
+                               final Set<String> savedTileIds) {
+
+        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final ConcurrentBatchWriter batchWriter = new ConcurrentBatchWriter("tile specs");
+        final ProcessTimer timer = new ProcessTimer();
+        final Set<String> storedTransformIds = new HashSet<>();
+
+        try {
+            List<TileSpec> batch = new ArrayList<>(BATCH_SIZE);
+            while (tileSpecIterator.hasNext()) {
+                batch.add(tileSpecIterator.next());
+                if ((batch.size() == BATCH_SIZE) || (! tileSpecIterator.hasNext())) {
+
+                    // tiles may reference shared transforms that were saved by earlier requests
+                    final Set<String> unverifiedTransformIds = new HashSet<>();
+                    for (final TileSpec tileSpec : batch) {
+                        if (tileSpec.hasTransforms()) {
+                            tileSpec.getTransforms().addUnresolvedIds(unverifiedTransformIds);
+                        }
+                    }
+                    unverifiedTransformIds.removeAll(storedTransformIds);
+                    if (unverifiedTransformIds.size() > 0) {
+                        validateTransformIds("tile spec batch starting with tile '" + batch.get(0).getTileId() + "'",
+                                             stackId,
+                                             unverifiedTransformIds);
+                        storedTransformIds.addAll(unverifiedTransformIds);
+                    }
+
+                    final List<WriteModel<TileSpec>> modelList = new ArrayList<>(batch.size());
+                    final List<String> tileIds = new ArrayList<>(batch.size());
+                    for (final TileSpec tileSpec : batch) {
+                        modelList.add(new ReplaceOneModel<>(new Document("tileId", tileSpec.getTileId()),
+                                                            tileSpec,
+                                                            MongoUtil.UPSERT_OPTION));
+                        tileIds.add(tileSpec.getTileId());
+                    }
+
+                    if (savedTileIds != null) {
+                        savedTileIds.addAll(tileIds);
+                    }
+
+                    // include layers of any existing tiles that are being moved to a different layer
+                    final Set<Double> changedZValues = getZValuesForTileSpecs(batch);
+                    changedZValues.addAll(getZValuesForTiles(tileCollection,
+                                                             new Document("tileId",
+                                                                          new Document(QueryOperators.IN, tileIds))));
+                    markLayersChanged(stackId, changedZValues);
+
+                    batchWriter.submit(new BulkWriteTask<>(tileCollection.withDocumentClass(TileSpec.class),
+                                                           modelList,
+                                                           "tile specs"));
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+
+                if (timer.hasIntervalPassed()) {
+                    LOG.debug("saveTileSpecs: {}", batchWriter);
+                }
+            }
+
+            batchWriter.waitForAllBatches();
+
+        } finally {
+            batchWriter.waitForAllBatchesIgnoringFailures();
+        }
+
+        LOG.debug("saveTileSpecs: {} for {}, elapsedSeconds={}",
+                  batchWriter, MongoUtil.fullName(tileCollection), timer.getElapsedSeconds());
+
+        return batchWriter.getWrittenCount();
+    }
+
+    /**
+     * Re-derives and saves the bounding boxes for all tiles that match the specified query.
+     * Tiles are changed and resolved in bounded batches by the calling thread and then
+     * up to {@link ConcurrentBatchWriter#MAX_CONCURRENT_BATCHES} batches are derived and bulk written concurrently.
+     *
+     * @param  stackId          stack identifier.
+     * @param  tileQuery        query identifying the tiles to update.
+     * @param  excludedTileIds  optional ids of matching tiles that should be skipped.
+     * @param  requiredReferencedTransformIds  optional ids of transforms, at least one of which must be
+     *                                         referenced (at any depth) by a matching tile for it to be updated.
+     * @param  transformChange  optional change to apply to (and save with) each tile before deriving its bounds.
+     *
+     * @return number of tiles updated.
+     */
+    private long rederiveBoundingBoxes(final StackId stackId,
+                                       final Document tileQuery,
+                                       final Set<String> excludedTileIds,
+                                       final Set<String> requiredReferencedTransformIds,
+                                       final TileTransformChange transformChange) {
+
+        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+
+        final ProcessTimer timer = new ProcessTimer();
+        final ConcurrentBatchWriter batchWriter = new ConcurrentBatchWriter("tile bounds");
+
+        // When tiles are replaced, a cursor can return a replaced (relocated) tile a second time.
+        // Sorting changed tiles by z (using the core z index) limits duplicate tracking to the ids of one layer.
+        final Document orderBy = (transformChange == null) ? new Document() : new Document("z", 1);
+        final Set<String> changedLayerTileIds = new HashSet<>();
+        Double changedLayerZ = null;
+
+        try (MongoCursor<TileSpec> cursor =
+                     tileCollection.find(tileQuery, TileSpec.class).sort(orderBy).iterator()) {
+
+            List<TileSpec> batch = new ArrayList<>(BATCH_SIZE);
+            TileSpec tileSpec;
+            while (cursor.hasNext()) {
+
+                tileSpec = cursor.next();
+
+                if (transformChange != null) {
+                    if ((changedLayerZ == null) || (! changedLayerZ.equals(tileSpec.getZ()))) {
+                        changedLayerTileIds.clear();
+                        changedLayerZ = tileSpec.getZ();
+                    }
+                    if (! changedLayerTileIds.add(tileSpec.getTileId())) {
+                        continue;
+                    }
+                }
+
+                if (((excludedTileIds == null) || (! excludedTileIds.contains(tileSpec.getTileId()))) &&
+                    ((requiredReferencedTransformIds == null) ||
+                     referencesAny(tileSpec, requiredReferencedTransformIds))) {
+                    batch.add(tileSpec);
+                }
+
+                if (batch.size() == BATCH_SIZE) {
+                    submitBoundsBatch(stackId, tileCollection, batch, transformChange, batchWriter);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+
+                if (timer.hasIntervalPassed()) {
+                    LOG.debug("rederiveBoundingBoxes: {}", batchWriter);
+                }
+            }
+
+            if (batch.size() > 0) {
+                submitBoundsBatch(stackId, tileCollection, batch, transformChange, batchWriter);
+            }
+
+            batchWriter.waitForAllBatches();
+
+        } finally {
+            batchWriter.waitForAllBatchesIgnoringFailures();
+        }
+
+        // drop any layers that were cached while bounds were being updated
+        invalidateCachedLayers(stackId);
+
+        LOG.debug("rederiveBoundingBoxes: {} returned by {}.find({}).sort({}), elapsedSeconds={}",
+                  batchWriter, MongoUtil.fullName(tileCollection), tileQuery.toJson(), orderBy.toJson(),
+                  timer.getElapsedSeconds());
 
-                layoutDocument = (Document) document.get("layout");
-                if (layoutDocument == null) {
-                    sectionId = null;
-                } else {
-                    sectionId = layoutDocument.getString("sectionId");
+        return batchWriter.getWrittenCount();
+    }
+
+    /**
+     * @return true if the specified (unresolved) tile references any of the specified transforms at any depth.
+     */
+    private boolean referencesAny(final TileSpec tileSpec,
+                                  final Set<String> transformIds) {
+        boolean referencesAny = false;
+        if (tileSpec.hasTransforms()) {
+            for (final String referencedId : tileSpec.getTransforms().getUnresolvedIds()) {
+                if (transformIds.contains(referencedId)) {
+                    referencesAny = true;
+                    break;
                 }
+            }
+        }
+        return referencesAny;
+    }
 
-                list.add(new TileBounds(document.getString("tileId"),
-                                        sectionId,
-                                        document.getDouble("z"),
-                                        document.getDouble("minX"),
-                                        document.getDouble("minY"),
-                                        document.getDouble("maxX"),
-                                        document.getDouble("maxY")));
+    private void submitBoundsBatch(final StackId stackId,
+                                   final MongoCollection<Document> tileCollection,
+                                   final List<TileSpec> batch,
+                                   final TileTransformChange transformChange,
+                                   final ConcurrentBatchWriter batchWriter) {
+        if (transformChange != null) {
+            for (final TileSpec tileSpec : batch) {
+                transformChange.applyTo(tileSpec);
             }
         }
+        // resolution may hit the database, so it is done here (and not by the derivation threads)
+        resolveTransformReferencesForTiles(stackId, batch);
+        markLayersChanged(stackId, getZValuesForTileSpecs(batch));
+        batchWriter.submit(new DeriveBoundsTask(tileCollection, batch, (transformChange != null)));
+    }
 
-        LOG.debug("getTileBounds: found {} tile spec(s) for {}.find({},{})",
-                  list.size(), MongoUtil.fullName(tileCollection), tileQuery.toJson(), tileKeys.toJson());
+    /**
+     * Updates (or removes) tiles with ids from the specified iterator in concurrent batches
+     * of {@link #BATCH_SIZE} ids.
+     *
+     * The layers of all changed tiles are flagged as changed with one bulk write after all batches
+     * have been processed (or after a failure), so clients removing or updating thousands of tiles
+     * only need one request and the layer collection is only updated once.
+     *
+     * @param  context         caller context for logging.
+     * @param  stackId         stack identifier.
+     * @param  tileIdIterator  iterator for ids of tiles to change.
+     * @param  update          update to apply to each tile or null if the tiles should be removed.
+     * @param  updatedZ        z value assigned by the update (or null if z is not changed).
+     *
+     * @return number of tiles matched by the update (or removed).
+     */
+    private long updateTilesWithIds(final String context,
+                                    final StackId stackId,
+                                    final Iterator<String> tileIdIterator,
+                                    final Document update,
+                                    final Double updatedZ)
+            throws IllegalArgumentException {
 
-        return list;
-    }
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("tileIdIterator", tileIdIterator);
 
-    private List<TransformSpec> getTransformSpecs(final MongoCollection<Document> transformCollection,
-                                                  final Set<String> specIds) {
-        final int specCount = specIds.size();
-        final List<TransformSpec> transformSpecList = new ArrayList<>(specCount);
-        if (specCount > 0) {
+        invalidateCachedLayers(stackId);
 
-            final Document transformQuery = new Document();
-            transformQuery.put("id", new Document(QueryOperators.IN, specIds));
+        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final String action = (update == null) ? "tile removal" : "tile update";
+        final ConcurrentBatchWriter batchWriter = new ConcurrentBatchWriter(action);
+        final Set<Double> changedZValues = new HashSet<>();
 
-            LOG.debug("getTransformSpecs: {}.find({})",
-                      MongoUtil.fullName(transformCollection), transformQuery.toJson());
+        try {
 
-            try (MongoCursor<Document> cursor = transformCollection.find(transformQuery).iterator()) {
-                Document document;
-                TransformSpec transformSpec;
-                while (cursor.hasNext()) {
-                    document = cursor.next();
-                    transformSpec = TransformSpec.fromJson(document.toJson());
-                    transformSpecList.add(transformSpec);
+            List<String> batch = new ArrayList<>(BATCH_SIZE);
+            while (tileIdIterator.hasNext()) {
+                batch.add(tileIdIterator.next());
+                if ((batch.size() == BATCH_SIZE) || (! tileIdIterator.hasNext())) {
+                    final Document batchQuery = new Document("tileId", new Document(QueryOperators.IN, batch));
+                    changedZValues.addAll(getZValuesForTiles(tileCollection, batchQuery));
+                    batchWriter.submit(new TileIdBatchTask(tileCollection, batchQuery, update));
+                    batch = new ArrayList<>(BATCH_SIZE);
                 }
             }
 
-        }
-
-        return transformSpecList;
-    }
+            batchWriter.waitForAllBatches();
 
-    private void getDataForTransformSpecReferences(final MongoCollection<Document> transformCollection,
-                                                   final Set<String> unresolvedSpecIds,
-                                                   final Map<String, TransformSpec> resolvedIdToSpecMap,
-                                                   final int callCount) {
+        } finally {
 
-        if (callCount > 10) {
-            throw new IllegalStateException(callCount + " passes have been made to resolve transform references, " +
-                                            "exiting in case the data is overly nested or there is a recursion error");
-        }
+            batchWriter.waitForAllBatchesIgnoringFailures();
 
-        final int specCount = unresolvedSpecIds.size();
-        if (specCount > 0) {
+            if (updatedZ != null) {
+                changedZValues.add(updatedZ);
+            }
 
-            final List<TransformSpec> transformSpecList = getTransformSpecs(transformCollection,
-                                                                            unresolvedSpecIds);
+            // flag layers after the writes so that stats derived while tiles were changing are re-derived
+            markLayersChanged(stackId, changedZValues);
 
-            LOG.debug("resolveTransformSpecReferences: on pass {} retrieved {} transform specs",
-                      callCount, transformSpecList.size());
+            invalidateCachedLayers(stackId);
+        }
 
-            final Set<String> newlyUnresolvedSpecIds = new HashSet<>();
+        final String updateForLog = (update == null) ? "" : "," + update.toJson();
+        LOG.debug("{}: {} with {}.{}({ 'tileId': { '$in': [ ... ] } }{}), {} layers changed",
+                  context, batchWriter, MongoUtil.fullName(tileCollection),
+                  (update == null) ? "deleteMany" : "updateMany", updateForLog, changedZValues.size());
 
-            for (final TransformSpec spec : transformSpecList) {
-                resolvedIdToSpecMap.put(spec.getId(), spec);
-                for (final String id : spec.getUnresolvedIds()) {
-                    if ((! resolvedIdToSpecMap.containsKey(id)) && (! unresolvedSpecIds.contains(id))) {
-                        newlyUnresolvedSpecIds.add(id);
-                    }
-                }
-            }
+        return batchWriter.getWrittenCount();
+    }
 
-            if (newlyUnresolvedSpecIds.size() > 0) {
-                getDataForTransformSpecReferences(transformCollection,
-                                                  newlyUnresolvedSpecIds,
-                                                  resolvedIdToSpecMap,
-                                                  (callCount + 1));
+    private static Set<Double> getZValuesForTileSpecs(final List<TileSpec> tileSpecs) {
+        final Set<Double> zValues = new HashSet<>();
+        for (final TileSpec tileSpec : tileSpecs) {
+            if (tileSpec.getZ() != null) {
+                zValues.add(tileSpec.getZ());
             }
         }
+        return zValues;
     }
 
     private Map<String, TransformSpec> addResolvedTileSpecs(final StackId stackId,
                                                             final Document tileQuery,
                                                             final RenderParameters renderParameters) {
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final MongoCollection<Document> tileCollection = getTileCollectionForRead(stackId);
 
         // EXAMPLE:   find({"z": 4050.0 , "minX": {"$lte": 239850.0} , "minY": {"$lte": 149074.0}, "maxX": {"$gte": -109.0}, "maxY": {"$gte": 370.0}}).sort({"tileId": 1})
         // INDEXES:   z_1_minY_1_minX_1_maxY_1_maxX_1_tileId_1 (z1_minX_1, z1_maxX_1, ... used for edge cases)
@@ -1701,17 +3131,13 @@ public class RenderDao {
         // order tile specs by tileId to ensure consistent coordinate mapping
         final Document orderBy = new Document("tileId", 1);
 
-        try (MongoCursor<Document> cursor = tileCollection.find(tileQuery).sort(orderBy).iterator()) {
-            Document document;
-            TileSpec tileSpec;
+        try (MongoCursor<TileSpec> cursor = tileCollection.find(tileQuery, TileSpec.class).sort(orderBy).iterator()) {
             int count = 0;
             while (cursor.hasNext()) {
                 if (count > 50000) {
                     throw new IllegalArgumentException("query too broad, over " + count + " tiles match " + tileQuery);
                 }
-                document = cursor.next();
-                tileSpec = TileSpec.fromJson(document.toJson());
-                renderParameters.addTileSpec(tileSpec);
+                renderParameters.addTileSpec(cursor.next());
                 count++;
             }
         }
@@ -1729,6 +3155,227 @@ public class RenderDao {
         return resolveTransformReferencesForTiles(stackId, renderParameters.getTileSpecs());
     }
 
+    /**
+     * @return the current snapshot for the specified stack or null if the stack should be read from the database.
+     */
+    private StackSnapshot getSnapshot(final StackId stackId) {
+        StackSnapshot snapshot = null;
+        if (stackSnapshotStore != null) {
+            final StackMetaData stackMetaData = getStackMetaData(stackId);
+            if (stackMetaData != null) {
+                snapshot = stackSnapshotStore.getSnapshot(stackMetaData);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return the cached layer for the specified stack and z or null if the stack's layers should not be cached.
+     */
+    private LayerTileSpecCache.Layer getCachedLayer(final StackId stackId,
+                                                    final Double z) {
+
+        LayerTileSpecCache.Layer layer = null;
+
+        // only cache layers for stacks that are not loading since loading stacks can change without
+        // modifying their timestamp (and changes in other server instances can't be explicitly invalidated)
+        final StackMetaData stackMetaData = getStackMetaData(stackId);
+        if ((stackMetaData != null) && (! stackMetaData.isLoading())) {
+
+            final Date lastModifiedTimestamp = stackMetaData.getLastModifiedTimestamp();
+            layer = layerTileSpecCache.get(stackId,
+                                           z,
+                                           lastModifiedTimestamp,
+                                           new Callable<LayerTileSpecCache.Layer>() {
+                                               @Override
+                                               public LayerTileSpecCache.Layer call()
+                                                       throws Exception {
+                                                   return loadLayer(stackId, z, lastModifiedTimestamp);
+                                               }
+                                           });
+        }
+
+        return layer;
+    }
+
+    private LayerTileSpecCache.Layer loadLayer(final StackId stackId,
+                                               final Double z,
+                                               final Date lastModifiedTimestamp) {
+
+        final MongoCollection<Document> tileCollection = getTileCollectionForRead(stackId);
+        final Document tileQuery = new Document("z", z);
+
+        final long tileCount = tileCollection.count(tileQuery);
+        if (tileCount > layerTileSpecCache.getMaxTilesPerLayer()) {
+            LOG.debug("loadLayer: {} tiles in {} with z {} exceeds cache limit, layer will not be cached",
+                      tileCount, MongoUtil.fullName(tileCollection), z);
+            return LayerTileSpecCache.buildUncacheableLayer(lastModifiedTimestamp);
+        }
+
+        // EXAMPLE:   find({"z": 4050.0})
+        // INDEX:     z_1_minY_1_minX_1_maxY_1_maxX_1_tileId_1
+
+        final List<TileBounds> tileBoundsList = new ArrayList<>((int) tileCount);
+        final Map<String, String> tileIdToJson = new HashMap<>((int) tileCount * 2);
+        final List<TileSpec> tileSpecs = new ArrayList<>((int) tileCount);
+
+        try (MongoCursor<Document> cursor = tileCollection.find(tileQuery).iterator()) {
+            Document document;
+            String json;
+            TileSpec tileSpec;
+            String sectionId;
+            while (cursor.hasNext()) {
+                document = cursor.next();
+                json = document.toJson();
+                tileSpec = TileSpec.fromJson(json);
+
+                // tiles without bounds can never match box queries
+                if ((tileSpec.getMinX() != null) && (tileSpec.getMinY() != null) &&
+                    (tileSpec.getMaxX() != null) && (tileSpec.getMaxY() != null)) {
+
+                    sectionId = (tileSpec.getLayout() == null) ? null : tileSpec.getLayout().getSectionId();
+                    tileBoundsList.add(new TileBounds(tileSpec.getTileId(),
+                                                      sectionId,
+                                                      tileSpec.getZ(),
+                                                      tileSpec.getMinX(),
+                                                      tileSpec.getMinY(),
+                                                      tileSpec.getMaxX(),
+                                                      tileSpec.getMaxY()));
+                    tileIdToJson.put(tileSpec.getTileId(), json);
+                    tileSpecs.add(tileSpec);
+                }
+            }
+        }
+
+        final Map<String, TransformSpec> resolvedIdToSpecMap = resolveTransformReferencesForTiles(stackId, tileSpecs);
+
+        LOG.debug("loadLayer: loaded {} tile spec(s) and {} shared transform spec(s) for {}.find({})",
+                  tileSpecs.size(), resolvedIdToSpecMap.size(), MongoUtil.fullName(tileCollection),
+                  tileQuery.toJson());
+
+        return new LayerTileSpecCache.Layer(lastModifiedTimestamp,
+                                            tileBoundsList,
+                                            tileIdToJson,
+                                            resolvedIdToSpecMap);
+    }
+
+    /**
+     * @return the cached transforms for the specified stack or null if the stack's transforms should not be cached.
+     */
+    private TransformSpecCache.StackTransforms getCachedTransforms(final StackId stackId) {
+
+        TransformSpecCache.StackTransforms stackTransforms = null;
+
+        if (transformSpecCache != null) {
+            // like cached layers, only cache transforms for stacks that are not loading
+            final StackMetaData stackMetaData = getStackMetaData(stackId);
+            if ((stackMetaData != null) && (! stackMetaData.isLoading())) {
+                stackTransforms = transformSpecCache.getStackTransforms(stackId,
+                                                                        stackMetaData.getLastModifiedTimestamp());
+            }
+        }
+
+        return stackTransforms;
+    }
+
+    /**
+     * Adds cached specs (and the cached specs they reference) for the specified ids to the resolved map.
+     *
+     * @return set of ids that could not be found in the cache.
+     */
+    private Set<String> addCachedTransformSpecs(final TransformSpecCache.StackTransforms cachedTransforms,
+                                                final Set<String> ids,
+                                                final Map<String, TransformSpec> resolvedIdToSpecMap) {
+
+        final Set<String> missingIds = new HashSet<>();
+        final List<String> pendingIds = new ArrayList<>(ids);
+
+        String id;
+        TransformSpec cachedSpec;
+        while (pendingIds.size() > 0) {
+            id = pendingIds.remove(pendingIds.size() - 1);
+            if (! resolvedIdToSpecMap.containsKey(id)) {
+                cachedSpec = cachedTransforms.getSpec(id);
+                if (cachedSpec == null) {
+                    missingIds.add(id);
+                } else {
+                    resolvedIdToSpecMap.put(id, cachedSpec);
+                    pendingIds.addAll(cachedTransforms.getReferencedIds(id));
+                }
+            }
+        }
+
+        LOG.debug("addCachedTransformSpecs: found {} cached spec(s), {} spec(s) need to be loaded",
+                  resolvedIdToSpecMap.size(), missingIds.size());
+
+        return missingIds;
+    }
+
+    private void invalidateCachedTransforms(final StackId stackId) {
+        if (transformSpecCache != null) {
+            transformSpecCache.invalidateStack(stackId);
+        }
+    }
+
+    /**
+     * @return tree of tile bounds for the specified layer, retrieved from the cache when possible.
+     */
+    private TileBoundsRTree getTileBoundsRTree(final StackId stackId,
+                                               final Double z) {
+
+        final Callable<List<TileBounds>> loader = new Callable<List<TileBounds>>() {
+            @Override
+            public List<TileBounds> call()
+                    throws Exception {
+                final List<TileBounds> tileBoundsList = getTileBounds(stackId, new Document("z", z));
+                final List<TileBounds> boundedList = new ArrayList<>(tileBoundsList.size());
+                // tiles without bounds can never contain a point
+                for (final TileBounds tileBounds : tileBoundsList) {
+                    if ((tileBounds.getMinX() != null) && (tileBounds.getMinY() != null) &&
+                        (tileBounds.getMaxX() != null) && (tileBounds.getMaxY() != null)) {
+                        boundedList.add(tileBounds);
+                    }
+                }
+                return boundedList;
+            }
+        };
+
+        TileBoundsRTree tree = null;
+
+        if (layerTileBoundsCache != null) {
+            // like cached tile spec layers, only cache bounds for stacks that are not loading
+            final StackMetaData stackMetaData = getStackMetaData(stackId);
+            if ((stackMetaData != null) && (! stackMetaData.isLoading())) {
+                tree = layerTileBoundsCache.get(stackId, z, stackMetaData.getLastModifiedTimestamp(), loader);
+            }
+        }
+
+        if (tree == null) {
+            try {
+                tree = new TileBoundsRTree(z, loader.call());
+            } catch (final Exception e) {
+                throw new IllegalStateException("failed to load tile bounds for " + stackId + " z " + z, e);
+            }
+        }
+
+        return tree;
+    }
+
+    private void invalidateCachedLayers(final StackId stackId) {
+        if (layerTileSpecCache != null) {
+            layerTileSpecCache.invalidateStack(stackId);
+        }
+        if (layerTileBoundsCache != null) {
+            layerTileBoundsCache.invalidateStack(stackId);
+        }
+    }
+
+    private void invalidateCachedStackMetaData(final StackId stackId) {
+        if (stackMetaDataCache != null) {
+            stackMetaDataCache.invalidate(stackId);
+        }
+    }
+
     private Document lte(final double value) {
         return new Document(QueryOperators.LTE, value);
     }
@@ -1812,7 +3459,12 @@ public class RenderDao {
                                              final StackId stackId,
                                              final TransformSpec transformSpec) {
 
-        final Set<String> unresolvedTransformSpecIds = transformSpec.getUnresolvedIds();
+        validateTransformIds(context, stackId, transformSpec.getUnresolvedIds());
+    }
+
+    private void validateTransformIds(final String context,
+                                      final StackId stackId,
+                                      final Set<String> unresolvedTransformSpecIds) {
 
         if (unresolvedTransformSpecIds.size() > 0) {
             final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
@@ -1874,17 +3526,81 @@ public class RenderDao {
 
     private void cloneCollection(final MongoCollection<Document> fromCollection,
                                  final MongoCollection<Document> toCollection,
-                                 final Document filterQuery)
+                                 final Document filterQuery,
+                                 final StackJob job)
             throws IllegalStateException {
 
         final long fromCount = fromCollection.count();
-        final long toCount;
         final String fromFullName = MongoUtil.fullName(fromCollection);
         final String toFullName = MongoUtil.fullName(toCollection);
 
         LOG.debug("cloneCollection: entry, copying up to {} documents from {} to {}",
                   fromCount, fromFullName, toFullName);
 
+        updateJobProgress(job, "copying up to " + fromCount + " documents from " + fromFullName +
+                               " to " + toFullName);
+
+        final long copiedCount;
+        if (toCollection.count() == 0) {
+            copiedCount = copyCollectionOnServer(fromCollection, toCollection, filterQuery);
+        } else {
+            copiedCount = appendCollection(fromCollection, toCollection, filterQuery, job);
+        }
+
+        // if nothing was filtered, verify that all documents got copied
+        if (filterQuery.keySet().size() == 0) {
+            if (copiedCount != fromCount) {
+                throw new IllegalStateException("only inserted " + copiedCount + " out of " + fromCount + " documents");
+            }
+        }
+
+        LOG.debug("cloneCollection: inserted {} documents from {}.find({}) to {}",
+                  copiedCount, fromFullName, filterQuery.toJson(), toFullName);
+    }
+
+    /**
+     * Copies documents with a server-side aggregation that writes its results directly to the
+     * target collection.  The (empty) target collection is dropped first since $out replaces it anyway
+     * and index maintenance is deferred until after the copy.
+     *
+     * @return number of copied documents.
+     */
+    private long copyCollectionOnServer(final MongoCollection<Document> fromCollection,
+                                        final MongoCollection<Document> toCollection,
+                                        final Document filterQuery) {
+
+        final ProcessTimer timer = new ProcessTimer();
+
+        toCollection.drop();
+
+        final List<Document> pipeline = new ArrayList<>();
+        if (filterQuery.keySet().size() > 0) {
+            pipeline.add(new Document("$match", filterQuery));
+        }
+        pipeline.add(new Document("$out", toCollection.getNamespace().getCollectionName()));
+
+        // retrieving aggregate results is what triggers execution of the $out stage
+        fromCollection.aggregate(pipeline).allowDiskUse(true).first();
+
+        final long toCount = toCollection.count();
+
+        LOG.debug("copyCollectionOnServer: copied {} documents with {}.aggregate({}), elapsedSeconds={}",
+                  toCount, MongoUtil.fullName(fromCollection), pipeline, timer.getElapsedSeconds());
+
+        return toCount;
+    }
+
+    /**
+     * Appends documents to a non-empty target collection with bulk inserts.
+     *
+     * @return number of copied documents.
+     */
+    private long appendCollection(final MongoCollection<Document> fromCollection,
+                                  final MongoCollection<Document> toCollection,
+                                  final Document filterQuery,
+                                  final StackJob job)
+            throws IllegalStateException {
+
         final ProcessTimer timer = new ProcessTimer(15000);
 
         // We use bulk inserts to improve performance, but we still need to chunk
@@ -1915,7 +3631,9 @@ public class RenderDao {
                     }
                     modelList.clear();
                     if (timer.hasIntervalPassed()) {
-                        LOG.debug("cloneCollection: inserted {} documents", count);
+                        LOG.debug("appendCollection: inserted {} documents", count);
+                        updateJobProgress(job, "inserted " + count + " documents into " +
+                                               MongoUtil.fullName(toCollection));
                     }
                 }
             }
@@ -1931,19 +3649,16 @@ public class RenderDao {
                 }
             }
 
-            toCount = toCollection.count();
+        }
 
-            // if nothing was filtered, verify that all documents got copied
-            if (filterQuery.keySet().size() == 0) {
-                if (toCount != fromCount) {
-                    throw new IllegalStateException("only inserted " + toCount + " out of " + fromCount + " documents");
-                }
-            }
+        return count;
+    }
 
+    private static void updateJobProgress(final StackJob job,
+                                          final String progress) {
+        if (job != null) {
+            job.updateProgress(progress);
         }
-
-        LOG.debug("cloneCollection: inserted {} documents from {}.find(\\{}) to {}",
-                  toCount, fromFullName, toFullName);
     }
 
     private MongoCollection<Document> getStackMetaDataCollection() {
@@ -1954,6 +3669,10 @@ public class RenderDao {
         return renderDatabase.getCollection(stackId.getTileCollectionName());
     }
 
+    private MongoCollection<Document> getLayerCollection(final StackId stackId) {
+        return renderDatabase.getCollection(stackId.getLayerCollectionName());
+    }
+
     private MongoCollection<Document> getSectionCollection(final StackId stackId) {
         return renderDatabase.getCollection(stackId.getSectionCollectionName());
     }
@@ -1962,6 +3681,50 @@ public class RenderDao {
         return renderDatabase.getCollection(stackId.getTransformCollectionName());
     }
 
+    /**
+     * @return tile collection for read-only queries (see {@link #getReadPreference}).
+     */
+    private MongoCollection<Document> getTileCollectionForRead(final StackId stackId) {
+        return getTileCollection(stackId).withReadPreference(getReadPreference(stackId));
+    }
+
+    /**
+     * @return transform collection for read-only queries (see {@link #getReadPreference}).
+     */
+    private MongoCollection<Document> getTransformCollectionForRead(final StackId stackId) {
+        return getTransformCollection(stackId).withReadPreference(getReadPreference(stackId));
+    }
+
+    /**
+     * @return section collection for read-only queries (see {@link #getReadPreference}).
+     */
+    private MongoCollection<Document> getSectionCollectionForRead(final StackId stackId) {
+        return getSectionCollection(stackId).withReadPreference(getReadPreference(stackId));
+    }
+
+    /**
+     * Stack data can only be changed while a stack is in the LOADING state, so read-only queries for
+     * other stacks can be sent to replica set secondaries once the stack's last state change is older
+     * than the configured max staleness.  All other queries (including any read-after-write queries
+     * issued while a stack is being loaded) are sent to the primary.
+     *
+     * Stack meta data is only looked up when it is cached since an extra (primary) query for every read
+     * would cost more than secondary reads save.  Without a cache, all queries are sent to the primary.
+     * See {@link ReadPreferencePolicy} for the limits of this staleness heuristic.
+     *
+     * @return read preference for read-only queries of the specified stack's data.
+     */
+    private ReadPreference getReadPreference(final StackId stackId) {
+        ReadPreference readPreference = ReadPreference.primary();
+        if (readPreferencePolicy.allowsNonPrimaryReads() && (stackMetaDataCache != null)) {
+            final StackMetaData stackMetaData = getStackMetaData(stackId);
+            if ((stackMetaData != null) && (! stackMetaData.isLoading())) {
+                readPreference = readPreferencePolicy.getReadPreference(stackMetaData.getLastModifiedTimestamp());
+            }
+        }
+        return readPreference;
+    }
+
     private void ensureCoreTransformIndex(final MongoCollection<Document> transformCollection) {
         MongoUtil.createIndex(transformCollection,
                               new Document("id", 1),
@@ -1974,6 +3737,11 @@ public class RenderDao {
                               new Document("tileId", 1),
                               TILE_A_OPTIONS);
         MongoUtil.createIndex(tileCollection, new Document("z", 1), TILE_B_OPTIONS);
+
+        // multikey index used to find tiles that need to be re-derived when a referenced transform changes
+        // (only covers top-level references, tiles with nested list or interpolated specs are checked separately)
+        MongoUtil.createIndex(tileCollection, new Document("transforms.specList.refId", 1), TILE_K_OPTIONS);
+
         LOG.debug("ensureCoreTileIndex: exit");
     }
 
@@ -2006,8 +3774,112 @@ public class RenderDao {
         LOG.debug("ensureSupplementaryTileIndexes: exit");
     }
 
+    /**
+     * Removes or updates one batch of tiles identified by a tile id query.
+     */
+    private static class TileIdBatchTask
+            implements Callable<Integer> {
+
+        private final MongoCollection<Document> tileCollection;
+        private final Document batchQuery;
+        private final Document update;
+
+        public TileIdBatchTask(final MongoCollection<Document> tileCollection,
+                               final Document batchQuery,
+                               final Document update) {
+            this.tileCollection = tileCollection;
+            this.batchQuery = batchQuery;
+            this.update = update;
+        }
+
+        @Override
+        public Integer call() {
+            final long count;
+            if (update == null) {
+                count = tileCollection.deleteMany(batchQuery).getDeletedCount();
+            } else {
+                count = tileCollection.updateMany(batchQuery, update).getMatchedCount();
+            }
+            return (int) count;
+        }
+    }
+
+    /**
+     * Derives bounding boxes for one batch of resolved tiles and bulk writes them.
+     * Tiles with changed transforms are replaced while other tiles only have their bounds updated.
+     */
+    private static class DeriveBoundsTask
+            implements Callable<Integer> {
+
+        private final MongoCollection<TileSpec> tileCollection;
+        private final List<TileSpec> tileSpecs;
+        private final boolean saveTransforms;
+
+        public DeriveBoundsTask(final MongoCollection<Document> tileCollection,
+                                final List<TileSpec> tileSpecs,
+                                final boolean saveTransforms) {
+            this.tileCollection = tileCollection.withDocumentClass(TileSpec.class);
+            this.tileSpecs = tileSpecs;
+            this.saveTransforms = saveTransforms;
+        }
+
+        @Override
+        public Integer call() {
+
+            final List<WriteModel<TileSpec>> modelList = new ArrayList<>(tileSpecs.size());
+            Document filter;
+            Document boundsData;
+            for (final TileSpec tileSpec : tileSpecs) {
+
+                filter = new Document("tileId", tileSpec.getTileId());
+
+                // tiles without width and height never have bounds derived
+                if (tileSpec.hasWidthAndHeightDefined()) {
+                    tileSpec.deriveBoundingBox(tileSpec.getMeshCellSize(), true);
+                    if (! saveTransforms) {
+                        boundsData = new Document("minX", tileSpec.getMinX()).append(
+                                "minY", tileSpec.getMinY()).append(
+                                "maxX", tileSpec.getMaxX()).append(
+                                "maxY", tileSpec.getMaxY()).append(
+                                "meshCellSize", tileSpec.getMeshCellSize());
+                        modelList.add(new UpdateOneModel<TileSpec>(filter, new Document("$set", boundsData)));
+                    }
+                }
+
+                if (saveTransforms) {
+                    modelList.add(new ReplaceOneModel<>(filter, tileSpec));
+                }
+            }
+
+            if (modelList.size() > 0) {
+                final BulkWriteResult result = tileCollection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("DeriveBoundsTask.call: {} using {}.bulkWrite",
+                              MongoUtil.toMessage("tile bounds", result, modelList.size()),
+                              MongoUtil.fullName(tileCollection));
+                }
+            }
+
+            return modelList.size();
+        }
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(RenderDao.class);
 
+    /** Maximum number of specs written by each bulk batch. */
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String LAYER_CHANGED_KEY = "changed";
+    private static final String LAYER_CHANGE_COUNT_KEY = "changeCount";
+
+    private static final Comparator<TileBounds> TILE_ID_COMPARATOR = new Comparator<TileBounds>() {
+        @Override
+        public int compare(final TileBounds o1,
+                           final TileBounds o2) {
+            return o1.getTileId().compareTo(o2.getTileId());
+        }
+    };
+
     /** Explicitly named index options allow a little more namespace room for stack id components. */
     private static final IndexOptions TRANSFORM_A_OPTIONS = new IndexOptions().unique(true).background(true).name("A");
     private static final IndexOptions TILE_A_OPTIONS = new IndexOptions().unique(true).background(true).name("A");
@@ -2020,4 +3892,5 @@ public class RenderDao {
     private static final IndexOptions TILE_H_OPTIONS = new IndexOptions().background(true).name("H");
     private static final IndexOptions TILE_I_OPTIONS = new IndexOptions().background(true).name("I");
     private static final IndexOptions TILE_J_OPTIONS = new IndexOptions().background(true).name("J");
+    private static final IndexOptions TILE_K_OPTIONS = new IndexOptions().background(true).name("K");
 }
@@ -43,11 +43,25 @@ public class SharedMongoClient {
         return sharedMongoClient.client;
     }
 
+    /**
+     * @return configuration used to build the shared client instance.
+     */
+    public static DbConfig getDbConfig()
+            throws UnknownHostException {
+        if (sharedMongoClient == null) {
+            setSharedMongoClient();
+        }
+        return sharedMongoClient.dbConfig;
+    }
+
+    private final DbConfig dbConfig;
     private final MongoClient client;
 
     public SharedMongoClient(final DbConfig dbConfig)
             throws UnknownHostException {
 
+        this.dbConfig = dbConfig;
+
         final List<MongoCredential> credentialsList;
         if (dbConfig.hasCredentials()) {
             final MongoCredential credential =
@@ -64,8 +78,9 @@ public class SharedMongoClient {
                 .maxConnectionIdleTime(dbConfig.getMaxConnectionIdleTime())
                 .build();
 
-        LOG.info("creating {} client for server(s) {} with {}",
-                 getMongoClientVersion(), dbConfig.getServerAddressList(), options);
+        LOG.info("creating {} client for server(s) {} with {} and read preference policy {}",
+                 getMongoClientVersion(), dbConfig.getServerAddressList(), options,
+                 dbConfig.getReadPreferencePolicy());
 
 
         client = new MongoClient(dbConfig.getServerAddressList(), credentialsList, options);
@@ -0,0 +1,164 @@
+package org.janelia.render.service.dao;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.janelia.alignment.spec.stack.StackId;
+import org.janelia.alignment.spec.stack.StackMetaData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process wide cache of {@link StackMetaData} so that the small meta data document does not need to be
+ * retrieved from the database for every request.
+ *
+ * Entries expire a short time after they are loaded so that changes made by other server instances are
+ * picked up quickly.  Changes made through a {@link RenderDao} that uses this cache explicitly invalidate
+ * the changed stack's entry.
+ *
+ * Meta data is cached in its JSON form and a new instance is parsed for each request
+ * because services modify the instances they retrieve.
+ *
+ * @author Eric Trautman
+ */
+public class StackMetaDataCache {
+
+    /** Default number of seconds that loaded meta data is retained. */
+    public static final long DEFAULT_EXPIRE_AFTER_WRITE_SECONDS = 10;
+
+    /** Default maximum number of stacks to cache. */
+    public static final long DEFAULT_MAX_CACHED_STACKS = 10000;
+
+    private static StackMetaDataCache sharedInstance;
+
+    /**
+     * @return cache instance shared by all service data access objects.
+     */
+    public static StackMetaDataCache getSharedInstance() {
+        if (sharedInstance == null) {
+            setSharedInstance();
+        }
+        return sharedInstance;
+    }
+
+    private static synchronized void setSharedInstance() {
+        if (sharedInstance == null) {
+            sharedInstance = new StackMetaDataCache(DEFAULT_MAX_CACHED_STACKS, DEFAULT_EXPIRE_AFTER_WRITE_SECONDS);
+            LOG.info("setSharedInstance: exit, created {}", sharedInstance);
+        }
+    }
+
+    private final long maxCachedStacks;
+    private final long expireAfterWriteSeconds;
+    private final Cache<String, CachedMetaData> cache;
+    private final AtomicLong invalidationCount;
+
+    public StackMetaDataCache(final long maxCachedStacks,
+                              final long expireAfterWriteSeconds) {
+        this.maxCachedStacks = maxCachedStacks;
+        this.expireAfterWriteSeconds = expireAfterWriteSeconds;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxCachedStacks)
+                .expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        this.invalidationCount = new AtomicLong(0);
+    }
+
+    /**
+     * @return a newly parsed copy of the cached meta data for the specified stack
+     *         or null if the stack's meta data is not cached.
+     */
+    public StackMetaData get(final StackId stackId) {
+        StackMetaData stackMetaData = null;
+        final CachedMetaData cachedMetaData = cache.getIfPresent(stackId.toString());
+        if (cachedMetaData != null) {
+            stackMetaData = StackMetaData.fromJson(cachedMetaData.json);
+        }
+        return stackMetaData;
+    }
+
+    /**
+     * Adds the specified meta data (in JSON form) to this cache.
+     */
+    public void put(final StackId stackId,
+                    final String stackMetaDataJson) {
+        cache.put(stackId.toString(), new CachedMetaData(stackMetaDataJson));
+    }
+
+    /**
+     * Removes any cached meta data for the specified stack.
+     */
+    public void invalidate(final StackId stackId) {
+        cache.invalidate(stackId.toString());
+        invalidationCount.incrementAndGet();
+    }
+
+    /**
+     * @return the number of stacks currently in this cache.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * @return a current snapshot of this cache's cumulative statistics.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return summary of this cache's hit rates and staleness suitable for JSON serialization.
+     */
+    public Map<String, Object> getStatsSummary() {
+
+        final CacheStats stats = cache.stats();
+
+        final long now = System.currentTimeMillis();
+        long oldestLoadTime = now;
+        for (final CachedMetaData cachedMetaData : cache.asMap().values()) {
+            oldestLoadTime = Math.min(oldestLoadTime, cachedMetaData.loadTime);
+        }
+
+        final Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("numberOfStacks", size());
+        summary.put("maxCachedStacks", maxCachedStacks);
+        summary.put("expireAfterWriteSeconds", expireAfterWriteSeconds);
+        summary.put("hitCount", stats.hitCount());
+        summary.put("missCount", stats.missCount());
+        summary.put("hitRate", stats.hitRate());
+        summary.put("evictionCount", stats.evictionCount());
+        summary.put("invalidationCount", invalidationCount.get());
+        summary.put("oldestEntryAgeMillis", now - oldestLoadTime);
+
+        return summary;
+    }
+
+    @Override
+    public String toString() {
+        return "{numberOfStacks: " + size() +
+               ", maxCachedStacks: " + maxCachedStacks +
+               ", expireAfterWriteSeconds: " + expireAfterWriteSeconds +
+               '}';
+    }
+
+    private static class CachedMetaData {
+
+        private final String json;
+        private final long loadTime;
+
+        public CachedMetaData(final String json) {
+            this.json = json;
+            this.loadTime = System.currentTimeMillis();
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(StackMetaDataCache.class);
+}
@@ -0,0 +1,714 @@
+package org.janelia.render.service.dao;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.janelia.alignment.json.JsonUtils;
+import org.janelia.alignment.spec.Bounds;
+import org.janelia.alignment.spec.ListTransformSpec;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TransformSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable, memory mapped copy of the tile specs, shared transform specs, and per-layer spatial indexes
+ * for a stack that is no longer being changed.
+ *
+ * Snapshot files are written once by a {@link Writer} and are then mapped read-only, so that
+ * layer and box queries for the stack are served from (page cache backed) memory.
+ * Each snapshot remembers the stack's last modified timestamp at export time so that
+ * callers can ignore snapshots that no longer reflect the stack.
+ *
+ * File layout (all values are big-endian):
+ * <pre>
+ *   header:     magic, version, lastModifiedTime, transformsOffset, transformsLength, layerCount, directoryOffset
+ *   layers:     for each z (in ascending order) -
+ *                 tileCount, leafNodeCount, nodeCount,
+ *                 tile entries (bounds, specOffset, specLength) in packed tree order,
+ *                 tree nodes (bounds, firstChild, childCount) with leaf nodes first and the root node last,
+ *                 Smile encoded (unresolved) tile specs
+ *   transforms: Smile encoded list of all shared transform specs referenced by the tiles
+ *   directory:  for each z (in ascending order) - z, layerOffset, layerLength
+ * </pre>
+ *
+ * Each layer's tree is a packed R-tree: tiles are ordered with the Sort-Tile-Recursive algorithm and
+ * then consecutive groups of {@link #NODE_CAPACITY} entries become the nodes of the next level.
+ * Tiles without bounds are stored after all bounded tiles and are only returned by whole layer queries.
+ *
+ * Like {@link LayerTileSpecCache}, every lookup parses new tile spec instances since rendering
+ * alters tile specs.  Resolved shared transform specs are shared across lookups.
+ *
+ * @author Eric Trautman
+ */
+public class StackSnapshot {
+
+    /** Maximum number of children for each tree node. */
+    public static final int NODE_CAPACITY = 16;
+
+    private static final int MAGIC = 0x524E5353;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_LENGTH = 40;
+    private static final int DIRECTORY_ENTRY_LENGTH = 20;
+    private static final int LAYER_HEADER_LENGTH = 12;
+
+    /** Length of tile entries and tree nodes: four double bounds followed by two int values. */
+    private static final int ENTRY_LENGTH = 40;
+
+    /** Layers are mapped in regions of (at most) this size to limit the number of mappings per snapshot. */
+    private static final long MAX_REGION_LENGTH = 1L << 30;
+
+    private static final TypeReference<List<TransformSpec>> TRANSFORM_LIST_TYPE =
+            new TypeReference<List<TransformSpec>>() {};
+
+    private static final Comparator<TileSpec> TILE_ID_COMPARATOR =
+            new Comparator<TileSpec>() {
+                @Override
+                public int compare(final TileSpec o1,
+                                   final TileSpec o2) {
+                    return o1.getTileId().compareTo(o2.getTileId());
+                }
+            };
+
+    private final File file;
+    private final long fileModifiedTime;
+    private final long lastModifiedTime;
+    private final double[] zValues;
+    private final ByteBuffer[] layers;
+    private final Map<String, TransformSpec> transformIdToSpecMap;
+
+    /**
+     * Maps the specified snapshot file.
+     *
+     * @param  file  snapshot file written by a {@link Writer}.
+     *
+     * @throws IOException
+     *   if the file cannot be mapped or is not a snapshot file.
+     */
+    public StackSnapshot(final File file)
+            throws IOException {
+
+        this.file = file;
+        this.fileModifiedTime = file.lastModified();
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel channel = randomAccessFile.getChannel()) {
+
+            if (channel.size() < HEADER_LENGTH) {
+                throw new IOException(file + " is too small to be a stack snapshot");
+            }
+
+            final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_LENGTH);
+            if ((header.getInt() != MAGIC) || (header.getInt() != VERSION)) {
+                throw new IOException(file + " is not a version " + VERSION + " stack snapshot");
+            }
+
+            this.lastModifiedTime = header.getLong();
+            final long transformsOffset = header.getLong();
+            final int transformsLength = header.getInt();
+            final int layerCount = header.getInt();
+            final long directoryOffset = header.getLong();
+
+            final ByteBuffer transforms = channel.map(FileChannel.MapMode.READ_ONLY,
+                                                      transformsOffset,
+                                                      transformsLength);
+            final byte[] transformBytes = new byte[transformsLength];
+            transforms.get(transformBytes);
+            final List<TransformSpec> transformSpecs =
+                    JsonUtils.SMILE_MAPPER.readValue(transformBytes, TRANSFORM_LIST_TYPE);
+
+            this.transformIdToSpecMap = new HashMap<>(transformSpecs.size() * 2);
+            for (final TransformSpec transformSpec : transformSpecs) {
+                transformIdToSpecMap.put(transformSpec.getId(), transformSpec);
+            }
+            // resolve references within the shared transform specs
+            for (final TransformSpec transformSpec : transformSpecs) {
+                transformSpec.resolveReferences(transformIdToSpecMap);
+            }
+
+            final ByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY,
+                                                     directoryOffset,
+                                                     (long) layerCount * DIRECTORY_ENTRY_LENGTH);
+            this.zValues = new double[layerCount];
+            final long[] layerOffsets = new long[layerCount];
+            final int[] layerLengths = new int[layerCount];
+            for (int i = 0; i < layerCount; i++) {
+                zValues[i] = directory.getDouble();
+                layerOffsets[i] = directory.getLong();
+                layerLengths[i] = directory.getInt();
+            }
+
+            this.layers = new ByteBuffer[layerCount];
+            int regionStart = 0;
+            for (int i = 0; i < layerCount; i++) {
+                final int next = i + 1;
+                if ((next == layerCount) ||
+                    ((layerOffsets[next] + layerLengths[next] - layerOffsets[regionStart]) > MAX_REGION_LENGTH)) {
+                    mapRegion(channel, layerOffsets, layerLengths, regionStart, i);
+                    regionStart = next;
+                }
+            }
+        }
+
+        LOG.debug("StackSnapshot: mapped {} layers and {} shared transform specs from {}",
+                  zValues.length, transformIdToSpecMap.size(), file);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return modification time of the snapshot file when it was mapped.
+     */
+    public long getFileModifiedTime() {
+        return fileModifiedTime;
+    }
+
+    /**
+     * @return last modified time of the stack when this snapshot was exported.
+     */
+    public long getLastModifiedTime() {
+        return lastModifiedTime;
+    }
+
+    /**
+     * @param  minZ  if specified (not null), only include z values greater than or equal to this minimum.
+     * @param  maxZ  if specified (not null), only include z values less than or equal to this maximum.
+     *
+     * @return sorted list of z values (layers) in this snapshot.
+     */
+    public List<Double> getZValues(final Double minZ,
+                                   final Double maxZ) {
+        final List<Double> list = new ArrayList<>(zValues.length);
+        for (final double z : zValues) {
+            if (((minZ == null) || (z >= minZ)) && ((maxZ == null) || (z <= maxZ))) {
+                list.add(z);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @return coordinate bounds for all (bounded) tiles in the specified layer or
+     *         null if the layer does not contain any bounded tiles.
+     */
+    public Bounds getLayerBounds(final Double z) {
+        Bounds bounds = null;
+        final ByteBuffer layer = getLayer(z);
+        if (layer != null) {
+            final int tileCount = layer.getInt(0);
+            final int nodeCount = layer.getInt(8);
+            if (nodeCount > 0) {
+                final int rootOffset = getNodeOffset(tileCount, nodeCount - 1);
+                bounds = new Bounds(layer.getDouble(rootOffset),
+                                    layer.getDouble(rootOffset + 8),
+                                    z,
+                                    layer.getDouble(rootOffset + 16),
+                                    layer.getDouble(rootOffset + 24),
+                                    z);
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * @return newly parsed and resolved specs (sorted by tileId) for all tiles in the specified layer.
+     */
+    public List<TileSpec> getTileSpecs(final Double z) {
+        final List<TileSpec> tileSpecs;
+        final ByteBuffer layer = getLayer(z);
+        if (layer == null) {
+            tileSpecs = new ArrayList<>();
+        } else {
+            final int tileCount = layer.getInt(0);
+            final List<Integer> tileIndexes = new ArrayList<>(tileCount);
+            for (int i = 0; i < tileCount; i++) {
+                tileIndexes.add(i);
+            }
+            tileSpecs = readTileSpecs(layer, tileIndexes);
+        }
+        return tileSpecs;
+    }
+
+    /**
+     * @return newly parsed and resolved specs (sorted by tileId) for all tiles that intersect the specified box.
+     *         Intersection logic matches {@link RenderDao} box queries (bounds are inclusive).
+     */
+    public List<TileSpec> getTileSpecsInBox(final Double z,
+                                            final double x,
+                                            final double y,
+                                            final double lowerRightX,
+                                            final double lowerRightY) {
+        final List<TileSpec> tileSpecs;
+        final ByteBuffer layer = getLayer(z);
+        if (layer == null) {
+            tileSpecs = new ArrayList<>();
+        } else {
+            final int tileCount = layer.getInt(0);
+            final int leafNodeCount = layer.getInt(4);
+            final int nodeCount = layer.getInt(8);
+            final List<Integer> tileIndexes = new ArrayList<>();
+            if (nodeCount > 0) {
+                final int rootIndex = nodeCount - 1;
+                if (intersects(layer, getNodeOffset(tileCount, rootIndex), x, y, lowerRightX, lowerRightY)) {
+                    addIntersectingTiles(layer, tileCount, leafNodeCount, rootIndex,
+                                         x, y, lowerRightX, lowerRightY, tileIndexes);
+                }
+            }
+            tileSpecs = readTileSpecs(layer, tileIndexes);
+        }
+        return tileSpecs;
+    }
+
+    @Override
+    public String toString() {
+        return "{file: '" + file +
+               "', lastModifiedTime: " + lastModifiedTime +
+               ", numberOfLayers: " + zValues.length +
+               '}';
+    }
+
+    private void mapRegion(final FileChannel channel,
+                           final long[] layerOffsets,
+                           final int[] layerLengths,
+                           final int firstLayer,
+                           final int lastLayer)
+            throws IOException {
+
+        final long regionOffset = layerOffsets[firstLayer];
+        final long regionLength = layerOffsets[lastLayer] + layerLengths[lastLayer] - regionOffset;
+        final ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, regionOffset, regionLength);
+
+        ByteBuffer layer;
+        for (int i = firstLayer; i <= lastLayer; i++) {
+            layer = region.duplicate();
+            layer.position((int) (layerOffsets[i] - regionOffset));
+            layer.limit(layer.position() + layerLengths[i]);
+            layers[i] = layer.slice();
+        }
+    }
+
+    private ByteBuffer getLayer(final Double z) {
+        final int index = Arrays.binarySearch(zValues, z);
+        return (index < 0) ? null : layers[index];
+    }
+
+    /**
+     * Adds the indexes of all tiles within the specified (intersecting) node that intersect the specified box.
+     */
+    private void addIntersectingTiles(final ByteBuffer layer,
+                                      final int tileCount,
+                                      final int leafNodeCount,
+                                      final int nodeIndex,
+                                      final double x,
+                                      final double y,
+                                      final double lowerRightX,
+                                      final double lowerRightY,
+                                      final List<Integer> tileIndexes) {
+
+        final int nodeOffset = getNodeOffset(tileCount, nodeIndex);
+        final int firstChild = layer.getInt(nodeOffset + 32);
+        final int stopChild = firstChild + layer.getInt(nodeOffset + 36);
+
+        if (nodeIndex < leafNodeCount) {
+            for (int tileIndex = firstChild; tileIndex < stopChild; tileIndex++) {
+                if (intersects(layer, getTileOffset(tileIndex), x, y, lowerRightX, lowerRightY)) {
+                    tileIndexes.add(tileIndex);
+                }
+            }
+        } else {
+            for (int childIndex = firstChild; childIndex < stopChild; childIndex++) {
+                if (intersects(layer, getNodeOffset(tileCount, childIndex), x, y, lowerRightX, lowerRightY)) {
+                    addIntersectingTiles(layer, tileCount, leafNodeCount, childIndex,
+                                         x, y, lowerRightX, lowerRightY, tileIndexes);
+                }
+            }
+        }
+    }
+
+    private List<TileSpec> readTileSpecs(final ByteBuffer layer,
+                                         final List<Integer> tileIndexes) {
+
+        final List<TileSpec> tileSpecs = new ArrayList<>(tileIndexes.size());
+
+        // use a separate buffer view so that concurrent readers do not share position state
+        final ByteBuffer specData = layer.duplicate();
+
+        int tileOffset;
+        byte[] specBytes;
+        TileSpec tileSpec;
+        ListTransformSpec transforms;
+        for (final Integer tileIndex : tileIndexes) {
+            tileOffset = getTileOffset(tileIndex);
+            specBytes = new byte[layer.getInt(tileOffset + 36)];
+            specData.position(layer.getInt(tileOffset + 32));
+            specData.get(specBytes);
+            try {
+                tileSpec = JsonUtils.SMILE_MAPPER.readValue(specBytes, TileSpec.class);
+            } catch (final IOException e) {
+                throw new IllegalStateException("failed to parse tile spec " + tileIndex + " from " + file, e);
+            }
+            transforms = tileSpec.getTransforms();
+            if ((transforms != null) && (transformIdToSpecMap.size() > 0)) {
+                transforms.resolveReferences(transformIdToSpecMap);
+            }
+            tileSpecs.add(tileSpec);
+        }
+
+        // order tile specs by tileId to ensure consistent coordinate mapping
+        Collections.sort(tileSpecs, TILE_ID_COMPARATOR);
+
+        return tileSpecs;
+    }
+
+    private static boolean intersects(final ByteBuffer layer,
+                                      final int entryOffset,
+                                      final double x,
+                                      final double y,
+                                      final double lowerRightX,
+                                      final double lowerRightY) {
+        return (layer.getDouble(entryOffset) <= lowerRightX) &&
+               (layer.getDouble(entryOffset + 8) <= lowerRightY) &&
+               (layer.getDouble(entryOffset + 16) >= x) &&
+               (layer.getDouble(entryOffset + 24) >= y);
+    }
+
+    private static int getTileOffset(final int tileIndex) {
+        return LAYER_HEADER_LENGTH + (tileIndex * ENTRY_LENGTH);
+    }
+
+    private static int getNodeOffset(final int tileCount,
+                                     final int nodeIndex) {
+        return LAYER_HEADER_LENGTH + ((tileCount + nodeIndex) * ENTRY_LENGTH);
+    }
+
+    /**
+     * Writes a snapshot file.  Data is written to a temporary file that replaces the snapshot file
+     * when {@link #finish} is called, so that readers never see partially written snapshots.
+     * Closing a writer that has not been finished removes the temporary file.
+     */
+    public static class Writer
+            implements Closeable {
+
+        private final File file;
+        private final File temporaryFile;
+        private final long lastModifiedTime;
+        private final RandomAccessFile randomAccessFile;
+        private final FileChannel channel;
+        private final List<Double> zValues;
+        private final List<Long> layerOffsets;
+        private final List<Integer> layerLengths;
+        private boolean finished;
+
+        /**
+         * @param  file                   snapshot file to write.
+         * @param  lastModifiedTimestamp  last modified time of the stack being exported.
+         *
+         * @throws IOException
+         *   if the temporary file cannot be created.
+         */
+        public Writer(final File file,
+                      final Date lastModifiedTimestamp)
+                throws IOException {
+
+            this.file = file;
+            this.temporaryFile = new File(file.getParentFile(), file.getName() + ".tmp");
+            this.lastModifiedTime = (lastModifiedTimestamp == null) ? -1 : lastModifiedTimestamp.getTime();
+            this.randomAccessFile = new RandomAccessFile(temporaryFile, "rw");
+            this.randomAccessFile.setLength(0);
+            this.channel = randomAccessFile.getChannel();
+            this.channel.position(HEADER_LENGTH);
+            this.zValues = new ArrayList<>();
+            this.layerOffsets = new ArrayList<>();
+            this.layerLengths = new ArrayList<>();
+            this.finished = false;
+        }
+
+        /**
+         * Writes the specified layer.  Layers must be added in ascending z order.
+         *
+         * @param  z          layer z value.
+         * @param  tileSpecs  unresolved specs for all tiles in the layer.
+         *
+         * @throws IllegalArgumentException
+         *   if the layer is out of order or is too large to map.
+         *
+         * @throws IOException
+         *   if the layer cannot be written.
+         */
+        public void addLayer(final Double z,
+                             final List<TileSpec> tileSpecs)
+                throws IllegalArgumentException, IOException {
+
+            final int layerCount = zValues.size();
+            if ((layerCount > 0) && (z <= zValues.get(layerCount - 1))) {
+                throw new IllegalArgumentException("layer " + z + " must be added before layer " +
+                                                   zValues.get(layerCount - 1));
+            }
+
+            final List<PackedEntry> boundedTiles = new ArrayList<>(tileSpecs.size());
+            final List<PackedEntry> unboundedTiles = new ArrayList<>();
+            long specLength = 0;
+            PackedEntry entry;
+            for (final TileSpec tileSpec : tileSpecs) {
+                entry = new PackedEntry(tileSpec, JsonUtils.SMILE_MAPPER.writeValueAsBytes(tileSpec));
+                if (entry.isBounded()) {
+                    boundedTiles.add(entry);
+                } else {
+                    unboundedTiles.add(entry);
+                }
+                specLength += entry.specBytes.length;
+            }
+
+            final List<PackedEntry> tiles = sortTileRecursive(boundedTiles);
+            final List<PackedEntry> nodes = new ArrayList<>();
+            int leafNodeCount = 0;
+
+            List<PackedEntry> level = tiles;
+            int levelFirstIndex = 0;
+            while (level.size() > 0) {
+                final int parentFirstIndex = nodes.size();
+                for (int i = 0; i < level.size(); i += NODE_CAPACITY) {
+                    final int stop = Math.min(i + NODE_CAPACITY, level.size());
+                    nodes.add(new PackedEntry(level.subList(i, stop), levelFirstIndex + i));
+                }
+                if (leafNodeCount == 0) {
+                    leafNodeCount = nodes.size();
+                }
+                if (nodes.size() - parentFirstIndex == 1) {
+                    break; // root node
+                }
+                level = new ArrayList<>(nodes.subList(parentFirstIndex, nodes.size()));
+                levelFirstIndex = parentFirstIndex;
+            }
+
+            tiles.addAll(unboundedTiles);
+
+            final int entriesLength = LAYER_HEADER_LENGTH + ((tiles.size() + nodes.size()) * ENTRY_LENGTH);
+            final long layerLength = entriesLength + specLength;
+            if (layerLength > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("layer " + z + " is too large (" + layerLength +
+                                                   " bytes) to include in a snapshot");
+            }
+
+            final ByteBuffer buffer = ByteBuffer.allocate((int) layerLength);
+            buffer.putInt(tiles.size());
+            buffer.putInt(leafNodeCount);
+            buffer.putInt(nodes.size());
+
+            int specOffset = entriesLength;
+            for (final PackedEntry tile : tiles) {
+                tile.putBounds(buffer);
+                buffer.putInt(specOffset);
+                buffer.putInt(tile.specBytes.length);
+                specOffset += tile.specBytes.length;
+            }
+
+            for (final PackedEntry node : nodes) {
+                node.putBounds(buffer);
+                buffer.putInt(node.firstChild);
+                buffer.putInt(node.childCount);
+            }
+
+            for (final PackedEntry tile : tiles) {
+                buffer.put(tile.specBytes);
+            }
+
+            buffer.flip();
+
+            zValues.add(z);
+            layerOffsets.add(channel.position());
+            layerLengths.add((int) layerLength);
+
+            writeFully(buffer);
+
+            LOG.debug("addLayer: wrote {} tiles ({} without bounds) and {} nodes for z {} to {}",
+                      tiles.size(), unboundedTiles.size(), nodes.size(), z, temporaryFile);
+        }
+
+        /**
+         * Writes the shared transforms, layer directory, and header and then replaces the snapshot file.
+         *
+         * @param  transformSpecs  all shared transform specs referenced by the written tiles.
+         *
+         * @throws IOException
+         *   if the data cannot be written or the snapshot file cannot be replaced.
+         */
+        public void finish(final Collection<TransformSpec> transformSpecs)
+                throws IOException {
+
+            final byte[] transformBytes = JsonUtils.SMILE_MAPPER.writerWithType(TRANSFORM_LIST_TYPE)
+                    .writeValueAsBytes(new ArrayList<>(transformSpecs));
+            final long transformsOffset = channel.position();
+            writeFully(ByteBuffer.wrap(transformBytes));
+
+            final int layerCount = zValues.size();
+            final ByteBuffer directory = ByteBuffer.allocate(layerCount * DIRECTORY_ENTRY_LENGTH);
+            for (int i = 0; i < layerCount; i++) {
+                directory.putDouble(zValues.get(i));
+                directory.putLong(layerOffsets.get(i));
+                directory.putInt(layerLengths.get(i));
+            }
+            directory.flip();
+            final long directoryOffset = channel.position();
+            writeFully(directory);
+
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putLong(lastModifiedTime);
+            header.putLong(transformsOffset);
+            header.putInt(transformBytes.length);
+            header.putInt(layerCount);
+            header.putLong(directoryOffset);
+            header.flip();
+            channel.position(0);
+            writeFully(header);
+
+            channel.force(false);
+            randomAccessFile.close();
+
+            Files.move(temporaryFile.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+
+            LOG.info("finish: wrote {} layers and {} shared transform specs to {}",
+                     layerCount, transformSpecs.size(), file);
+        }
+
+        @Override
+        public void close()
+                throws IOException {
+            randomAccessFile.close();
+            if ((! finished) && temporaryFile.exists() && (! temporaryFile.delete())) {
+                LOG.warn("close: failed to remove {}", temporaryFile);
+            }
+        }
+
+        private void writeFully(final ByteBuffer buffer)
+                throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        /**
+         * @return the specified entries in Sort-Tile-Recursive order
+         *         (vertical slices sorted by x center with each slice sorted by y center).
+         */
+        private static List<PackedEntry> sortTileRecursive(final List<PackedEntry> entries) {
+
+            final List<PackedEntry> sortedEntries = new ArrayList<>(entries);
+            Collections.sort(sortedEntries, CENTER_X_COMPARATOR);
+
+            final int leafCount = (entries.size() + NODE_CAPACITY - 1) / NODE_CAPACITY;
+            final int sliceLength = (int) Math.ceil(Math.sqrt(leafCount)) * NODE_CAPACITY;
+            for (int i = 0; i < sortedEntries.size(); i += sliceLength) {
+                final int stop = Math.min(i + sliceLength, sortedEntries.size());
+                Collections.sort(sortedEntries.subList(i, stop), CENTER_Y_COMPARATOR);
+            }
+
+            return sortedEntries;
+        }
+    }
+
+    /**
+     * Bounds and data for one tile entry or tree node.
+     */
+    private static class PackedEntry {
+
+        private final double minX;
+        private final double minY;
+        private final double maxX;
+        private final double maxY;
+        private final byte[] specBytes;
+        private final int firstChild;
+        private final int childCount;
+
+        public PackedEntry(final TileSpec tileSpec,
+                           final byte[] specBytes) {
+            this.minX = getValue(tileSpec.getMinX());
+            this.minY = getValue(tileSpec.getMinY());
+            this.maxX = getValue(tileSpec.getMaxX());
+            this.maxY = getValue(tileSpec.getMaxY());
+            this.specBytes = specBytes;
+            this.firstChild = -1;
+            this.childCount = 0;
+        }
+
+        public PackedEntry(final List<PackedEntry> children,
+                           final int firstChild) {
+            double minX = Double.MAX_VALUE;
+            double minY = Double.MAX_VALUE;
+            double maxX = -Double.MAX_VALUE;
+            double maxY = -Double.MAX_VALUE;
+            for (final PackedEntry child : children) {
+                minX = Math.min(minX, child.minX);
+                minY = Math.min(minY, child.minY);
+                maxX = Math.max(maxX, child.maxX);
+                maxY = Math.max(maxY, child.maxY);
+            }
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.specBytes = null;
+            this.firstChild = firstChild;
+            this.childCount = children.size();
+        }
+
+        public boolean isBounded() {
+            return ! (Double.isNaN(minX) || Double.isNaN(minY) || Double.isNaN(maxX) || Double.isNaN(maxY));
+        }
+
+        public void putBounds(final ByteBuffer buffer) {
+            buffer.putDouble(minX);
+            buffer.putDouble(minY);
+            buffer.putDouble(maxX);
+            buffer.putDouble(maxY);
+        }
+
+        private static double getValue(final Double value) {
+            return (value == null) ? Double.NaN : value;
+        }
+    }
+
+    private static final Comparator<PackedEntry> CENTER_X_COMPARATOR =
+            new Comparator<PackedEntry>() {
+                @Override
+                public int compare(final PackedEntry o1,
+                                   final PackedEntry o2) {
+                    return Double.compare(o1.minX + o1.maxX, o2.minX + o2.maxX);
+                }
+            };
+
+    private static final Comparator<PackedEntry> CENTER_Y_COMPARATOR =
+            new Comparator<PackedEntry>() {
+                @Override
+                public int compare(final PackedEntry o1,
+                                   final PackedEntry o2) {
+                    return Double.compare(o1.minY + o1.maxY, o2.minY + o2.maxY);
+                }
+            };
+
+    private static final Logger LOG = LoggerFactory.getLogger(StackSnapshot.class);
+}
@@ -0,0 +1,189 @@
+package org.janelia.render.service.dao;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.janelia.alignment.spec.stack.StackId;
+import org.janelia.alignment.spec.stack.StackMetaData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.janelia.alignment.spec.stack.StackMetaData.StackState.COMPLETE;
+import static org.janelia.alignment.spec.stack.StackMetaData.StackState.READ_ONLY;
+
+/**
+ * Directory of {@link StackSnapshot} files along with the currently mapped snapshot for each stack.
+ *
+ * A snapshot is only used while its stack is COMPLETE or READ_ONLY and the stack's last modified
+ * timestamp matches the snapshot's export time.  Since every state change updates the stack timestamp,
+ * snapshots automatically stop being used once their stack is changed.
+ * Snapshot files may be shared by multiple server instances, so mapped snapshots are also
+ * reloaded when they are out of date and their file has been replaced.
+ *
+ * @author Eric Trautman
+ */
+public class StackSnapshotStore {
+
+    public static final String SNAPSHOT_FILE_SUFFIX = ".snapshot";
+
+    private static StackSnapshotStore sharedInstance;
+
+    /**
+     * @param  directory  directory containing snapshot files (or null if snapshots are not supported).
+     *
+     * @return store instance shared by all service data access objects or null if snapshots are not supported.
+     *
+     * @throws IllegalArgumentException
+     *   if the directory cannot be created.
+     */
+    public static StackSnapshotStore getSharedInstance(final File directory)
+            throws IllegalArgumentException {
+        if ((sharedInstance == null) && (directory != null)) {
+            setSharedInstance(directory);
+        }
+        return sharedInstance;
+    }
+
+    private static synchronized void setSharedInstance(final File directory)
+            throws IllegalArgumentException {
+        if (sharedInstance == null) {
+            sharedInstance = new StackSnapshotStore(directory);
+            LOG.info("setSharedInstance: exit, created {}", sharedInstance);
+        }
+    }
+
+    private final File directory;
+    private final ConcurrentHashMap<StackId, StackSnapshot> stackIdToSnapshot;
+
+    /**
+     * @param  directory  directory containing snapshot files.
+     *
+     * @throws IllegalArgumentException
+     *   if the directory cannot be created.
+     */
+    public StackSnapshotStore(final File directory)
+            throws IllegalArgumentException {
+
+        if (! directory.isDirectory()) {
+            if (! directory.mkdirs()) {
+                throw new IllegalArgumentException("failed to create stack snapshot directory " +
+                                                   directory.getAbsolutePath());
+            }
+        }
+
+        this.directory = directory;
+        this.stackIdToSnapshot = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return snapshot file for the specified stack (the file may not exist).
+     */
+    public File getFile(final StackId stackId) {
+        final String name = stackId.getOwner() + "__" + stackId.getProject() + "__" + stackId.getStack() +
+                            SNAPSHOT_FILE_SUFFIX;
+        return new File(directory, name);
+    }
+
+    /**
+     * @param  stackMetaData  current meta data for the stack.
+     *
+     * @return the current snapshot for the specified stack or null if the stack should be read from the database.
+     */
+    public StackSnapshot getSnapshot(final StackMetaData stackMetaData) {
+
+        StackSnapshot snapshot = null;
+
+        final StackMetaData.StackState state = stackMetaData.getState();
+        if (COMPLETE.equals(state) || READ_ONLY.equals(state)) {
+
+            final StackId stackId = stackMetaData.getStackId();
+            final long lastModifiedTime = getTime(stackMetaData.getLastModifiedTimestamp());
+
+            snapshot = stackIdToSnapshot.get(stackId);
+
+            if ((snapshot == null) || (snapshot.getLastModifiedTime() != lastModifiedTime)) {
+                snapshot = loadSnapshot(stackId, snapshot);
+            }
+
+            if ((snapshot != null) && (snapshot.getLastModifiedTime() != lastModifiedTime)) {
+                snapshot = null;
+            }
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * @param  stackMetaData  current meta data for the stack being exported.
+     *
+     * @return a writer for the specified stack's snapshot file.
+     *
+     * @throws IOException
+     *   if the writer cannot be created.
+     */
+    public StackSnapshot.Writer getWriter(final StackMetaData stackMetaData)
+            throws IOException {
+        return new StackSnapshot.Writer(getFile(stackMetaData.getStackId()),
+                                        stackMetaData.getLastModifiedTimestamp());
+    }
+
+    /**
+     * Removes the specified stack's snapshot (if it exists).
+     *
+     * @return true if a snapshot file was removed; otherwise false.
+     */
+    public boolean removeSnapshot(final StackId stackId) {
+        stackIdToSnapshot.remove(stackId);
+        final File file = getFile(stackId);
+        final boolean removed = file.exists() && file.delete();
+        if (removed) {
+            LOG.info("removeSnapshot: removed {}", file);
+        }
+        return removed;
+    }
+
+    @Override
+    public String toString() {
+        return "{directory: '" + directory.getAbsolutePath() +
+               "', numberOfMappedSnapshots: " + stackIdToSnapshot.size() +
+               '}';
+    }
+
+    /**
+     * @return the stack's newly mapped snapshot, the previously mapped snapshot if its file has not changed,
+     *         or null if the stack does not have a snapshot file.
+     */
+    private StackSnapshot loadSnapshot(final StackId stackId,
+                                       final StackSnapshot previousSnapshot) {
+
+        StackSnapshot snapshot = null;
+
+        final File file = getFile(stackId);
+        if (file.exists()) {
+            if ((previousSnapshot != null) && (file.lastModified() == previousSnapshot.getFileModifiedTime())) {
+                snapshot = previousSnapshot;
+            } else {
+                try {
+                    snapshot = new StackSnapshot(file);
+                    stackIdToSnapshot.put(stackId, snapshot);
+                    LOG.info("loadSnapshot: mapped {} for {}", snapshot, stackId);
+                } catch (final IOException e) {
+                    LOG.warn("loadSnapshot: ignoring snapshot for " + stackId + " that cannot be mapped", e);
+                    stackIdToSnapshot.remove(stackId);
+                }
+            }
+        } else if (previousSnapshot != null) {
+            stackIdToSnapshot.remove(stackId);
+        }
+
+        return snapshot;
+    }
+
+    private static long getTime(final Date timestamp) {
+        return (timestamp == null) ? -1 : timestamp.getTime();
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(StackSnapshotStore.class);
+}
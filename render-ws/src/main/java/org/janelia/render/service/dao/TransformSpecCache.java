@@ -0,0 +1,189 @@
+package org.janelia.render.service.dao;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.janelia.alignment.spec.TransformSpec;
+import org.janelia.alignment.spec.stack.StackId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of fully resolved shared (referenced) transform specs for each stack.
+ *
+ * Stacks typically have many thousands of tiles that reference the same handful of shared
+ * transforms (e.g. lens corrections).  Caching the parsed and resolved specs allows tile
+ * specs resolved for different requests to share the same transform instances
+ * instead of repeatedly loading and parsing them from the stack's transform collection.
+ *
+ * Cached specs are resolved once when they are loaded and must not be modified by callers.
+ * Like {@link LayerTileSpecCache}, each stack's specs are discarded when the stack's
+ * last modified timestamp changes or when the stack's transforms are explicitly invalidated.
+ *
+ * @author Eric Trautman
+ */
+public class TransformSpecCache {
+
+    /** Default maximum number of stacks to cache. */
+    public static final long DEFAULT_MAX_CACHED_STACKS = 500;
+
+    /** Default maximum number of transform specs to cache for each stack. */
+    public static final int DEFAULT_MAX_SPECS_PER_STACK = 10000;
+
+    /** Default number of minutes that unused stack transforms are retained. */
+    public static final long DEFAULT_EXPIRE_AFTER_ACCESS_MINUTES = 60;
+
+    private static TransformSpecCache sharedInstance;
+
+    /**
+     * @return cache instance shared by all service data access objects.
+     */
+    public static TransformSpecCache getSharedInstance() {
+        if (sharedInstance == null) {
+            setSharedInstance();
+        }
+        return sharedInstance;
+    }
+
+    private static synchronized void setSharedInstance() {
+        if (sharedInstance == null) {
+            sharedInstance = new TransformSpecCache(DEFAULT_MAX_CACHED_STACKS,
+                                                    DEFAULT_MAX_SPECS_PER_STACK,
+                                                    DEFAULT_EXPIRE_AFTER_ACCESS_MINUTES);
+            LOG.info("setSharedInstance: exit, created {}", sharedInstance);
+        }
+    }
+
+    private final long maxCachedStacks;
+    private final int maxSpecsPerStack;
+    private final long expireAfterAccessMinutes;
+    private final Cache<String, StackTransforms> cache;
+
+    public TransformSpecCache(final long maxCachedStacks,
+                              final int maxSpecsPerStack,
+                              final long expireAfterAccessMinutes) {
+        this.maxCachedStacks = maxCachedStacks;
+        this.maxSpecsPerStack = maxSpecsPerStack;
+        this.expireAfterAccessMinutes = expireAfterAccessMinutes;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxCachedStacks)
+                .expireAfterAccess(expireAfterAccessMinutes, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param  stackId                stack identifier.
+     * @param  lastModifiedTimestamp  current last modified time for the stack.
+     *
+     * @return the cached transforms for the specified stack (stale or missing transforms are replaced with
+     *         an empty container that callers can populate).
+     */
+    public StackTransforms getStackTransforms(final StackId stackId,
+                                              final Date lastModifiedTimestamp) {
+
+        final String key = stackId.toString();
+        final long lastModifiedTime = (lastModifiedTimestamp == null) ? -1 : lastModifiedTimestamp.getTime();
+
+        StackTransforms stackTransforms = cache.getIfPresent(key);
+        if ((stackTransforms == null) || (stackTransforms.lastModifiedTime != lastModifiedTime)) {
+            stackTransforms = new StackTransforms(lastModifiedTime, maxSpecsPerStack);
+            cache.put(key, stackTransforms);
+        }
+
+        return stackTransforms;
+    }
+
+    /**
+     * Removes all cached transforms for the specified stack.
+     */
+    public void invalidateStack(final StackId stackId) {
+        cache.invalidate(stackId.toString());
+    }
+
+    /**
+     * @return the number of stacks currently in this cache.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * @return a current snapshot of this cache's cumulative (stack level) statistics.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    @Override
+    public String toString() {
+        return "{numberOfStacks: " + size() +
+               ", maxCachedStacks: " + maxCachedStacks +
+               ", maxSpecsPerStack: " + maxSpecsPerStack +
+               ", expireAfterAccessMinutes: " + expireAfterAccessMinutes +
+               '}';
+    }
+
+    /**
+     * Resolved transform specs for one stack.
+     */
+    public static class StackTransforms {
+
+        private final long lastModifiedTime;
+        private final int maxSpecs;
+        private final ConcurrentMap<String, TransformSpec> idToSpec;
+        private final ConcurrentMap<String, Set<String>> idToReferencedIds;
+
+        private StackTransforms(final long lastModifiedTime,
+                                final int maxSpecs) {
+            this.lastModifiedTime = lastModifiedTime;
+            this.maxSpecs = maxSpecs;
+            this.idToSpec = new ConcurrentHashMap<>();
+            this.idToReferencedIds = new ConcurrentHashMap<>();
+        }
+
+        /**
+         * @return the cached (fully resolved) spec with the specified id or null if it is not cached.
+         */
+        public TransformSpec getSpec(final String id) {
+            return idToSpec.get(id);
+        }
+
+        /**
+         * @return ids of the specs directly referenced by the cached spec with the specified id.
+         */
+        public Set<String> getReferencedIds(final String id) {
+            final Set<String> referencedIds = idToReferencedIds.get(id);
+            return (referencedIds == null) ? Collections.<String>emptySet() : referencedIds;
+        }
+
+        /**
+         * Adds the specified fully resolved spec to the cache if there is room.
+         *
+         * @param  spec           resolved spec to add.
+         * @param  referencedIds  ids of specs directly referenced by the spec.
+         */
+        public void addSpec(final TransformSpec spec,
+                            final Set<String> referencedIds) {
+            if (idToSpec.size() < maxSpecs) {
+                // add references first so that they are available as soon as the spec is visible
+                idToReferencedIds.put(spec.getId(), referencedIds);
+                idToSpec.put(spec.getId(), spec);
+            }
+        }
+
+        public int size() {
+            return idToSpec.size();
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransformSpecCache.class);
+}
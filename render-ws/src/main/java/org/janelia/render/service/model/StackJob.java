@@ -0,0 +1,181 @@
+package org.janelia.render.service.model;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+
+import org.janelia.alignment.json.JsonUtils;
+import org.janelia.alignment.spec.stack.StackId;
+
+import io.swagger.annotations.ApiModel;
+
+/**
+ * Status of a potentially long running stack operation (e.g. cloning) that is processed in the background.
+ *
+ * Job state is updated by the processing thread and read by status requests,
+ * so all mutable fields are volatile.
+ *
+ * Cancellation is cooperative: once cancellation has been requested, the next progress update
+ * made by the processing thread throws a {@link CancellationException}.
+ *
+ * @author Eric Trautman
+ */
+@ApiModel(description = "Status of a long running stack operation that is processed in the background.")
+public class StackJob
+        implements Serializable {
+
+    public enum JobState {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+    }
+
+    private final String jobId;
+    private final String description;
+    private final StackId stackId;
+    private final Date createTimestamp;
+    private volatile JobState state;
+    private volatile Date startTimestamp;
+    private volatile Date endTimestamp;
+    private volatile String progress;
+    private volatile String failureMessage;
+    private volatile boolean cancelRequested;
+
+    // no-arg constructor needed for JSON deserialization
+    @SuppressWarnings("unused")
+    private StackJob() {
+        this.jobId = null;
+        this.description = null;
+        this.stackId = null;
+        this.createTimestamp = null;
+    }
+
+    /**
+     * @param  description  description of the operation.
+     * @param  stackId      identifies the stack being changed by the operation.
+     */
+    public StackJob(final String description,
+                    final StackId stackId) {
+        this.jobId = UUID.randomUUID().toString();
+        this.description = description;
+        this.stackId = stackId;
+        this.createTimestamp = new Date();
+        this.state = JobState.QUEUED;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public StackId getStackId() {
+        return stackId;
+    }
+
+    public Date getCreateTimestamp() {
+        return createTimestamp;
+    }
+
+    public JobState getState() {
+        return state;
+    }
+
+    public Date getStartTimestamp() {
+        return startTimestamp;
+    }
+
+    public Date getEndTimestamp() {
+        return endTimestamp;
+    }
+
+    public String getProgress() {
+        return progress;
+    }
+
+    public String getFailureMessage() {
+        return failureMessage;
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    /**
+     * @return true if the job has completed, failed, or been cancelled.
+     */
+    public boolean isFinished() {
+        return (state == JobState.COMPLETED) || (state == JobState.FAILED) || (state == JobState.CANCELLED);
+    }
+
+    public void markRunning() {
+        startTimestamp = new Date();
+        state = JobState.RUNNING;
+    }
+
+    /**
+     * @param  progress  description of the job's current progress.
+     *
+     * @throws CancellationException
+     *   if cancellation of the job has been requested.
+     */
+    public void updateProgress(final String progress)
+            throws CancellationException {
+        this.progress = progress;
+        checkForCancellation();
+    }
+
+    /**
+     * @throws CancellationException
+     *   if cancellation of the job has been requested.
+     */
+    public void checkForCancellation()
+            throws CancellationException {
+        if (cancelRequested) {
+            throw new CancellationException("job " + jobId + " was cancelled");
+        }
+    }
+
+    /**
+     * Asks the processing thread to stop at its next progress update.
+     */
+    public void requestCancel() {
+        cancelRequested = true;
+    }
+
+    public void markCompleted() {
+        endTimestamp = new Date();
+        state = JobState.COMPLETED;
+    }
+
+    public void markCancelled() {
+        endTimestamp = new Date();
+        state = JobState.CANCELLED;
+    }
+
+    public void markFailed(final Throwable cause) {
+        failureMessage = (cause == null) ? null : cause.getMessage();
+        endTimestamp = new Date();
+        state = JobState.FAILED;
+    }
+
+    @Override
+    public String toString() {
+        return "{jobId: '" + jobId + '\'' +
+               ", description: '" + description + '\'' +
+               ", state: " + state +
+               '}';
+    }
+
+    public String toJson() {
+        return JSON_HELPER.toJson(this);
+    }
+
+    public static StackJob fromJson(final String json) {
+        return JSON_HELPER.fromJson(json);
+    }
+
+    private static final JsonUtils.Helper<StackJob> JSON_HELPER =
+            new JsonUtils.Helper<>(StackJob.class);
+}
@@ -0,0 +1,34 @@
+package org.janelia.render.service.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.jaxrs.smile.JacksonJaxbSmileProvider;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.ext.Provider;
+
+import org.janelia.alignment.json.JsonUtils;
+
+/**
+ * Instance of {@link JacksonJaxbSmileProvider} that uses common configured {@link JsonUtils#SMILE_MAPPER}
+ * for requests and responses with the binary Smile mime type.
+ *
+ * @author Eric Trautman
+ */
+@Provider
+@Produces(JsonUtils.SMILE_MIME_TYPE)
+@Consumes(JsonUtils.SMILE_MIME_TYPE)
+public class ConfiguredSmileProvider extends JacksonJaxbSmileProvider {
+
+    public ConfiguredSmileProvider() {
+        super();
+    }
+
+    @Override
+    protected ObjectMapper _locateMapperViaProvider(final Class<?> type,
+                                                    final MediaType mediaType) {
+        return JsonUtils.SMILE_MAPPER;
+    }
+
+}
@@ -0,0 +1,112 @@
+package org.janelia.render.service.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the elements of a JSON (or Smile) array as they are parsed from a stream,
+ * so that very large request bodies can be processed without buffering all elements in memory.
+ *
+ * Parse failures are reported as {@link IllegalArgumentException}s since they are caused by invalid request data.
+ *
+ * @author Eric Trautman
+ */
+public class JsonArrayIterator<T>
+        implements Iterator<T> {
+
+    private final JsonParser parser;
+    private final ObjectReader reader;
+    private final Class<T> valueClass;
+    private Boolean hasNext;
+    private long count;
+
+    /**
+     * @param  mapper       mapper for the stream's data format.
+     * @param  inputStream  stream containing an array of values.
+     * @param  valueClass   class of each array element.
+     *
+     * @throws IllegalArgumentException
+     *   if the stream does not start with an array.
+     */
+    public JsonArrayIterator(final ObjectMapper mapper,
+                             final InputStream inputStream,
+                             final Class<T> valueClass)
+            throws IllegalArgumentException {
+
+        this.valueClass = valueClass;
+        this.reader = mapper.reader(valueClass);
+        this.hasNext = null;
+        this.count = 0;
+
+        try {
+            this.parser = mapper.getFactory().createParser(inputStream);
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("request data must be an array of " + getValueName());
+            }
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("failed to parse request data", e);
+        }
+    }
+
+    /**
+     * @return number of elements returned so far.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public boolean hasNext()
+            throws IllegalArgumentException {
+        if (hasNext == null) {
+            try {
+                final JsonToken token = parser.nextToken();
+                if (token == null) {
+                    throw new IllegalArgumentException("request data array of " + getValueName() +
+                                                       " is not terminated");
+                }
+                hasNext = (token != JsonToken.END_ARRAY);
+            } catch (final IOException e) {
+                throw new IllegalArgumentException("failed to parse " + getValueName() + " element " + count, e);
+            }
+        }
+        return hasNext;
+    }
+
+    @Override
+    public T next()
+            throws IllegalArgumentException {
+
+        if (! hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        final T value;
+        try {
+            value = reader.readValue(parser);
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("failed to parse " + getValueName() + " element " + count, e);
+        }
+
+        hasNext = null;
+        count++;
+
+        return value;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("remove is not supported");
+    }
+
+    private String getValueName() {
+        return valueClass.getSimpleName();
+    }
+}
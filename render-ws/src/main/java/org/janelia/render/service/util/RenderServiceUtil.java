@@ -1,15 +1,22 @@
 package org.janelia.render.service.util;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.io.File;
 
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import org.janelia.alignment.BoundingBoxRenderer;
+import org.janelia.alignment.LowResolutionRenderer;
 import org.janelia.alignment.Render;
 import org.janelia.alignment.RenderParameters;
 import org.janelia.alignment.Utils;
+import org.janelia.alignment.json.JsonUtils;
+import org.janelia.alignment.mipmap.MaterializedBoxRenderer;
 import org.janelia.render.service.model.IllegalServiceArgumentException;
 import org.janelia.render.service.model.ServiceException;
 import org.slf4j.Logger;
@@ -26,6 +33,59 @@ public class RenderServiceUtil {
     public static final String IMAGE_PNG_MIME_TYPE = "image/png";
     public static final String IMAGE_TIFF_MIME_TYPE = "image/tiff";
 
+    public static final MediaType SMILE_MEDIA_TYPE = MediaType.valueOf(JsonUtils.SMILE_MIME_TYPE);
+
+    /**
+     * @param  httpHeaders  request headers (null if unknown).
+     *
+     * @return {@link #SMILE_MEDIA_TYPE} if the request explicitly prefers binary Smile data,
+     *         otherwise {@link MediaType#APPLICATION_JSON_TYPE}.
+     *         Wildcard accept types are always resolved to JSON.
+     */
+    public static MediaType getDataMediaType(final HttpHeaders httpHeaders) {
+        return getDataMediaType(httpHeaders, SMILE_MEDIA_TYPE);
+    }
+
+    /**
+     * @param  httpHeaders       request headers (null if unknown).
+     * @param  binaryMediaTypes  binary types supported by the requested resource.
+     *
+     * @return the first binary type explicitly preferred by the request,
+     *         otherwise {@link MediaType#APPLICATION_JSON_TYPE}.
+     *         Wildcard accept types are always resolved to JSON.
+     */
+    public static MediaType getDataMediaType(final HttpHeaders httpHeaders,
+                                             final MediaType... binaryMediaTypes) {
+
+        MediaType dataMediaType = MediaType.APPLICATION_JSON_TYPE;
+
+        if (httpHeaders != null) {
+            // acceptable types are sorted by preference
+            preferenceLoop:
+            for (final MediaType mediaType : httpHeaders.getAcceptableMediaTypes()) {
+                if (mediaType.isWildcardType() || mediaType.isWildcardSubtype() ||
+                    MediaType.APPLICATION_JSON_TYPE.isCompatible(mediaType)) {
+                    break;
+                }
+                for (final MediaType binaryMediaType : binaryMediaTypes) {
+                    if (binaryMediaType.isCompatible(mediaType)) {
+                        dataMediaType = binaryMediaType;
+                        break preferenceLoop;
+                    }
+                }
+            }
+        }
+
+        return dataMediaType;
+    }
+
+    /**
+     * @return compact (non-indented) mapper for writing data with the specified media type.
+     */
+    public static ObjectMapper getDataMapper(final MediaType dataMediaType) {
+        return SMILE_MEDIA_TYPE.equals(dataMediaType) ? JsonUtils.SMILE_MAPPER : JsonUtils.FAST_MAPPER;
+    }
+
     public static void throwServiceException(final Throwable t)
             throws ServiceException {
 
@@ -49,7 +109,8 @@ public class RenderServiceUtil {
         try {
 
             final BufferedImage targetImage = validateParametersAndRenderImage(renderParameters,
-                                                                               true);
+                                                                               true,
+                                                                               false);
             final BufferedImageStreamingOutput out =
                     new BufferedImageStreamingOutput(targetImage,
                                                      Utils.JPEG_FORMAT,
@@ -109,12 +170,13 @@ public class RenderServiceUtil {
 
             // if we need to optimize render time (e.g. when we're rendering a box from a database stack)
             // and there are too many tiles to dynamically render the result quickly,
-            // just render the tile bounding boxes instead ...
-            final boolean renderBoundingBoxesOnly = (maxTileSpecsToRender != null) &&
+            // render a low resolution (time and pixel constrained) approximation instead ...
+            final boolean renderLowResolutionOnly = (maxTileSpecsToRender != null) &&
                                                     (renderParameters.numberOfTileSpecs() > maxTileSpecsToRender);
 
             final BufferedImage targetImage = validateParametersAndRenderImage(renderParameters,
-                                                                               renderBoundingBoxesOnly);
+                                                                               false,
+                                                                               renderLowResolutionOnly);
             final BufferedImageStreamingOutput out =
                     new BufferedImageStreamingOutput(targetImage,
                                                      format,
@@ -130,6 +192,42 @@ public class RenderServiceUtil {
         return response;
     }
 
+    public static Response renderMaterializedBoxImageStream(final RenderParameters renderParameters,
+                                                            final MaterializedBoxRenderer materializedBoxRenderer,
+                                                            final String format,
+                                                            final String mimeType,
+                                                            final ResponseHelper responseHelper) {
+
+        LOG.info("renderMaterializedBoxImageStream: entry, format={}, mimeType={}, level={}",
+                 format, mimeType, materializedBoxRenderer.getLevel());
+
+        Response response = null;
+        try {
+
+            final BufferedImage targetImage = renderParameters.openTargetImage();
+
+            Color backgroundColor = null;
+            if (renderParameters.getBackgroundRGBColor() != null) {
+                backgroundColor = new Color(renderParameters.getBackgroundRGBColor());
+            }
+
+            materializedBoxRenderer.render(targetImage, backgroundColor);
+
+            final BufferedImageStreamingOutput out =
+                    new BufferedImageStreamingOutput(targetImage,
+                                                     format,
+                                                     renderParameters.isConvertToGray(),
+                                                     renderParameters.getQuality());
+            response = responseHelper.getImageByteResponse(out, mimeType);
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        LOG.info("renderMaterializedBoxImageStream: exit");
+
+        return response;
+    }
+
     public static Response streamImageFile(final File imageFile,
                                            final String mimeType,
                                            final ResponseHelper responseHelper) {
@@ -151,7 +249,8 @@ public class RenderServiceUtil {
     }
 
     private static BufferedImage validateParametersAndRenderImage(final RenderParameters renderParameters,
-                                                                  final boolean renderBoundingBoxesOnly)
+                                                                  final boolean renderBoundingBoxesOnly,
+                                                                  final boolean renderLowResolutionOnly)
             throws IllegalArgumentException, IllegalStateException {
 
         LOG.info("validateParametersAndRenderImage: entry, renderParameters={}", renderParameters);
@@ -167,6 +266,14 @@ public class RenderServiceUtil {
             final BoundingBoxRenderer boundingBoxRenderer = new BoundingBoxRenderer(renderParameters, Color.GREEN);
             boundingBoxRenderer.render(targetImage);
 
+        } else if (renderLowResolutionOnly) {
+
+            final LowResolutionRenderer lowResolutionRenderer =
+                    new LowResolutionRenderer(renderParameters,
+                                              Color.GREEN,
+                                              SharedImageProcessorCache.getInstance());
+            lowResolutionRenderer.render(targetImage);
+
         } else {
 
             // otherwise render the real thing ...
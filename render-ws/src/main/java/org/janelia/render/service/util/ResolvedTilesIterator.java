@@ -0,0 +1,247 @@
+package org.janelia.render.service.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.janelia.alignment.spec.ListTransformSpec;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TransformSpec;
+
+/**
+ * Iterates over the tile specs of a JSON (or Smile) encoded
+ * {@link org.janelia.alignment.spec.ResolvedTileSpecCollection} as they are parsed from a stream,
+ * so that very large layers can be saved without buffering all tile specs in memory.
+ *
+ * Shared transform specs are parsed (and held in memory) when this iterator is constructed.
+ * Tiles are only streamed when the transformIdToSpecMap field precedes the tileIdToSpecMap field
+ * (as it does for all collections serialized by the render libraries).
+ * Tiles that arrive before their transforms are buffered instead.
+ *
+ * Each returned tile has been resolved against the collection's shared transforms and validated
+ * in the same way as {@link org.janelia.alignment.spec.ResolvedTileSpecCollection#validateCollection}.
+ * References to transforms that are not in the collection are left unresolved since they may identify
+ * shared transforms already stored in the target stack (the DAO verifies them when tiles are saved).
+ * Parse and validation failures are reported as {@link IllegalArgumentException}s
+ * since they are caused by invalid request data.
+ *
+ * @author Eric Trautman
+ */
+public class ResolvedTilesIterator
+        implements Iterator<TileSpec> {
+
+    private static final String TRANSFORMS_FIELD = "transformIdToSpecMap";
+    private static final String TILES_FIELD = "tileIdToSpecMap";
+
+    private final JsonParser parser;
+    private final ObjectReader transformReader;
+    private final ObjectReader tileReader;
+    private final Double expectedZ;
+    private final Map<String, TransformSpec> transformIdToSpecMap;
+    private Iterator<TileSpec> bufferedTiles;
+    private boolean streamingTiles;
+    private TileSpec nextTileSpec;
+    private long count;
+
+    /**
+     * @param  mapper       mapper for the stream's data format.
+     * @param  inputStream  stream containing a resolved tile spec collection.
+     * @param  expectedZ    if specified, all tiles must have this z value.
+     *
+     * @throws IllegalArgumentException
+     *   if the stream does not start with an object or the shared transforms cannot be parsed.
+     */
+    public ResolvedTilesIterator(final ObjectMapper mapper,
+                                 final InputStream inputStream,
+                                 final Double expectedZ)
+            throws IllegalArgumentException {
+
+        this.transformReader = mapper.reader(TransformSpec.class);
+        this.tileReader = mapper.reader(TileSpec.class);
+        this.expectedZ = expectedZ;
+        this.transformIdToSpecMap = new HashMap<>();
+        this.bufferedTiles = null;
+        this.streamingTiles = false;
+        this.nextTileSpec = null;
+        this.count = 0;
+
+        try {
+            this.parser = mapper.getFactory().createParser(inputStream);
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("request data must be a resolved tile spec collection object");
+            }
+            positionParser();
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("failed to parse resolved tile spec collection", e);
+        }
+    }
+
+    /**
+     * @return the collection's shared transform specs.
+     */
+    public Collection<TransformSpec> getTransformSpecs() {
+        return transformIdToSpecMap.values();
+    }
+
+    /**
+     * @return number of tile specs returned so far.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public boolean hasNext()
+            throws IllegalArgumentException {
+        if (nextTileSpec == null) {
+            nextTileSpec = readNextTileSpec();
+        }
+        return (nextTileSpec != null);
+    }
+
+    @Override
+    public TileSpec next()
+            throws IllegalArgumentException {
+
+        if (! hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        final TileSpec tileSpec = nextTileSpec;
+        nextTileSpec = null;
+        count++;
+
+        validateTileSpec(tileSpec);
+
+        return tileSpec;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("remove is not supported");
+    }
+
+    /**
+     * Parses top level fields until the parser is positioned within the tile map
+     * (with all shared transforms already parsed) or until the end of the collection object.
+     */
+    private void positionParser()
+            throws IOException {
+
+        List<TileSpec> tilesReadBeforeTransforms = null;
+        boolean transformsParsed = false;
+
+        JsonToken token = parser.nextToken();
+        while (token == JsonToken.FIELD_NAME) {
+
+            final String fieldName = parser.getCurrentName();
+            token = parser.nextToken();
+
+            if (TRANSFORMS_FIELD.equals(fieldName) && (token == JsonToken.START_OBJECT)) {
+
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String transformId = parser.getCurrentName();
+                    parser.nextToken();
+                    transformIdToSpecMap.put(transformId, transformReader.<TransformSpec>readValue(parser));
+                }
+                transformsParsed = true;
+
+            } else if (TILES_FIELD.equals(fieldName) && (token == JsonToken.START_OBJECT)) {
+
+                if (tilesReadBeforeTransforms == null) {
+                    if (transformsParsed) {
+                        streamingTiles = true;
+                        break;
+                    }
+                    // transforms may follow tiles, so tiles need to be buffered until the end of the collection
+                    tilesReadBeforeTransforms = new ArrayList<>();
+                }
+
+                TileSpec tileSpec;
+                while ((tileSpec = readTileMapEntry()) != null) {
+                    tilesReadBeforeTransforms.add(tileSpec);
+                }
+
+            } else {
+                parser.skipChildren();
+            }
+
+            token = parser.nextToken();
+        }
+
+        if (tilesReadBeforeTransforms != null) {
+            bufferedTiles = tilesReadBeforeTransforms.iterator();
+        }
+    }
+
+    private TileSpec readNextTileSpec()
+            throws IllegalArgumentException {
+
+        TileSpec tileSpec = null;
+
+        if (bufferedTiles != null) {
+            if (bufferedTiles.hasNext()) {
+                tileSpec = bufferedTiles.next();
+            }
+        } else if (streamingTiles) {
+            try {
+                tileSpec = readTileMapEntry();
+            } catch (final IOException e) {
+                throw new IllegalArgumentException("failed to parse tile spec " + count, e);
+            }
+            if (tileSpec == null) {
+                streamingTiles = false;
+            }
+        }
+
+        return tileSpec;
+    }
+
+    /**
+     * @return the next tile spec in the tile map or null if the end of the map has been reached.
+     */
+    private TileSpec readTileMapEntry()
+            throws IOException {
+        TileSpec tileSpec = null;
+        final JsonToken token = parser.nextToken();
+        if (token == JsonToken.FIELD_NAME) {
+            parser.nextToken();
+            tileSpec = tileReader.readValue(parser);
+        } else if (token != JsonToken.END_OBJECT) {
+            throw new IllegalArgumentException("tile spec map is not terminated");
+        }
+        return tileSpec;
+    }
+
+    private void validateTileSpec(final TileSpec tileSpec)
+            throws IllegalArgumentException {
+
+        final ListTransformSpec transforms = tileSpec.getTransforms();
+        if ((transforms != null) && (! transforms.isFullyResolved())) {
+            transforms.resolveReferences(transformIdToSpecMap);
+        }
+
+        if (! tileSpec.isBoundingBoxDefined(tileSpec.getMeshCellSize())) {
+            throw new IllegalArgumentException("tile with id '" + tileSpec.getTileId() + "' is missing bounding " +
+                                               "box attributes (minX, minY, maxX, and/or maxY)");
+        }
+
+        if ((expectedZ != null) && ((tileSpec.getZ() == null) || (Double.compare(expectedZ, tileSpec.getZ()) != 0))) {
+            throw new IllegalArgumentException("all tiles must have a z value of " + expectedZ +
+                                               " but tile with id '" + tileSpec.getTileId() +
+                                               "' has a z value of " + tileSpec.getZ());
+        }
+    }
+
+}
@@ -0,0 +1,302 @@
+package org.janelia.render.service.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.Response;
+
+import org.janelia.alignment.spec.stack.StackId;
+import org.janelia.render.service.model.ServiceException;
+import org.janelia.render.service.model.StackJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs long running stack operations in the background and tracks their status.
+ *
+ * Jobs are processed by a small fixed pool so that they never monopolize service request threads.
+ * At most {@link #DEFAULT_MAX_QUEUED_JOBS} jobs can wait for a thread and only one unfinished job
+ * (background or {@link #runInCurrentThread synchronous}) is allowed for each stack.
+ * Status for finished jobs is retained for {@link #FINISHED_JOB_RETENTION_MILLIS}.
+ *
+ * @author Eric Trautman
+ */
+public class StackJobManager {
+
+    /** Operation to run for a job. */
+    public interface Task {
+        /**
+         * Runs the operation, optionally updating the job's progress along the way.
+         *
+         * @throws Exception
+         *   if the operation fails for any reason.
+         */
+        void run(final StackJob job) throws Exception;
+    }
+
+    /** Number of jobs that can run concurrently (other jobs are queued). */
+    public static final int DEFAULT_NUMBER_OF_JOB_THREADS = 2;
+
+    /** Number of jobs that can be queued before new submissions are rejected. */
+    public static final int DEFAULT_MAX_QUEUED_JOBS = 100;
+
+    /** Amount of time status is retained for finished jobs (24 hours). */
+    public static final long FINISHED_JOB_RETENTION_MILLIS = 24 * 60 * 60 * 1000;
+
+    private static StackJobManager sharedInstance;
+
+    /**
+     * @return job manager shared by all services in this process.
+     */
+    public static StackJobManager getSharedInstance() {
+        if (sharedInstance == null) {
+            setSharedInstance();
+        }
+        return sharedInstance;
+    }
+
+    private static synchronized void setSharedInstance() {
+        if (sharedInstance == null) {
+            sharedInstance = new StackJobManager(DEFAULT_NUMBER_OF_JOB_THREADS, DEFAULT_MAX_QUEUED_JOBS);
+            LOG.info("setSharedInstance: exit, created {}", sharedInstance);
+        }
+    }
+
+    private final int numberOfJobThreads;
+    private final int maxQueuedJobs;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentMap<String, StackJob> jobIdToJobMap;
+    private final ConcurrentMap<String, Future<?>> jobIdToFutureMap;
+
+    public StackJobManager(final int numberOfJobThreads,
+                           final int maxQueuedJobs) {
+        this.numberOfJobThreads = numberOfJobThreads;
+        this.maxQueuedJobs = maxQueuedJobs;
+        this.executor = new ThreadPoolExecutor(numberOfJobThreads,
+                                               numberOfJobThreads,
+                                               0L,
+                                               TimeUnit.MILLISECONDS,
+                                               new ArrayBlockingQueue<Runnable>(maxQueuedJobs),
+                                               new ThreadFactoryBuilder()
+                                                       .setNameFormat("stack-job-%d")
+                                                       .setDaemon(true)
+                                                       .build());
+        this.jobIdToJobMap = new ConcurrentHashMap<>();
+        this.jobIdToFutureMap = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Queues the specified task for background processing.
+     *
+     * @param  description  description of the task.
+     * @param  stackId      identifies the stack changed by the task.
+     * @param  task         task to run.
+     *
+     * @return the job created for the task.
+     *
+     * @throws ServiceException
+     *   if another unfinished job exists for the same stack (409)
+     *   or if the job queue is full (503).
+     */
+    public synchronized StackJob submit(final String description,
+                                        final StackId stackId,
+                                        final Task task)
+            throws ServiceException {
+
+        removeExpiredJobs();
+
+        validateNoUnfinishedJobs(stackId);
+
+        final StackJob job = new StackJob(description, stackId);
+
+        final Future<?> future;
+        try {
+            future = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    runJob(job, task);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            throw new ServiceException("job queue is full (" + maxQueuedJobs + " jobs are waiting), " +
+                                       "please try again later",
+                                       Response.Status.SERVICE_UNAVAILABLE,
+                                       e);
+        }
+
+        jobIdToJobMap.put(job.getJobId(), job);
+        jobIdToFutureMap.put(job.getJobId(), future);
+
+        LOG.info("submit: queued job {}", job);
+
+        return job;
+    }
+
+    /**
+     * Runs the specified task in the current thread, registering it as a job so that
+     * no other job for the same stack can be started until it has finished.
+     *
+     * @param  description  description of the task.
+     * @param  stackId      identifies the stack changed by the task.
+     * @param  task         task to run.
+     *
+     * @return the finished job for the task.
+     *
+     * @throws ServiceException
+     *   if another unfinished job exists for the same stack (409).
+     *
+     * @throws Exception
+     *   if the task fails for any reason (the job is marked as failed or cancelled before the exception is thrown).
+     */
+    public StackJob runInCurrentThread(final String description,
+                                       final StackId stackId,
+                                       final Task task)
+            throws Exception {
+
+        final StackJob job = new StackJob(description, stackId);
+
+        synchronized (this) {
+            removeExpiredJobs();
+            validateNoUnfinishedJobs(stackId);
+            jobIdToJobMap.put(job.getJobId(), job);
+        }
+
+        try {
+            job.markRunning();
+            LOG.info("runInCurrentThread: starting job {}", job);
+            task.run(job);
+            job.markCompleted();
+            LOG.info("runInCurrentThread: completed job {}", job);
+        } catch (final CancellationException e) {
+            job.markCancelled();
+            LOG.info("runInCurrentThread: cancelled job {}", job);
+            throw e;
+        } catch (final Throwable t) {
+            job.markFailed(t);
+            throw t;
+        }
+
+        return job;
+    }
+
+    /**
+     * @throws ServiceException
+     *   if an unfinished job exists for the specified stack (409).
+     */
+    public void validateNoUnfinishedJobs(final StackId stackId)
+            throws ServiceException {
+        for (final StackJob existingJob : jobIdToJobMap.values()) {
+            if ((! existingJob.isFinished()) && (existingJob.getStackId().compareTo(stackId) == 0)) {
+                throw new ServiceException("job " + existingJob.getJobId() + " (" + existingJob.getDescription() +
+                                           ") must finish before another operation can be started for " + stackId,
+                                           Response.Status.CONFLICT);
+            }
+        }
+    }
+
+    /**
+     * @return the job with the specified id or null if it is not known.
+     */
+    public StackJob getJob(final String jobId) {
+        return jobIdToJobMap.get(jobId);
+    }
+
+    /**
+     * @return all known jobs sorted by creation time.
+     */
+    public List<StackJob> getJobs() {
+        final List<StackJob> jobs = new ArrayList<>(jobIdToJobMap.values());
+        Collections.sort(jobs, new Comparator<StackJob>() {
+            @Override
+            public int compare(final StackJob o1,
+                               final StackJob o2) {
+                return o1.getCreateTimestamp().compareTo(o2.getCreateTimestamp());
+            }
+        });
+        return jobs;
+    }
+
+    /**
+     * Cancels the specified job.
+     * Queued jobs are cancelled immediately while running jobs stop at their next progress update.
+     * Finished jobs are not changed.
+     *
+     * @return the job with the specified id or null if it is not known.
+     */
+    public StackJob cancel(final String jobId) {
+
+        final StackJob job = jobIdToJobMap.get(jobId);
+
+        if ((job != null) && (! job.isFinished())) {
+
+            job.requestCancel();
+
+            final Future<?> future = jobIdToFutureMap.get(jobId);
+            if ((future != null) && future.cancel(false)) {
+                // job never started, so mark it here and release its queue slot
+                job.markCancelled();
+                jobIdToFutureMap.remove(jobId);
+                executor.purge();
+            }
+
+            LOG.info("cancel: requested cancellation of job {}", job);
+        }
+
+        return job;
+    }
+
+    @Override
+    public String toString() {
+        return "{numberOfJobThreads: " + numberOfJobThreads +
+               ", maxQueuedJobs: " + maxQueuedJobs +
+               ", numberOfJobs: " + jobIdToJobMap.size() +
+               '}';
+    }
+
+    private void runJob(final StackJob job,
+                        final Task task) {
+        try {
+            job.checkForCancellation();
+            job.markRunning();
+            LOG.info("runJob: starting job {}", job);
+            task.run(job);
+            job.markCompleted();
+            LOG.info("runJob: completed job {}", job);
+        } catch (final CancellationException e) {
+            job.markCancelled();
+            LOG.info("runJob: cancelled job {}", job);
+        } catch (final Throwable t) {
+            job.markFailed(t);
+            LOG.error("runJob: failed job " + job, t);
+        } finally {
+            jobIdToFutureMap.remove(job.getJobId());
+        }
+    }
+
+    private void removeExpiredJobs() {
+        final long expirationTime = System.currentTimeMillis() - FINISHED_JOB_RETENTION_MILLIS;
+        StackJob job;
+        for (final Iterator<StackJob> i = jobIdToJobMap.values().iterator(); i.hasNext();) {
+            job = i.next();
+            if (job.isFinished() && (job.getEndTimestamp().getTime() < expirationTime)) {
+                i.remove();
+                jobIdToFutureMap.remove(job.getJobId());
+            }
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(StackJobManager.class);
+}
@@ -29,7 +29,7 @@ export JAVA_OPTIONS="-Xms3g -Xmx3g -server -Djava.awt.headless=true"
 #export JAVA_OPTIONS="-Xms15g -Xmx15g -server -Djava.awt.headless=true"
  
 # super 500GB server
-#export JAVA_OPTIONS="-Xms400g -Xmx400g -server -Djava.awt.headless=true"
+#export JAVA_OPTIONS="-Xms400g -Xmx400g -server -Djava.awt.headless=true -DtileInverseMeshCache.maxTriangles=1000000"
  
 # run the real script ... 
 ${JETTY_HOME}/bin/jetty.sh $* 2>&1 1>>${JETTY_RUN}/jetty_bootstrap.log
@@ -201,6 +201,44 @@ public class CoordinateServiceTest {
                            localCoordinates.isVisible());
     }
 
+    @Test
+    public void testWorldCoordinatesForMultipleTiles() throws Exception {
+
+        final List<TileCoordinates> localCoordinatesList = new ArrayList<>();
+        localCoordinatesList.add(TileCoordinates.buildLocalInstance(ID_FOR_TILE_WITH_REAL_TRANSFORMS,
+                                                                    new double[]{10.0, 10.0}));
+        localCoordinatesList.add(TileCoordinates.buildLocalInstance("missing-tile", new double[]{10.0, 10.0}));
+        localCoordinatesList.add(TileCoordinates.buildLocalInstance(ID_FOR_TILE_WITH_REAL_TRANSFORMS,
+                                                                    new double[]{20.0, 20.0}));
+        localCoordinatesList.add(TileCoordinates.buildLocalInstance("252", new double[]{10.0, 10.0}));
+
+        final List<TileCoordinates> worldCoordinatesList =
+                service.getWorldCoordinates(stackId.getOwner(),
+                                            stackId.getProject(),
+                                            stackId.getStack(),
+                                            localCoordinatesList);
+
+        Assert.assertEquals("invalid world list size",
+                            localCoordinatesList.size(), worldCoordinatesList.size());
+
+        final String[] expectedTileIds = { ID_FOR_TILE_WITH_REAL_TRANSFORMS, null, ID_FOR_TILE_WITH_REAL_TRANSFORMS, "252" };
+        TileCoordinates tileCoordinates;
+        for (int i = 0; i < worldCoordinatesList.size(); i++) {
+            tileCoordinates = worldCoordinatesList.get(i);
+            if (expectedTileIds[i] == null) {
+                Assert.assertTrue("world list [" + i + "] should have error", tileCoordinates.hasError());
+            } else {
+                validateCoordinates("world list [" + i + "]",
+                                    tileCoordinates,
+                                    expectedTileIds[i],
+                                    false,
+                                    null,
+                                    null,
+                                    Z);
+            }
+        }
+    }
+
     private void validateCoordinates(final String context,
                                      final TileCoordinates coordinates,
                                      final String expectedTileId,
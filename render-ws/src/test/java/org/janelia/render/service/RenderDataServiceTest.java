@@ -1,5 +1,7 @@
 package org.janelia.render.service;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.net.URI;
 import java.util.ArrayList;
@@ -8,6 +10,8 @@ import java.util.Collections;
 import java.util.List;
 
 import javax.ws.rs.core.PathSegment;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import org.janelia.alignment.RenderParameters;
@@ -91,10 +95,7 @@ public class RenderDataServiceTest {
     @Test
     public void testGetAndSaveResolvedTiles() throws Exception {
 
-        final ResolvedTileSpecCollection resolvedTiles = service.getResolvedTiles(alignStackId.getOwner(),
-                                                                                  alignStackId.getProject(),
-                                                                                  alignStackId.getStack(),
-                                                                                  Z);
+        final ResolvedTileSpecCollection resolvedTiles = getResolvedTiles(alignStackId);
 
         validateResolvedTiles("before save", resolvedTiles, 1, 1);
 
@@ -118,12 +119,10 @@ public class RenderDataServiceTest {
                                       testStackId.getStack(),
                                       Z,
                                       uriInfo,
-                                      resolvedTiles);
+                                      null,
+                                      toStream(resolvedTiles));
 
-        final ResolvedTileSpecCollection resolvedTestTiles = service.getResolvedTiles(testStackId.getOwner(),
-                                                                                      testStackId.getProject(),
-                                                                                      testStackId.getStack(),
-                                                                                      Z);
+        final ResolvedTileSpecCollection resolvedTestTiles = getResolvedTiles(testStackId);
 
         validateResolvedTiles("after save", resolvedTestTiles, 1, 2);
 
@@ -146,12 +145,10 @@ public class RenderDataServiceTest {
                                       testStackId.getStack(),
                                       Z,
                                       uriInfo,
-                                      resolvedTestTiles);
+                                      null,
+                                      toStream(resolvedTestTiles));
 
-        final ResolvedTileSpecCollection resolvedTest2Tiles = service.getResolvedTiles(testStackId.getOwner(),
-                                                                                       testStackId.getProject(),
-                                                                                       testStackId.getStack(),
-                                                                                       Z);
+        final ResolvedTileSpecCollection resolvedTest2Tiles = getResolvedTiles(testStackId);
 
         validateResolvedTiles("after second save", resolvedTest2Tiles, 2, 2);
     }
@@ -173,6 +170,26 @@ public class RenderDataServiceTest {
                             LeafTransformSpec.class, firstEntry.getLastTransform().getClass());
     }
 
+    private ResolvedTileSpecCollection getResolvedTiles(final StackId stackId)
+            throws Exception {
+
+        final Response response = service.getResolvedTiles(stackId.getOwner(),
+                                                           stackId.getProject(),
+                                                           stackId.getStack(),
+                                                           Z,
+                                                           null);
+
+        final StreamingOutput streamingOutput = (StreamingOutput) response.getEntity();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        streamingOutput.write(outputStream);
+
+        return ResolvedTileSpecCollection.fromJson(outputStream.toString());
+    }
+
+    private ByteArrayInputStream toStream(final ResolvedTileSpecCollection resolvedTiles) {
+        return new ByteArrayInputStream(resolvedTiles.toJson().getBytes());
+    }
+
     private void validateResolvedTiles(final String context,
                                        final ResolvedTileSpecCollection resolvedTiles,
                                        final int expectedNumberOfTileSpecs,
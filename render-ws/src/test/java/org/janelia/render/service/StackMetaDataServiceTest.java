@@ -8,6 +8,7 @@ import java.util.Date;
 import java.util.List;
 
 import javax.ws.rs.core.PathSegment;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 
 import org.janelia.alignment.spec.Bounds;
@@ -20,6 +21,7 @@ import org.janelia.render.service.dao.RenderDao;
 import org.janelia.render.service.dao.RenderDaoTest;
 import org.janelia.render.service.model.IllegalServiceArgumentException;
 import org.janelia.render.service.model.ObjectNotFoundException;
+import org.janelia.render.service.model.StackJob;
 import org.janelia.test.EmbeddedMongoDb;
 import org.jboss.resteasy.specimpl.UriInfoImpl;
 import org.junit.AfterClass;
@@ -148,7 +150,9 @@ public class StackMetaDataServiceTest {
 
         service.deleteStack(loadingStackId.getOwner(),
                             loadingStackId.getProject(),
-                            loadingStackId.getStack());
+                            loadingStackId.getStack(),
+                            null,
+                            getUriInfo());
 
         try {
             service.getStackMetaData(loadingStackId.getOwner(),
@@ -181,6 +185,7 @@ public class StackMetaDataServiceTest {
                               completeStackId.getProject(),
                               completeStackId.getStack(),
                               COMPLETE,
+                              null,
                               getUriInfo());
 
         final StackMetaData stackMetaData2 = service.getStackMetaData(completeStackId.getOwner(),
@@ -219,7 +224,9 @@ public class StackMetaDataServiceTest {
 
         service.deleteStack(completeStackId.getOwner(),
                             completeStackId.getProject(),
-                            completeStackId.getStack());
+                            completeStackId.getStack(),
+                            null,
+                            getUriInfo());
 
         try {
             service.getStackMetaData(completeStackId.getOwner(),
@@ -264,6 +271,7 @@ public class StackMetaDataServiceTest {
                                   null,
                                   null,
                                   null,
+                                  null,
                                   getUriInfo(),
                                   clonedStackVersion);
 
@@ -274,6 +282,80 @@ public class StackMetaDataServiceTest {
         RenderDaoTest.validateStackMetaData(" for cloned stack", LOADING, 0, clonedStackVersion, clonedStackMetaData);
     }
 
+    @Test
+    public void testCloneStackVersionInBackground() throws Exception {
+
+        final StackId clonedStackId = new StackId(completeStackId.getOwner(),
+                                                  completeStackId.getProject(),
+                                                  "asyncClonedStack");
+
+        final StackVersion clonedStackVersion = new StackVersion(new Date(),
+                                                                 "asyncCloned",
+                                                                 1,
+                                                                 2,
+                                                                 3.1,
+                                                                 4.1,
+                                                                 5.1,
+                                                                 null,
+                                                                 null);
+
+        final Response response = service.cloneStackVersion(completeStackId.getOwner(),
+                                                            completeStackId.getProject(),
+                                                            completeStackId.getStack(),
+                                                            clonedStackId.getStack(),
+                                                            null,
+                                                            null,
+                                                            null,
+                                                            true,
+                                                            getUriInfo(),
+                                                            clonedStackVersion);
+
+        Assert.assertEquals("invalid response status",
+                            Response.Status.ACCEPTED.getStatusCode(), response.getStatus());
+
+        waitForJobToComplete(response);
+
+        final StackMetaData clonedStackMetaData = service.getStackMetaData(clonedStackId.getOwner(),
+                                                                           clonedStackId.getProject(),
+                                                                           clonedStackId.getStack());
+
+        RenderDaoTest.validateStackMetaData(" for async cloned stack", LOADING, 0, clonedStackVersion,
+                                            clonedStackMetaData);
+
+        Assert.assertEquals("invalid number of cloned tiles",
+                            renderDao.getTileSpecs(completeStackId, 3903.0).size(),
+                            renderDao.getTileSpecs(clonedStackId, 3903.0).size());
+    }
+
+    @Test
+    public void testSetStackStateInBackground() throws Exception {
+
+        final Response response = service.setStackState(completeStackId.getOwner(),
+                                                         completeStackId.getProject(),
+                                                         completeStackId.getStack(),
+                                                         COMPLETE,
+                                                         true,
+                                                         getUriInfo());
+
+        Assert.assertEquals("invalid response status",
+                            Response.Status.ACCEPTED.getStatusCode(), response.getStatus());
+
+        final StackJob job = waitForJobToComplete(response);
+
+        final StackJob cancelledJob = service.cancelStackJob(job.getJobId());
+        Assert.assertEquals("cancel should not change finished job",
+                            StackJob.JobState.COMPLETED, cancelledJob.getState());
+
+        final StackMetaData stackMetaData = service.getStackMetaData(completeStackId.getOwner(),
+                                                                     completeStackId.getProject(),
+                                                                     completeStackId.getStack());
+
+        Assert.assertEquals("invalid state after background completion", COMPLETE, stackMetaData.getState());
+        Assert.assertNotNull("stats not derived after background completion", stackMetaData.getStats());
+        Assert.assertEquals("invalid tileCount",
+                            new Long(12), stackMetaData.getStats().getTileCount());
+    }
+
     @Test
     public void testDeleteStackTilesWithZ() throws Exception {
 
@@ -310,6 +392,7 @@ public class StackMetaDataServiceTest {
                                   null,
                                   null,
                                   null,
+                                  null,
                                   getUriInfo(),
                                   clonedStackVersion);
 
@@ -333,6 +416,24 @@ public class StackMetaDataServiceTest {
 
     }
 
+    private static StackJob waitForJobToComplete(final Response jobResponse)
+            throws InterruptedException {
+
+        final StackJob submittedJob = (StackJob) jobResponse.getEntity();
+        Assert.assertNotNull("job missing from response", submittedJob);
+
+        StackJob job = service.getStackJob(submittedJob.getJobId());
+        for (int i = 0; (i < 100) && (! job.isFinished()); i++) {
+            Thread.sleep(100);
+            job = service.getStackJob(submittedJob.getJobId());
+        }
+
+        Assert.assertEquals("job did not complete, failureMessage is " + job.getFailureMessage(),
+                            StackJob.JobState.COMPLETED, job.getState());
+
+        return job;
+    }
+
     private static UriInfo getUriInfo()
             throws URISyntaxException {
         return new UriInfoImpl(new URI("http://test/stack"),
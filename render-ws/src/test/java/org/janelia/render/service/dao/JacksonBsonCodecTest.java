@@ -0,0 +1,86 @@
+package org.janelia.render.service.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.janelia.alignment.ImageAndMask;
+import org.janelia.alignment.spec.LeafTransformSpec;
+import org.janelia.alignment.spec.ListTransformSpec;
+import org.janelia.alignment.spec.ReferenceTransformSpec;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TransformSpec;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link JacksonBsonCodec} class.
+ *
+ * @author Eric Trautman
+ */
+public class JacksonBsonCodecTest {
+
+    @Test
+    public void testTileSpecConversion() throws Exception {
+
+        final TileSpec tileSpec = new TileSpec();
+        tileSpec.setTileId("tile-1");
+        tileSpec.setZ(3.0);
+        tileSpec.setWidth(2650.0);
+        tileSpec.setHeight(2260.0);
+        tileSpec.putMipmap(0, new ImageAndMask("file:///tmp/tile-1.png", null));
+        tileSpec.putMipmap(2, new ImageAndMask("file:///tmp/tile-1_2.png", "file:///tmp/mask_2.png"));
+
+        final ListTransformSpec nestedList = new ListTransformSpec();
+        nestedList.addSpec(new ReferenceTransformSpec("lens-1"));
+        nestedList.addSpec(new LeafTransformSpec("mpicbg.trakem2.transform.AffineModel2D",
+                                                 "1.0 0.0 0.0 1.0 100.0 200.0"));
+        final List<TransformSpec> specs = new ArrayList<>();
+        specs.add(nestedList);
+        specs.add(new LeafTransformSpec("mpicbg.trakem2.transform.TranslationModel2D", "5 6"));
+        tileSpec.addTransformSpecs(specs);
+
+        final JacksonBsonCodec<TileSpec> codec = new JacksonBsonCodec<>(TileSpec.class);
+
+        final BsonDocument bsonDocument = new BsonDocument();
+        codec.encode(new BsonDocumentWriter(bsonDocument), tileSpec, EncoderContext.builder().build());
+
+        final Document parsedDocument = Document.parse(tileSpec.toJson());
+        Assert.assertEquals("encoded document differs from parsed JSON document",
+                            parsedDocument.toJson(), bsonDocument.toJson());
+
+        final TileSpec decodedTileSpec = codec.decode(new BsonDocumentReader(bsonDocument),
+                                                      DecoderContext.builder().build());
+
+        Assert.assertEquals("decoded tile spec differs from original",
+                            tileSpec.toJson(), decodedTileSpec.toJson());
+    }
+
+    @Test
+    public void testTransformSpecConversion() throws Exception {
+
+        final JacksonBsonCodec<TransformSpec> codec = new JacksonBsonCodec<>(TransformSpec.class);
+
+        for (final TransformSpec transformSpec : Arrays.asList(
+                new LeafTransformSpec("lens-1", null, "mpicbg.trakem2.transform.TranslationModel2D", "5 6"),
+                new ReferenceTransformSpec("lens-1"))) {
+
+            final BsonDocument bsonDocument = new BsonDocument();
+            codec.encode(new BsonDocumentWriter(bsonDocument), transformSpec, EncoderContext.builder().build());
+
+            final TransformSpec decodedSpec = codec.decode(new BsonDocumentReader(bsonDocument),
+                                                           DecoderContext.builder().build());
+
+            Assert.assertEquals("invalid class decoded", transformSpec.getClass(), decodedSpec.getClass());
+            Assert.assertEquals("decoded transform spec differs from original",
+                                transformSpec.toJson(), decodedSpec.toJson());
+        }
+    }
+
+}
@@ -1,5 +1,8 @@
 package org.janelia.render.service.dao;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.util.ArrayList;
@@ -8,10 +11,13 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.bson.Document;
+import org.janelia.alignment.json.JsonUtils;
 import org.janelia.alignment.match.CanvasMatches;
 import org.janelia.alignment.match.MatchCollectionId;
 import org.janelia.alignment.match.MatchCollectionMetaData;
 import org.janelia.alignment.match.Matches;
+import org.janelia.render.service.util.JsonArrayIterator;
 import org.janelia.test.EmbeddedMongoDb;
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -101,7 +107,7 @@ public class MatchDaoTest {
 
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
 
-        dao.writeMatchesWithPGroup(collectionId, null, groupId, outputStream);
+        dao.writeMatchesWithPGroup(collectionId, null, groupId, getJsonWriter(outputStream));
 
         final List<CanvasMatches> canvasMatchesList = getListFromStream(outputStream);
 
@@ -114,12 +120,33 @@ public class MatchDaoTest {
         }
     }
 
+    @Test
+    public void testWriteSmileMatches() throws Exception {
+
+        final ByteArrayOutputStream jsonOutputStream = new ByteArrayOutputStream(1024);
+        dao.writeMatchesWithPGroup(collectionId, null, groupId, getJsonWriter(jsonOutputStream));
+
+        final ByteArrayOutputStream smileOutputStream = new ByteArrayOutputStream(1024);
+        dao.writeMatchesWithPGroup(collectionId, null, groupId, CanvasMatchesWriter.forMapper(JsonUtils.SMILE_MAPPER, smileOutputStream));
+
+        final List<CanvasMatches> jsonList = getListFromStream(jsonOutputStream);
+        final List<CanvasMatches> smileList =
+                JsonUtils.SMILE_MAPPER.readValue(smileOutputStream.toByteArray(),
+                                                 new TypeReference<List<CanvasMatches>>() {});
+
+        Assert.assertEquals("invalid number of smile matches returned", jsonList.size(), smileList.size());
+        for (int i = 0; i < jsonList.size(); i++) {
+            Assert.assertEquals("smile matches differ for item " + i,
+                                jsonList.get(i).toJson(), smileList.get(i).toJson());
+        }
+    }
+
     @Test
     public void testWriteMatchesWithinGroup() throws Exception {
 
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
 
-        dao.writeMatchesWithinGroup(collectionId, null, groupId, outputStream);
+        dao.writeMatchesWithinGroup(collectionId, null, groupId, getJsonWriter(outputStream));
 
         final List<CanvasMatches> canvasMatchesList = getListFromStream(outputStream);
 
@@ -159,7 +186,7 @@ public class MatchDaoTest {
 
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
 
-        dao.writeMatchesOutsideGroup(collectionId, null, groupId, outputStream);
+        dao.writeMatchesOutsideGroup(collectionId, null, groupId, getJsonWriter(outputStream));
 
         final List<CanvasMatches> canvasMatchesList = getListFromStream(outputStream);
 
@@ -179,7 +206,7 @@ public class MatchDaoTest {
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
 
         final String targetGroupId = "section2";
-        dao.writeMatchesBetweenGroups(collectionId, null, groupId, targetGroupId, outputStream);
+        dao.writeMatchesBetweenGroups(collectionId, null, groupId, targetGroupId, getJsonWriter(outputStream));
 
         final List<CanvasMatches> canvasMatchesList = getListFromStream(outputStream);
 
@@ -205,7 +232,7 @@ public class MatchDaoTest {
         final String targetGroupId = "section0";
         final String targetId = "tile0.1";
 
-        dao.writeMatchesBetweenObjects(collectionId, null, groupId, sourceId, targetGroupId, targetId, outputStream);
+        dao.writeMatchesBetweenObjects(collectionId, null, groupId, sourceId, targetGroupId, targetId, getJsonWriter(outputStream));
 
         final List<CanvasMatches> canvasMatchesList = getListFromStream(outputStream);
 
@@ -233,7 +260,7 @@ public class MatchDaoTest {
         // "pGroupId": "section0", "pId": "tile0.1", "qGroupId": "section1", "qId": "tile1.1",
         final String sourceId = "tile1.1";
 
-        dao.writeMatchesInvolvingObject(collectionId, null, groupId, sourceId, outputStream);
+        dao.writeMatchesInvolvingObject(collectionId, null, groupId, sourceId, getJsonWriter(outputStream));
 
         final List<CanvasMatches> canvasMatchesList = getListFromStream(outputStream);
 
@@ -258,7 +285,7 @@ public class MatchDaoTest {
 
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
 
-        dao.writeMatchesOutsideGroup(collectionId, null, groupId, outputStream);
+        dao.writeMatchesOutsideGroup(collectionId, null, groupId, getJsonWriter(outputStream));
 
         List<CanvasMatches> canvasMatchesList = getListFromStream(outputStream);
 
@@ -267,7 +294,7 @@ public class MatchDaoTest {
 
         outputStream.reset();
 
-        dao.writeMatchesWithinGroup(collectionId, null, groupId, outputStream);
+        dao.writeMatchesWithinGroup(collectionId, null, groupId, getJsonWriter(outputStream));
 
         canvasMatchesList = getListFromStream(outputStream);
 
@@ -295,7 +322,7 @@ public class MatchDaoTest {
 
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
 
-        dao.writeMatchesOutsideGroup(collectionId, null, groupId, outputStream);
+        dao.writeMatchesOutsideGroup(collectionId, null, groupId, getJsonWriter(outputStream));
 
         canvasMatchesList = getListFromStream(outputStream);
 
@@ -312,6 +339,126 @@ public class MatchDaoTest {
         Assert.assertEquals("invalid number of matches saved", 3, savePCount);
     }
 
+    @Test
+    public void testSaveStreamedMatches() throws Exception {
+
+        final MatchCollectionId streamCollectionId = new MatchCollectionId("testOwner", "streamCollection");
+        final int numberOfPairs = 2500; // more than two save batches
+
+        final List<CanvasMatches> canvasMatchesList = new ArrayList<>(numberOfPairs);
+        for (int i = 0; i < numberOfPairs; i++) {
+            canvasMatchesList.add(new CanvasMatches(groupId,
+                                                    "stream.p." + i,
+                                                    groupId + "2",
+                                                    "stream.q",
+                                                    new Matches(new double[][]{{1, 2}, {4, 5},},
+                                                                new double[][]{{11, 12}, {14, 15}},
+                                                                new double[]{7, 8})));
+        }
+
+        final byte[] json = JsonUtils.FAST_MAPPER.writeValueAsBytes(canvasMatchesList);
+        final JsonArrayIterator<CanvasMatches> matchesIterator =
+                new JsonArrayIterator<>(JsonUtils.FAST_MAPPER, new ByteArrayInputStream(json), CanvasMatches.class);
+
+        final long savedCount = dao.saveMatches(streamCollectionId, matchesIterator);
+
+        Assert.assertEquals("invalid number of matches saved", numberOfPairs, savedCount);
+
+        final MatchCollectionMetaData collectionMetaData = getCollectionMetaData(streamCollectionId);
+        Assert.assertNotNull(streamCollectionId + " not created", collectionMetaData);
+        Assert.assertEquals("invalid number of stored matches",
+                            new Long(numberOfPairs), collectionMetaData.getPairCount());
+
+        dao.removeAllMatches(streamCollectionId);
+    }
+
+    @Test
+    public void testSaveDuplicatePairsInConcurrentBatches() throws Exception {
+
+        final MatchCollectionId duplicateCollectionId = new MatchCollectionId("testOwner", "duplicateCollection");
+        final int numberOfPairs = 4000; // four concurrent save batches
+
+        // the same new pair is saved by the first match of every batch
+        final List<CanvasMatches> canvasMatchesList = new ArrayList<>(numberOfPairs);
+        for (int i = 0; i < numberOfPairs; i++) {
+            canvasMatchesList.add(new CanvasMatches(groupId,
+                                                    (i % 1000 == 0) ? "duplicate.p" : "duplicate.p." + i,
+                                                    groupId + "2",
+                                                    "duplicate.q",
+                                                    new Matches(new double[][]{{1, 2}, {4, 5},},
+                                                                new double[][]{{11, 12}, {14, 15}},
+                                                                new double[]{7, 8})));
+        }
+
+        final long savedCount = dao.saveMatches(duplicateCollectionId, canvasMatchesList.iterator());
+
+        Assert.assertEquals("invalid number of matches saved", numberOfPairs, savedCount);
+
+        final MatchCollectionMetaData collectionMetaData = getCollectionMetaData(duplicateCollectionId);
+        Assert.assertNotNull(duplicateCollectionId + " not created", collectionMetaData);
+        Assert.assertEquals("invalid number of stored matches",
+                            new Long(numberOfPairs - 3), collectionMetaData.getPairCount());
+
+        dao.removeAllMatches(duplicateCollectionId);
+    }
+
+    @Test
+    public void testSavePackedMatches() throws Exception {
+
+        final MatchDao packedDao = new MatchDao(embeddedMongoDb.getMongoClient(), true);
+
+        final String pId = "packed.p";
+        final Matches matches = new Matches(new double[][]{{1.5, 2.25, 3.125}, {4, 5, 6},},
+                                            new double[][]{{11, 12, 13}, {14, 15, 16}},
+                                            new double[]{0.7, 0.8, 0.9});
+        final CanvasMatches packedMatches = new CanvasMatches(groupId, pId, groupId + "9", "packed.q", matches);
+
+        packedDao.saveMatches(collectionId, Collections.singletonList(packedMatches));
+
+        final Document storedDocument = embeddedMongoDb.getMongoClient()
+                .getDatabase(MatchDao.MATCH_DB_NAME)
+                .getCollection(collectionId.getDbCollectionName())
+                .find(new Document("pId", pId)).first();
+
+        Assert.assertNotNull("packed matches not saved", storedDocument);
+        Assert.assertTrue("matches not stored in packed form",
+                          storedDocument.containsKey(CanvasMatchesCodec.PACKED_MATCHES_KEY));
+        Assert.assertFalse("matches should not be stored in array form",
+                           storedDocument.containsKey(CanvasMatchesCodec.MATCHES_KEY));
+
+        // default dao should transparently read collection with both packed and array matches
+        final ByteArrayOutputStream jsonOutputStream = new ByteArrayOutputStream(1024);
+        dao.writeMatchesOutsideGroup(collectionId, null, groupId, getJsonWriter(jsonOutputStream));
+
+        final List<CanvasMatches> jsonList = getListFromStream(jsonOutputStream);
+
+        Assert.assertEquals("invalid number of matches returned, matches=" + jsonList,
+                            3, jsonList.size());
+
+        boolean foundPackedMatches = false;
+        for (final CanvasMatches canvasMatches : jsonList) {
+            if (pId.equals(canvasMatches.getpId())) {
+                Assert.assertEquals("packed matches changed after save",
+                                    packedMatches.toJson(), canvasMatches.toJson());
+                foundPackedMatches = true;
+            }
+        }
+        Assert.assertTrue("packed matches not returned", foundPackedMatches);
+
+        final ByteArrayOutputStream binaryOutputStream = new ByteArrayOutputStream(1024);
+        dao.writeMatchesOutsideGroup(collectionId, null, groupId,
+                                     CanvasMatchesWriter.forPackedBinary(binaryOutputStream));
+
+        final List<CanvasMatches> binaryList =
+                CanvasMatches.fromPackedStream(new ByteArrayInputStream(binaryOutputStream.toByteArray()));
+
+        Assert.assertEquals("invalid number of binary matches returned", jsonList.size(), binaryList.size());
+        for (int i = 0; i < jsonList.size(); i++) {
+            Assert.assertEquals("binary matches differ for item " + i,
+                                jsonList.get(i).toJson(), binaryList.get(i).toJson());
+        }
+    }
+
     @Test
     public void testUpdateMatches() throws Exception {
 
@@ -343,7 +490,7 @@ public class MatchDaoTest {
 
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
 
-        dao.writeMatchesOutsideGroup(collectionId, null, updateGroupA, outputStream);
+        dao.writeMatchesOutsideGroup(collectionId, null, updateGroupA, getJsonWriter(outputStream));
 
         final List<CanvasMatches> retrievedList = getListFromStream(outputStream);
 
@@ -426,6 +573,10 @@ public class MatchDaoTest {
         return CanvasMatches.fromJsonArray(json);
     }
 
+    private CanvasMatchesWriter getJsonWriter(final ByteArrayOutputStream outputStream) {
+        return CanvasMatchesWriter.forMapper(JsonUtils.FAST_MAPPER, outputStream);
+    }
+
     private void validateWriteMergedMatchesWithinGroup(final String context,
                                                        final List<MatchCollectionId> mergeCollectionIdList,
                                                        final int expectedMatchCount,
@@ -434,7 +585,7 @@ public class MatchDaoTest {
 
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
 
-        dao.writeMatchesWithinGroup(collectionId, mergeCollectionIdList, groupId, outputStream);
+        dao.writeMatchesWithinGroup(collectionId, mergeCollectionIdList, groupId, getJsonWriter(outputStream));
 
         final List<CanvasMatches> canvasMatchesList = getListFromStream(outputStream);
 
@@ -0,0 +1,39 @@
+package org.janelia.render.service.dao;
+
+import com.mongodb.ReadPreference;
+
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ReadPreferencePolicy} class.
+ *
+ * @author Eric Trautman
+ */
+public class ReadPreferencePolicyTest {
+
+    @Test
+    public void testGetReadPreference() throws Exception {
+
+        final ReadPreferencePolicy policy = new ReadPreferencePolicy(ReadPreference.secondaryPreferred(), 60);
+
+        Assert.assertTrue("policy should allow non-primary reads", policy.allowsNonPrimaryReads());
+
+        final long now = System.currentTimeMillis();
+
+        Assert.assertEquals("recently changed data should be read from primary",
+                            ReadPreference.primary(), policy.getReadPreference(new Date(now - 1000)));
+        Assert.assertEquals("data with unknown change time should be read from primary",
+                            ReadPreference.primary(), policy.getReadPreference((Date) null));
+        Assert.assertEquals("old data should be read with configured preference",
+                            ReadPreference.secondaryPreferred(), policy.getReadPreference(new Date(now - 120000)));
+
+        Assert.assertFalse("primary only policy should not allow non-primary reads",
+                           ReadPreferencePolicy.PRIMARY_ONLY.allowsNonPrimaryReads());
+        Assert.assertEquals("primary only policy should always return primary",
+                            ReadPreference.primary(), ReadPreferencePolicy.PRIMARY_ONLY.getReadPreference(0));
+    }
+
+}
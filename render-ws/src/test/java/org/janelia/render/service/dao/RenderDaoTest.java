@@ -1,21 +1,30 @@
 package org.janelia.render.service.dao;
 
+import java.awt.Rectangle;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import mpicbg.trakem2.transform.AffineModel2D;
 
+import org.janelia.alignment.json.JsonUtils;
 import org.janelia.alignment.spec.Bounds;
 import org.janelia.alignment.spec.LayoutData;
 import org.janelia.alignment.spec.LeafTransformSpec;
 import org.janelia.alignment.spec.ListTransformSpec;
 import org.janelia.alignment.spec.ReferenceTransformSpec;
+import org.janelia.alignment.spec.ResolvedTileSpecCollection;
 import org.janelia.alignment.spec.SectionData;
 import org.janelia.alignment.spec.TileBounds;
 import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TileTransformChange;
 import org.janelia.alignment.spec.TransformSpec;
 import org.janelia.alignment.spec.TransformSpecMetaData;
 import org.janelia.alignment.spec.stack.StackId;
@@ -174,6 +183,69 @@ public class RenderDaoTest {
         Assert.assertEquals("invalid number of sections found for filtered list", 2, filteredList.size());
     }
 
+    @Test
+    public void testDeriveStatsForChangedLayers() throws Exception {
+
+        final StackMetaData stackMetaData = dao.getStackMetaData(stackId);
+
+        StackStats stats = dao.ensureIndexesAndDeriveStats(stackMetaData).getStats();
+        Assert.assertEquals("invalid initial section count", new Long(1), stats.getSectionCount());
+        Assert.assertEquals("invalid initial tile count", new Long(12), stats.getTileCount());
+
+        final TileSpec tileSpec = new TileSpec();
+        tileSpec.setTileId("new-layer-tile");
+        tileSpec.setLayout(new LayoutData("3904.5", null, null, null, null, null, null, null));
+        tileSpec.setZ(3904.5);
+        tileSpec.setBoundingBox(new Rectangle(100, 200, 20000, 30000), 64.0);
+
+        dao.saveTileSpec(stackId, tileSpec);
+
+        stats = dao.ensureIndexesAndDeriveStats(stackMetaData).getStats();
+
+        final Bounds expectedBounds = new Bounds(100.0, 200.0, 3903.0, 20100.0, 30200.0, 3904.5);
+        Assert.assertEquals("invalid bounds after add", expectedBounds.toJson(), stats.getStackBounds().toJson());
+        Assert.assertEquals("invalid section count after add", new Long(2), stats.getSectionCount());
+        Assert.assertEquals("invalid non-integral section count after add",
+                            new Long(1), stats.getNonIntegralSectionCount());
+        Assert.assertEquals("invalid tile count after add", new Long(13), stats.getTileCount());
+        Assert.assertEquals("invalid max tile width after add", new Integer(20000), stats.getMaxTileWidth());
+
+        final List<SectionData> sectionDataList = dao.getSectionData(stackId, 3904.0, 3905.0);
+        Assert.assertEquals("invalid number of sections for added layer", 1, sectionDataList.size());
+        Assert.assertEquals("invalid tileCount for added layer",
+                            new Long(1), sectionDataList.get(0).getTileCount());
+
+        dao.removeTilesWithZ(stackId, tileSpec.getZ());
+
+        stats = dao.ensureIndexesAndDeriveStats(stackMetaData).getStats();
+
+        Assert.assertEquals("invalid section count after remove", new Long(1), stats.getSectionCount());
+        Assert.assertEquals("invalid tile count after remove", new Long(12), stats.getTileCount());
+        Assert.assertEquals("invalid max z after remove", 3903.0, stats.getStackBounds().getMaxZ(), 0.01);
+        Assert.assertEquals("sections for removed layer should not exist",
+                            0, dao.getSectionData(stackId, 3904.0, 3905.0).size());
+    }
+
+    @Test
+    public void testStackMetaDataCacheInvalidation() throws Exception {
+
+        final StackMetaDataCache stackMetaDataCache = new StackMetaDataCache(10, 60);
+        final RenderDao cachingDao = new RenderDao(embeddedMongoDb.getMongoClient(), null, stackMetaDataCache, null, null);
+
+        final StackMetaData stackMetaDataBeforeSave = cachingDao.getStackMetaData(stackId);
+        Assert.assertNotNull("null meta data retrieved", cachingDao.getStackMetaData(stackId));
+        Assert.assertEquals("invalid hit count", 1, stackMetaDataCache.getStats().hitCount());
+
+        final StackVersion nextTry = new StackVersion(new Date(), "next try", 5, 3, 4.2, 4.2, 35.2, null, null);
+        cachingDao.saveStackMetaData(stackMetaDataBeforeSave.getNextVersion(nextTry));
+
+        final StackMetaData stackMetaDataAfterSave = cachingDao.getStackMetaData(stackId);
+        validateStackMetaData(" after cached save", LOADING, 3, nextTry, stackMetaDataAfterSave);
+
+        final Map<String, Object> statsSummary = cachingDao.getStackMetaDataCacheStats();
+        Assert.assertEquals("invalid invalidation count", 1L, statsSummary.get("invalidationCount"));
+    }
+
     @Test
     public void testRemoveStack() throws Exception {
 
@@ -346,6 +418,166 @@ public class RenderDaoTest {
         Assert.assertFalse("transformSpec should not be resolved after update", updatedSpec.isFullyResolved());
     }
 
+    @Test
+    public void testSaveResolvedTilesWithModifiedTransform() throws Exception {
+
+        final TileSpec directTileBefore = dao.getTileSpec(stackId, "134", false);
+        final TileSpec indirectTileBefore = dao.getTileSpec(stackId, "135", false);
+
+        // shift shared transform 1 (referenced directly by tile 134 and through transform 2 by tile 135)
+        final LeafTransformSpec modifiedSpec =
+                new LeafTransformSpec("1",
+                                      null,
+                                      AffineModel2D.class.getName(),
+                                      "0.99414426 -0.057523947 0.05564594 1.0000075 11108.6772 2104.6455");
+
+        final ResolvedTileSpecCollection resolvedTiles =
+                new ResolvedTileSpecCollection(Collections.<TransformSpec>singletonList(modifiedSpec),
+                                               new ArrayList<TileSpec>());
+
+        dao.saveResolvedTiles(stackId, resolvedTiles);
+
+        final TileSpec directTileAfter = dao.getTileSpec(stackId, "134", false);
+        Assert.assertEquals("bounds of directly referencing tile were not re-derived",
+                            directTileBefore.getMinX() + 10000, directTileAfter.getMinX(), 20.0);
+
+        final TileSpec indirectTileAfter = dao.getTileSpec(stackId, "135", false);
+        Assert.assertTrue("bounds of indirectly referencing tile were not re-derived",
+                          Math.abs(indirectTileBefore.getMaxX() - indirectTileAfter.getMaxX()) > 1.0);
+    }
+
+    @Test
+    public void testSaveResolvedTilesWithModifiedNestedReference() throws Exception {
+
+        // copy tile 134, nesting its reference to shared transform 1 within a tile-level list spec
+        final TileSpec nestedTileBefore = dao.getTileSpec(stackId, "134", false);
+        nestedTileBefore.setTileId("nested-tile");
+        final ListTransformSpec nestedList = new ListTransformSpec();
+        nestedList.addSpec(nestedTileBefore.getTransforms());
+        final ListTransformSpec tileTransforms = new ListTransformSpec();
+        tileTransforms.addSpec(nestedList);
+        nestedTileBefore.setTransforms(tileTransforms);
+
+        dao.saveTileSpec(stackId, nestedTileBefore);
+
+        final LeafTransformSpec modifiedSpec =
+                new LeafTransformSpec("1",
+                                      null,
+                                      AffineModel2D.class.getName(),
+                                      "0.99414426 -0.057523947 0.05564594 1.0000075 11108.6772 2104.6455");
+
+        final ResolvedTileSpecCollection resolvedTiles =
+                new ResolvedTileSpecCollection(Collections.<TransformSpec>singletonList(modifiedSpec),
+                                               new ArrayList<TileSpec>());
+
+        dao.saveResolvedTiles(stackId, resolvedTiles);
+
+        final TileSpec nestedTileAfter = dao.getTileSpec(stackId, "nested-tile", false);
+        Assert.assertEquals("bounds of tile with nested reference were not re-derived",
+                            nestedTileBefore.getMinX() + 10000, nestedTileAfter.getMinX(), 20.0);
+    }
+
+    @Test
+    public void testSaveResolvedTilesWithStoredTransformReferences() throws Exception {
+
+        final TileSpec tileSpec = new TileSpec();
+        tileSpec.setTileId("stored-reference-tile");
+        tileSpec.setZ(3903.0);
+        tileSpec.addTransformSpecs(Collections.<TransformSpec>singletonList(new ReferenceTransformSpec("1")));
+
+        final long savedCount = dao.saveResolvedTiles(stackId,
+                                                      Collections.<TransformSpec>emptyList(),
+                                                      Collections.singletonList(tileSpec).iterator());
+
+        Assert.assertEquals("invalid number of tiles saved", 1, savedCount);
+        Assert.assertNotNull("tile not saved", dao.getTileSpec(stackId, "stored-reference-tile", false));
+
+        final TileSpec badTileSpec = new TileSpec();
+        badTileSpec.setTileId("missing-reference-tile");
+        badTileSpec.setZ(3903.0);
+        badTileSpec.addTransformSpecs(Collections.<TransformSpec>singletonList(new ReferenceTransformSpec("99")));
+
+        try {
+            dao.saveResolvedTiles(stackId,
+                                  Collections.<TransformSpec>emptyList(),
+                                  Collections.singletonList(badTileSpec).iterator());
+            Assert.fail("reference to missing transform should cause exception");
+        } catch (final IllegalArgumentException e) {
+            Assert.assertNotNull("exception message missing", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testWriteResolvedTilesWithNestedReference() throws Exception {
+
+        // tile references transform 3 through a nested (tile-level) list spec
+        final ListTransformSpec nestedList = new ListTransformSpec();
+        nestedList.addSpec(new ReferenceTransformSpec("3"));
+
+        final TileSpec tileSpec = new TileSpec();
+        tileSpec.setTileId("nested-tile");
+        tileSpec.setGroupId("nested");
+        tileSpec.setZ(3903.0);
+        tileSpec.addTransformSpecs(Collections.<TransformSpec>singletonList(nestedList));
+
+        dao.saveTileSpec(stackId, tileSpec);
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
+        dao.writeResolvedTiles(stackId, null, null, "nested", null, null, null, null,
+                               JsonUtils.FAST_MAPPER, outputStream);
+
+        final ResolvedTileSpecCollection resolvedTiles =
+                ResolvedTileSpecCollection.fromJson(outputStream.toString());
+
+        Assert.assertEquals("invalid number of tiles written", 1, resolvedTiles.getTileCount());
+
+        final Set<String> writtenTransformIds = new HashSet<>();
+        for (final TransformSpec transformSpec : resolvedTiles.getTransformSpecs()) {
+            writtenTransformIds.add(transformSpec.getId());
+        }
+        Assert.assertTrue("nested reference not written", writtenTransformIds.contains("3"));
+    }
+
+    @Test
+    public void testApplyTransformToTiles() throws Exception {
+
+        final TileSpec changedTileBefore = dao.getTileSpec(stackId, "134", false);
+        final TileSpec unchangedTileBefore = dao.getTileSpec(stackId, "135", false);
+
+        final LeafTransformSpec translateSpec = new LeafTransformSpec("translate",
+                                                                      null,
+                                                                      AffineModel2D.class.getName(),
+                                                                      "1 0 0 1 5000 0");
+        final TileTransformChange change =
+                new TileTransformChange(translateSpec,
+                                        TileTransformChange.ApplicationMethod.APPEND,
+                                        Collections.singletonList(changedTileBefore.getTileId()));
+
+        final long changedCount = dao.applyTransformToTiles(stackId, 3903.0, 3903.0, change);
+        Assert.assertEquals("invalid number of changed tiles", 1, changedCount);
+
+        final TileSpec changedTileAfter = dao.getTileSpec(stackId, "134", false);
+        Assert.assertEquals("transform not appended",
+                            changedTileBefore.getTransforms().size() + 1, changedTileAfter.getTransforms().size());
+        Assert.assertEquals("bounds not re-derived after transform was applied",
+                            changedTileBefore.getMinX() + 5000, changedTileAfter.getMinX(), 20.0);
+
+        final TileSpec unchangedTileAfter = dao.getTileSpec(stackId, "135", false);
+        Assert.assertEquals("filtered tile should not be changed",
+                            unchangedTileBefore.toJson(), unchangedTileAfter.toJson());
+
+        final LeafTransformSpec conflictingSpec = new LeafTransformSpec(translateSpec.getId(),
+                                                                        null,
+                                                                        AffineModel2D.class.getName(),
+                                                                        "1 0 0 1 0 0");
+        try {
+            dao.applyTransformToTiles(stackId, null, null, new TileTransformChange(conflictingSpec, null, null));
+            Assert.fail("change with conflicting transform id should be rejected");
+        } catch (final IllegalArgumentException e) {
+            Assert.assertTrue(true); // test passed
+        }
+    }
+
     @Test
     public void testUpdateZForSection() throws Exception {
 
@@ -388,6 +620,22 @@ public class RenderDaoTest {
         Assert.assertEquals("z not updated for tile '" + tileIdB + "'", updatedZ, zAfterUpdateB);
     }
 
+    @Test
+    public void testUpdateGroupIdForTiles() throws Exception {
+
+        final List<String> tileIds = Arrays.asList("134", "135", "no-such-tile");
+
+        final long updatedCount = dao.updateGroupIdForTiles(stackId, "test-group", tileIds.iterator());
+
+        Assert.assertEquals("invalid number of tiles updated", 2, updatedCount);
+        Assert.assertEquals("group not updated for tile 134",
+                            "test-group", dao.getTileSpec(stackId, "134", false).getGroupId());
+
+        dao.updateGroupIdForTiles(stackId, null, tileIds.iterator());
+
+        Assert.assertNull("group not removed for tile 135", dao.getTileSpec(stackId, "135", false).getGroupId());
+    }
+
     public static void validateStackMetaData(final String context,
                                              final StackMetaData.StackState expectedState,
                                              final Integer expectedVersionNumber,
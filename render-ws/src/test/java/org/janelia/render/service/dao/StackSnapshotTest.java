@@ -0,0 +1,145 @@
+package org.janelia.render.service.dao;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.janelia.alignment.spec.Bounds;
+import org.janelia.alignment.spec.LeafTransformSpec;
+import org.janelia.alignment.spec.ReferenceTransformSpec;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TransformSpec;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link StackSnapshot} class.
+ *
+ * @author Eric Trautman
+ */
+public class StackSnapshotTest {
+
+    private File snapshotFile;
+
+    @Before
+    public void setup() throws Exception {
+        snapshotFile = File.createTempFile("stack_snapshot_test_", StackSnapshotStore.SNAPSHOT_FILE_SUFFIX);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if ((snapshotFile != null) && snapshotFile.exists()) {
+            if (! snapshotFile.delete()) {
+                throw new IllegalStateException("failed to delete " + snapshotFile);
+            }
+        }
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+
+        final Date lastModifiedTimestamp = new Date();
+
+        final List<TileSpec> firstLayerTileSpecs = buildLayer(1.0, 20, 10);
+        final List<TileSpec> secondLayerTileSpecs = buildLayer(2.0, 3, 2);
+
+        final TileSpec unboundedTileSpec = new TileSpec();
+        unboundedTileSpec.setTileId("unbounded");
+        unboundedTileSpec.setZ(2.0);
+        secondLayerTileSpecs.add(unboundedTileSpec);
+
+        final LeafTransformSpec sharedSpec =
+                new LeafTransformSpec(SHARED_ID, null, "mpicbg.trakem2.transform.AffineModel2D", "1 0 0 1 10 0");
+
+        try (StackSnapshot.Writer writer = new StackSnapshot.Writer(snapshotFile, lastModifiedTimestamp)) {
+            writer.addLayer(1.0, firstLayerTileSpecs);
+            writer.addLayer(2.0, secondLayerTileSpecs);
+            try {
+                writer.addLayer(1.5, secondLayerTileSpecs);
+                Assert.fail("out of order layer should cause exception");
+            } catch (final IllegalArgumentException e) {
+                Assert.assertNotNull("exception message missing", e.getMessage());
+            }
+            writer.finish(Collections.<TransformSpec>singletonList(sharedSpec));
+        }
+
+        final StackSnapshot snapshot = new StackSnapshot(snapshotFile);
+
+        Assert.assertEquals("invalid last modified time",
+                            lastModifiedTimestamp.getTime(), snapshot.getLastModifiedTime());
+        Assert.assertEquals("invalid z values", 2, snapshot.getZValues(null, null).size());
+        Assert.assertEquals("invalid filtered z values", 1, snapshot.getZValues(1.5, null).size());
+
+        final Bounds layerBounds = snapshot.getLayerBounds(1.0);
+        Assert.assertNotNull("missing layer bounds", layerBounds);
+        Assert.assertEquals("invalid layer maxX", 200.0, layerBounds.getMaxX(), 0.01);
+        Assert.assertEquals("invalid layer maxY", 100.0, layerBounds.getMaxY(), 0.01);
+        Assert.assertNull("bounds returned for missing layer", snapshot.getLayerBounds(3.0));
+
+        final List<TileSpec> secondLayer = snapshot.getTileSpecs(2.0);
+        Assert.assertEquals("invalid number of tiles in second layer",
+                            secondLayerTileSpecs.size(), secondLayer.size());
+        Assert.assertTrue("transforms not resolved", secondLayer.get(0).getTransforms().isFullyResolved());
+
+        final double[][] boxes = {
+                {   0.0,   0.0, 200.0, 100.0 },
+                {  15.0,  15.0,  35.0,  25.0 },
+                {  10.0,  10.0,  10.0,  10.0 },
+                { 195.0,  95.0, 500.0, 500.0 },
+                { 300.0, 300.0, 400.0, 400.0 }
+        };
+
+        for (final double[] box : boxes) {
+            final List<String> expectedTileIds = getTileIdsInBox(firstLayerTileSpecs, box);
+            final List<String> actualTileIds = new ArrayList<>();
+            for (final TileSpec tileSpec : snapshot.getTileSpecsInBox(1.0, box[0], box[1], box[2], box[3])) {
+                actualTileIds.add(tileSpec.getTileId());
+            }
+            Assert.assertEquals("invalid tiles for box (" + box[0] + ", " + box[1] + ", " + box[2] + ", " +
+                                box[3] + ")", expectedTileIds, actualTileIds);
+        }
+
+        Assert.assertEquals("tiles returned for missing layer",
+                            0, snapshot.getTileSpecsInBox(3.0, 0.0, 0.0, 200.0, 100.0).size());
+    }
+
+    private List<TileSpec> buildLayer(final Double z,
+                                      final int columns,
+                                      final int rows) {
+        final List<TileSpec> tileSpecs = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                final TileSpec tileSpec = new TileSpec();
+                tileSpec.setTileId(String.format("%s_%02d_%02d", z, row, column));
+                tileSpec.setZ(z);
+                tileSpec.setWidth(10.0);
+                tileSpec.setHeight(10.0);
+                tileSpec.addTransformSpecs(Collections.<TransformSpec>singletonList(
+                        new ReferenceTransformSpec(SHARED_ID)));
+                tileSpec.setBoundingBox(new Rectangle(column * 10, row * 10, 10, 10), tileSpec.getMeshCellSize());
+                tileSpecs.add(tileSpec);
+            }
+        }
+        return tileSpecs;
+    }
+
+    private List<String> getTileIdsInBox(final List<TileSpec> tileSpecs,
+                                         final double[] box) {
+        final List<String> tileIds = new ArrayList<>();
+        for (final TileSpec tileSpec : tileSpecs) {
+            if ((tileSpec.getMinX() <= box[2]) && (tileSpec.getMinY() <= box[3]) &&
+                (tileSpec.getMaxX() >= box[0]) && (tileSpec.getMaxY() >= box[1])) {
+                tileIds.add(tileSpec.getTileId());
+            }
+        }
+        Collections.sort(tileIds);
+        return tileIds;
+    }
+
+    private static final String SHARED_ID = "shared";
+}
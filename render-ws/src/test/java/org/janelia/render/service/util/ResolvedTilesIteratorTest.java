@@ -0,0 +1,136 @@
+package org.janelia.render.service.util;
+
+import java.awt.Rectangle;
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+
+import org.janelia.alignment.json.JsonUtils;
+import org.janelia.alignment.spec.LeafTransformSpec;
+import org.janelia.alignment.spec.ReferenceTransformSpec;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TransformSpec;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ResolvedTilesIterator} class.
+ *
+ * @author Eric Trautman
+ */
+public class ResolvedTilesIteratorTest {
+
+    @Test
+    public void testTransformsBeforeTiles() throws Exception {
+
+        final String json = "{\"transformIdToSpecMap\": " + getTransformMapJson() +
+                            ", \"tileIdToSpecMap\": " + getTileMapJson(1.0, 1.0) + "}";
+
+        validateIterator("streamed", json, 1.0);
+    }
+
+    @Test
+    public void testTilesBeforeTransforms() throws Exception {
+
+        final String json = "{\"tileIdToSpecMap\": " + getTileMapJson(1.0, 1.0) +
+                            ", \"transformIdToSpecMap\": " + getTransformMapJson() + "}";
+
+        validateIterator("buffered", json, null);
+    }
+
+    @Test
+    public void testInvalidData() throws Exception {
+
+        final String json = "{\"transformIdToSpecMap\": " + getTransformMapJson() +
+                            ", \"tileIdToSpecMap\": " + getTileMapJson(1.0, 2.0) + "}";
+
+        validateFailure("tile with different z", json, 1.0);
+
+        validateFailure("array instead of collection", "[]", null);
+    }
+
+    @Test
+    public void testTransformsNotInCollection() throws Exception {
+
+        // references to transforms that are not in the collection may identify transforms stored in the stack
+        final String json = "{\"tileIdToSpecMap\": " + getTileMapJson(1.0, 1.0) + "}";
+
+        final ResolvedTilesIterator iterator = getIterator(json, null);
+
+        TileSpec tileSpec;
+        while (iterator.hasNext()) {
+            tileSpec = iterator.next();
+            Assert.assertEquals("invalid unresolved ids for tile " + tileSpec.getTileId(),
+                                Collections.singleton(SHARED_ID), tileSpec.getTransforms().getUnresolvedIds());
+        }
+
+        Assert.assertEquals("invalid number of tile specs", 2, iterator.getCount());
+    }
+
+    private void validateIterator(final String context,
+                                  final String json,
+                                  final Double expectedZ) {
+
+        final ResolvedTilesIterator iterator = getIterator(json, expectedZ);
+
+        Assert.assertEquals(context + ": invalid number of transform specs",
+                            1, iterator.getTransformSpecs().size());
+
+        TileSpec tileSpec;
+        while (iterator.hasNext()) {
+            tileSpec = iterator.next();
+            Assert.assertTrue(context + ": transforms not resolved for tile " + tileSpec.getTileId(),
+                              tileSpec.getTransforms().isFullyResolved());
+        }
+
+        Assert.assertEquals(context + ": invalid number of tile specs", 2, iterator.getCount());
+    }
+
+    private void validateFailure(final String context,
+                                 final String json,
+                                 final Double expectedZ) {
+        try {
+            final ResolvedTilesIterator iterator = getIterator(json, expectedZ);
+            while (iterator.hasNext()) {
+                iterator.next();
+            }
+            Assert.fail(context + " should have caused exception");
+        } catch (final IllegalArgumentException e) {
+            Assert.assertNotNull(context + ": exception message missing", e.getMessage());
+        }
+    }
+
+    private ResolvedTilesIterator getIterator(final String json,
+                                              final Double expectedZ) {
+        return new ResolvedTilesIterator(JsonUtils.FAST_MAPPER,
+                                         new ByteArrayInputStream(json.getBytes()),
+                                         expectedZ);
+    }
+
+    private String getTransformMapJson() {
+        final LeafTransformSpec sharedSpec = new LeafTransformSpec(SHARED_ID,
+                                                                   null,
+                                                                   "mpicbg.trakem2.transform.AffineModel2D",
+                                                                   "1 0 0 1 10 0");
+        return "{\"" + SHARED_ID + "\": " + sharedSpec.toJson() + "}";
+    }
+
+    private String getTileMapJson(final Double firstZ,
+                                  final Double secondZ) {
+        return "{\"tile-a\": " + buildTileSpec("tile-a", firstZ).toJson() +
+               ", \"tile-b\": " + buildTileSpec("tile-b", secondZ).toJson() + "}";
+    }
+
+    private TileSpec buildTileSpec(final String tileId,
+                                   final Double z) {
+        final TileSpec tileSpec = new TileSpec();
+        tileSpec.setTileId(tileId);
+        tileSpec.setZ(z);
+        tileSpec.setWidth(10.0);
+        tileSpec.setHeight(10.0);
+        tileSpec.addTransformSpecs(Collections.<TransformSpec>singletonList(new ReferenceTransformSpec(SHARED_ID)));
+        tileSpec.setBoundingBox(new Rectangle(10, 0, 10, 10), tileSpec.getMeshCellSize());
+        return tileSpec;
+    }
+
+    private static final String SHARED_ID = "shared";
+}
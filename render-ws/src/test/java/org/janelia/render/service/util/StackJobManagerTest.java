@@ -0,0 +1,128 @@
+package org.janelia.render.service.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.Response;
+
+import org.janelia.alignment.spec.stack.StackId;
+import org.janelia.render.service.model.ServiceException;
+import org.janelia.render.service.model.StackJob;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link StackJobManager} class.
+ *
+ * @author Eric Trautman
+ */
+public class StackJobManagerTest {
+
+    @Test
+    public void testQueueLimitsAndCancellation() throws Exception {
+
+        final StackJobManager manager = new StackJobManager(1, 1);
+
+        final StackId stackA = new StackId("testOwner", "testProject", "stackA");
+        final StackId stackB = new StackId("testOwner", "testProject", "stackB");
+        final StackId stackC = new StackId("testOwner", "testProject", "stackC");
+
+        final CountDownLatch runningLatch = new CountDownLatch(1);
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+
+        final StackJob runningJob = manager.submit("running", stackA, new StackJobManager.Task() {
+            @Override
+            public void run(final StackJob job) throws Exception {
+                runningLatch.countDown();
+                while (! releaseLatch.await(10, TimeUnit.MILLISECONDS)) {
+                    job.updateProgress("waiting for release");
+                }
+                job.updateProgress("released");
+            }
+        });
+
+        Assert.assertTrue("job did not start", runningLatch.await(5, TimeUnit.SECONDS));
+
+        validateRejection("second job for same stack", Response.Status.CONFLICT, manager, stackA);
+
+        final StackJob queuedJob = manager.submit("queued", stackB, new StackJobManager.Task() {
+            @Override
+            public void run(final StackJob job) {
+                Assert.fail("cancelled job should not run");
+            }
+        });
+
+        Assert.assertEquals("invalid queued job state", StackJob.JobState.QUEUED, queuedJob.getState());
+
+        validateRejection("job for full queue", Response.Status.SERVICE_UNAVAILABLE, manager, stackC);
+
+        manager.cancel(queuedJob.getJobId());
+        Assert.assertEquals("queued job should be cancelled immediately",
+                            StackJob.JobState.CANCELLED, queuedJob.getState());
+
+        manager.cancel(runningJob.getJobId());
+
+        for (int i = 0; (i < 100) && (! runningJob.isFinished()); i++) {
+            Thread.sleep(50);
+        }
+
+        Assert.assertEquals("running job should be cancelled at its next progress update",
+                            StackJob.JobState.CANCELLED, runningJob.getState());
+
+        releaseLatch.countDown();
+
+        Assert.assertEquals("invalid number of jobs", 2, manager.getJobs().size());
+    }
+
+    @Test
+    public void testSynchronousJobsBlockOtherJobs() throws Exception {
+
+        final StackJobManager manager = new StackJobManager(1, 1);
+
+        final StackId stackA = new StackId("testOwner", "testProject", "stackA");
+
+        final StackJob synchronousJob = manager.runInCurrentThread("synchronous", stackA, new StackJobManager.Task() {
+            @Override
+            public void run(final StackJob job) throws Exception {
+                validateRejection("background job during synchronous job", Response.Status.CONFLICT, manager, stackA);
+            }
+        });
+
+        Assert.assertEquals("invalid synchronous job state", StackJob.JobState.COMPLETED, synchronousJob.getState());
+
+        try {
+            manager.runInCurrentThread("failing", stackA, new StackJobManager.Task() {
+                @Override
+                public void run(final StackJob job) throws Exception {
+                    throw new IllegalStateException("test failure");
+                }
+            });
+            Assert.fail("task failure should be thrown");
+        } catch (final IllegalStateException e) {
+            Assert.assertEquals("invalid failure message", "test failure", e.getMessage());
+        }
+
+        // stack should no longer be blocked once synchronous jobs have finished
+        manager.validateNoUnfinishedJobs(stackA);
+
+        Assert.assertEquals("invalid number of jobs", 2, manager.getJobs().size());
+    }
+
+    private void validateRejection(final String context,
+                                   final Response.Status expectedStatus,
+                                   final StackJobManager manager,
+                                   final StackId stackId) {
+        try {
+            manager.submit(context, stackId, new StackJobManager.Task() {
+                @Override
+                public void run(final StackJob job) {
+                }
+            });
+            Assert.fail(context + " should have been rejected");
+        } catch (final ServiceException e) {
+            Assert.assertEquals("invalid status for " + context,
+                                expectedStatus.getStatusCode(), e.getResponse().getStatus());
+        }
+    }
+
+}